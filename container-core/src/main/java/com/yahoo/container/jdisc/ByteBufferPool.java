@@ -0,0 +1,73 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.container.jdisc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of direct byte buffers of a fixed size, used to write responses to the network
+ * without allocating new buffers for each response.
+ *
+ * A buffer is acquired by the writer of a response and released when the network has completed writing it.
+ * A new buffer is allocated when the pool is empty, and released buffers are dropped when it is full.
+ *
+ * This is multithread safe.
+ */
+public final class ByteBufferPool {
+
+    /** The default size of each buffer in bytes */
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    private final int bufferSize;
+    private final ArrayBlockingQueue<ByteBuffer> buffers;
+
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicLong allocated = new AtomicLong();
+
+    /**
+     * Creates a pool of buffers
+     *
+     * @param bufferSize the size of each buffer in bytes
+     * @param maxPooled the max number of unused buffers to keep in this
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize < 1) throw new IllegalArgumentException("Buffer size must be positive, not " + bufferSize);
+        if (maxPooled < 1) throw new IllegalArgumentException("Max pooled buffers must be positive, not " + maxPooled);
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /** Returns an empty buffer from this, or a newly allocated buffer if this is empty */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+            allocated.incrementAndGet();
+        }
+        inUse.incrementAndGet();
+        return buffer;
+    }
+
+    /** Returns a buffer acquired from this to it. The buffer must not be accessed by the caller after this. */
+    public void release(ByteBuffer buffer) {
+        inUse.decrementAndGet();
+        if (buffer.capacity() != bufferSize || ! buffer.isDirect()) return;
+        buffer.clear();
+        buffers.offer(buffer);
+    }
+
+    /** Returns the size of the buffers of this in bytes */
+    public int bufferSize() { return bufferSize; }
+
+    /** Returns the number of unused buffers in this */
+    public int available() { return buffers.size(); }
+
+    /** Returns the number of buffers acquired from this which are not yet released */
+    public int inUse() { return inUse.get(); }
+
+    /** Returns the total number of buffers allocated by this since it was created */
+    public long allocated() { return allocated.get(); }
+
+}
@@ -18,20 +18,41 @@ import java.util.logging.Logger;
 /**
  * A buffered stream wrapping a ContentChannel.
  *
+ * If created with a {@link ByteBufferPool} this writes into buffers from the pool and hands them directly
+ * to the content channel, which returns them to the pool when it has completed writing them.
+ * Otherwise, new buffers are allocated for the data written.
+ *
  * @author Steinar Knutsen
  */
 public class ContentChannelOutputStream extends OutputStream implements WritableByteTransmitter {
 
     private static final Logger log = Logger.getLogger(ContentChannelOutputStream.class.getName());
+    /** The buffers of this if it is not using pooled buffers, null otherwise */
     private final BufferChain buffer;
+    /** The pool buffers are taken from, or null if buffers are allocated */
+    private final ByteBufferPool pool;
+    /** The pooled buffer currently being written, or null if none */
+    private ByteBuffer current = null;
     private final ContentChannel endpoint;
     private long byteBufferData = 0L;
+    private long pooledBufferData = 0L;
     private boolean failed = false;
     private final Object failLock = new Object();
 
     public ContentChannelOutputStream(final ContentChannel endpoint) {
+        this(endpoint, null);
+    }
+
+    /**
+     * Creates a stream writing to the given endpoint.
+     *
+     * @param endpoint the content channel to write to
+     * @param pool the pool to take buffers from, or null to allocate new buffers
+     */
+    public ContentChannelOutputStream(final ContentChannel endpoint, final ByteBufferPool pool) {
         this.endpoint = endpoint;
-        buffer = new BufferChain(this);
+        this.pool = pool;
+        this.buffer = pool == null ? new BufferChain(this) : null;
     }
 
     /**
@@ -39,6 +60,14 @@ public class ContentChannelOutputStream extends OutputStream implements Writable
      */
     @Override
     public void write(final int b) throws IOException {
+        if (pool != null) {
+            if (current == null)
+                current = pool.acquire();
+            current.put((byte) b);
+            if ( ! current.hasRemaining())
+                sendCurrent();
+            return;
+        }
         try {
             buffer.append((byte) b);
         } catch (RuntimeException e) {
@@ -53,6 +82,10 @@ public class ContentChannelOutputStream extends OutputStream implements Writable
     public void close() throws IOException {
         // the endpoint is closed in a finally{} block inside AbstractHttpRequestHandler
         // this class should be possible to close willynilly as it is exposed to plug-ins
+        if (pool != null) {
+            sendCurrent();
+            return;
+        }
         try {
             buffer.flush();
         } catch (RuntimeException e) {
@@ -65,6 +98,10 @@ public class ContentChannelOutputStream extends OutputStream implements Writable
      */
     @Override
     public void flush() throws IOException {
+        if (pool != null) {
+            sendCurrent();
+            return;
+        }
         try {
             buffer.flush();
         } catch (RuntimeException e) {
@@ -80,7 +117,10 @@ public class ContentChannelOutputStream extends OutputStream implements Writable
     @Override
     public void write(final byte[] b, final int off, final int len)
             throws IOException {
-        nonCopyingWrite(Arrays.copyOfRange(b, off, off + len));
+        if (pool != null)
+            pooledWrite(b, off, len);
+        else
+            nonCopyingWrite(Arrays.copyOfRange(b, off, off + len));
     }
 
     /**
@@ -90,6 +130,9 @@ public class ContentChannelOutputStream extends OutputStream implements Writable
      */
     @Override
     public void write(final byte[] b) throws IOException {
+        if (pool != null)
+            pooledWrite(b, 0, b.length);
+        else
             nonCopyingWrite(Arrays.copyOf(b, b.length));
     }
 
@@ -100,6 +143,10 @@ public class ContentChannelOutputStream extends OutputStream implements Writable
      */
     public void nonCopyingWrite(final byte[] b, final int off, final int len)
             throws IOException {
+        if (pool != null) {
+            pooledWrite(b, off, len);
+            return;
+        }
         try {
             buffer.append(b, off, len);
         } catch (RuntimeException e) {
@@ -113,6 +160,10 @@ public class ContentChannelOutputStream extends OutputStream implements Writable
      * other words <i>not</i> safe to recycle the array {@code b}.
      */
     public void nonCopyingWrite(final byte[] b) throws IOException {
+        if (pool != null) {
+            pooledWrite(b, 0, b.length);
+            return;
+        }
         try {
             buffer.append(b);
         } catch (RuntimeException e) {
@@ -146,9 +197,43 @@ public class ContentChannelOutputStream extends OutputStream implements Writable
      * @return the number of bytes written to this stream
      */
     public long written() {
+        if (pool != null)
+            return pooledBufferData + (current == null ? 0 : current.position()) + byteBufferData;
         return buffer.appended() + byteBufferData;
     }
 
+    /** Copies the given data into pooled buffers, sending each buffer to the endpoint when it is full */
+    private void pooledWrite(final byte[] b, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (current == null)
+                current = pool.acquire();
+            int chunkLength = Math.min(length, current.remaining());
+            current.put(b, offset, chunkLength);
+            offset += chunkLength;
+            length -= chunkLength;
+            if ( ! current.hasRemaining())
+                sendCurrent();
+        }
+    }
+
+    /**
+     * Sends the current pooled buffer to the endpoint, which returns it to the pool when it is written.
+     * The endpoint gets a view of the buffer, such that clearing it on release does not change what it reads.
+     */
+    private void sendCurrent() throws IOException {
+        if (current == null) return;
+
+        ByteBuffer data = current;
+        current = null;
+        data.flip();
+        pooledBufferData += data.remaining();
+        try {
+            endpoint.write(data.duplicate(), new ReleasingCompletionHandler(data));
+        } catch (RuntimeException e) {
+            throw new IOException(Exceptions.toMessageString(e), e);
+        }
+    }
+
     class LoggingCompletionHandler implements CompletionHandler {
         @Override
         public void completed() {
@@ -170,4 +255,26 @@ public class ContentChannelOutputStream extends OutputStream implements Writable
             }
         }
     }
+
+    /** Returns a pooled buffer to the pool when the endpoint is done with it */
+    class ReleasingCompletionHandler extends LoggingCompletionHandler {
+
+        private final ByteBuffer data;
+
+        ReleasingCompletionHandler(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public void completed() {
+            pool.release(data);
+        }
+
+        @Override
+        public void failed(Throwable t) {
+            pool.release(data);
+            super.failed(t);
+        }
+
+    }
 }
@@ -97,7 +97,7 @@ public abstract class ThreadedHttpRequestHandler extends ThreadedRequestHandler
         LoggingCompletionHandler logOnCompletion = null;
         ContentChannelOutputStream output = null;
         try {
-            output = new ContentChannelOutputStream(channel);
+            output = new ContentChannelOutputStream(channel, outputBufferPool());
             logOnCompletion = createLoggingCompletionHandler(startTime, System.currentTimeMillis(),
                                                              httpResponse, request, output);
 
@@ -199,7 +199,10 @@ public abstract class ThreadedHttpRequestHandler extends ThreadedRequestHandler
         private static class DevNullChannel implements ContentChannel {
 
             @Override
-            public void write(ByteBuffer byteBuffer, CompletionHandler completionHandler) { }
+            public void write(ByteBuffer byteBuffer, CompletionHandler completionHandler) {
+                if (completionHandler != null)
+                    completionHandler.completed(); // let pooled buffers be reused
+            }
 
             @Override
             public void close(CompletionHandler completionHandler) { }
@@ -219,6 +222,14 @@ public abstract class ThreadedHttpRequestHandler extends ThreadedRequestHandler
         addDateHeader(httpResponse, startTime);
     }
 
+    /**
+     * Override this to render responses into buffers from the returned pool rather than into new buffers.
+     * This default implementation returns null, meaning buffers are allocated for each response.
+     */
+    protected ByteBufferPool outputBufferPool() {
+        return null;
+    }
+
     // Can be overridden to add Date HTTP response header. See bugs 3729021 and 6160137.
     protected void addDateHeader(HttpResponse httpResponse, long startTime) {
     }
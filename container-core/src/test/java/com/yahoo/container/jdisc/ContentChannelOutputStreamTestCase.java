@@ -0,0 +1,122 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.container.jdisc;
+
+import com.yahoo.jdisc.handler.CompletionHandler;
+import com.yahoo.jdisc.handler.ContentChannel;
+import com.yahoo.text.Utf8;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ContentChannelOutputStreamTestCase {
+
+    @Test
+    public void testPooledWritingAcrossBuffers() throws IOException {
+        ByteBufferPool pool = new ByteBufferPool(8, 10);
+        CollectingContentChannel channel = new CollectingContentChannel();
+        ContentChannelOutputStream stream = new ContentChannelOutputStream(channel, pool);
+
+        stream.write(Utf8.toBytes("Hello, "));
+        stream.write('w');
+        stream.write(Utf8.toBytes("__world!__"), 3, 5);
+        stream.nonCopyingWrite(Utf8.toBytes(" A longer text spanning multiple buffers."));
+        assertEquals(54, stream.written());
+        stream.flush();
+        assertEquals(54, stream.written());
+
+        assertEquals("Hello, world! A longer text spanning multiple buffers.", channel.content());
+        assertEquals(7, channel.pending.size());
+        assertTrue(channel.buffers.stream().allMatch(ByteBuffer::isDirect));
+        assertEquals(7, pool.inUse());
+        assertEquals(0, pool.available());
+
+        channel.completeAll();
+        assertEquals(0, pool.inUse());
+        assertEquals(7, pool.available());
+        assertEquals(7, pool.allocated());
+
+        // Released buffers are reused by subsequent streams
+        ContentChannelOutputStream second = new ContentChannelOutputStream(channel, pool);
+        second.write(Utf8.toBytes("More"));
+        second.close();
+        channel.completeAll();
+        assertEquals(7, pool.allocated());
+        assertEquals(7, pool.available());
+        assertTrue(channel.content().endsWith("More"));
+    }
+
+    @Test
+    public void testPooledBuffersAreReleasedOnFailure() throws IOException {
+        ByteBufferPool pool = new ByteBufferPool(4, 10);
+        CollectingContentChannel channel = new CollectingContentChannel();
+        ContentChannelOutputStream stream = new ContentChannelOutputStream(channel, pool);
+        stream.write(Utf8.toBytes("123456"));
+        stream.close();
+        channel.failAll();
+        assertEquals(0, pool.inUse());
+        assertEquals(2, pool.available());
+    }
+
+    @Test
+    public void testPoolSizeIsBounded() {
+        ByteBufferPool pool = new ByteBufferPool(4, 2);
+        List<ByteBuffer> acquired = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            acquired.add(pool.acquire());
+        assertEquals(5, pool.inUse());
+        acquired.forEach(pool::release);
+        assertEquals(0, pool.inUse());
+        assertEquals(2, pool.available());
+        assertEquals(5, pool.allocated());
+    }
+
+    @Test
+    public void testUnpooledWriting() throws IOException {
+        CollectingContentChannel channel = new CollectingContentChannel();
+        ContentChannelOutputStream stream = new ContentChannelOutputStream(channel);
+        stream.write(Utf8.toBytes("Hello, world!"));
+        assertEquals(13, stream.written());
+        stream.flush();
+        assertEquals("Hello, world!", channel.content());
+    }
+
+    private static class CollectingContentChannel implements ContentChannel {
+
+        final List<ByteBuffer> buffers = new ArrayList<>();
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final List<CompletionHandler> pending = new ArrayList<>();
+
+        @Override
+        public void write(ByteBuffer buf, CompletionHandler handler) {
+            buffers.add(buf);
+            while (buf.hasRemaining())
+                content.write(buf.get());
+            if (handler != null)
+                pending.add(handler);
+        }
+
+        @Override
+        public void close(CompletionHandler handler) { }
+
+        String content() { return Utf8.toString(content.toByteArray()); }
+
+        void completeAll() {
+            pending.forEach(CompletionHandler::completed);
+            pending.clear();
+        }
+
+        void failAll() {
+            pending.forEach(handler -> handler.failed(new RuntimeException("failed")));
+            pending.clear();
+        }
+
+    }
+
+}
@@ -2,11 +2,11 @@
 package com.yahoo.prelude.fastsearch;
 
 import com.google.common.collect.ImmutableMap;
-import com.yahoo.slime.BinaryFormat;
 import com.yahoo.data.access.Inspector;
-import com.yahoo.slime.Slime;
+import com.yahoo.data.access.slime.BinaryView;
 import com.yahoo.data.access.slime.SlimeAdapter;
 import com.yahoo.prelude.ConfigurationException;
+import com.yahoo.slime.BinaryFormat;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -74,8 +74,9 @@ public final class DocsumDefinitionSet {
             throw new IllegalArgumentException("Only expecting SchemaLess docsums - summary class:" + summaryClass + " hit:" + hit);
         }
         DocsumDefinition docsumDefinition = getDocsum(summaryClass);
-        Slime value = BinaryFormat.decode(buffer.array(), buffer.arrayOffset()+buffer.position(), buffer.remaining());
-        Inspector docsum = new SlimeAdapter(value.get());
+        Inspector docsum = BinaryView.inspect(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if ( ! docsum.valid()) // holds no value: Decode fully to get the value describing the error
+            docsum = new SlimeAdapter(BinaryFormat.decode(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining()).get());
         if (docsum.type() != OBJECT) {
             return "Hit " + hit + " failed: " + docsum.asString();
         }
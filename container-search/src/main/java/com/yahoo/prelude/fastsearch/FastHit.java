@@ -2,6 +2,8 @@
 package com.yahoo.prelude.fastsearch;
 
 import com.yahoo.data.access.ObjectTraverser;
+import com.yahoo.data.access.Type;
+import com.yahoo.data.access.slime.BinaryView;
 import com.yahoo.document.GlobalId;
 import com.yahoo.net.URI;
 import com.yahoo.search.query.Sorting;
@@ -186,6 +188,15 @@ public class FastHit extends Hit {
         summaries.add(0, new SummaryData(this, docsumDef, value, 1 + summaries.size()));
     }
 
+    /** For internal use: Returns the summary data added for the given docsum definition, or null if none */
+    public Inspector getSummaryData(DocsumDefinition docsumDef) {
+        for (SummaryData summaryData : summaries) {
+            if (summaryData.type == docsumDef)
+                return summaryData.data;
+        }
+        return null;
+    }
+
     /**
      * <p>Returns a field value from this Hit. The value is either a stored value from the Document represented by
      * this Hit, or a generated value added during later processing.</p>
@@ -547,7 +558,10 @@ public class FastHit extends Hit {
                 if (!shadowed(name) && !removed(name)) {
                     DocsumField fieldType = type.getField(name);
                     if (fieldType != null) {
-                        if (fieldType.isString()) {
+                        if (fieldType.isString() && value instanceof BinaryView && value.type() == Type.STRING) {
+                            BinaryView view = (BinaryView)value; // pass the string bytes through without copying
+                            consumer.accept(name, view.buffer(), view.valueOffset(), view.valueLength());
+                        } else if (fieldType.isString()) {
                             byte[] utf8Value = value.asUtf8();
                             consumer.accept(name, utf8Value, 0, utf8Value.length);
                         } else {
@@ -0,0 +1,40 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.search.Query;
+import com.yahoo.search.searchchain.Execution;
+
+import java.util.Optional;
+
+/**
+ * A search invoker which produces a result from the {@link ResultCache} without contacting any content nodes.
+ */
+class CachedSearchInvoker extends SearchInvoker {
+
+    private final ResultCache.CachedHits cachedHits;
+    private Query query;
+
+    CachedSearchInvoker(ResultCache.CachedHits cachedHits) {
+        super(Optional.empty());
+        this.cachedHits = cachedHits;
+    }
+
+    @Override
+    protected void sendSearchRequest(Query query) {
+        this.query = query;
+        responseAvailable();
+    }
+
+    @Override
+    protected InvokerResult getSearchResult(Execution execution) {
+        InvokerResult result = cachedHits.toResult(query);
+        query.setOffset(cachedHits.offset());
+        return result;
+    }
+
+    @Override
+    protected void release() {
+        // nothing to release
+    }
+
+}
@@ -0,0 +1,101 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.data.access.Inspector;
+import com.yahoo.prelude.fastsearch.DocsumDefinition;
+import com.yahoo.prelude.fastsearch.DocumentDatabase;
+import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.prelude.fastsearch.VespaBackEndSearcher;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.result.ErrorHit;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.result.Hit;
+
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * A fill invoker which fills hits from the {@link ResultCache} when possible, and uses another
+ * invoker to fetch the remaining summaries, which are then added to the cache.
+ */
+class CachingFillInvoker extends FillInvoker {
+
+    private final FillInvoker invoker;
+    private final ResultCache cache;
+    private final VespaBackEndSearcher searcher;
+
+    /** The hits which were not found in the cache, or null if the cache is not used for this fill */
+    private Result missing = null;
+    private DocsumDefinition docsumDefinition;
+    private byte[] keyPrefix;
+
+    CachingFillInvoker(FillInvoker invoker, ResultCache cache, VespaBackEndSearcher searcher) {
+        this.invoker = invoker;
+        this.cache = cache;
+        this.searcher = searcher;
+    }
+
+    @Override
+    protected void sendFillRequest(Result result, String summaryClass) {
+        Query query = result.getQuery();
+        DocumentDatabase documentDb = searcher.getDocumentDatabase(query);
+        if (documentDb == null) {
+            invoker.sendFillRequest(result, summaryClass);
+            return;
+        }
+
+        docsumDefinition = documentDb.getDocsumDefinitionSet().getDocsum(summaryClass);
+        keyPrefix = cache.summaryKeyPrefix(query, summaryClass, searcher.summaryNeedsQuery(query));
+        missing = new Result(query);
+        for (Iterator<Hit> i = result.hits().unorderedDeepIterator(); i.hasNext(); ) {
+            Hit hit = i.next();
+            if ( ! (hit instanceof FastHit) || hit.isFilled(summaryClass)) continue;
+
+            FastHit fastHit = (FastHit) hit;
+            Optional<Inspector> summary = cache.getSummary(keyPrefix, fastHit.getRawGlobalId());
+            if (summary.isPresent()) {
+                fastHit.setField(Hit.SDDOCNAME_FIELD, documentDb.getName());
+                fastHit.addSummary(docsumDefinition, summary.get());
+                fastHit.setFilled(summaryClass);
+            } else {
+                missing.hits().add(fastHit);
+            }
+        }
+        if (missing.hits().size() > 0)
+            invoker.sendFillRequest(missing, summaryClass);
+    }
+
+    @Override
+    protected void getFillResults(Result result, String summaryClass) {
+        if (missing == null) {
+            invoker.getFillResults(result, summaryClass);
+            return;
+        }
+        if (missing.hits().size() == 0) return;
+
+        invoker.getFillResults(missing, summaryClass);
+        for (Iterator<Hit> i = missing.hits().unorderedDeepIterator(); i.hasNext(); ) {
+            Hit hit = i.next();
+            if ( ! (hit instanceof FastHit) || ! hit.isFilled(summaryClass)) continue;
+
+            FastHit fastHit = (FastHit) hit;
+            Inspector summary = fastHit.getSummaryData(docsumDefinition);
+            if (summary != null)
+                cache.putSummary(keyPrefix, fastHit.getRawGlobalId(), summary);
+        }
+        ErrorHit errors = missing.hits().getErrorHit();
+        if (errors != null) {
+            for (ErrorMessage error : errors.errors())
+                result.hits().addError(error);
+        }
+        result.hits().setSorted(false);
+        result.analyzeHits();
+    }
+
+    @Override
+    protected void release() {
+        invoker.close();
+    }
+
+}
@@ -0,0 +1,46 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.search.Query;
+import com.yahoo.search.searchchain.Execution;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * A search invoker which adds the result produced by another invoker to the {@link ResultCache}.
+ */
+class CachingSearchInvoker extends SearchInvoker {
+
+    private final SearchInvoker invoker;
+    private final ResultCache cache;
+    private final ResultCache.Key key;
+    private Query query;
+
+    CachingSearchInvoker(SearchInvoker invoker, ResultCache cache, ResultCache.Key key) {
+        super(Optional.empty());
+        this.invoker = invoker;
+        this.cache = cache;
+        this.key = key;
+    }
+
+    @Override
+    protected void sendSearchRequest(Query query) throws IOException {
+        this.query = query;
+        invoker.sendSearchRequest(query);
+    }
+
+    @Override
+    protected InvokerResult getSearchResult(Execution execution) throws IOException {
+        InvokerResult result = invoker.getSearchResult(execution);
+        invoker.setFinalStatus(result.getResult().hits().getError() == null);
+        cache.putHits(key, result, query.getOffset());
+        return result;
+    }
+
+    @Override
+    protected void release() {
+        invoker.close();
+    }
+
+}
@@ -29,6 +29,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.OptionalLong;
 import java.util.Set;
 
 /**
@@ -48,6 +49,8 @@ public class Dispatcher extends AbstractComponent {
     public static final String DISPATCH = "dispatch";
     private static final String INTERNAL = "internal";
     private static final String PROTOBUF = "protobuf";
+    private static final String MIN_COVERAGE = "minCoverage";
+    private static final String COVERAGE_WAIT_PERCENTILE = "coverageWaitPercentile";
 
     private static final String FDISPATCH_METRIC = "dispatch_fdispatch";
     private static final String INTERNAL_METRIC = "dispatch_internal";
@@ -57,6 +60,15 @@ public class Dispatcher extends AbstractComponent {
     /** If enabled, search queries will use protobuf rpc */
     public static final CompoundName dispatchProtobuf = CompoundName.fromComponents(DISPATCH, PROTOBUF);
 
+    /** The percentage of the documents which must be searched before a query may return, overriding minSearchCoverage */
+    public static final CompoundName dispatchMinCoverage = CompoundName.fromComponents(DISPATCH, MIN_COVERAGE);
+
+    /**
+     * The percentile of the latency of the nodes which have not responded when the min coverage is reached
+     * until which to wait for them, overriding waitAfterCoverageLatencyPercentile
+     */
+    public static final CompoundName dispatchCoverageWaitPercentile = CompoundName.fromComponents(DISPATCH, COVERAGE_WAIT_PERCENTILE);
+
     /** A model of the search cluster this dispatches to */
     private final SearchCluster searchCluster;
 
@@ -65,6 +77,13 @@ public class Dispatcher extends AbstractComponent {
 
     private final InvokerFactory invokerFactory;
 
+    /** The latency percentile of a group after which a search is hedged to another group, or 0 if disabled */
+    private final double hedgeLatencyPercentile;
+    private final HedgeBudget hedgeBudget;
+
+    /** The cache of results from this cluster, or empty if disabled */
+    private final Optional<ResultCache> resultCache;
+
     private final Metric metric;
     private final Metric.Context metricContext;
 
@@ -76,6 +95,8 @@ public class Dispatcher extends AbstractComponent {
         argumentType.setBuiltin(true);
         argumentType.addField(new FieldDescription(INTERNAL, FieldType.booleanType));
         argumentType.addField(new FieldDescription(PROTOBUF, FieldType.booleanType));
+        argumentType.addField(new FieldDescription(MIN_COVERAGE, FieldType.doubleType));
+        argumentType.addField(new FieldDescription(COVERAGE_WAIT_PERCENTILE, FieldType.doubleType));
         argumentType.freeze();
     }
 
@@ -97,7 +118,7 @@ public class Dispatcher extends AbstractComponent {
                       Metric metric) {
         this(searchCluster,
              dispatchConfig,
-             new RpcInvokerFactory(new RpcResourcePool(dispatchConfig), searchCluster),
+             new RpcInvokerFactory(new RpcResourcePool(dispatchConfig, metric), searchCluster),
              metric);
     }
 
@@ -114,10 +135,14 @@ public class Dispatcher extends AbstractComponent {
                          PingFactory pingFactory,
                          Metric metric) {
         this.searchCluster = searchCluster;
-        this.loadBalancer = new LoadBalancer(searchCluster,
-                                  dispatchConfig.distributionPolicy() == DispatchConfig.DistributionPolicy.ROUNDROBIN);
+        this.loadBalancer = new LoadBalancer(searchCluster, dispatchConfig);
         this.invokerFactory = invokerFactory;
         this.multilevelDispatch = dispatchConfig.useMultilevelDispatch();
+        this.hedgeLatencyPercentile = dispatchConfig.hedgeLatencyPercentile();
+        this.hedgeBudget = new HedgeBudget(dispatchConfig.hedgeMaxFraction());
+        this.resultCache = dispatchConfig.resultCacheMaxBytes() > 0
+                           ? Optional.of(new ResultCache(dispatchConfig, searchCluster, metric))
+                           : Optional.empty();
         this.metric = metric;
         this.metricContext = metric.createContext(null);
 
@@ -135,7 +160,10 @@ public class Dispatcher extends AbstractComponent {
     }
 
     public Optional<FillInvoker> getFillInvoker(Result result, VespaBackEndSearcher searcher) {
-        return invokerFactory.createFillInvoker(searcher, result);
+        Optional<FillInvoker> invoker = invokerFactory.createFillInvoker(searcher, result);
+        if (invoker.isPresent() && resultCache.isPresent() && resultCache.get().isSummariesCacheable(result.getQuery()))
+            return Optional.of(new CachingFillInvoker(invoker.get(), resultCache.get(), searcher));
+        return invoker;
     }
 
     public Optional<SearchInvoker> getSearchInvoker(Query query, VespaBackEndSearcher searcher) {
@@ -144,6 +172,18 @@ public class Dispatcher extends AbstractComponent {
             return Optional.empty();
         }
 
+        Optional<String> invalidArgument = invalidPercentage(query, dispatchMinCoverage)
+                                                   .or(() -> invalidPercentage(query, dispatchCoverageWaitPercentile));
+        if (invalidArgument.isPresent())
+            return Optional.of(new SearchErrorInvoker(ErrorMessage.createIllegalQuery(invalidArgument.get())));
+
+        Optional<ResultCache.Key> cacheKey = resultCacheKey(query);
+        if (cacheKey.isPresent()) {
+            Optional<ResultCache.CachedHits> cachedHits = resultCache.get().getHits(cacheKey.get());
+            if (cachedHits.isPresent())
+                return Optional.of(new CachedSearchInvoker(cachedHits.get()));
+        }
+
         Optional<SearchInvoker> invoker = getSearchPathInvoker(query, searcher);
 
         if (invoker.isEmpty()) {
@@ -155,9 +195,27 @@ public class Dispatcher extends AbstractComponent {
         }
         emitDispatchMetric(invoker);
 
+        if (invoker.isPresent() && cacheKey.isPresent())
+            return Optional.of(new CachingSearchInvoker(invoker.get(), resultCache.get(), cacheKey.get()));
         return invoker;
     }
 
+    /** Returns a message describing the given query property if it is set and is not a percentage, or empty otherwise */
+    private static Optional<String> invalidPercentage(Query query, CompoundName property) {
+        Double value = query.properties().getDouble(property);
+        if (value == null || (value >= 0.0 && value <= 100.0)) return Optional.empty();
+        return Optional.of("'" + property + "' must be in the range [0, 100], but was " + value);
+    }
+
+    /** Returns the key to use for looking up the hits of this query in the result cache, or empty if it should not be used */
+    private Optional<ResultCache.Key> resultCacheKey(Query query) {
+        if (resultCache.isEmpty()) return Optional.empty();
+        if ( ! resultCache.get().isHitsCacheable(query)) return Optional.empty();
+        if (query.getModel().getSearchPath() != null) return Optional.empty();
+        if (query.properties().getBoolean(com.yahoo.search.query.Model.ESTIMATE)) return Optional.empty();
+        return Optional.of(resultCache.get().hitsKey(query));
+    }
+
     /** Builds an invoker based on searchpath */
     private Optional<SearchInvoker> getSearchPathInvoker(Query query, VespaBackEndSearcher searcher) {
         String searchPath = query.getModel().getSearchPath();
@@ -201,7 +259,7 @@ public class Dispatcher extends AbstractComponent {
                 query.trace(false, 2, "Dispatching internally to search group ", group.id());
                 query.getModel().setSearchPath("/" + group.id());
                 invoker.get().teardown((success, time) -> loadBalancer.releaseGroup(group, success, time));
-                return invoker;
+                return Optional.of(withHedging(invoker.get(), group, searcher));
             } else {
                 loadBalancer.releaseGroup(group, false, 0);
                 if (rejected == null) {
@@ -214,6 +272,33 @@ public class Dispatcher extends AbstractComponent {
         return Optional.empty();
     }
 
+    /** Returns the given invoker of a group, wrapped to hedge the search to another group if it is slow, if enabled */
+    private SearchInvoker withHedging(SearchInvoker invoker, Group group, VespaBackEndSearcher searcher) {
+        if (hedgeLatencyPercentile <= 0 || searchCluster.orderedGroups().size() < 2) return invoker;
+
+        hedgeBudget.searchDispatched();
+        OptionalLong hedgeDelay = group.searchLatencyPercentile(hedgeLatencyPercentile);
+        if (hedgeDelay.isEmpty()) return invoker;
+        return new HedgedSearchInvoker(invoker, Math.max(1, hedgeDelay.getAsLong()), hedgeBudget,
+                                       query -> createHedge(query, group, searcher), metric, metricContext);
+    }
+
+    private Optional<HedgedSearchInvoker.Hedge> createHedge(Query query, Group searched, VespaBackEndSearcher searcher) {
+        Optional<Group> groupInCluster = loadBalancer.takeGroup(Set.of(searched.id()));
+        if (groupInCluster.isEmpty()) return Optional.empty();
+
+        Group group = groupInCluster.get();
+        Optional<SearchInvoker> invoker = group.hasSufficientCoverage()
+                                          ? invokerFactory.createSearchInvoker(searcher, query, OptionalInt.of(group.id()), group.nodes(), false)
+                                          : Optional.empty();
+        if (invoker.isEmpty()) {
+            loadBalancer.releaseGroup(group, false, 0);
+            return Optional.empty();
+        }
+        invoker.get().teardown((success, time) -> loadBalancer.releaseGroup(group, success, time));
+        return Optional.of(new HedgedSearchInvoker.Hedge(invoker.get(), group.id()));
+    }
+
     public void shutDown() {
         searchCluster.shutDown();
     }
@@ -0,0 +1,35 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+/**
+ * Limits the number of hedged searches to a fraction of the searches dispatched, such that hedging
+ * cannot increase the load on the content nodes by more than that fraction. Each dispatched search earns
+ * the fraction of a hedge, and each hedge spends one, allowing for short bursts of hedges.
+ *
+ * This class is multithread safe.
+ */
+class HedgeBudget {
+
+    /** The max number of unspent hedges saved up */
+    private static final double MAX_SAVED = 10;
+
+    private final double fraction;
+    private double available = 0;
+
+    HedgeBudget(double fraction) {
+        this.fraction = fraction;
+    }
+
+    /** Called for each search dispatched */
+    synchronized void searchDispatched() {
+        available = Math.min(available + fraction, MAX_SAVED);
+    }
+
+    /** Spends one hedge and returns true if available, returns false otherwise */
+    synchronized boolean tryAcquire() {
+        if (available < 1) return false;
+        available -= 1;
+        return true;
+    }
+
+}
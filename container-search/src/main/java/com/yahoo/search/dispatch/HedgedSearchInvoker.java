@@ -0,0 +1,133 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.jdisc.Metric;
+import com.yahoo.search.Query;
+import com.yahoo.search.searchchain.Execution;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A search invoker which also sends the search to another group if the invoker of the first group
+ * has not received all its responses within a delay, and uses the result of the group which completes first.
+ * The other invoker is closed, such that its responses are ignored when they arrive.
+ *
+ * As every group contains all the documents, this avoids waiting for, or losing the coverage of,
+ * a single slow node. Hedging is done at most once per search, only while there is at least the delay
+ * left of the query timeout, and only when allowed by the given {@link HedgeBudget}.
+ */
+class HedgedSearchInvoker extends SearchInvoker implements ResponseMonitor<SearchInvoker> {
+
+    static final String HEDGED_METRIC = "dispatch_hedged_searches";
+    static final String HEDGE_USED_METRIC = "dispatch_hedged_searches_used";
+
+    private final SearchInvoker primary;
+    private final long hedgeDelayMillis;
+    private final HedgeBudget budget;
+    private final HedgeFactory hedgeFactory;
+    private final Metric metric;
+    private final Metric.Context metricContext;
+    private final LinkedBlockingQueue<SearchInvoker> completed = new LinkedBlockingQueue<>();
+
+    private Query query;
+    private Hedge hedge = null;
+
+    HedgedSearchInvoker(SearchInvoker primary, long hedgeDelayMillis, HedgeBudget budget, HedgeFactory hedgeFactory,
+                        Metric metric, Metric.Context metricContext) {
+        super(Optional.empty());
+        this.primary = primary;
+        this.hedgeDelayMillis = hedgeDelayMillis;
+        this.budget = budget;
+        this.hedgeFactory = hedgeFactory;
+        this.metric = metric;
+        this.metricContext = metricContext;
+    }
+
+    @Override
+    protected void sendSearchRequest(Query query) throws IOException {
+        this.query = query;
+        primary.setMonitor(this);
+        primary.sendSearchRequest(query);
+    }
+
+    @Override
+    protected InvokerResult getSearchResult(Execution execution) throws IOException {
+        SearchInvoker first = awaitCompletion(Math.min(hedgeDelayMillis, query.getTimeLeft()));
+        if (first == null && query.getTimeLeft() > hedgeDelayMillis && budget.tryAcquire())
+            sendHedge();
+        if (first == null && hedge != null)
+            first = awaitCompletion(query.getTimeLeft());
+
+        // If neither completed, use whatever the primary got
+        SearchInvoker used = first != null ? first : primary;
+        if (hedge != null) {
+            if (used == hedge.invoker) {
+                query.trace(false, 2, "Using the result of the hedged search to group ", hedge.groupId);
+                query.getModel().setSearchPath("/" + hedge.groupId);
+                metric.add(HEDGE_USED_METRIC, 1, metricContext);
+                primary.close();
+            } else {
+                hedge.invoker.close();
+            }
+        }
+
+        InvokerResult result = used.getSearchResult(execution);
+        used.setFinalStatus(result.getResult().hits().getError() == null);
+        return result;
+    }
+
+    private void sendHedge() throws IOException {
+        hedge = hedgeFactory.createHedge(query).orElse(null);
+        if (hedge == null) return;
+
+        query.trace(false, 2, "Search not completed after ", hedgeDelayMillis, " ms, hedging to search group ", hedge.groupId);
+        metric.add(HEDGED_METRIC, 1, metricContext);
+        hedge.invoker.setMonitor(this);
+        hedge.invoker.sendSearchRequest(query);
+    }
+
+    private SearchInvoker awaitCompletion(long timeoutMillis) {
+        try {
+            return completed.poll(Math.max(0, timeoutMillis), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void responseAvailable(SearchInvoker from) {
+        completed.add(from);
+    }
+
+    @Override
+    protected void release() {
+        primary.close();
+        if (hedge != null)
+            hedge.invoker.close();
+    }
+
+    /** Creates the invokers of hedged searches */
+    interface HedgeFactory {
+
+        /** Returns an invoker for another group than the one first searched, or empty if none can be used */
+        Optional<Hedge> createHedge(Query query);
+
+    }
+
+    /** An invoker of a hedged search to a group */
+    static class Hedge {
+
+        private final SearchInvoker invoker;
+        private final int groupId;
+
+        Hedge(SearchInvoker invoker, int groupId) {
+            this.invoker = invoker;
+            this.groupId = groupId;
+        }
+
+    }
+
+}
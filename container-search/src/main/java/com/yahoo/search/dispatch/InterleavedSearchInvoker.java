@@ -3,6 +3,7 @@ package com.yahoo.search.dispatch;
 
 import com.yahoo.search.Query;
 import com.yahoo.search.Result;
+import com.yahoo.search.dispatch.searchcluster.Node;
 import com.yahoo.search.dispatch.searchcluster.SearchCluster;
 import com.yahoo.search.result.Coverage;
 import com.yahoo.search.result.ErrorMessage;
@@ -11,16 +12,17 @@ import com.yahoo.search.searchchain.Execution;
 import com.yahoo.vespa.config.search.DispatchConfig;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -31,7 +33,12 @@ import static com.yahoo.container.handler.Coverage.DEGRADED_BY_TIMEOUT;
 /**
  * InterleavedSearchInvoker uses multiple {@link SearchInvoker} objects to interface with content
  * nodes in parallel. Operationally it first sends requests to all contained invokers and then
- * collects the results. The user of this class is responsible for merging the results if needed.
+ * collects the results, merging the hits of each response as it arrives using a {@link LeanHitMerger}.
+ * The monitor of this, if any, is notified when all the contained invokers have a response available.
+ * <p>
+ * When the responses received cover the minimum coverage of the query, this waits for the remaining responses
+ * either for a time given by the configured wait factors, or until the remaining nodes should have responded
+ * given a percentile of their recent latency, and then returns the result with degraded coverage.
  *
  * @author ollivir
  */
@@ -42,12 +49,14 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
     private final SearchCluster searchCluster;
     private final LinkedBlockingQueue<SearchInvoker> availableForProcessing;
     private final Set<Integer> alreadyFailedNodes;
+    private final AtomicInteger pendingResponses = new AtomicInteger();
     private Query query;
 
     private boolean adaptiveTimeoutCalculated = false;
     private long adaptiveTimeoutMin = 0;
     private long adaptiveTimeoutMax = 0;
     private long deadline = 0;
+    private long sendTime = 0;
 
     private long answeredDocs = 0;
     private long answeredActiveDocs = 0;
@@ -76,13 +85,15 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
     protected void sendSearchRequest(Query query) throws IOException {
         this.query = query;
         invokers.forEach(invoker -> invoker.setMonitor(this));
-        deadline = currentTime() + query.getTimeLeft();
+        sendTime = currentTime();
+        deadline = sendTime + query.getTimeLeft();
 
         int originalHits = query.getHits();
         int originalOffset = query.getOffset();
         query.setHits(query.getHits() + query.getOffset());
         query.setOffset(0);
 
+        pendingResponses.set(invokers.size());
         for (SearchInvoker invoker : invokers) {
             invoker.sendSearchRequest(query);
             askedNodes++;
@@ -95,7 +106,7 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
     @Override
     protected InvokerResult getSearchResult(Execution execution) throws IOException {
         InvokerResult result = new InvokerResult(query, query.getHits());
-        List<LeanHit> merged = Collections.emptyList();
+        LeanHitMerger merger = new LeanHitMerger(query.getOffset() + query.getHits());
         long nextTimeout = query.getTimeLeft();
         try {
             while (!invokers.isEmpty() && nextTimeout >= 0) {
@@ -104,7 +115,7 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
                     log.fine(() -> "Search timed out with " + askedNodes + " requests made, " + answeredNodes + " responses received");
                     break;
                 } else {
-                    merged = mergeResult(result.getResult(), invoker.getSearchResult(execution), merged);
+                    mergeResult(result.getResult(), invoker.getSearchResult(execution), merger);
                     ejectInvoker(invoker);
                 }
                 nextTimeout = nextTimeout();
@@ -115,10 +126,7 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
 
         insertNetworkErrors(result.getResult());
         result.getResult().setCoverage(createCoverage());
-        int needed = query.getOffset() + query.getHits();
-        for (int index = query.getOffset(); (index < merged.size()) && (index < needed); index++) {
-            result.getLeanHits().add(merged.get(index));
-        }
+        merger.mergeInto(result.getLeanHits(), query.getOffset());
         query.setOffset(0);  // Now we are all trimmed down
         return result;
     }
@@ -155,7 +163,7 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
 
     private long nextTimeout() {
         DispatchConfig config = searchCluster.dispatchConfig();
-        double minimumCoverage = config.minSearchCoverage();
+        double minimumCoverage = query.properties().getDouble(Dispatcher.dispatchMinCoverage, config.minSearchCoverage());
 
         if (askedNodes == answeredNodes || minimumCoverage >= 100.0) {
             return query.getTimeLeft();
@@ -174,13 +182,21 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         }
 
         long now = currentTime();
-        int pendingQueries = askedNodes - answeredNodes;
-        double missWidth = ((100.0 - config.minSearchCoverage()) * askedNodes) / 100.0 - 1.0;
-        double slopedWait = adaptiveTimeoutMin;
-        if (pendingQueries > 1 && missWidth > 0.0) {
-            slopedWait += ((adaptiveTimeoutMax - adaptiveTimeoutMin) * (pendingQueries - 1)) / missWidth;
+        long nextAdaptive;
+        OptionalLong pendingLatency = pendingLatencyPercentile(query.properties().getDouble(Dispatcher.dispatchCoverageWaitPercentile,
+                                                                                          config.waitAfterCoverageLatencyPercentile()));
+        if (pendingLatency.isPresent()) {
+            // once the percentile has passed, keep waiting the minimum wait rather than polling with no timeout
+            nextAdaptive = Math.max(Math.max(1, adaptiveTimeoutMin), sendTime + pendingLatency.getAsLong() - now);
+        } else {
+            int pendingQueries = askedNodes - answeredNodes;
+            double missWidth = ((100.0 - minimumCoverage) * askedNodes) / 100.0 - 1.0;
+            double slopedWait = adaptiveTimeoutMin;
+            if (pendingQueries > 1 && missWidth > 0.0) {
+                slopedWait += ((adaptiveTimeoutMax - adaptiveTimeoutMin) * (pendingQueries - 1)) / missWidth;
+            }
+            nextAdaptive = (long) slopedWait;
         }
-        long nextAdaptive = (long) slopedWait;
         if (now + nextAdaptive >= deadline) {
             return deadline - now;
         }
@@ -189,7 +205,24 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         return nextAdaptive;
     }
 
-    private List<LeanHit> mergeResult(Result result, InvokerResult partialResult, List<LeanHit> current) {
+    /**
+     * Returns the highest given latency percentile of the nodes which have not responded yet,
+     * or empty if the percentile is 0 or this is not known for all of those nodes
+     */
+    private OptionalLong pendingLatencyPercentile(double percentile) {
+        if (percentile <= 0) return OptionalLong.empty();
+        long max = 0;
+        for (SearchInvoker invoker : invokers) {
+            Optional<Node> node = invoker.node();
+            if (node.isEmpty()) return OptionalLong.empty();
+            OptionalLong latency = node.get().searchLatencyPercentile(percentile);
+            if (latency.isEmpty()) return OptionalLong.empty();
+            max = Math.max(max, latency.getAsLong());
+        }
+        return OptionalLong.of(max);
+    }
+
+    private void mergeResult(Result result, InvokerResult partialResult, LeanHitMerger merger) {
         collectCoverage(partialResult.getResult().getCoverage(true));
 
         result.mergeWith(partialResult.getResult());
@@ -199,42 +232,7 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
                 result.hits().add(hit);
             }
         }
-        if (current.isEmpty() ) {
-            return partialResult.getLeanHits();
-        }
-        List<LeanHit> partial = partialResult.getLeanHits();
-        if (partial.isEmpty()) {
-            return current;
-        }
-
-        int needed = query.getOffset() + query.getHits();
-        List<LeanHit> merged = new ArrayList<>(needed);
-        int indexCurrent = 0;
-        int indexPartial = 0;
-        while (indexCurrent < current.size() && indexPartial < partial.size() && merged.size() < needed) {
-            LeanHit incommingHit = partial.get(indexPartial);
-            LeanHit currentHit = current.get(indexCurrent);
-
-            int cmpRes = currentHit.compareTo(incommingHit);
-            if (cmpRes < 0) {
-                merged.add(currentHit);
-                indexCurrent++;
-            } else if (cmpRes > 0) {
-                merged.add(incommingHit);
-                indexPartial++;
-            } else { // Duplicates
-                merged.add(currentHit);
-                indexCurrent++;
-                indexPartial++;
-            }
-        }
-        while ((indexCurrent < current.size()) && (merged.size() < needed)) {
-            merged.add(current.get(indexCurrent++));
-        }
-        while ((indexPartial < partial.size()) && (merged.size() < needed)) {
-            merged.add(partial.get(indexPartial++));
-        }
-        return merged;
+        merger.add(partialResult.getLeanHits());
     }
 
     private void collectCoverage(Coverage source) {
@@ -304,11 +302,9 @@ public class InterleavedSearchInvoker extends SearchInvoker implements ResponseM
         if (availableForProcessing != null) {
             availableForProcessing.add(from);
         }
-    }
-
-    @Override
-    protected void setMonitor(ResponseMonitor<SearchInvoker> monitor) {
-        // never to be called
+        if (pendingResponses.decrementAndGet() == 0) {
+            responseAvailable();
+        }
     }
 
     // For overriding in tests
@@ -0,0 +1,135 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the sorted lists of lean hits returned from multiple content nodes into the window of best hits
+ * requested by a query.
+ *
+ * Lists are added as they arrive, and the parts of them which cannot make it into the final window are
+ * dropped right away: As the hits returned from a single node are distinct, no hit worse than the
+ * <i>needed</i>'th hit of any list can be part of the window. The final merge is a k-way merge over the
+ * remaining lists which only visits the hits that end up in the window, and which drops duplicates.
+ *
+ * This class is not multithread safe.
+ */
+class LeanHitMerger {
+
+    /** The number of hits needed to produce the window, i.e offset + hits */
+    private final int needed;
+
+    private final List<List<LeanHit>> lists = new ArrayList<>();
+
+    /** The worst hit which may end up in the window, or null if not known yet */
+    private LeanHit cutoff = null;
+
+    LeanHitMerger(int needed) {
+        this.needed = needed;
+    }
+
+    /** Adds a list of hits, sorted best first */
+    void add(List<LeanHit> hits) {
+        if (hits.isEmpty() || needed <= 0) return;
+
+        if (hits.size() >= needed) {
+            LeanHit last = hits.get(needed - 1);
+            if (cutoff == null || last.compareTo(cutoff) < 0) {
+                cutoff = last;
+                pruneAll();
+            }
+        }
+        hits = pruned(hits);
+        if ( ! hits.isEmpty())
+            lists.add(hits);
+    }
+
+    /** Adds the hits from the given offset of the merged hits, until the needed number of hits is reached */
+    void mergeInto(List<LeanHit> target, int offset) {
+        if (lists.isEmpty()) return;
+
+        if (lists.size() == 1) {
+            List<LeanHit> hits = lists.get(0);
+            for (int i = offset; i < hits.size() && i < needed; i++)
+                target.add(hits.get(i));
+            return;
+        }
+
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(lists.size());
+        for (List<LeanHit> hits : lists)
+            cursors.add(new Cursor(hits));
+        LeanHit previous = null;
+        int index = 0;
+        while (index < needed && ! cursors.isEmpty()) {
+            Cursor cursor = cursors.poll();
+            LeanHit hit = cursor.current();
+            if (previous == null || previous.compareTo(hit) != 0) { // skip duplicates
+                if (index >= offset)
+                    target.add(hit);
+                index++;
+                previous = hit;
+            }
+            if (cursor.advance())
+                cursors.add(cursor);
+        }
+    }
+
+    /** Returns the number of hits currently kept by this */
+    int size() {
+        int size = 0;
+        for (List<LeanHit> hits : lists)
+            size += hits.size();
+        return size;
+    }
+
+    private void pruneAll() {
+        lists.replaceAll(this::pruned);
+        lists.removeIf(List::isEmpty);
+    }
+
+    /** Returns the prefix of the given list which contains the hits which may make it into the window */
+    private List<LeanHit> pruned(List<LeanHit> hits) {
+        int end = Math.min(hits.size(), needed);
+        if (cutoff != null) {
+            // Find the first hit worse than the cutoff
+            int low = 0;
+            int high = end;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (hits.get(middle).compareTo(cutoff) <= 0)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            end = low;
+        }
+        return end == hits.size() ? hits : hits.subList(0, end);
+    }
+
+    /** A position in a list of hits, ordered by the hit at that position */
+    private static final class Cursor implements Comparable<Cursor> {
+
+        private final List<LeanHit> hits;
+        private int index = 0;
+
+        Cursor(List<LeanHit> hits) {
+            this.hits = hits;
+        }
+
+        LeanHit current() { return hits.get(index); }
+
+        /** Moves to the next hit and returns whether there is one */
+        boolean advance() {
+            return ++index < hits.size();
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            return current().compareTo(other.current());
+        }
+
+    }
+
+}
@@ -3,7 +3,10 @@ package com.yahoo.search.dispatch;
 
 import com.yahoo.search.dispatch.searchcluster.Group;
 import com.yahoo.search.dispatch.searchcluster.SearchCluster;
+import com.yahoo.vespa.config.search.DispatchConfig;
+import com.yahoo.vespa.config.search.DispatchConfig.DistributionPolicy;
 
+import java.time.Clock;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -26,17 +29,29 @@ public class LoadBalancer {
     private static final long MIN_LATENCY_DECAY_RATE = 42;
     private static final double INITIAL_QUERY_TIME = 0.001;
     private static final double MIN_QUERY_TIME = 0.001;
+    private static final double DEFAULT_LATENCY_DECAY_TIME = 5.0;
 
     private final List<GroupStatus> scoreboard;
     private final GroupScheduler scheduler;
 
     public LoadBalancer(SearchCluster searchCluster, boolean roundRobin) {
+        this(searchCluster, roundRobin ? DistributionPolicy.ROUNDROBIN : DistributionPolicy.ADAPTIVE,
+             DEFAULT_LATENCY_DECAY_TIME, Clock.systemUTC());
+    }
+
+    public LoadBalancer(SearchCluster searchCluster, DispatchConfig dispatchConfig) {
+        this(searchCluster, dispatchConfig.distributionPolicy(), dispatchConfig.latencyDecayTime(), Clock.systemUTC());
+    }
+
+    LoadBalancer(SearchCluster searchCluster, DistributionPolicy.Enum policy, double latencyDecayTime, Clock clock) {
         this.scoreboard = new ArrayList<>(searchCluster.groups().size());
         for (Group group : searchCluster.orderedGroups()) {
             scoreboard.add(new GroupStatus(group));
         }
-        if (roundRobin || scoreboard.size() == 1) {
+        if (policy == DistributionPolicy.ROUNDROBIN || scoreboard.size() == 1) {
             this.scheduler = new RoundRobinScheduler(scoreboard);
+        } else if (policy == DistributionPolicy.BESTOFTWO) {
+            this.scheduler = new BestOfTwoScheduler(new Random(), scoreboard, clock, latencyDecayTime);
         } else {
             this.scheduler = new AdaptiveScheduler(new Random(), scoreboard);
         }
@@ -80,6 +95,7 @@ public class LoadBalancer {
             for (GroupStatus sched : scoreboard) {
                 if (sched.group.id() == group.id()) {
                     sched.release(success, (double) searchTimeMs / 1000.0);
+                    scheduler.release(sched, success, searchTimeMs / 1000.0);
                     break;
                 }
             }
@@ -91,6 +107,8 @@ public class LoadBalancer {
         private int allocations = 0;
         private long queries = 0;
         private double averageSearchTime = INITIAL_QUERY_TIME;
+        private double peakSearchTime = 0;
+        private long peakSearchTimeMillis = 0;
 
         GroupStatus(Group group) {
             this.group = group;
@@ -126,17 +144,24 @@ public class LoadBalancer {
             return group.id();
         }
 
+        int allocations() {
+            return allocations;
+        }
+
         void setQueryStatistics(long queries, double averageSearchTime) {
             this.queries = queries;
             this.averageSearchTime = averageSearchTime;
         }
     }
 
-    private interface GroupScheduler {
+    interface GroupScheduler {
         Optional<GroupStatus> takeNextGroup(Set<Integer> rejectedGroups);
+
+        /** Called when a query to a group taken from this completes, in addition to releasing the group status */
+        default void release(GroupStatus groupStatus, boolean success, double searchTime) { }
     }
 
-    private static class RoundRobinScheduler implements GroupScheduler {
+    static class RoundRobinScheduler implements GroupScheduler {
         private int needle = 0;
         private final List<GroupStatus> scoreboard;
 
@@ -254,4 +279,93 @@ public class LoadBalancer {
             return selectGroup(needle, false, rejectedGroups);
         }
     }
+
+    /**
+     * Picks two random groups and selects the one with the lowest cost, where the cost is the number
+     * of queries in flight to the group times its peak search time. The peak search time jumps to
+     * the search time of a slower query immediately, moves towards the search time of faster queries
+     * gradually, and decays towards zero while the group is not used, such that a group which has been
+     * avoided because it was slow will be tried again.
+     *
+     * Compared to the {@link AdaptiveScheduler}, this reacts at once to a group becoming slow,
+     * e.g due to a GC pause or a hot node, and spreads load away from groups which build up queues.
+     */
+    static class BestOfTwoScheduler implements GroupScheduler {
+        private final Random random;
+        private final List<GroupStatus> scoreboard;
+        private final Clock clock;
+        private final double decayTimeMillis;
+        private final List<GroupStatus> candidates;
+
+        public BestOfTwoScheduler(Random random, List<GroupStatus> scoreboard, Clock clock, double decayTime) {
+            this.random = random;
+            this.scoreboard = scoreboard;
+            this.clock = clock;
+            this.decayTimeMillis = decayTime * 1000;
+            this.candidates = new ArrayList<>(scoreboard.size());
+        }
+
+        @Override
+        public Optional<GroupStatus> takeNextGroup(Set<Integer> rejectedGroups) {
+            Optional<GroupStatus> gs = selectGroup(true, rejectedGroups);
+            if (gs.isPresent()) {
+                return gs;
+            }
+            // fallback - any coverage better than none
+            return selectGroup(false, rejectedGroups);
+        }
+
+        @Override
+        public void release(GroupStatus gs, boolean success, double searchTime) {
+            long now = clock.millis();
+            double weight = decayWeight(gs, now);
+            if (searchTime > gs.peakSearchTime) {
+                gs.peakSearchTime = searchTime;
+            } else if (success) {
+                gs.peakSearchTime = weight * gs.peakSearchTime + (1 - weight) * searchTime;
+            } else {
+                gs.peakSearchTime = weight * gs.peakSearchTime; // a quick failure does not tell us the group is fast
+            }
+            gs.peakSearchTimeMillis = now;
+        }
+
+        double cost(GroupStatus gs) {
+            double peak = Math.max(decayedPeakSearchTime(gs, clock.millis()), MIN_QUERY_TIME);
+            return peak * (gs.allocations() + 1);
+        }
+
+        private Optional<GroupStatus> selectGroup(boolean requireCoverage, Set<Integer> rejected) {
+            candidates.clear();
+            for (GroupStatus gs : scoreboard) {
+                if (rejected == null || !rejected.contains(gs.group.id())) {
+                    if (!requireCoverage || gs.group.hasSufficientCoverage()) {
+                        candidates.add(gs);
+                    }
+                }
+            }
+            if (candidates.isEmpty()) {
+                return Optional.empty();
+            }
+            if (candidates.size() == 1) {
+                return Optional.of(candidates.get(0));
+            }
+            int first = random.nextInt(candidates.size());
+            int second = random.nextInt(candidates.size() - 1);
+            if (second >= first) {
+                second++;
+            }
+            GroupStatus a = candidates.get(first);
+            GroupStatus b = candidates.get(second);
+            return Optional.of(cost(b) < cost(a) ? b : a);
+        }
+
+        /** Returns the peak search time of this group, decayed by the time since it was last updated */
+        private double decayedPeakSearchTime(GroupStatus gs, long now) {
+            return gs.peakSearchTime * decayWeight(gs, now);
+        }
+
+        private double decayWeight(GroupStatus gs, long now) {
+            return Math.exp(- Math.max(0, now - gs.peakSearchTimeMillis) / decayTimeMillis);
+        }
+    }
 }
@@ -0,0 +1,327 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.data.access.Inspector;
+import com.yahoo.data.access.slime.BinaryView;
+import com.yahoo.jdisc.Metric;
+import com.yahoo.search.Query;
+import com.yahoo.search.dispatch.rpc.ProtobufSerialization;
+import com.yahoo.search.dispatch.searchcluster.SearchCluster;
+import com.yahoo.search.grouping.vespa.GroupingExecutor;
+import com.yahoo.search.query.Ranking;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Slime;
+import com.yahoo.vespa.config.search.DispatchConfig;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A size bounded cache of the results of queries to a search cluster, used by the {@link Dispatcher}
+ * to avoid sending repeated queries to the content nodes.
+ *
+ * The first phase hits (as {@link LeanHit}s) and the document summaries are cached as separate entries:
+ * Hits are keyed on the serialized search request, which identifies the query tree, ranking profile,
+ * features and properties, sorting, grouping, hits and offset. Summaries are keyed on the serialized
+ * docsum request (summary class, ranking profile and, if the summary depends on the query, the query)
+ * and the global id of the document, such that summaries can be reused across queries
+ * returning the same documents.
+ *
+ * Entries expire after a configured max age, and the entire cache is invalidated each time
+ * the state of the search cluster changes. The cache is owned by a dispatcher and therefore
+ * discarded when the dispatcher is reconfigured, e.g on schema changes.
+ *
+ * This class is multithread safe.
+ */
+public class ResultCache {
+
+    static final String HITS_METRIC = "dispatch_result_cache_hits";
+    static final String MISSES_METRIC = "dispatch_result_cache_misses";
+    static final String EVICTIONS_METRIC = "dispatch_result_cache_evictions";
+    static final String BYTES_METRIC = "dispatch_result_cache_bytes";
+
+    /** Approximate fixed memory cost of an entry, independent of content */
+    private static final int ENTRY_OVERHEAD = 128;
+    /** Approximate fixed memory cost of a lean hit, in addition to its gid and sort data */
+    private static final int LEAN_HIT_OVERHEAD = 48;
+
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final SearchCluster searchCluster;
+    private final Clock clock;
+    private final Metric metric;
+    private final Metric.Context metricContext;
+
+    /** The entries of this in least recently used first order */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes = 0;
+    private long clusterStateGeneration;
+
+    public ResultCache(DispatchConfig dispatchConfig, SearchCluster searchCluster, Metric metric) {
+        this(dispatchConfig.resultCacheMaxBytes(), (long)(dispatchConfig.resultCacheMaxAge() * 1000), searchCluster,
+             Clock.systemUTC(), metric);
+    }
+
+    ResultCache(long maxBytes, long maxAgeMillis, SearchCluster searchCluster, Clock clock, Metric metric) {
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.searchCluster = searchCluster;
+        this.clock = clock;
+        this.metric = metric;
+        this.metricContext = metric.createContext(null);
+        this.clusterStateGeneration = searchCluster.stateGeneration();
+    }
+
+    /** Returns whether the result of this query may be looked up in or added to this */
+    public boolean isCacheable(Query query) {
+        if (query.getNoCache()) return false;
+        if (query.getTraceLevel() > 0 || query.getExplainLevel() > 0) return false;
+        if (query.getRanking().getQueryCache()) return false;
+        return true;
+    }
+
+    /** Returns whether the hits of this query may be looked up in or added to this */
+    boolean isHitsCacheable(Query query) {
+        return isCacheable(query) && ! GroupingExecutor.hasGroupingList(query);
+    }
+
+    /** Returns whether summaries fetched with this query may be looked up in or added to this */
+    boolean isSummariesCacheable(Query query) {
+        return isCacheable(query) && ! query.properties().getBoolean(Ranking.RANKFEATURES, false);
+    }
+
+    /** Returns the key of the hits of the given query */
+    Key hitsKey(Query query) {
+        return new Key(ProtobufSerialization.serializeSearchRequestAsCacheKey(query));
+    }
+
+    /** Returns the prefix of the keys of summaries fetched with the given query, to be combined with a global id */
+    byte[] summaryKeyPrefix(Query query, String summaryClass, boolean summaryNeedsQuery) {
+        return ProtobufSerialization.serializeDocsumRequestAsCacheKey(query, summaryClass, summaryNeedsQuery);
+    }
+
+    Optional<CachedHits> getHits(Key key) {
+        return get(key).map(CachedHits.class::cast);
+    }
+
+    /** Adds the given result to this, unless it is not complete */
+    void putHits(Key key, InvokerResult result, int offset) {
+        if (result.getResult().hits().getError() != null) return;
+        if (result.getResult().hits().size() > 0) return; // has non-lean hits
+        Coverage coverage = result.getResult().getCoverage(false);
+        if (coverage != null && (coverage.isDegraded() || coverage.getNodes() < coverage.getNodesTried())) return;
+
+        put(key, new CachedHits(clock.millis(), result, coverage, offset));
+    }
+
+    Optional<Inspector> getSummary(byte[] keyPrefix, byte[] globalId) {
+        return get(summaryKey(keyPrefix, globalId)).map(entry -> ((CachedSummary)entry).decode());
+    }
+
+    void putSummary(byte[] keyPrefix, byte[] globalId, Inspector summary) {
+        put(summaryKey(keyPrefix, globalId), new CachedSummary(clock.millis(), encode(summary)));
+    }
+
+    /** Returns the number of bytes currently used by this */
+    public synchronized long bytes() { return bytes; }
+
+    /** Returns the number of entries in this */
+    public synchronized int size() { return entries.size(); }
+
+    private synchronized Optional<Entry> get(Key key) {
+        invalidateOnClusterStateChange();
+        Entry entry = entries.get(key);
+        if (entry != null && clock.millis() - entry.created > maxAgeMillis) {
+            remove(key);
+            entry = null;
+        }
+        metric.add(entry != null ? HITS_METRIC : MISSES_METRIC, 1, metricContext);
+        return Optional.ofNullable(entry);
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        entry.bytes += key.size();
+        if (entry.bytes > maxBytes) return;
+
+        invalidateOnClusterStateChange();
+        Entry replaced = entries.put(key, entry);
+        if (replaced != null)
+            bytes -= replaced.bytes;
+        bytes += entry.bytes;
+
+        int evicted = 0;
+        for (Iterator<Entry> i = entries.values().iterator(); bytes > maxBytes && i.hasNext(); evicted++) {
+            bytes -= i.next().bytes;
+            i.remove();
+        }
+        if (evicted > 0)
+            metric.add(EVICTIONS_METRIC, evicted, metricContext);
+        metric.set(BYTES_METRIC, bytes, metricContext);
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null)
+            bytes -= removed.bytes;
+    }
+
+    private void invalidateOnClusterStateChange() {
+        long currentGeneration = searchCluster.stateGeneration();
+        if (currentGeneration == clusterStateGeneration) return;
+
+        entries.clear();
+        bytes = 0;
+        clusterStateGeneration = currentGeneration;
+    }
+
+    private static Key summaryKey(byte[] keyPrefix, byte[] globalId) {
+        byte[] key = Arrays.copyOf(keyPrefix, keyPrefix.length + globalId.length);
+        System.arraycopy(globalId, 0, key, keyPrefix.length, globalId.length);
+        return new Key(key);
+    }
+
+    /** Encodes a summary into a compact, self-contained binary slime */
+    private static byte[] encode(Inspector summary) {
+        Slime slime = new Slime();
+        encode(summary, slime.setObject());
+        return BinaryFormat.encode(slime);
+    }
+
+    private static void encode(Inspector from, Cursor to) {
+        for (Map.Entry<String, Inspector> field : from.fields()) {
+            Inspector value = field.getValue();
+            String name = field.getKey();
+            switch (value.type()) {
+                case EMPTY: to.setNix(name); break;
+                case BOOL: to.setBool(name, value.asBool()); break;
+                case LONG: to.setLong(name, value.asLong()); break;
+                case DOUBLE: to.setDouble(name, value.asDouble()); break;
+                case STRING: to.setString(name, value.asUtf8()); break;
+                case DATA: to.setData(name, value.asData()); break;
+                case ARRAY: encodeEntries(value, to.setArray(name)); break;
+                case OBJECT: encode(value, to.setObject(name)); break;
+            }
+        }
+    }
+
+    private static void encodeEntries(Inspector from, Cursor to) {
+        for (Inspector value : from.entries()) {
+            switch (value.type()) {
+                case EMPTY: to.addNix(); break;
+                case BOOL: to.addBool(value.asBool()); break;
+                case LONG: to.addLong(value.asLong()); break;
+                case DOUBLE: to.addDouble(value.asDouble()); break;
+                case STRING: to.addString(value.asUtf8()); break;
+                case DATA: to.addData(value.asData()); break;
+                case ARRAY: encodeEntries(value, to.addArray()); break;
+                case OBJECT: encode(value, to.addObject()); break;
+            }
+        }
+    }
+
+    /** A cache key consisting of a serialized request */
+    static final class Key {
+
+        private final byte[] data;
+        private final int hashCode;
+
+        Key(byte[] data) {
+            this.data = data;
+            this.hashCode = Arrays.hashCode(data);
+        }
+
+        int size() { return data.length; }
+
+        @Override
+        public int hashCode() { return hashCode; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if ( ! (o instanceof Key)) return false;
+            Key other = (Key)o;
+            return hashCode == other.hashCode && Arrays.equals(data, other.data);
+        }
+
+    }
+
+    private static abstract class Entry {
+
+        final long created;
+        long bytes;
+
+        Entry(long created, long bytes) {
+            this.created = created;
+            this.bytes = bytes + ENTRY_OVERHEAD;
+        }
+
+    }
+
+    /** The first phase hits of a query */
+    static final class CachedHits extends Entry {
+
+        private final List<LeanHit> hits;
+        private final long totalHitCount;
+        private final long docs, active, soonActive;
+        private final int nodes, nodesTried;
+        private final int offset;
+
+        CachedHits(long created, InvokerResult result, Coverage coverage, int offset) {
+            super(created, sizeOf(result.getLeanHits()));
+            this.hits = new ArrayList<>(result.getLeanHits());
+            this.totalHitCount = result.getResult().getTotalHitCount();
+            this.docs = coverage != null ? coverage.getDocs() : 0;
+            this.active = coverage != null ? coverage.getActive() : 0;
+            this.soonActive = coverage != null ? coverage.getSoonActive() : 0;
+            this.nodes = coverage != null ? coverage.getNodes() : 0;
+            this.nodesTried = coverage != null ? coverage.getNodesTried() : 0;
+            this.offset = offset;
+        }
+
+        /** Returns a new result of this for the given query */
+        InvokerResult toResult(Query query) {
+            InvokerResult result = new InvokerResult(query, hits.size());
+            result.getLeanHits().addAll(hits);
+            result.getResult().setTotalHitCount(totalHitCount);
+            if (nodesTried > 0)
+                result.getResult().setCoverage(new Coverage(docs, active, nodes, 1).setNodesTried(nodesTried).setSoonActive(soonActive));
+            return result;
+        }
+
+        /** Returns the offset the query should have after this is returned */
+        int offset() { return offset; }
+
+        private static long sizeOf(List<LeanHit> hits) {
+            long size = 0;
+            for (LeanHit hit : hits)
+                size += LEAN_HIT_OVERHEAD + hit.getGid().length + (hit.hasSortData() ? hit.getSortData().length : 0);
+            return size;
+        }
+
+    }
+
+    /** The summary of a document as a binary slime */
+    private static final class CachedSummary extends Entry {
+
+        private final byte[] data;
+
+        CachedSummary(long created, byte[] data) {
+            super(created, data.length);
+            this.data = data;
+        }
+
+        Inspector decode() {
+            return BinaryView.inspect(data);
+        }
+
+    }
+
+}
@@ -56,6 +56,11 @@ public abstract class SearchInvoker extends CloseableInvoker {
         return node.map(Node::key);
     }
 
+    /** Returns the node this searches, or empty if it searches multiple nodes */
+    Optional<Node> node() {
+        return node;
+    }
+
     protected InvokerResult errorResult(Query query, ErrorMessage errorMessage) {
         Result error = new Result(query, errorMessage);
         Coverage errorCoverage = new Coverage(0, 0, 0);
@@ -0,0 +1,277 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch.rpc;
+
+import ai.vespa.searchlib.searchprotocol.protobuf.SearchProtocol;
+import com.google.protobuf.ByteString;
+import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
+import com.yahoo.concurrent.ThreadFactoryFactory;
+import com.yahoo.data.access.Inspector;
+import com.yahoo.jdisc.Metric;
+import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.search.dispatch.rpc.Client.ProtobufResponse;
+import com.yahoo.search.dispatch.rpc.Client.ResponseOrError;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the document summary requests of concurrent queries into a single request per node.
+ * <p>
+ * Requests to the same node which are equal except for the documents requested and their timeout
+ * (that is, which have the same document type, summary class, rank profile and so on) are collected
+ * into a batch for at most a given delay, or until the batch contains a given number of hits,
+ * and then sent as a single request. The documents in the reply are in the same order as in the request,
+ * so each part of the batch reads its summaries from the reply starting at its offset into the batch.
+ * The reply is decoded once, and all the parts share the view of its summaries.
+ * <p>
+ * A batch is sent with the timeout of its part with the latest deadline. Parts which have already
+ * timed out when the batch is sent are failed rather than sent.
+ * <p>
+ * This is multithread safe.
+ */
+class DocsumRequestBatcher {
+
+    static final String BATCH_REQUESTS_METRIC = "dispatch_docsum_batch_requests";
+    static final String BATCH_HITS_METRIC = "dispatch_docsum_batch_hits";
+
+    private final RpcResourcePool resourcePool;
+    private final long maxDelayNanos;
+    private final int maxHits;
+    private final Metric metric;
+    private final Metric.Context metricContext;
+
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(ThreadFactoryFactory.getDaemonThreadFactory("docsum-batcher"));
+
+    /** The batches which are collecting requests. Guarded by this. */
+    private final Map<Key, Batch> pending = new HashMap<>();
+
+    /**
+     * Creates a batcher
+     *
+     * @param resourcePool the pool providing connections to the nodes
+     * @param maxDelayNanos the max time to wait for more requests before sending a batch
+     * @param maxHits the max number of hits in a batch, sent as soon as it is reached
+     * @param metric the metric receiving the number of requests and hits of each batch
+     */
+    DocsumRequestBatcher(RpcResourcePool resourcePool, long maxDelayNanos, int maxHits, Metric metric) {
+        if (maxDelayNanos <= 0)
+            throw new IllegalArgumentException("The max delay of a docsum batch must be positive, but was " + maxDelayNanos + " ns");
+        this.resourcePool = resourcePool;
+        this.maxDelayNanos = maxDelayNanos;
+        this.maxHits = Math.max(1, maxHits);
+        this.metric = metric;
+        this.metricContext = metric.createContext(null);
+    }
+
+    /**
+     * Adds a docsum request to a batch. The receiver will be called once with the summaries of the reply
+     * to the batch, or an error, and the offset at which the summaries of the given hits starts in the reply.
+     *
+     * @param nodeId the node to request summaries from
+     * @param request the request of these hits, which will not be modified, and where the global ids are ignored
+     * @param hits the hits to request summaries of
+     * @param compression the compression to use for the request
+     * @param timeoutSeconds the timeout of this request
+     * @param receiver the receiver of the reply to this request
+     */
+    void send(int nodeId, SearchProtocol.DocsumRequest.Builder request, List<FastHit> hits,
+              CompressionType compression, double timeoutSeconds, Receiver receiver) {
+        Key key = new Key(nodeId, compression, request);
+        long deadline = System.nanoTime() + (long)(timeoutSeconds * 1_000_000_000);
+        Batch full = null;
+        synchronized (this) {
+            Batch batch = pending.get(key);
+            if (batch == null) {
+                Batch newBatch = new Batch(key, request);
+                pending.put(key, newBatch);
+                scheduler.schedule(() -> sendIfPending(newBatch), maxDelayNanos, TimeUnit.NANOSECONDS);
+                batch = newBatch;
+            }
+            batch.add(hits, deadline, receiver);
+            if (batch.hitCount() >= maxHits) {
+                pending.remove(key);
+                full = batch;
+            }
+        }
+        if (full != null)
+            full.send();
+    }
+
+    /** Sends all pending batches now */
+    void flush() {
+        List<Batch> batches;
+        synchronized (this) {
+            batches = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        for (Batch batch : batches)
+            batch.send();
+    }
+
+    /** Stops sending batches after the max delay. This must be called after all requests are sent. */
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    private void sendIfPending(Batch batch) {
+        synchronized (this) {
+            if (pending.get(batch.key) != batch) return; // sent when it became full
+            pending.remove(batch.key);
+        }
+        batch.send();
+    }
+
+    /** Receives the reply to a request in a batch */
+    interface Receiver {
+
+        /**
+         * Called with the root of the summaries in the reply to the batch containing a request,
+         * where the first summary of the request is at the given offset in the docsums of the reply.
+         * The root is shared by all the requests in the batch.
+         */
+        void receive(ResponseOrError<Inspector> summaries, int offset);
+
+    }
+
+    /** The properties which must be equal for requests to be sent in the same batch */
+    private static class Key {
+
+        private final int nodeId;
+        private final CompressionType compression;
+        private final byte[] request;
+        private final int hashCode;
+
+        Key(int nodeId, CompressionType compression, SearchProtocol.DocsumRequest.Builder request) {
+            this.nodeId = nodeId;
+            this.compression = compression;
+            this.request = request.clone().clearGlobalIds().clearTimeout().build().toByteArray();
+            this.hashCode = 31 * (31 * nodeId + compression.hashCode()) + Arrays.hashCode(this.request);
+        }
+
+        @Override
+        public int hashCode() { return hashCode; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if ( ! (o instanceof Key)) return false;
+            Key other = (Key)o;
+            return nodeId == other.nodeId && compression == other.compression && Arrays.equals(request, other.request);
+        }
+
+    }
+
+    /** Requests to one node collected to be sent together */
+    private class Batch {
+
+        private final Key key;
+        private final SearchProtocol.DocsumRequest.Builder request;
+        private final List<Part> parts = new ArrayList<>();
+        private int hitCount = 0;
+
+        Batch(Key key, SearchProtocol.DocsumRequest.Builder request) {
+            this.key = key;
+            this.request = request.clone().clearGlobalIds();
+        }
+
+        void add(List<FastHit> hits, long deadline, Receiver receiver) {
+            parts.add(new Part(hits, deadline, receiver));
+            hitCount += hits.size();
+        }
+
+        int hitCount() { return hitCount; }
+
+        /**
+         * Sends the parts of this which have not timed out as a single request, and fails the others.
+         * This must be called once, after this is no longer pending.
+         */
+        void send() {
+            long now = System.nanoTime();
+            List<Part> live = new ArrayList<>(parts.size());
+            long deadline = Long.MIN_VALUE;
+            for (Part part : parts) {
+                if (part.deadline <= now) {
+                    part.receiver.receive(ResponseOrError.fromError("Timed out waiting to send the docsum request"), 0);
+                }
+                else {
+                    live.add(part);
+                    deadline = Math.max(deadline, part.deadline);
+                }
+            }
+            if (live.isEmpty()) return;
+
+            List<Integer> offsets = new ArrayList<>(live.size());
+            List<Receiver> receivers = new ArrayList<>(live.size());
+            for (Part part : live) {
+                offsets.add(request.getGlobalIdsCount());
+                receivers.add(part.receiver);
+                for (FastHit hit : part.hits)
+                    request.addGlobalIds(ByteString.copyFrom(hit.getRawGlobalId()));
+            }
+            metric.set(BATCH_REQUESTS_METRIC, live.size(), metricContext);
+            metric.set(BATCH_HITS_METRIC, request.getGlobalIdsCount(), metricContext);
+
+            Client.NodeConnection node = resourcePool.getConnection(key.nodeId);
+            if (node == null) {
+                receive(ResponseOrError.fromError("Could not fill hits from unknown node " + key.nodeId), receivers, offsets);
+                return;
+            }
+            // At least 1 ms, as a timeout which is rounded down to 0 would mean no timeout
+            int timeoutMillis = (int)Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - now));
+            request.setTimeout(timeoutMillis);
+            byte[] payload = request.build().toByteArray();
+            Compressor.Compression compressionResult = resourcePool.compressor().compress(key.compression, payload);
+            node.request(RpcProtobufFillInvoker.RPC_METHOD, compressionResult.type(), payload.length, compressionResult.data(),
+                         response -> receive(response, receivers, offsets), timeoutMillis / 1000.0);
+        }
+
+        /** Decompresses and decodes the reply once and passes its summaries to the receiver of each request in this */
+        private void receive(ResponseOrError<ProtobufResponse> response, List<Receiver> receivers, List<Integer> offsets) {
+            ResponseOrError<Inspector> summaries;
+            if (response.response().isPresent()) {
+                ProtobufResponse reply = response.response().get();
+                try {
+                    CompressionType compression = CompressionType.valueOf(reply.compression());
+                    byte[] payload = compression == CompressionType.NONE
+                                     ? reply.compressedPayload()
+                                     : resourcePool.compressor().decompress(reply.compressedPayload(), compression, reply.uncompressedSize());
+                    summaries = ResponseOrError.fromResponse(RpcProtobufFillInvoker.decodeSummaries(payload));
+                }
+                catch (IOException | RuntimeException e) {
+                    summaries = ResponseOrError.fromError("Invalid response to docsum request from backend: " + e.getMessage());
+                }
+            }
+            else {
+                summaries = ResponseOrError.fromError(response.error().get());
+            }
+            for (int i = 0; i < receivers.size(); i++)
+                receivers.get(i).receive(summaries, offsets.get(i));
+        }
+
+    }
+
+    /** The request of one query in a batch */
+    private static class Part {
+
+        final List<FastHit> hits;
+        final long deadline;
+        final Receiver receiver;
+
+        Part(List<FastHit> hits, long deadline, Receiver receiver) {
+            this.hits = hits;
+            this.deadline = deadline;
+            this.receiver = receiver;
+        }
+
+    }
+
+}
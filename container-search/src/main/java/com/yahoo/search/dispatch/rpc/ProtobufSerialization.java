@@ -41,6 +41,23 @@ public class ProtobufSerialization {
         return convertFromQuery(query, serverId).toByteArray();
     }
 
+    /**
+     * Returns a serialized search request for the given query which leaves out the parts that varies between
+     * otherwise identical queries (timeout, tracing and session), for use as a cache key.
+     */
+    public static byte[] serializeSearchRequestAsCacheKey(Query query) {
+        return convertFromQuery(query, "").toBuilder()
+                .clearTimeout().clearTraceLevel().clearSessionKey().clearCacheGrouping().build().toByteArray();
+    }
+
+    /**
+     * Returns a serialized docsum request without any documents and timeout, which identifies
+     * the summaries returned for a document with the given query and summary class, for use as a cache key prefix.
+     */
+    public static byte[] serializeDocsumRequestAsCacheKey(Query query, String summaryClass, boolean includeQueryData) {
+        return createDocsumRequestBuilder(query, "", summaryClass, includeQueryData).clearTimeout().build().toByteArray();
+    }
+
     private static SearchProtocol.SearchRequest convertFromQuery(Query query, String serverId) {
         var builder = SearchProtocol.SearchRequest.newBuilder().setHits(query.getHits()).setOffset(query.getOffset())
                 .setTimeout((int) query.getTimeLeft());
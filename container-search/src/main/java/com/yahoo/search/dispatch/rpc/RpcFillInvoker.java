@@ -5,8 +5,9 @@ import com.yahoo.collections.ListMap;
 import com.yahoo.compress.CompressionType;
 import com.yahoo.compress.Compressor;
 import com.yahoo.container.protect.Error;
+import com.yahoo.data.access.ArrayTraverser;
 import com.yahoo.data.access.Inspector;
-import com.yahoo.data.access.slime.SlimeAdapter;
+import com.yahoo.data.access.slime.BinaryView;
 import com.yahoo.prelude.Location;
 import com.yahoo.prelude.fastsearch.DocumentDatabase;
 import com.yahoo.prelude.fastsearch.FastHit;
@@ -18,7 +19,6 @@ import com.yahoo.search.dispatch.rpc.Client.GetDocsumsResponse;
 import com.yahoo.search.query.SessionId;
 import com.yahoo.search.result.ErrorMessage;
 import com.yahoo.search.result.Hit;
-import com.yahoo.slime.ArrayTraverser;
 import com.yahoo.slime.BinaryFormat;
 import com.yahoo.slime.Cursor;
 import com.yahoo.slime.Slime;
@@ -221,8 +221,8 @@ public class RpcFillInvoker extends FillInvoker {
             return 0;
         }
 
-        private void addErrors(com.yahoo.slime.Inspector errors) {
-            errors.traverse((ArrayTraverser) (int index, com.yahoo.slime.Inspector value) -> {
+        private void addErrors(Inspector errors) {
+            errors.traverse((ArrayTraverser) (int index, Inspector value) -> {
                 int errorCode = ("timeout".equalsIgnoreCase(value.field("type").asString()))
                         ? Error.TIMEOUT.code
                         : Error.UNSPECIFIED.code;
@@ -232,14 +232,14 @@ public class RpcFillInvoker extends FillInvoker {
         }
 
         private int fill(List<FastHit> hits, String summaryClass, DocumentDatabase documentDb, byte[] slimeBytes) {
-            com.yahoo.slime.Inspector root = BinaryFormat.decode(slimeBytes).get();
-            com.yahoo.slime.Inspector errors = root.field("errors");
-            boolean hasErrors = errors.valid() && (errors.entries() > 0);
+            Inspector root = BinaryView.inspect(slimeBytes);
+            Inspector errors = root.field("errors");
+            boolean hasErrors = errors.valid() && (errors.entryCount() > 0);
             if (hasErrors) {
                 addErrors(errors);
             }
 
-            Inspector summaries = new SlimeAdapter(root.field("docsums"));
+            Inspector summaries = root.field("docsums");
             if ( ! summaries.valid())
                 return 0; // No summaries; Perhaps we requested a non-existing summary class
             int skippedHits = 0;
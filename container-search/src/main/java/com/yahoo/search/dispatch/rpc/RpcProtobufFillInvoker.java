@@ -2,14 +2,14 @@
 package com.yahoo.search.dispatch.rpc;
 
 import ai.vespa.searchlib.searchprotocol.protobuf.SearchProtocol;
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
 import com.yahoo.collections.ListMap;
-import com.yahoo.collections.Pair;
 import com.yahoo.compress.CompressionType;
 import com.yahoo.compress.Compressor;
 import com.yahoo.container.protect.Error;
+import com.yahoo.data.access.ArrayTraverser;
 import com.yahoo.data.access.Inspector;
-import com.yahoo.data.access.slime.SlimeAdapter;
+import com.yahoo.data.access.slime.BinaryView;
 import com.yahoo.prelude.fastsearch.DocumentDatabase;
 import com.yahoo.prelude.fastsearch.FastHit;
 import com.yahoo.prelude.fastsearch.TimeoutException;
@@ -19,9 +19,8 @@ import com.yahoo.search.dispatch.FillInvoker;
 import com.yahoo.search.dispatch.rpc.Client.ProtobufResponse;
 import com.yahoo.search.result.ErrorMessage;
 import com.yahoo.search.result.Hit;
-import com.yahoo.slime.ArrayTraverser;
-import com.yahoo.slime.BinaryFormat;
 
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -38,7 +37,7 @@ import java.util.logging.Logger;
  * @author ollivir
  */
 public class RpcProtobufFillInvoker extends FillInvoker {
-    private static final String RPC_METHOD = "vespa.searchprotocol.getDocsums";
+    static final String RPC_METHOD = "vespa.searchprotocol.getDocsums";
 
     private static final Logger log = Logger.getLogger(RpcProtobufFillInvoker.class.getName());
 
@@ -47,7 +46,7 @@ public class RpcProtobufFillInvoker extends FillInvoker {
     private final boolean summaryNeedsQuery;
     private final String serverId;
 
-    private BlockingQueue<Pair<Client.ResponseOrError<ProtobufResponse>, List<FastHit>>> responses;
+    private BlockingQueue<Response> responses;
 
     /** Whether we have already logged/notified about an error - to avoid spamming */
     private boolean hasReportedError = false;
@@ -73,8 +72,7 @@ public class RpcProtobufFillInvoker extends FillInvoker {
 
         var builder = ProtobufSerialization.createDocsumRequestBuilder(result.getQuery(), serverId, summaryClass, summaryNeedsQuery);
         for (Map.Entry<Integer, List<FastHit>> nodeHits : hitsByNode.entrySet()) {
-            var payload = ProtobufSerialization.serializeDocsumRequest(builder, nodeHits.getValue());
-            sendDocsumsRequest(nodeHits.getKey(), nodeHits.getValue(), payload, result);
+            sendDocsumsRequest(nodeHits.getKey(), nodeHits.getValue(), builder, result);
         }
     }
 
@@ -96,7 +94,23 @@ public class RpcProtobufFillInvoker extends FillInvoker {
 
     /** Called by a thread belonging to the client when a valid response becomes available */
     public void receive(Client.ResponseOrError<ProtobufResponse> response, List<FastHit> hitsContext) {
-        responses.add(new Pair<>(response, hitsContext));
+        receive(response, hitsContext, 0);
+    }
+
+    /**
+     * Called by a thread belonging to the client when a response becomes available,
+     * where the summaries of the given hits starts at the given offset in the response
+     */
+    void receive(Client.ResponseOrError<ProtobufResponse> response, List<FastHit> hitsContext, int offset) {
+        responses.add(new Response(response, null, hitsContext, offset));
+    }
+
+    /**
+     * Called by a thread belonging to the client with the already decoded summaries of a response,
+     * where the summaries of the given hits starts at the given offset
+     */
+    private void receiveSummaries(Client.ResponseOrError<Inspector> summaries, List<FastHit> hitsContext, int offset) {
+        responses.add(new Response(null, summaries, hitsContext, offset));
     }
 
     /** Return a map of hits by their search node (partition) id */
@@ -113,8 +127,11 @@ public class RpcProtobufFillInvoker extends FillInvoker {
         return hitsByNode;
     }
 
-    /** Send a docsums request to a node. Responses will be added to the given receiver. */
-    private void sendDocsumsRequest(int nodeId, List<FastHit> hits, byte[] payload, Result result) {
+    /**
+     * Send a docsums request to a node, or add it to a batch of requests to the node from concurrent queries.
+     * Responses will be added to the given receiver.
+     */
+    private void sendDocsumsRequest(int nodeId, List<FastHit> hits, SearchProtocol.DocsumRequest.Builder builder, Result result) {
         Client.NodeConnection node = resourcePool.getConnection(nodeId);
         if (node == null) {
             String error = "Could not fill hits from unknown node " + nodeId;
@@ -126,6 +143,14 @@ public class RpcProtobufFillInvoker extends FillInvoker {
 
         Query query = result.getQuery();
         double timeoutSeconds = ((double) query.getTimeLeft() - 3.0) / 1000.0;
+        var batcher = resourcePool.docsumBatcher();
+        if (batcher.isPresent() && ! summaryNeedsQuery) {
+            batcher.get().send(nodeId, builder, hits, resourcePool.compressionType(query), timeoutSeconds,
+                               (summaries, offset) -> receiveSummaries(summaries, hits, offset));
+            return;
+        }
+
+        var payload = ProtobufSerialization.serializeDocsumRequest(builder, hits);
         Compressor.Compression compressionResult = resourcePool.compress(query, payload);
         node.request(RPC_METHOD, compressionResult.type(), payload.length, compressionResult.data(), roe -> receive(roe, hits),
                 timeoutSeconds);
@@ -139,13 +164,11 @@ public class RpcProtobufFillInvoker extends FillInvoker {
                 if (timeLeftMs <= 0) {
                     throwTimeout();
                 }
-                var responseAndHits = responses.poll(timeLeftMs, TimeUnit.MILLISECONDS);
-                if (responseAndHits == null) {
+                var response = responses.poll(timeLeftMs, TimeUnit.MILLISECONDS);
+                if (response == null) {
                     throwTimeout();
                 }
-                var response = responseAndHits.getFirst();
-                var hitsContext = responseAndHits.getSecond();
-                skippedHits += processResponse(result, response, hitsContext, summaryClass);
+                skippedHits += processResponse(result, response, summaryClass);
                 outstandingResponses--;
             }
             if (skippedHits != 0) {
@@ -157,68 +180,118 @@ public class RpcProtobufFillInvoker extends FillInvoker {
         }
     }
 
-    private int processResponse(Result result, Client.ResponseOrError<ProtobufResponse> responseOrError, List<FastHit> hitsContext,
-            String summaryClass) {
-        if (responseOrError.error().isPresent()) {
+    private int processResponse(Result result, Response response, String summaryClass) {
+        Client.ResponseOrError<Inspector> summaries = response.summaries;
+        if (summaries == null) {
+            if (response.responseOrError.error().isPresent()) {
+                summaries = Client.ResponseOrError.fromError(response.responseOrError.error().get());
+            }
+            else {
+                try {
+                    Client.ProtobufResponse protobufResponse = response.responseOrError.response().get();
+                    CompressionType compression = CompressionType.valueOf(protobufResponse.compression());
+                    byte[] responseBytes = compression == CompressionType.NONE
+                                           ? protobufResponse.compressedPayload()
+                                           : resourcePool.compressor().decompress(protobufResponse.compressedPayload(), compression,
+                                                                                  protobufResponse.uncompressedSize());
+                    summaries = Client.ResponseOrError.fromResponse(decodeSummaries(responseBytes));
+                } catch (IOException ex) {
+                    log.log(Level.WARNING, "Invalid response to docsum request", ex);
+                    result.hits().addError(ErrorMessage.createInternalServerError("Invalid response to docsum request from backend"));
+                    return 0;
+                }
+            }
+        }
+
+        if (summaries.error().isPresent()) {
             if (hasReportedError) {
                 return 0;
             }
-            String error = responseOrError.error().get();
+            String error = summaries.error().get();
             result.hits().addError(ErrorMessage.createBackendCommunicationError(error));
             log.log(Level.WARNING, "Error fetching summary data: " + error);
             hasReportedError = true;
-        } else {
-            Client.ProtobufResponse response = responseOrError.response().get();
-            CompressionType compression = CompressionType.valueOf(response.compression());
-            byte[] responseBytes = resourcePool.compressor().decompress(response.compressedPayload(), compression,
-                    response.uncompressedSize());
-            return fill(result, hitsContext, summaryClass, responseBytes);
+            return 0;
         }
-        return 0;
+        return fill(result, response.hits, summaryClass, summaries.response().get(), response.offset);
     }
 
-    private void addErrors(Result result, com.yahoo.slime.Inspector errors) {
+    private void addErrors(Result result, Inspector errors) {
         errors.traverse((ArrayTraverser) (index, value) -> {
             int errorCode = ("timeout".equalsIgnoreCase(value.field("type").asString())) ? Error.TIMEOUT.code : Error.UNSPECIFIED.code;
             result.hits().addError(new ErrorMessage(errorCode, value.field("message").asString(), value.field("details").asString()));
         });
     }
 
-    private int fill(Result result, List<FastHit> hits, String summaryClass, byte[] payload) {
-        try {
-            var protobuf = SearchProtocol.DocsumReply.parseFrom(payload);
-            var root = BinaryFormat.decode(protobuf.getSlimeSummaries().toByteArray()).get();
-            var errors = root.field("errors");
-            boolean hasErrors = errors.valid() && (errors.entries() > 0);
-            if (hasErrors) {
-                addErrors(result, errors);
-            }
+    /**
+     * Returns a view of the summaries in the given docsum reply payload.
+     * The summaries are not decoded: All the hits share the slime bytes of the response,
+     * and each field is read from those when it is accessed.
+     */
+    static Inspector decodeSummaries(byte[] payload) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(payload);
+        input.enableAliasing(true); // copy the summaries only once, into the buffer viewed below
+        var protobuf = SearchProtocol.DocsumReply.parseFrom(input);
+        return BinaryView.inspect(protobuf.getSlimeSummaries().toByteArray());
+    }
 
-            Inspector summaries = new SlimeAdapter(root.field("docsums"));
-            if (!summaries.valid()) {
-                return 0; // No summaries; Perhaps we requested a non-existing summary class
-            }
-            int skippedHits = 0;
-            for (int i = 0; i < hits.size(); i++) {
-                Inspector summary = summaries.entry(i).field("docsum");
-                if (summary.valid()) {
-                    hits.get(i).setField(Hit.SDDOCNAME_FIELD, documentDb.getName());
-                    hits.get(i).addSummary(documentDb.getDocsumDefinitionSet().getDocsum(summaryClass), summary);
-                    hits.get(i).setFilled(summaryClass);
-                } else {
-                    skippedHits++;
-                }
+    /**
+     * Adds the summaries below the given root to the given hits.
+     *
+     * @param offset the index of the summary of the first of the given hits in the summaries
+     */
+    int fill(Result result, List<FastHit> hits, String summaryClass, Inspector root, int offset) {
+        var errors = root.field("errors");
+        boolean hasErrors = errors.valid() && (errors.entryCount() > 0);
+        if (hasErrors) {
+            addErrors(result, errors);
+        }
+
+        Inspector summaries = root.field("docsums");
+        if (!summaries.valid()) {
+            return 0; // No summaries; Perhaps we requested a non-existing summary class
+        }
+        int skippedHits = 0;
+        for (int i = 0; i < hits.size(); i++) {
+            Inspector summary = summaries.entry(offset + i).field("docsum");
+            if (summary.valid()) {
+                hits.get(i).setField(Hit.SDDOCNAME_FIELD, documentDb.getName());
+                hits.get(i).addSummary(documentDb.getDocsumDefinitionSet().getDocsum(summaryClass), summary);
+                hits.get(i).setFilled(summaryClass);
+            } else {
+                skippedHits++;
             }
-            return skippedHits;
-        } catch (InvalidProtocolBufferException ex) {
-            log.log(Level.WARNING, "Invalid response to docsum request", ex);
-            result.hits().addError(ErrorMessage.createInternalServerError("Invalid response to docsum request from backend"));
-            return 0;
         }
+        return skippedHits;
     }
 
     private void throwTimeout() throws TimeoutException {
         throw new TimeoutException("Timed out waiting for summary data. " + outstandingResponses + " responses outstanding.");
     }
 
+    /** A response to a docsum request, or an error */
+    private static class Response {
+
+        /** The response to decode the summaries from, or null if they are already decoded */
+        final Client.ResponseOrError<ProtobufResponse> responseOrError;
+
+        /** The decoded summaries of the response, or null if they are not decoded yet */
+        final Client.ResponseOrError<Inspector> summaries;
+
+        /** The hits to fill from this */
+        final List<FastHit> hits;
+
+        /** The index of the summary of the first hit in the response */
+        final int offset;
+
+        Response(Client.ResponseOrError<ProtobufResponse> responseOrError, Client.ResponseOrError<Inspector> summaries,
+                 List<FastHit> hits, int offset) {
+            this.responseOrError = responseOrError;
+            this.summaries = summaries;
+            this.hits = hits;
+            this.offset = offset;
+        }
+
+    }
+
 }
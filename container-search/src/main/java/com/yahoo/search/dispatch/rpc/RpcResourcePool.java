@@ -5,6 +5,7 @@ import com.google.common.collect.ImmutableMap;
 import com.yahoo.compress.CompressionType;
 import com.yahoo.compress.Compressor;
 import com.yahoo.compress.Compressor.Compression;
+import com.yahoo.jdisc.Metric;
 import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.Query;
 import com.yahoo.search.dispatch.FillInvoker;
@@ -15,6 +16,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Random;
 
 /**
@@ -33,13 +35,35 @@ public class RpcResourcePool {
     /** Connections to the search nodes this talks to, indexed by node id ("partid") */
     private final ImmutableMap<Integer, NodeConnectionPool> nodeConnectionPools;
 
+    /** Coalesces docsum requests to the same node, or empty if docsum requests are sent one by one */
+    private final Optional<DocsumRequestBatcher> docsumBatcher;
+
     public RpcResourcePool(Map<Integer, NodeConnection> nodeConnections) {
+        this(nodeConnections, 0, 0, null);
+    }
+
+    /**
+     * Creates a pool of the given connections which coalesces docsum requests
+     *
+     * @param nodeConnections the connections to use
+     * @param docsumBatchMaxDelayNanos the max time to wait for more docsum requests to the same node, or 0 to
+     *                                 send docsum requests one by one
+     * @param docsumBatchMaxHits the max number of hits in a single docsum request
+     * @param metric the metric receiving batch sizes
+     */
+    RpcResourcePool(Map<Integer, NodeConnection> nodeConnections, long docsumBatchMaxDelayNanos, int docsumBatchMaxHits, Metric metric) {
         var builder = new ImmutableMap.Builder<Integer, NodeConnectionPool>();
         nodeConnections.forEach((key, connection) -> builder.put(key, new NodeConnectionPool(Collections.singletonList(connection))));
         this.nodeConnectionPools = builder.build();
+        this.docsumBatcher = createDocsumBatcher(docsumBatchMaxDelayNanos, docsumBatchMaxHits, metric);
     }
 
     public RpcResourcePool(DispatchConfig dispatchConfig) {
+        this(dispatchConfig, null);
+    }
+
+    /** Creates a pool from config, where the metric is used by docsum batching, and may be null if batching is off */
+    public RpcResourcePool(DispatchConfig dispatchConfig, Metric metric) {
         var client = new RpcClient(dispatchConfig.numJrtTransportThreads());
 
         // Create rpc node connection pools indexed by the node distribution key
@@ -53,6 +77,16 @@ public class RpcResourcePool {
             builder.put(node.key(), new NodeConnectionPool(connections));
         }
         this.nodeConnectionPools = builder.build();
+        this.docsumBatcher = createDocsumBatcher((long)(dispatchConfig.docsumBatchMaxDelay() * 1_000_000_000),
+                                                 dispatchConfig.docsumBatchMaxHits(),
+                                                 metric);
+    }
+
+    private Optional<DocsumRequestBatcher> createDocsumBatcher(long maxDelayNanos, int maxHits, Metric metric) {
+        if (maxDelayNanos <= 0) return Optional.empty();
+        if (metric == null)
+            throw new IllegalArgumentException("A metric is required when docsum requests are batched");
+        return Optional.of(new DocsumRequestBatcher(this, maxDelayNanos, maxHits, metric));
     }
 
     public Compressor compressor() {
@@ -60,8 +94,17 @@ public class RpcResourcePool {
     }
 
     public Compression compress(Query query, byte[] payload) {
-        CompressionType compression = CompressionType.valueOf(query.properties().getString(dispatchCompression, "LZ4").toUpperCase());
-        return compressor.compress(compression, payload);
+        return compressor.compress(compressionType(query), payload);
+    }
+
+    /** Returns the compression type to use for requests made for the given query */
+    public CompressionType compressionType(Query query) {
+        return CompressionType.valueOf(query.properties().getString(dispatchCompression, "LZ4").toUpperCase());
+    }
+
+    /** Returns the batcher of docsum requests, or empty if docsum requests should be sent one by one */
+    Optional<DocsumRequestBatcher> docsumBatcher() {
+        return docsumBatcher;
     }
 
     public NodeConnection getConnection(int nodeId) {
@@ -74,6 +117,7 @@ public class RpcResourcePool {
     }
 
     public void release() {
+        docsumBatcher.ifPresent(DocsumRequestBatcher::shutdown);
         nodeConnectionPools.values().forEach(NodeConnectionPool::release);
     }
 
@@ -33,6 +33,7 @@ public class RpcSearchInvoker extends SearchInvoker implements Client.ResponseRe
     private final BlockingQueue<Client.ResponseOrError<ProtobufResponse>> responses;
 
     private Query query;
+    private long sendTime;
 
     RpcSearchInvoker(VespaBackEndSearcher searcher, Node node, RpcResourcePool resourcePool) {
         super(Optional.of(node));
@@ -57,6 +58,7 @@ public class RpcSearchInvoker extends SearchInvoker implements Client.ResponseRe
         var payload = ProtobufSerialization.serializeSearchRequest(query, searcher.getServerId());
         double timeoutSeconds = ((double) query.getTimeLeft() - 3.0) / 1000.0;
         Compressor.Compression compressionResult = resourcePool.compress(query, payload);
+        sendTime = System.currentTimeMillis();
         nodeConnection.request(RPC_METHOD, compressionResult.type(), payload.length, compressionResult.data(), this, timeoutSeconds);
     }
 
@@ -96,6 +98,8 @@ public class RpcSearchInvoker extends SearchInvoker implements Client.ResponseRe
     }
 
     public void receive(Client.ResponseOrError<ProtobufResponse> response) {
+        if (response.response().isPresent())
+            node.recordSearchLatency(System.currentTimeMillis() - sendTime);
         responses.add(response);
         responseAvailable();
     }
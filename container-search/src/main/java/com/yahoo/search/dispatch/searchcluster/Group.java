@@ -4,6 +4,7 @@ package com.yahoo.search.dispatch.searchcluster;
 import com.google.common.collect.ImmutableList;
 
 import java.util.List;
+import java.util.OptionalLong;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -51,6 +52,22 @@ public class Group {
         hasSufficientCoverage.lazySet(sufficientCoverage);
     }
 
+    /**
+     * Returns the highest given search latency percentile of the working nodes of this group,
+     * which is the time after which a search to the group should be expected to have completed,
+     * or empty if this is not known for all the working nodes
+     */
+    public OptionalLong searchLatencyPercentile(double percentile) {
+        long max = -1;
+        for (Node node : nodes) {
+            if (node.isWorking() == Boolean.FALSE) continue;
+            OptionalLong latency = node.searchLatencyPercentile(percentile);
+            if (latency.isEmpty()) return OptionalLong.empty();
+            max = Math.max(max, latency.getAsLong());
+        }
+        return max < 0 ? OptionalLong.empty() : OptionalLong.of(max);
+    }
+
     public int workingNodes() {
         int nodesUp = 0;
         for (Node node : nodes) {
@@ -0,0 +1,48 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch.searchcluster;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+
+/**
+ * Keeps the most recent latencies observed for requests to a node, and computes percentiles over them.
+ * Percentiles are computed from a sorted copy of the samples which is refreshed after a number of new samples,
+ * so that looking them up on each query is cheap.
+ *
+ * This class is multithread safe.
+ */
+class LatencyTracker {
+
+    /** The number of recent samples kept */
+    static final int SAMPLES = 256;
+
+    /** The number of samples required before percentiles are returned */
+    static final int MIN_SAMPLES = 32;
+
+    /** The number of new samples after which the sorted copy is refreshed */
+    private static final int REFRESH_INTERVAL = 16;
+
+    private final long[] samples = new long[SAMPLES];
+    private long count = 0;
+
+    private long[] sorted = null;
+    private long sortedAtCount = 0;
+
+    synchronized void add(long latencyMillis) {
+        samples[(int)(count++ % SAMPLES)] = latencyMillis;
+    }
+
+    /** Returns the given percentile (0-100) of the recent latencies, or empty if there are too few samples */
+    synchronized OptionalLong percentile(double percentile) {
+        if (count < MIN_SAMPLES) return OptionalLong.empty();
+
+        if (sorted == null || count - sortedAtCount >= REFRESH_INTERVAL) {
+            sorted = Arrays.copyOf(samples, (int)Math.min(count, SAMPLES));
+            Arrays.sort(sorted);
+            sortedAtCount = count;
+        }
+        int index = (int)Math.ceil(sorted.length * percentile / 100.0) - 1;
+        return OptionalLong.of(sorted[Math.max(0, Math.min(sorted.length - 1, index))]);
+    }
+
+}
@@ -2,6 +2,7 @@
 package com.yahoo.search.dispatch.searchcluster;
 
 import java.util.Objects;
+import java.util.OptionalLong;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -21,6 +22,7 @@ public class Node {
     private final AtomicBoolean statusIsKnown = new AtomicBoolean(false);
     private final AtomicBoolean working = new AtomicBoolean(true);
     private final AtomicLong activeDocuments = new AtomicLong(0);
+    private final LatencyTracker searchLatency = new LatencyTracker();
 
     public Node(int key, String hostname, int group) {
         this.key = key;
@@ -65,6 +67,19 @@ public class Node {
         return activeDocuments.get();
     }
 
+    /** Records the time it took for this node to answer a search request */
+    public void recordSearchLatency(long latencyMillis) {
+        searchLatency.add(latencyMillis);
+    }
+
+    /**
+     * Returns the given percentile (0-100) of the time it took this node to answer recent search requests,
+     * or empty if not enough requests have been answered to tell
+     */
+    public OptionalLong searchLatencyPercentile(double percentile) {
+        return searchLatency.percentile(percentile);
+    }
+
     @Override
     public int hashCode() { return Objects.hash(hostname, key, pathIndex, group); }
 
@@ -23,6 +23,7 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -48,6 +49,9 @@ public class SearchCluster implements NodeManager<Node> {
     private PingFactory pingFactory;
     private long nextLogTime = 0;
 
+    /** Incremented each time a node or group changes state in a way which may change query results */
+    private final AtomicLong stateGeneration = new AtomicLong(0);
+
     /**
      * A search node on this local machine having the entire corpus, which we therefore
      * should prefer to dispatch directly to, or empty if there is no such local search node.
@@ -207,8 +211,15 @@ public class SearchCluster implements NodeManager<Node> {
         return localCorpusDispatchTarget;
     }
 
+    /**
+     * Returns a number which is incremented each time the working status of a node or the coverage status
+     * of a group changes, such that results computed at different generations may differ.
+     */
+    public long stateGeneration() { return stateGeneration.get(); }
+
     private void updateWorkingState(Node node, boolean isWorking) {
         node.setWorking(isWorking);
+        stateGeneration.incrementAndGet();
         updateVipStatusOnNodeChange(node, isWorking);
     }
 
@@ -228,6 +239,7 @@ public class SearchCluster implements NodeManager<Node> {
         if (sufficientCoverage == group.hasSufficientCoverage()) return; // no change
 
         group.setHasSufficientCoverage(sufficientCoverage);
+        stateGeneration.incrementAndGet();
         updateVipStatusOnCoverageChange(group, sufficientCoverage);
     }
 
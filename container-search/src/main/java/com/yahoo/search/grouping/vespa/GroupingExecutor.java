@@ -326,29 +326,44 @@ public class GroupingExecutor extends Searcher {
      * @return A map of merged grouping objects.
      */
     private Map<Integer, Grouping> mergeGroupingResults(Result result) {
-        Map<Integer, Grouping> ret = new HashMap<>();
+        Map<Integer, List<Grouping>> partials = new HashMap<>();
         for (Iterator<Hit> i = result.hits().unorderedIterator(); i.hasNext(); ) {
             Hit hit = i.next();
             if (hit instanceof GroupingListHit) {
                 ContextInjector injector = new ContextInjector(hit);
                 for (Grouping grp : ((GroupingListHit)hit).getGroupingList()) {
                     grp.select(injector, injector);
-                    Grouping old = ret.get(grp.getId());
-                    if (old != null) {
-                        old.merge(grp);
-                    } else {
-                        ret.put(grp.getId(), grp);
-                    }
+                    partials.computeIfAbsent(grp.getId(), id -> new ArrayList<>()).add(grp);
                 }
                 i.remove();
             }
         }
-        for (Grouping grouping : ret.values()) {
+        Map<Integer, Grouping> ret = new HashMap<>();
+        for (List<Grouping> groupings : partials.values()) {
+            Grouping grouping = merge(groupings);
             grouping.postMerge();
+            ret.put(grouping.getId(), grouping);
         }
         return ret;
     }
 
+    /**
+     * Merges the given partial results of the same grouping pairwise, in rounds, into the first of them.
+     * Merging one by one into a single grouping makes every group in the growing result be merged again for
+     * every partial result, while merging pairwise merges each group only about log2(n) times.
+     *
+     * @param groupings the partial results to merge, which must be at least one. This is modified.
+     * @return the merged grouping, which is the first of the given groupings
+     */
+    static Grouping merge(List<Grouping> groupings) {
+        for (int step = 1; step < groupings.size(); step *= 2) {
+            for (int i = 0; i + step < groupings.size(); i += 2 * step) {
+                groupings.get(i).merge(groupings.get(i + step));
+            }
+        }
+        return groupings.get(0);
+    }
+
     /**
      * Returns the list of {@link Grouping} objects assigned to the given query. If no list has been assigned, this
      * method returns an empty list.
@@ -10,6 +10,7 @@ import com.yahoo.component.provider.ComponentRegistry;
 import com.yahoo.container.QrSearchersConfig;
 import com.yahoo.container.core.ChainsConfig;
 import com.yahoo.container.core.ContainerHttpConfig;
+import com.yahoo.container.jdisc.ByteBufferPool;
 import com.yahoo.container.jdisc.HttpRequest;
 import com.yahoo.container.jdisc.HttpResponse;
 import com.yahoo.container.jdisc.LoggingRequestHandler;
@@ -25,6 +26,7 @@ import com.yahoo.prelude.query.QueryException;
 import com.yahoo.prelude.query.parser.ParseException;
 import com.yahoo.processing.rendering.Renderer;
 import com.yahoo.processing.request.CompoundName;
+import com.yahoo.search.query.ParsedQueryCache;
 import com.yahoo.search.query.ranking.SoftTimeout;
 import com.yahoo.search.searchchain.ExecutionFactory;
 import com.yahoo.slime.Inspector;
@@ -80,6 +82,20 @@ public class SearchHandler extends LoggingRequestHandler {
     /** Event name for number of connections to the search subsystem */
     private static final String SEARCH_CONNECTIONS = "search_connections";
 
+    /** Metric names for the number of running and waiting asynchronous search chain tasks */
+    private static final String ASYNC_ACTIVE_TASKS = "search.async.active_tasks";
+    private static final String ASYNC_QUEUED_TASKS = "search.async.queued_tasks";
+
+    /** Metric names for the use of the cache of parsed queries since this container generation started */
+    private static final String PARSED_QUERY_CACHE_HIT_RATIO = "query_parse_cache_hit_ratio";
+    private static final String PARSED_QUERY_CACHE_SIZE = "query_parse_cache_size";
+    private static final String PARSED_QUERY_CACHE_SAVED_PARSE_MILLIS = "query_parse_cache_saved_parse_millis";
+
+    /** Metric names for the pool of buffers responses are rendered into, if used */
+    private static final String OUTPUT_BUFFERS_AVAILABLE = "search.render.pooled_buffers_available";
+    private static final String OUTPUT_BUFFERS_IN_USE = "search.render.pooled_buffers_in_use";
+    private static final String OUTPUT_BUFFERS_ALLOCATED = "search.render.pooled_buffers_allocated";
+
     private static final String JSON_CONTENT_TYPE = "application/json";
 
     private static Logger log = Logger.getLogger(SearchHandler.class.getName());
@@ -98,6 +114,12 @@ public class SearchHandler extends LoggingRequestHandler {
 
     private final ExecutionFactory executionFactory;
 
+    /**
+     * The pool of buffers responses are rendered into, or null to allocate buffers for each response.
+     * This is used if pooledOutputBuffers is set in the container http config.
+     */
+    private final ByteBufferPool outputBufferPool;
+
     private final class MeanConnections implements Callback {
 
         @Override
@@ -126,7 +148,8 @@ public class SearchHandler extends LoggingRequestHandler {
              QueryProfileConfigurer.createFromConfig(queryProfileConfig).compile(),
              executionFactory,
              containerHttpConfig.hostResponseHeaderKey().equals("") ?
-             Optional.empty() : Optional.of( containerHttpConfig.hostResponseHeaderKey()));
+             Optional.empty() : Optional.of( containerHttpConfig.hostResponseHeaderKey()),
+             createOutputBufferPool(containerHttpConfig));
     }
 
     public SearchHandler(Statistics statistics,
@@ -136,6 +159,17 @@ public class SearchHandler extends LoggingRequestHandler {
                          CompiledQueryProfileRegistry queryProfileRegistry,
                          ExecutionFactory executionFactory,
                          Optional<String> hostResponseHeaderKey) {
+        this(statistics, metric, executor, accessLog, queryProfileRegistry, executionFactory, hostResponseHeaderKey, null);
+    }
+
+    private SearchHandler(Statistics statistics,
+                          Metric metric,
+                          Executor executor,
+                          AccessLog accessLog,
+                          CompiledQueryProfileRegistry queryProfileRegistry,
+                          ExecutionFactory executionFactory,
+                          Optional<String> hostResponseHeaderKey,
+                          ByteBufferPool outputBufferPool) {
         super(executor, accessLog, metric, true);
         log.log(LogLevel.DEBUG, "SearchHandler.init " + System.identityHashCode(this));
         this.queryProfileRegistry = queryProfileRegistry;
@@ -150,6 +184,7 @@ public class SearchHandler extends LoggingRequestHandler {
                                                             .setCallback(new MeanConnections()));
 
         this.hostResponseHeaderKey = hostResponseHeaderKey;
+        this.outputBufferPool = outputBufferPool;
     }
 
     /** @deprecated use the other constructor */
@@ -183,6 +218,14 @@ public class SearchHandler extends LoggingRequestHandler {
         return Integer.MAX_VALUE; // assume unbound
     }
 
+    private static ByteBufferPool createOutputBufferPool(ContainerHttpConfig config) {
+        if ( ! config.pooledOutputBuffers()) return null;
+        return new ByteBufferPool(ByteBufferPool.DEFAULT_BUFFER_SIZE, config.maxPooledOutputBuffers());
+    }
+
+    @Override
+    protected ByteBufferPool outputBufferPool() { return outputBufferPool; }
+
     @Override
     public final HttpResponse handle(com.yahoo.container.jdisc.HttpRequest request) {
         requestsInFlight.incrementAndGet();
@@ -418,9 +461,28 @@ public class SearchHandler extends LoggingRequestHandler {
         }
     }
 
+    private void parsedQueryCacheStatistics(ParsedQueryCache cache) {
+        long lookups = cache.hits() + cache.misses();
+        if (lookups == 0) return;
+        metric.set(PARSED_QUERY_CACHE_HIT_RATIO, (double)cache.hits() / lookups, null);
+        metric.set(PARSED_QUERY_CACHE_SIZE, cache.size(), null);
+        metric.set(PARSED_QUERY_CACHE_SAVED_PARSE_MILLIS, cache.savedParseNanos() / 1000_000, null);
+    }
+
+    private void outputBufferStatistics() {
+        if (outputBufferPool == null) return;
+        metric.set(OUTPUT_BUFFERS_AVAILABLE, outputBufferPool.available(), null);
+        metric.set(OUTPUT_BUFFERS_IN_USE, outputBufferPool.inUse(), null);
+        metric.set(OUTPUT_BUFFERS_ALLOCATED, outputBufferPool.allocated(), null);
+    }
+
     private void connectionStatistics() {
         int connections = requestsInFlight.intValue();
         searchConnections.put(connections);
+        metric.set(ASYNC_ACTIVE_TASKS, executionFactory.activeAsyncTasks(), null);
+        metric.set(ASYNC_QUEUED_TASKS, executionFactory.queuedAsyncTasks(), null);
+        parsedQueryCacheStatistics(executionFactory.parsedQueryCache());
+        outputBufferStatistics();
         if (maxThreads > 3) {
             // cast to long to avoid overflows if maxThreads is at no
             // log value (maxint)
@@ -10,7 +10,6 @@ import com.yahoo.prelude.query.TaggableItem;
 import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.Query;
 import com.yahoo.search.query.parser.Parsable;
-import com.yahoo.search.query.parser.Parser;
 import com.yahoo.search.query.parser.ParserEnvironment;
 import com.yahoo.search.query.parser.ParserFactory;
 import com.yahoo.search.query.profile.types.FieldDescription;
@@ -24,6 +23,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import static com.yahoo.text.Lowercase.toLowerCase;
 
@@ -232,12 +232,15 @@ public class Model implements Cloneable {
     /**
      * Returns the query as an object structure. Remember to have the correct Query.Type set.
      * This causes parsing of the query string if it has changed since this was last called
-     * (i.e query parsing is lazy)
+     * (i.e query parsing is lazy), unless the execution of this has a cache containing the parsed query.
      */
     public QueryTree getQueryTree() {
         if (queryTree == null) {
-            Parser parser = ParserFactory.newInstance(type, ParserEnvironment.fromExecutionContext(execution.context()));
-            queryTree = parser.parse(Parsable.fromQueryModel(this));
+            Execution.Context context = execution.context();
+            Supplier<QueryTree> parser = () -> ParserFactory.newInstance(type, ParserEnvironment.fromExecutionContext(context))
+                                                           .parse(Parsable.fromQueryModel(this));
+            queryTree = context.parsedQueryCache() != null ? context.parsedQueryCache().get(this, context, parser)
+                                                           : parser.get();
             if (parent.getTraceLevel() >= 2) {
                 parent.trace("Query parsed to: " + parent.yqlRepresentation(), 2);
             }
@@ -0,0 +1,173 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.query;
+
+import com.yahoo.language.Language;
+import com.yahoo.language.Linguistics;
+import com.yahoo.prelude.IndexFacts;
+import com.yahoo.prelude.query.parser.SpecialTokenRegistry;
+import com.yahoo.search.Query;
+import com.yahoo.search.searchchain.Execution;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A size bounded cache of parsed query trees, used to avoid parsing the same query strings repeatedly.
+ *
+ * Trees are keyed on everything the parsers read: The query string, type, filter, default index,
+ * explicit language and encoding, sources and restrict. A cache is created for a given parser environment
+ * (index facts, linguistics and special tokens) and is only used by executions which have that same environment,
+ * such that queries are never parsed differently because they are cached. The cache is owned by the
+ * {@link com.yahoo.search.searchchain.ExecutionFactory} and therefore discarded on reconfiguration.
+ *
+ * The trees in the cache are never exposed: A clone is stored when a tree is added, and a clone is
+ * returned on each lookup.
+ *
+ * This class is multithread safe.
+ */
+public final class ParsedQueryCache {
+
+    /** The default max number of trees in a cache */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final int capacity;
+    private final IndexFacts indexFacts;
+    private final Linguistics linguistics;
+    private final SpecialTokenRegistry tokenRegistry;
+
+    /** The entries of this in least recently used first order */
+    private final LinkedHashMap<Key, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedParseNanos = new AtomicLong();
+
+    public ParsedQueryCache(int capacity, IndexFacts indexFacts, Linguistics linguistics, SpecialTokenRegistry tokenRegistry) {
+        this.capacity = capacity;
+        this.indexFacts = indexFacts;
+        this.linguistics = linguistics;
+        this.tokenRegistry = tokenRegistry;
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ParsedQueryCache.Entry> eldest) {
+                return size() > ParsedQueryCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the query tree of the given model from this if present, and otherwise parses it by the given parser
+     * and adds it to this if cacheable.
+     *
+     * @param model the model to return the query tree of
+     * @param context the context of the execution parsing the query
+     * @param parser parses the model if it is not present in this
+     * @return the query tree of the model, which is owned by the caller
+     */
+    QueryTree get(Model model, Execution.Context context, Supplier<QueryTree> parser) {
+        if ( ! isCacheable(model, context)) return parser.get();
+
+        Key key = new Key(model);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+            savedParseNanos.addAndGet(entry.parseNanos);
+            return entry.tree.clone();
+        }
+
+        misses.incrementAndGet();
+        long startTime = System.nanoTime();
+        QueryTree tree = parser.get();
+        entry = new Entry(tree.clone(), System.nanoTime() - startTime);
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+        return tree;
+    }
+
+    private boolean isCacheable(Model model, Execution.Context context) {
+        if (model.getType() == Query.Type.SELECT || model.getType() == Query.Type.PROGRAMMATIC) return false;
+        return context.getIndexFacts() == indexFacts &&
+               context.getLinguistics() == linguistics &&
+               context.getTokenRegistry() == tokenRegistry;
+    }
+
+    /** Returns the number of lookups which were found in this */
+    public long hits() { return hits.get(); }
+
+    /** Returns the number of lookups which were not found in this */
+    public long misses() { return misses.get(); }
+
+    /** Returns the total time spent parsing the queries found in this when they were first parsed, in nanoseconds */
+    public long savedParseNanos() { return savedParseNanos.get(); }
+
+    /** Returns the number of trees in this */
+    public synchronized int size() { return entries.size(); }
+
+    /** The properties of a model which determines its parsed query tree */
+    private static final class Key {
+
+        private final Query.Type type;
+        private final String queryString;
+        private final String filter;
+        private final String defaultIndex;
+        private final Language language;
+        private final String encoding;
+        private final Set<String> sources;
+        private final Set<String> restrict;
+        private final int hashCode;
+
+        Key(Model model) {
+            this.type = model.getType();
+            this.queryString = model.getQueryString();
+            this.filter = model.getFilter();
+            this.defaultIndex = model.getDefaultIndex();
+            this.language = model.getLanguage();
+            this.encoding = model.getEncoding();
+            this.sources = new HashSet<>(model.getSources());
+            this.restrict = new HashSet<>(model.getRestrict());
+            this.hashCode = Objects.hash(type, queryString, filter, defaultIndex, language, encoding, sources, restrict);
+        }
+
+        @Override
+        public int hashCode() { return hashCode; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if ( ! (o instanceof Key)) return false;
+            Key other = (Key)o;
+            return hashCode == other.hashCode &&
+                   type == other.type &&
+                   queryString.equals(other.queryString) &&
+                   Objects.equals(filter, other.filter) &&
+                   Objects.equals(defaultIndex, other.defaultIndex) &&
+                   language == other.language &&
+                   Objects.equals(encoding, other.encoding) &&
+                   sources.equals(other.sources) &&
+                   restrict.equals(other.restrict);
+        }
+
+    }
+
+    private static final class Entry {
+
+        final QueryTree tree;
+        final long parseNanos;
+
+        Entry(QueryTree tree, long parseNanos) {
+            this.tree = tree;
+            this.parseNanos = parseNanos;
+        }
+
+    }
+
+}
@@ -8,6 +8,7 @@ import com.yahoo.protect.Validator;
 import com.yahoo.search.query.Properties;
 import com.yahoo.search.query.profile.compiled.CompiledQueryProfile;
 import com.yahoo.search.query.profile.compiled.DimensionalValue;
+import com.yahoo.search.query.profile.compiled.VariantLookup;
 import com.yahoo.search.query.profile.types.FieldDescription;
 import com.yahoo.search.query.profile.types.QueryProfileType;
 
@@ -34,6 +35,9 @@ public class QueryProfileProperties extends Properties {
     /** Query profile references which has been overridden at runtime, or null if none. Earlier values has precedence */
     private List<Pair<CompoundName, CompiledQueryProfile>> references = null;
 
+    /** The variant of the profile matching the context of the last lookup, or null if none */
+    private VariantLookup lookup = null;
+
     /** Creates an instance from a profile, throws an exception if the given profile is null */
     public QueryProfileProperties(CompiledQueryProfile profile) {
         Validator.ensureNotNull("The profile wrapped by this cannot be null", profile);
@@ -58,7 +62,7 @@ public class QueryProfileProperties extends Properties {
         }
 
         if (value == null)
-            value = profile.get(name, context, substitution);
+            value = profile.get(name, lookup(context), context, substitution);
         if (value == null)
             value = super.get(name, context, substitution);
         return value;
@@ -78,7 +82,7 @@ public class QueryProfileProperties extends Properties {
             if (context == null)
                 context = Collections.emptyMap();
 
-            if ( ! profile.isOverridable(name, context)) return;
+            if ( ! profile.isOverridableInVariant(name, lookup(context))) return;
 
             // Check runtime references
             Pair<CompoundName, CompiledQueryProfile> runtimeReference = findReference(name);
@@ -88,7 +92,7 @@ public class QueryProfileProperties extends Properties {
             // Check types
             if ( ! profile.getTypes().isEmpty()) {
                 for (int i = 0; i<name.size(); i++) {
-                    QueryProfileType type = profile.getType(name.first(i), context);
+                    QueryProfileType type = profile.getTypeInVariant(name.first(i), lookup(context));
                     if (type == null) continue;
                     String localName = name.get(i);
                     FieldDescription fieldDescription = type.getField(localName);
@@ -234,9 +238,10 @@ public class QueryProfileProperties extends Properties {
     CompoundName unalias(CompoundName name, Map<String,String> context) {
         if (profile.getTypes().isEmpty()) return name;
 
+        VariantLookup lookup = lookup(context);
         CompoundName unaliasedName = name;
         for (int i = 0; i<name.size(); i++) {
-            QueryProfileType type = profile.getType(name.first(i), context);
+            QueryProfileType type = profile.getTypeInVariant(name.first(i), lookup);
             if (type == null) continue;
             if (type.aliases() == null) continue; // TODO: Make never null
             if (type.aliases().isEmpty()) continue;
@@ -247,6 +252,13 @@ public class QueryProfileProperties extends Properties {
         return unaliasedName;
     }
 
+    /** Returns the variant of the profile matching the given context, resolving it only if the context changes */
+    private VariantLookup lookup(Map<String, String> context) {
+        if (lookup == null || ! profile.isValid(lookup, context))
+            lookup = profile.lookup(context);
+        return lookup;
+    }
+
     @Override
     public QueryProfileProperties clone() {
         QueryProfileProperties clone = (QueryProfileProperties)super.clone();
@@ -6,7 +6,9 @@ import com.yahoo.search.query.profile.DimensionBinding;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * An immutable binding of a set of dimensions to values.
@@ -113,6 +115,12 @@ public class Binding implements Comparable<Binding> {
         return true;
     }
 
+    /** Adds the values of each dimension of this to the given map of values by dimension */
+    void collectDimensionValues(Map<String, Set<String>> values) {
+        for (int i = 0; i < dimensions.length; i++)
+            values.computeIfAbsent(dimensions[i], k -> new HashSet<>()).add(dimensionValues[i]);
+    }
+
     /**
      * Implements a partial ordering where more specific bindings come before less specific ones,
      * taking both the number of bindings and their positions into account (earlier dimensions
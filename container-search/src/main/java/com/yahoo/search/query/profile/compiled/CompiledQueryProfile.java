@@ -42,6 +42,9 @@ public class CompiledQueryProfile extends AbstractComponent implements Cloneable
     /** Values which are not overridable in this. Used as a set. */
     private final DimensionalMap<CompoundName, Object> unoverridables;
 
+    /** Resolves and caches the variants of this */
+    private final VariantLookup.Factory lookups;
+
     /**
      * Creates a new query profile from an id.
      */
@@ -61,6 +64,7 @@ public class CompiledQueryProfile extends AbstractComponent implements Cloneable
         this.types = types;
         this.references = references;
         this.unoverridables = unoverridables;
+        this.lookups = new VariantLookup.Factory(entries, types, unoverridables);
         if ( ! id.isAnonymous())
             validateName(id.getName());
     }
@@ -83,12 +87,47 @@ public class CompiledQueryProfile extends AbstractComponent implements Cloneable
      * @param context the context in which to check, or null if none
      */
     public final boolean isOverridable(CompoundName name, Map<String, String> context) {
-        return unoverridables.get(name, context) == null;
+        return lookup(context).isOverridable(name);
+    }
+
+    /**
+     * Returns whether or not the given field name can be overridden at runtime in the given variant.
+     *
+     * @param name the name of the field to check
+     * @param lookup the variant in which to check, as returned from {@link #lookup}
+     */
+    public final boolean isOverridableInVariant(CompoundName name, VariantLookup lookup) {
+        return lookup.isOverridable(name);
     }
 
     /** Returns the type of a given prefix reachable from this profile, or null if none */
     public final QueryProfileType getType(CompoundName name, Map<String, String> context) {
-        return types.get(name, context);
+        return lookup(context).getType(name);
+    }
+
+    /** Returns the type of a given prefix reachable from this profile in the given variant, or null if none */
+    public final QueryProfileType getTypeInVariant(CompoundName name, VariantLookup lookup) {
+        return lookup.getType(name);
+    }
+
+    /**
+     * Returns the variant of this matching the given context. Values can be looked up faster in this variant
+     * than by context as long as the dimension values in the context do not change.
+     *
+     * @param context the context to return the variant of, or null if none
+     */
+    public final VariantLookup lookup(Map<String, String> context) {
+        return lookups.lookup(context);
+    }
+
+    /**
+     * Returns whether the given variant lookup of this is the one matching the given context
+     *
+     * @param lookup a lookup returned from {@link #lookup} on this
+     * @param context the context to check, or null if none
+     */
+    public final boolean isValid(VariantLookup lookup, Map<String, String> context) {
+        return lookups.isValid(lookup, context);
     }
 
     /** Returns the types reachable from this, or an empty map (never null) if none */
@@ -155,7 +194,18 @@ public class CompiledQueryProfile extends AbstractComponent implements Cloneable
         return get(new CompoundName(name), context, substitution);
     }
     public final Object get(CompoundName name, Map<String, String> context, Properties substitution) {
-        return substitute(entries.get(name, context), context, substitution);
+        return get(name, lookup(context), context, substitution);
+    }
+    /**
+     * Returns the value of the given name in the given variant of this, or null if none
+     *
+     * @param name the name of the value to return
+     * @param lookup the variant to look up in, which must be the variant of this matching the context
+     * @param context the context used for substitution, or null if none
+     * @param substitution the properties to look up substitution values in, or null to not substitute
+     */
+    public final Object get(CompoundName name, VariantLookup lookup, Map<String, String> context, Properties substitution) {
+        return substitute(lookup.get(name), context, substitution);
     }
 
     private Object substitute(Object value, Map<String, String> context, Properties substitution) {
@@ -4,7 +4,9 @@ package com.yahoo.search.query.profile.compiled;
 import com.google.common.collect.ImmutableMap;
 import com.yahoo.search.query.profile.DimensionBinding;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -20,8 +22,22 @@ public class DimensionalMap<KEY, VALUE> {
 
     private final Map<KEY, DimensionalValue<VALUE>> values;
 
+    /** The index of each key of this in valueList */
+    private final Map<KEY, Integer> indexes;
+
+    /** The values of this in index order */
+    private final List<DimensionalValue<VALUE>> valueList;
+
     private DimensionalMap(Map<KEY, DimensionalValue<VALUE>> values) {
         this.values = ImmutableMap.copyOf(values);
+        Map<KEY, Integer> indexes = new HashMap<>();
+        List<DimensionalValue<VALUE>> valueList = new ArrayList<>(values.size());
+        for (Map.Entry<KEY, DimensionalValue<VALUE>> entry : this.values.entrySet()) {
+            indexes.put(entry.getKey(), valueList.size());
+            valueList.add(entry.getValue());
+        }
+        this.indexes = ImmutableMap.copyOf(indexes);
+        this.valueList = List.copyOf(valueList);
     }
 
     /** Returns the value for this key matching a context, or null if none */
@@ -41,6 +57,24 @@ public class DimensionalMap<KEY, VALUE> {
         return values.isEmpty();
     }
 
+    /** Returns the number of keys in this */
+    int size() { return valueList.size(); }
+
+    /** Returns the index of the given key in this, or -1 if it is not present */
+    int indexOf(KEY key) {
+        Integer index = indexes.get(key);
+        return index == null ? -1 : index;
+    }
+
+    /** Returns the value at the given index */
+    DimensionalValue<VALUE> valueAt(int index) { return valueList.get(index); }
+
+    /** Adds the values of each dimension bound in any variant in this to the given map of values by dimension */
+    void collectDimensionValues(Map<String, Set<String>> dimensionValues) {
+        for (DimensionalValue<VALUE> value : valueList)
+            value.collectDimensionValues(dimensionValues);
+    }
+
     public static class Builder<KEY, VALUE> {
 
         private Map<KEY, DimensionalValue.Builder<VALUE>> entries = new HashMap<>();
@@ -50,6 +50,12 @@ public class DimensionalValue<VALUE> {
 
     public boolean isEmpty() { return values.isEmpty(); }
 
+    /** Adds the values of each dimension bound in any variant of this to the given map of values by dimension */
+    void collectDimensionValues(Map<String, Set<String>> dimensionValues) {
+        for (Value<VALUE> value : values)
+            value.binding().collectDimensionValues(dimensionValues);
+    }
+
     @Override
     public String toString() {
         return values.toString();
@@ -0,0 +1,207 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.query.profile.compiled;
+
+import com.yahoo.processing.request.CompoundName;
+import com.yahoo.search.query.profile.types.QueryProfileType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The values of a compiled query profile in one variant, that is, for one binding of the dimensions of the profile.
+ * This allows the variant to be resolved once from the context of a request, after which values are looked up
+ * by index rather than by matching each candidate variant of the value against the context.
+ * <p>
+ * The values are resolved lazily and cached in this. Lookups are shared between all requests which have the
+ * same variant, and are multithread safe.
+ */
+public final class VariantLookup {
+
+    /** Marks a resolved value which is null */
+    private static final Object none = new Object();
+
+    /** Indexes of the arrays of resolved values */
+    private static final int ENTRIES = 0, TYPES = 1, UNOVERRIDABLES = 2;
+
+    private final int id;
+
+    private final DimensionalMap<CompoundName, Object> entries;
+    private final DimensionalMap<CompoundName, QueryProfileType> types;
+    private final DimensionalMap<CompoundName, Object> unoverridables;
+
+    /** The dimension values of this, or null for dimensions which have no value matching any variant */
+    private final String[] dimensionValues;
+
+    /** The context containing the dimension values of this */
+    private final Map<String, String> context;
+
+    /*
+     * The values resolved so far of entries, types and unoverridables, by the index of the key in the map,
+     * where null means not resolved yet. Each array is allocated when the first value is resolved from its map.
+     * Concurrent resolution of the same value, or allocation of the same array, is benign as the result
+     * is always the same, apart from some resolved values possibly being lost.
+     */
+    private final Object[][] resolved = new Object[3][];
+
+    private VariantLookup(int id, String[] dimensionValues, Map<String, String> context,
+                          DimensionalMap<CompoundName, Object> entries,
+                          DimensionalMap<CompoundName, QueryProfileType> types,
+                          DimensionalMap<CompoundName, Object> unoverridables) {
+        this.id = id;
+        this.dimensionValues = dimensionValues;
+        this.context = context;
+        this.entries = entries;
+        this.types = types;
+        this.unoverridables = unoverridables;
+    }
+
+    /**
+     * Returns the id of this variant, unique within the query profile,
+     * or -1 if this variant is not cached by the query profile.
+     */
+    public int id() { return id; }
+
+    /** Returns the value of the given key in this variant, or null if none */
+    Object get(CompoundName name) {
+        return resolve(name, entries, ENTRIES);
+    }
+
+    /** Returns the type of the given key in this variant, or null if none */
+    QueryProfileType getType(CompoundName name) {
+        return resolve(name, types, TYPES);
+    }
+
+    /** Returns whether the given key is overridable in this variant */
+    boolean isOverridable(CompoundName name) {
+        return resolve(name, unoverridables, UNOVERRIDABLES) == null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <VALUE> VALUE resolve(CompoundName name, DimensionalMap<CompoundName, VALUE> map, int mapIndex) {
+        int index = map.indexOf(name);
+        if (index < 0) return null;
+
+        Object[] resolved = this.resolved[mapIndex];
+        if (resolved == null)
+            this.resolved[mapIndex] = resolved = new Object[map.size()];
+        Object value = resolved[index];
+        if (value == null) {
+            value = map.valueAt(index).get(context);
+            resolved[index] = value == null ? none : value;
+        }
+        return value == none ? null : (VALUE)value;
+    }
+
+    @Override
+    public String toString() {
+        return "variant " + id + " " + context;
+    }
+
+    /** Creates and caches the lookups of a query profile */
+    static class Factory {
+
+        /** The max number of variant lookups cached by a query profile */
+        private static final int maxLookups = 10000;
+
+        /** The max total number of values which may be resolved in the variant lookups cached by a query profile */
+        private static final int maxSlots = 1 << 20;
+
+        /** The max number of variant lookups cached by this, such that they do not exceed maxSlots */
+        private final int maxCachedLookups;
+
+        private final DimensionalMap<CompoundName, Object> entries;
+        private final DimensionalMap<CompoundName, QueryProfileType> types;
+        private final DimensionalMap<CompoundName, Object> unoverridables;
+
+        /** The dimensions which are bound in some variant */
+        private final String[] dimensions;
+
+        /** The values each of those dimensions are bound to in some variant */
+        private final List<Set<String>> boundValues;
+
+        /** The lookup used when no dimensions are bound */
+        private final VariantLookup nullLookup;
+
+        private final Map<List<String>, VariantLookup> lookups = new ConcurrentHashMap<>();
+        private final AtomicInteger nextId = new AtomicInteger(1);
+
+        Factory(DimensionalMap<CompoundName, Object> entries,
+                DimensionalMap<CompoundName, QueryProfileType> types,
+                DimensionalMap<CompoundName, Object> unoverridables) {
+            this.entries = entries;
+            this.types = types;
+            this.unoverridables = unoverridables;
+
+            Map<String, Set<String>> dimensionValues = new LinkedHashMap<>();
+            entries.collectDimensionValues(dimensionValues);
+            types.collectDimensionValues(dimensionValues);
+            unoverridables.collectDimensionValues(dimensionValues);
+            this.dimensions = dimensionValues.keySet().toArray(new String[0]);
+            this.boundValues = List.copyOf(dimensionValues.values());
+            this.nullLookup = new VariantLookup(0, new String[dimensions.length], Collections.emptyMap(),
+                                                entries, types, unoverridables);
+            int slotsPerLookup = Math.max(1, entries.size() + types.size() + unoverridables.size());
+            this.maxCachedLookups = Math.min(maxLookups, Math.max(1, maxSlots / slotsPerLookup));
+        }
+
+        /** Returns the lookup for the variant matching the given context, which may be null */
+        VariantLookup lookup(Map<String, String> context) {
+            if (dimensions.length == 0 || context == null || context.isEmpty()) return nullLookup;
+
+            String[] values = new String[dimensions.length];
+            boolean anyBound = false;
+            for (int i = 0; i < dimensions.length; i++) {
+                values[i] = boundValue(i, context);
+                anyBound |= values[i] != null;
+            }
+            if ( ! anyBound) return nullLookup;
+
+            List<String> key = Arrays.asList(values);
+            VariantLookup lookup = lookups.get(key);
+            if (lookup != null) return lookup;
+
+            if (lookups.size() >= maxCachedLookups)
+                return create(-1, values);
+            return lookups.computeIfAbsent(key, k -> create(nextId.getAndIncrement(), values));
+        }
+
+        /** Returns whether the given lookup is the one which matches the given context, which may be null */
+        boolean isValid(VariantLookup lookup, Map<String, String> context) {
+            if (context == null) return lookup == nullLookup;
+            for (int i = 0; i < dimensions.length; i++) {
+                String value = boundValue(i, context);
+                if (value == null ? lookup.dimensionValues[i] != null : ! value.equals(lookup.dimensionValues[i]))
+                    return false;
+            }
+            return true;
+        }
+
+        /** Returns the number of variant lookups cached in this */
+        int size() { return lookups.size(); }
+
+        /** Returns the value of the dimension at the given index in the context, or null if no variant binds it */
+        private String boundValue(int dimensionIndex, Map<String, String> context) {
+            String value = context.get(dimensions[dimensionIndex]);
+            if (value == null) return null;
+            return boundValues.get(dimensionIndex).contains(value) ? value : null;
+        }
+
+        private VariantLookup create(int id, String[] values) {
+            Map<String, String> context = new HashMap<>();
+            for (int i = 0; i < dimensions.length; i++) {
+                if (values[i] != null)
+                    context.put(dimensions[i], values[i]);
+            }
+            return new VariantLookup(id, values, Collections.unmodifiableMap(context), entries, types, unoverridables);
+        }
+
+    }
+
+}
@@ -11,8 +11,7 @@ import com.yahoo.data.JsonProducer;
 import com.yahoo.data.access.Inspectable;
 import com.yahoo.data.access.Inspector;
 import com.yahoo.data.access.Type;
-import com.yahoo.data.access.simple.JsonRender;
-import com.yahoo.data.access.simple.Value;
+import com.yahoo.data.access.slime.BinaryView;
 import com.yahoo.document.datatypes.FieldValue;
 import com.yahoo.document.datatypes.StringFieldValue;
 import com.yahoo.document.datatypes.TensorFieldValue;
@@ -673,6 +672,8 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
      */
     public static class FieldConsumer implements Hit.RawUtf8Consumer {
 
+        private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
         private final JsonGenerator generator;
         private final boolean debugRendering;
 
@@ -750,38 +751,96 @@ public class JsonRenderer extends AsynchronousSectionedRenderer<Result> {
             return true;
         }
 
-        private static Inspector wrapAsMap(Inspector data) {
-            if (data.type() != Type.ARRAY) return null;
-            if (data.entryCount() == 0) return null;
-            Value.ObjectValue map = new Value.ObjectValue();
+        /** Returns whether the given data is an array of key and value objects */
+        private static boolean isMap(Inspector data) {
+            if (data.type() != Type.ARRAY) return false;
+            if (data.entryCount() == 0) return false;
             for (int i = 0; i < data.entryCount(); i++) {
                 Inspector obj = data.entry(i);
-                if (obj.type() != Type.OBJECT) return null;
-                if (obj.fieldCount() != 2) return null;
-                Inspector key = obj.field("key");
-                Inspector value = obj.field("value");
-                if (key.type() != Type.STRING) return null;
-                if (! value.valid()) return null;
-                map.put(key.asString(), value);
+                if (obj.type() != Type.OBJECT) return false;
+                if (obj.fieldCount() != 2) return false;
+                if (obj.field("key").type() != Type.STRING) return false;
+                if ( ! obj.field("value").valid()) return false;
             }
-            return map;
+            return true;
         }
 
         private void renderInspector(Inspector data) throws IOException {
-            Inspector asMap = wrapAsMap(data);
-            if (asMap != null) {
-                StringBuilder intermediate = new StringBuilder();
-                JsonRender.render(asMap, intermediate, true);
-                generator.writeRawValue(intermediate.toString());
-            } else {
+            if (isMap(data))
+                renderMap(data);
+            else
                 renderInspectorDirect(data);
+        }
+
+        /** Renders an array of key and value objects as a json object */
+        private void renderMap(Inspector data) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < data.entryCount(); i++) {
+                Inspector entry = data.entry(i);
+                generator.writeFieldName(entry.field("key").asString());
+                renderInspectorDirect(entry.field("value"));
             }
+            generator.writeEndObject();
         }
 
+        /** Renders the given data to the generator as it is read, without creating an intermediate json string */
         private void renderInspectorDirect(Inspector data) throws IOException {
-            StringBuilder intermediate = new StringBuilder();
-            JsonRender.render(data, intermediate, true);
-            generator.writeRawValue(intermediate.toString());
+            switch (data.type()) {
+                case EMPTY:
+                    generator.writeNull();
+                    break;
+                case BOOL:
+                    generator.writeBoolean(data.asBool());
+                    break;
+                case LONG:
+                    generator.writeNumber(data.asLong());
+                    break;
+                case DOUBLE:
+                    double value = data.asDouble();
+                    if (Double.isFinite(value))
+                        generator.writeNumber(value);
+                    else
+                        generator.writeNull();
+                    break;
+                case STRING:
+                    if (data instanceof BinaryView) {
+                        BinaryView view = (BinaryView)data;
+                        generator.writeUTF8String(view.buffer(), view.valueOffset(), view.valueLength());
+                    }
+                    else {
+                        generator.writeString(data.asString());
+                    }
+                    break;
+                case DATA:
+                    renderData(data.asData());
+                    break;
+                case ARRAY:
+                    generator.writeStartArray();
+                    for (int i = 0; i < data.entryCount(); i++)
+                        renderInspectorDirect(data.entry(i));
+                    generator.writeEndArray();
+                    break;
+                case OBJECT:
+                    generator.writeStartObject();
+                    for (Map.Entry<String, Inspector> field : data.fields()) {
+                        generator.writeFieldName(field.getKey());
+                        renderInspectorDirect(field.getValue());
+                    }
+                    generator.writeEndObject();
+                    break;
+            }
+        }
+
+        /** Renders data as a string of hex digits prefixed by "0x", as done by slime */
+        private void renderData(byte[] data) throws IOException {
+            char[] hex = new char[2 + data.length * 2];
+            hex[0] = '0';
+            hex[1] = 'x';
+            for (int i = 0; i < data.length; i++) {
+                hex[2 + i * 2] = HEX_DIGITS[(data[i] >> 4) & 0xf];
+                hex[3 + i * 2] = HEX_DIGITS[data[i] & 0xf];
+            }
+            generator.writeString(hex, 0, hex.length);
         }
 
         protected void renderFieldContents(Object field) throws IOException {
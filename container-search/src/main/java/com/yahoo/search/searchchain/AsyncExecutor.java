@@ -0,0 +1,166 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchchain;
+
+import com.yahoo.component.ComponentId;
+import com.yahoo.concurrent.ThreadFactoryFactory;
+import com.yahoo.search.config.AsyncExecutionConfig;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executor running the tasks of {@link AsyncExecution}.
+ *
+ * This has two modes:
+ * <ul>
+ *     <li><b>threadPerTask</b> (default): Each task gets its own thread from a large pool,
+ *     such that tasks never wait for a thread.
+ *     <li><b>bounded</b>: Tasks are run by a fixed number of carrier threads, and tasks
+ *     which cannot be run at once are queued. This keeps the thread count (and context switching) down
+ *     when there is a large fan-out to many chains, at the cost of tasks sometimes waiting for a thread.
+ * </ul>
+ *
+ * In either mode the number of tasks of each chain running concurrently can be limited. Tasks over the limit
+ * are queued without holding a thread, and started when another task of the same chain completes.
+ *
+ * The mode, number of threads and concurrency limit per chain are set in {@link AsyncExecutionConfig}.
+ * An executor with the default settings is shared by all executions which are not given another executor.
+ */
+final class AsyncExecutor {
+
+    enum Mode { threadPerTask, bounded }
+
+    private static final ThreadFactory threadFactory = ThreadFactoryFactory.getThreadFactory("search");
+
+    /** The executor used by executions which are not configured to use another: Thread per task and no limit */
+    static final AsyncExecutor defaultExecutor = new AsyncExecutor(Mode.threadPerTask, 0, 0);
+
+    private final Mode mode;
+    private final int maxConcurrencyPerChain;
+    private final ThreadPoolExecutor executor;
+
+    /** The tasks of each chain, only used when concurrency per chain is limited */
+    private final Map<ComponentId, ChainTasks> chainTasks = new ConcurrentHashMap<>();
+
+    private final AtomicInteger activeTasks = new AtomicInteger(0);
+    private final AtomicInteger queuedTasks = new AtomicInteger(0);
+
+    AsyncExecutor(Mode mode, int threads, int maxConcurrencyPerChain) {
+        this.mode = mode;
+        this.maxConcurrencyPerChain = maxConcurrencyPerChain;
+        if (mode == Mode.bounded) {
+            executor = new ThreadPoolExecutor(threads, threads, 1L, TimeUnit.SECONDS,
+                                              new LinkedBlockingQueue<>(), threadFactory);
+        }
+        else {
+            executor = new ThreadPoolExecutor(100, 8192, 1L, TimeUnit.SECONDS,
+                                              new SynchronousQueue<>(false), threadFactory);
+        }
+        // Prestart needed, if not all threads will be created by the fist N tasks and hence they might also
+        // get the dreaded thread locals initialized even if they will never run.
+        // That counters what we we want to achieve with the Q that will prefer thread locality.
+        executor.prestartAllCoreThreads();
+    }
+
+    /** Returns an executor as specified by the given config, which is the default executor if it has the default settings */
+    static AsyncExecutor from(AsyncExecutionConfig config) {
+        if (config.mode() == AsyncExecutionConfig.Mode.THREAD_PER_TASK && config.maxConcurrencyPerChain() <= 0)
+            return defaultExecutor;
+        int threads = config.threads() > 0 ? config.threads() : 4 * Runtime.getRuntime().availableProcessors();
+        return new AsyncExecutor(config.mode() == AsyncExecutionConfig.Mode.BOUNDED ? Mode.bounded : Mode.threadPerTask,
+                                 threads,
+                                 config.maxConcurrencyPerChain());
+    }
+
+    /**
+     * Runs the given task of the given chain, now or when both a thread and the concurrency limit permits
+     *
+     * @throws RejectedExecutionException if the task cannot be accepted for execution, e.g because this is shut down
+     */
+    void execute(ComponentId chain, Runnable task) {
+        queuedTasks.incrementAndGet();
+        if (maxConcurrencyPerChain <= 0 || chain == null) {
+            submit(task, null);
+            return;
+        }
+
+        ChainTasks tasks = chainTasks.computeIfAbsent(chain, __ -> new ChainTasks());
+        synchronized (tasks) {
+            if (tasks.active >= maxConcurrencyPerChain) {
+                tasks.pending.add(task);
+                return;
+            }
+            tasks.active++;
+        }
+        submit(task, tasks);
+    }
+
+    private void submit(Runnable task, ChainTasks tasks) {
+        try {
+            executor.execute(() -> {
+                queuedTasks.decrementAndGet();
+                activeTasks.incrementAndGet();
+                try {
+                    task.run();
+                }
+                finally {
+                    activeTasks.decrementAndGet();
+                    if (tasks != null)
+                        completed(tasks);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) { // Undo the accounting of the task, which will never run
+            queuedTasks.decrementAndGet();
+            if (tasks != null) {
+                synchronized (tasks) {
+                    tasks.active--;
+                }
+            }
+            throw e;
+        }
+    }
+
+    /** Starts the next pending task of a chain when one of its tasks has completed */
+    private void completed(ChainTasks tasks) {
+        Runnable next;
+        synchronized (tasks) {
+            next = tasks.pending.poll();
+            if (next == null)
+                tasks.active--;
+        }
+        if (next != null)
+            submit(next, tasks);
+    }
+
+    Mode mode() { return mode; }
+
+    /** Returns the number of tasks currently running */
+    int activeTasks() { return activeTasks.get(); }
+
+    /** Returns the number of tasks which are submitted but not yet running */
+    int queuedTasks() { return queuedTasks.get(); }
+
+    /** Returns the number of threads currently in the pool of this */
+    int threads() { return executor.getPoolSize(); }
+
+    void shutdown() { executor.shutdown(); }
+
+    /** The running and pending tasks of a chain. Access must be synchronized on the instance. */
+    private static class ChainTasks {
+
+        int active = 0;
+        final Queue<Runnable> pending = new ArrayDeque<>();
+
+    }
+
+}
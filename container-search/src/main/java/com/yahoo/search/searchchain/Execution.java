@@ -16,6 +16,7 @@ import com.yahoo.search.Query;
 import com.yahoo.search.Result;
 import com.yahoo.search.Searcher;
 import com.yahoo.search.cluster.PingableSearcher;
+import com.yahoo.search.query.ParsedQueryCache;
 import com.yahoo.search.rendering.RendererRegistry;
 import com.yahoo.search.statistics.TimeTracker;
 
@@ -83,6 +84,12 @@ public class Execution extends com.yahoo.processing.execution.Execution {
         /** The current linguistics */
         private Linguistics linguistics = null;
 
+        /** The cache of parsed queries to use, or null to parse all queries */
+        private ParsedQueryCache parsedQueryCache = null;
+
+        /** The executor of asynchronous executions, or null to use the default executor */
+        private AsyncExecutor asyncExecutor = null;
+
         /** Always set if this context belongs to an execution, never set if it does not. */
         private final Execution owner;
 
@@ -180,6 +187,12 @@ public class Execution extends com.yahoo.processing.execution.Execution {
             if (linguistics == null) {
                 linguistics = sourceContext.linguistics;
             }
+            if (parsedQueryCache == null) {
+                parsedQueryCache = sourceContext.parsedQueryCache;
+            }
+            if (asyncExecutor == null) {
+                asyncExecutor = sourceContext.asyncExecutor;
+            }
         }
 
         /**
@@ -195,6 +208,8 @@ public class Execution extends com.yahoo.processing.execution.Execution {
             detailedDiagnostics = other.detailedDiagnostics;
             breakdown = other.breakdown;
             linguistics = other.linguistics;
+            parsedQueryCache = other.parsedQueryCache;
+            asyncExecutor = other.asyncExecutor;
         }
 
         public boolean equals(Context other) {
@@ -206,7 +221,9 @@ public class Execution extends com.yahoo.processing.execution.Execution {
                     && other.searchChainRegistry == searchChainRegistry
                     && other.detailedDiagnostics == detailedDiagnostics
                     && other.breakdown == breakdown
-                    && other.linguistics == linguistics;
+                    && other.linguistics == linguistics
+                    && other.parsedQueryCache == parsedQueryCache
+                    && other.asyncExecutor == asyncExecutor;
         }
 
         @Override
@@ -214,7 +231,7 @@ public class Execution extends com.yahoo.processing.execution.Execution {
             return java.util.Objects.hash(indexFacts,
                                           rendererRegistry, tokenRegistry, searchChainRegistry,
                                           detailedDiagnostics, breakdown,
-                                          linguistics);
+                                          linguistics, parsedQueryCache, asyncExecutor);
         }
 
         @Override
@@ -363,6 +380,21 @@ public class Execution extends com.yahoo.processing.execution.Execution {
             this.linguistics = linguistics;
         }
 
+        /** Returns the cache of parsed queries to use in this, or null if none (the default) */
+        public ParsedQueryCache parsedQueryCache() { return parsedQueryCache; }
+
+        /** Sets the cache of parsed queries to use in this, or null to parse all queries */
+        public void setParsedQueryCache(ParsedQueryCache parsedQueryCache) {
+            this.parsedQueryCache = parsedQueryCache;
+        }
+
+        /** Returns the executor of asynchronous executions, or null to use the default executor */
+        AsyncExecutor asyncExecutor() { return asyncExecutor; }
+
+        void setAsyncExecutor(AsyncExecutor asyncExecutor) {
+            this.asyncExecutor = asyncExecutor;
+        }
+
         /** Creates a child trace if this has an owner, or a root trace otherwise */
         private Trace createChildTrace() {
             return owner!=null ? owner.trace().createChild() : Trace.createRoot(0);
@@ -1,6 +1,7 @@
 // Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.search.searchchain;
 
+import com.google.inject.Inject;
 import com.yahoo.component.AbstractComponent;
 import com.yahoo.component.chain.Chain;
 import com.yahoo.component.chain.ChainsConfigurer;
@@ -16,7 +17,9 @@ import com.yahoo.prelude.IndexModel;
 import com.yahoo.prelude.query.parser.SpecialTokenRegistry;
 import com.yahoo.processing.rendering.Renderer;
 import com.yahoo.search.Searcher;
+import com.yahoo.search.config.AsyncExecutionConfig;
 import com.yahoo.search.config.IndexInfoConfig;
+import com.yahoo.search.query.ParsedQueryCache;
 import com.yahoo.search.rendering.RendererRegistry;
 import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
 
@@ -34,6 +37,8 @@ public class ExecutionFactory extends AbstractComponent {
     private final SpecialTokenRegistry specialTokens;
     private final Linguistics linguistics;
     private final RendererRegistry rendererRegistry;
+    private final ParsedQueryCache parsedQueryCache;
+    private final AsyncExecutor asyncExecutor;
 
     public ExecutionFactory(ChainsConfig chainsConfig,
                             IndexInfoConfig indexInfo,
@@ -42,11 +47,27 @@ public class ExecutionFactory extends AbstractComponent {
                             SpecialtokensConfig specialTokens,
                             Linguistics linguistics,
                             ComponentRegistry<Renderer> renderers) {
+        this(chainsConfig, indexInfo, clusters, searchers, specialTokens, linguistics, renderers,
+             new AsyncExecutionConfig.Builder().build());
+    }
+
+    @Inject
+    public ExecutionFactory(ChainsConfig chainsConfig,
+                            IndexInfoConfig indexInfo,
+                            QrSearchersConfig clusters,
+                            ComponentRegistry<Searcher> searchers,
+                            SpecialtokensConfig specialTokens,
+                            Linguistics linguistics,
+                            ComponentRegistry<Renderer> renderers,
+                            AsyncExecutionConfig asyncExecutionConfig) {
         this.searchChainRegistry = createSearchChainRegistry(searchers, chainsConfig);
         this.indexFacts = new IndexFacts(new IndexModel(indexInfo, clusters)).freeze();
         this.specialTokens = new SpecialTokenRegistry(specialTokens);
         this.linguistics = linguistics;
         this.rendererRegistry = new RendererRegistry(renderers.allComponents());
+        this.parsedQueryCache = new ParsedQueryCache(ParsedQueryCache.DEFAULT_CAPACITY,
+                                                     this.indexFacts, linguistics, this.specialTokens);
+        this.asyncExecutor = AsyncExecutor.from(asyncExecutionConfig);
     }
 
     private SearchChainRegistry createSearchChainRegistry(ComponentRegistry<Searcher> searchers, ChainsConfig chainsConfig) {
@@ -62,8 +83,10 @@ public class ExecutionFactory extends AbstractComponent {
      * An execution instance should be used once to execute a (tree of) search chains.
      */
     public Execution newExecution(Chain<? extends Searcher> searchChain) {
-        return new Execution(searchChain,
-                             new Execution.Context(searchChainRegistry, indexFacts, specialTokens, rendererRegistry, linguistics));
+        Execution.Context context = new Execution.Context(searchChainRegistry, indexFacts, specialTokens, rendererRegistry, linguistics);
+        context.setParsedQueryCache(parsedQueryCache);
+        context.setAsyncExecutor(asyncExecutor);
+        return new Execution(searchChain, context);
     }
 
     /** Returns the search chain registry used by this */
@@ -72,9 +95,20 @@ public class ExecutionFactory extends AbstractComponent {
     /** Returns the renderers known to this */
     public RendererRegistry rendererRegistry() { return rendererRegistry; }
 
+    /** Returns the cache of parsed queries used by the executions created by this */
+    public ParsedQueryCache parsedQueryCache() { return parsedQueryCache; }
+
+    /** Returns the number of asynchronous tasks currently running in the executor used by this */
+    public int activeAsyncTasks() { return asyncExecutor.activeTasks(); }
+
+    /** Returns the number of asynchronous tasks which are waiting for a thread or for their chain to permit them */
+    public int queuedAsyncTasks() { return asyncExecutor.queuedTasks(); }
+
     @Override
     public void deconstruct() {
         rendererRegistry.deconstruct();
+        if (asyncExecutor != AsyncExecutor.defaultExecutor)
+            asyncExecutor.shutdown();
     }
 
     public static ExecutionFactory empty() {
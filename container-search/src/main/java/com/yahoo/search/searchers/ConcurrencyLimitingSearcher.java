@@ -0,0 +1,245 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchers;
+
+import com.google.inject.Inject;
+import com.yahoo.metrics.simple.Counter;
+import com.yahoo.metrics.simple.Gauge;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.Point;
+import com.yahoo.processing.request.CompoundName;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.config.ConcurrencyLimitingConfig;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.yolean.chain.Provides;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An adaptive concurrency limiter.
+ * <p>
+ * This keeps a limit on the number of queries executing concurrently in each search chain, and rejects queries
+ * exceeding it by returning a result containing a status 429 error. Rejecting early like this keeps the
+ * content layer from saturating, where queueing would increase the latency of all queries.
+ * <p>
+ * The limit is adjusted continuously from the latencies observed, in the manner of TCP Vegas:
+ * As long as the recent latency is within a tolerance of the long term latency, the limit grows by
+ * the square root of the limit. When the recent latency grows beyond that, the limit is reduced in proportion
+ * to the latency increase. The limit is not increased when less than half of it is in use, as such
+ * latencies carry no information about the capacity.
+ * <p>
+ * This takes these query parameter arguments:
+ * <ul>
+ *     <li>concurrency.priority - (String) the priority class of this query. Queries of a class are rejected
+ *     when the queries in flight exceeds the share of the limit configured for the class. This is typically set
+ *     in query profiles.
+ *     <li>concurrency.dryRun - (Boolean) emit metrics on rejected requests but don't actually reject them
+ * </ul>
+ * <p>
+ * Metrics: This will emit the gauges concurrencyLimit and queriesInFlight with the dimension [chain],
+ * and the count metric requestsOverConcurrencyLimit with the dimensions [chain, priority]
+ * counting rejected requests.
+ * <p>
+ * Ordering: This searcher Provides concurrencyLimiting
+ */
+@Provides(ConcurrencyLimitingSearcher.CONCURRENCY_LIMITING)
+public class ConcurrencyLimitingSearcher extends Searcher {
+
+    /** Constant containing the name this Provides - "concurrencyLimiting", for ordering constraints */
+    public static final String CONCURRENCY_LIMITING = "concurrencyLimiting";
+
+    public static final CompoundName priorityKey = new CompoundName("concurrency.priority");
+    public static final CompoundName dryRunKey = new CompoundName("concurrency.dryRun");
+
+    private static final String limitMetricName = "concurrencyLimit";
+    private static final String inFlightMetricName = "queriesInFlight";
+    private static final String requestsOverLimitMetricName = "requestsOverConcurrencyLimit";
+
+    private static final String chainDimension = "chain";
+    private static final String priorityDimension = "priority";
+
+    private final ConcurrencyLimitingConfig config;
+    private final Clock clock;
+
+    /** The share of the limit available to each priority class */
+    private final Map<String, Double> priorityShares;
+
+    /** The limit of each chain this is executed in */
+    private final Map<String, AdaptiveLimit> limits = new ConcurrentHashMap<>();
+
+    /** The metric dimensions of each chain this is executed in */
+    private final Map<String, Point> chainPoints = new ConcurrentHashMap<>();
+
+    private final Gauge limitGauge;
+    private final Gauge inFlightGauge;
+    private final Counter overLimitCounter;
+
+    @Inject
+    public ConcurrencyLimitingSearcher(ConcurrencyLimitingConfig config, MetricReceiver metric) {
+        this(config, metric, Clock.systemUTC());
+    }
+
+    /** For testing - allows injection of a timer to avoid depending on the system clock */
+    public ConcurrencyLimitingSearcher(ConcurrencyLimitingConfig config, MetricReceiver metric, Clock clock) {
+        if (config.minLimit() < 1 || config.minLimit() > config.maxLimit())
+            throw new IllegalArgumentException("The min limit must be at least 1 and at most the max limit, but was " +
+                                               config.minLimit() + " with max limit " + config.maxLimit());
+        this.config = config;
+        this.clock = clock;
+
+        Map<String, Double> priorityShares = new HashMap<>();
+        for (ConcurrencyLimitingConfig.Priority priority : config.priority())
+            priorityShares.put(priority.name(), priority.share());
+        this.priorityShares = Map.copyOf(priorityShares);
+
+        this.limitGauge = metric.declareGauge(limitMetricName);
+        this.inFlightGauge = metric.declareGauge(inFlightMetricName);
+        this.overLimitCounter = metric.declareCounter(requestsOverLimitMetricName);
+    }
+
+    @Override
+    public Result search(Query query, Execution execution) {
+        String chain = execution.chain().getId().stringValue();
+        AdaptiveLimit limit = limits.computeIfAbsent(chain, k -> new AdaptiveLimit(config));
+
+        String priority = query.properties().getString(priorityKey);
+        int inFlight = limit.tryAcquire(share(priority));
+        if (inFlight < 0) {
+            overLimitCounter.add(1, overLimitCounter.builder()
+                                                    .set(chainDimension, chain)
+                                                    .set(priorityDimension, priority == null ? "default" : priority)
+                                                    .build());
+            if ( ! query.properties().getBoolean(dryRunKey, false))
+                return new Result(query, new ErrorMessage(429, "Too many requests",
+                                                          "Concurrency limit: " + limit.limit()));
+            inFlight = limit.acquire();
+        }
+        Point chainPoint = chainPoints.computeIfAbsent(chain, k -> limitGauge.builder().set(chainDimension, k).build());
+        limitGauge.sample(limit.limit(), chainPoint);
+        inFlightGauge.sample(inFlight, chainPoint);
+
+        Instant start = clock.instant();
+        try {
+            return execution.search(query);
+        }
+        finally {
+            limit.release(Duration.between(start, clock.instant()).toNanos(), inFlight);
+        }
+    }
+
+    private double share(String priority) {
+        if (priority == null) return config.defaultShare();
+        return priorityShares.getOrDefault(priority, config.defaultShare());
+    }
+
+    /** Returns the current limit of the given chain, or -1 if this has not been executed in the chain */
+    public int limit(String chain) {
+        AdaptiveLimit limit = limits.get(chain);
+        return limit == null ? -1 : limit.limit();
+    }
+
+    /** Returns the number of queries in flight in the given chain */
+    public int inFlight(String chain) {
+        AdaptiveLimit limit = limits.get(chain);
+        return limit == null ? 0 : limit.inFlight();
+    }
+
+    /**
+     * A concurrency limit adjusted from the ratio between recent and long term latency.
+     * This is multithread safe.
+     */
+    static class AdaptiveLimit {
+
+        private final int minLimit;
+        private final int maxLimit;
+        private final double latencyTolerance;
+        private final double longWindow;
+        private final double shortWindow;
+        private final double smoothing;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        /** The current limit as a double to allow it to change by less than 1 per query */
+        private volatile double limit;
+
+        // Exponentially decaying average latencies in nanoseconds, or 0 before any latencies are seen
+        private double longLatency = 0;
+        private double shortLatency = 0;
+
+        AdaptiveLimit(ConcurrencyLimitingConfig config) {
+            this.minLimit = config.minLimit();
+            this.maxLimit = config.maxLimit();
+            this.latencyTolerance = config.latencyTolerance();
+            this.longWindow = Math.max(1, config.longWindow());
+            this.shortWindow = Math.max(1, config.shortWindow());
+            this.smoothing = config.smoothing();
+            this.limit = Math.max(minLimit, Math.min(maxLimit, config.initialLimit()));
+        }
+
+        /**
+         * Adds a query in flight unless it would exceed the given share of the limit.
+         *
+         * @return the number of queries in flight including this, or -1 if the query was rejected
+         */
+        int tryAcquire(double share) {
+            int allowed = Math.max(1, (int)(limit * share));
+            while (true) {
+                int current = inFlight.get();
+                if (current >= allowed) return -1;
+                if (inFlight.compareAndSet(current, current + 1))
+                    return current + 1;
+            }
+        }
+
+        /** Adds a query in flight regardless of the limit, returning the number of queries in flight including it */
+        int acquire() {
+            return inFlight.incrementAndGet();
+        }
+
+        /**
+         * Removes a query from those in flight and adjusts the limit from its latency.
+         *
+         * @param latencyNanos the latency of the query
+         * @param inFlightAtStart the number of queries in flight when this query started, including it
+         */
+        void release(long latencyNanos, int inFlightAtStart) {
+            inFlight.decrementAndGet();
+            update(Math.max(1, latencyNanos), inFlightAtStart);
+        }
+
+        private synchronized void update(double latency, int inFlightAtStart) {
+            if (longLatency == 0) {
+                longLatency = latency;
+                shortLatency = latency;
+            }
+            shortLatency += (latency - shortLatency) / shortWindow;
+            longLatency += (latency - longLatency) / longWindow;
+
+            // Let the long term latency recover quickly when latency drops, e.g after a temporary overload
+            if (longLatency > 2 * shortLatency)
+                longLatency *= 0.95;
+
+            // Latencies with less than half the limit in use tells nothing about whether the limit is too low
+            if (inFlightAtStart < limit / 2) return;
+
+            double gradient = Math.max(0.5, Math.min(1.0, latencyTolerance * longLatency / shortLatency));
+            double newLimit = limit * gradient + Math.sqrt(limit);
+            newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+            limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        }
+
+        int limit() { return (int)limit; }
+
+        int inFlight() { return inFlight.get(); }
+
+    }
+
+}
@@ -14,6 +14,7 @@ import com.yahoo.search.dispatch.searchcluster.SearchCluster;
 import com.yahoo.vespa.config.search.DispatchConfig;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
@@ -31,7 +32,11 @@ public class DispatcherTest {
     private static final CompoundName internalDispatch = new CompoundName("dispatch.internal");
 
     private static Query query() {
-        Query q = new Query();
+        return query("");
+    }
+
+    private static Query query(String request) {
+        Query q = new Query(request);
         q.properties().set(internalDispatch, "true");
         return q;
     }
@@ -106,6 +111,39 @@ public class DispatcherTest {
         invokerFactory.verifyAllEventsProcessed();
     }
 
+    @Test
+    public void requireThatResultCacheIsUsedWhenEnabled() throws IOException {
+        SearchCluster cl = new MockSearchCluster("1", 1, 2);
+        DispatchConfig dispatchConfig = new DispatchConfig.Builder().resultCacheMaxBytes(1000000).build();
+        MockInvokerFactory invokerFactory = new MockInvokerFactory(cl, (n, a) -> true);
+        Dispatcher disp = new Dispatcher(cl, dispatchConfig, invokerFactory, invokerFactory, new MockMetric());
+
+        try (SearchInvoker invoker = disp.getSearchInvoker(query("?query=foo"), null).get()) {
+            assertThat(invoker instanceof CachingSearchInvoker, is(true));
+            invoker.search(query("?query=foo"), null);
+        }
+        try (SearchInvoker invoker = disp.getSearchInvoker(query("?query=foo"), null).get()) {
+            assertThat(invoker instanceof CachedSearchInvoker, is(true));
+        }
+        invokerFactory.verifyAllEventsProcessed();
+    }
+
+    @Test
+    public void requireThatMinCoverageOutsideZeroToHundredIsRejected() throws IOException {
+        SearchCluster cl = new MockSearchCluster("1", 1, 2);
+        MockInvokerFactory invokerFactory = new MockInvokerFactory(cl);
+        Dispatcher disp = new Dispatcher(cl, createDispatchConfig(), invokerFactory, invokerFactory, new MockMetric());
+
+        Query q = query();
+        q.properties().set(Dispatcher.dispatchMinCoverage, 101.0);
+        try (SearchInvoker invoker = disp.getSearchInvoker(q, null).get()) {
+            assertThat(invoker instanceof SearchErrorInvoker, is(true));
+            Result result = invoker.search(q, null);
+            assertThat(result.hits().getError().getDetailedMessage(), is("'dispatch.minCoverage' must be in the range [0, 100], but was 101.0"));
+        }
+        invokerFactory.verifyAllEventsProcessed();
+    }
+
     interface FactoryStep {
         public boolean returnInvoker(List<Node> nodes, boolean acceptIncompleteCoverage);
     }
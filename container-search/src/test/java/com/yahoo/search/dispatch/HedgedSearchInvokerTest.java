@@ -0,0 +1,139 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.prelude.fastsearch.test.MockMetric;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.dispatch.searchcluster.SearchCluster;
+import com.yahoo.search.result.Coverage;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HedgedSearchInvokerTest {
+
+    private final MockMetric metric = new MockMetric();
+
+    @Test
+    public void requireThatNoHedgeIsSentWhenTheFirstGroupCompletesInTime() throws IOException {
+        TestInvoker primary = new TestInvoker(0, true);
+        TestInvoker other = new TestInvoker(1, true);
+        HedgeBudget budget = budget();
+        Query query = new Query("?query=test&timeout=10s");
+        Result result = hedged(primary, other, 1000, budget).search(query, null);
+
+        assertEquals(0, nodesOf(result));
+        assertFalse(other.sent);
+        assertTrue(budget.tryAcquire());
+    }
+
+    @Test
+    public void requireThatAllInvokersOfAGroupMustCompleteToAvoidHedging() throws IOException {
+        SearchCluster cluster = new MockSearchCluster("test", 2, 2);
+        InterleavedSearchInvoker primary = new InterleavedSearchInvoker(List.of(new TestInvoker(0, true), new TestInvoker(0, false)),
+                                                                         cluster, null);
+        TestInvoker other = new TestInvoker(1, true);
+        Result result = hedged(primary, other, 10, budget()).search(new Query("?query=test&timeout=10s"), null);
+
+        assertTrue(other.sent);
+        assertEquals(1, nodesOf(result));
+    }
+
+    @Test
+    public void requireThatTheHedgedResultIsUsedWhenTheFirstGroupIsSlow() throws IOException {
+        TestInvoker primary = new TestInvoker(0, false);
+        TestInvoker other = new TestInvoker(1, true);
+        Query query = new Query("?query=test&timeout=10s");
+        query.getModel().setSearchPath("/0");
+        Result result = hedged(primary, other, 10, budget()).search(query, null);
+
+        assertTrue(other.sent);
+        assertEquals(1, nodesOf(result));
+        assertEquals("/1", query.getModel().getSearchPath());
+        assertTrue(primary.closed);
+    }
+
+    @Test
+    public void requireThatTheFirstGroupIsUsedIfNoGroupCompletes() throws IOException {
+        TestInvoker primary = new TestInvoker(0, false);
+        TestInvoker other = new TestInvoker(1, false);
+        Result result = hedged(primary, other, 10, budget()).search(new Query("?query=test&timeout=100ms"), null);
+
+        assertTrue(other.sent);
+        assertTrue(other.closed);
+        assertEquals(0, nodesOf(result));
+    }
+
+    @Test
+    public void requireThatHedgingIsLimitedByBudget() throws IOException {
+        HedgeBudget budget = new HedgeBudget(0.5);
+        budget.searchDispatched();
+        TestInvoker other = new TestInvoker(1, true);
+        hedged(new TestInvoker(0, false), other, 10, budget).search(new Query("?query=test&timeout=100ms"), null);
+        assertFalse(other.sent);
+
+        budget.searchDispatched();
+        hedged(new TestInvoker(0, false), other, 10, budget).search(new Query("?query=test&timeout=10s"), null);
+        assertTrue(other.sent);
+    }
+
+    @Test
+    public void requireThatNoHedgeIsSentWithoutTimeForItToComplete() throws IOException {
+        TestInvoker other = new TestInvoker(1, true);
+        HedgeBudget budget = budget();
+        Result result = hedged(new TestInvoker(0, false), other, 1000, budget).search(new Query("?query=test&timeout=500ms"), null);
+        assertFalse(other.sent);
+        assertTrue(budget.tryAcquire());
+        assertNull(result.getQuery().getModel().getSearchPath());
+    }
+
+    private HedgedSearchInvoker hedged(SearchInvoker primary, TestInvoker other, long delay, HedgeBudget budget) {
+        return new HedgedSearchInvoker(primary, delay, budget, query -> Optional.of(new HedgedSearchInvoker.Hedge(other, 1)),
+                                       metric, metric.createContext(null));
+    }
+
+    private static HedgeBudget budget() {
+        HedgeBudget budget = new HedgeBudget(1.0);
+        budget.searchDispatched();
+        return budget;
+    }
+
+    /** Returns the number of nodes in the coverage of the given result, which is set to the id of the group answering */
+    private static int nodesOf(Result result) {
+        return result.getCoverage(false).getNodes();
+    }
+
+    private static class TestInvoker extends MockInvoker {
+
+        private final boolean respond;
+        boolean sent = false;
+        boolean closed = false;
+
+        TestInvoker(int group, boolean respond) {
+            super(group, new Coverage(100, 100, group, 1));
+            this.respond = respond;
+        }
+
+        @Override
+        protected void sendSearchRequest(Query query) throws IOException {
+            super.sendSearchRequest(query);
+            sent = true;
+            if (respond)
+                responseAvailable();
+        }
+
+        @Override
+        protected void release() {
+            closed = true;
+        }
+
+    }
+
+}
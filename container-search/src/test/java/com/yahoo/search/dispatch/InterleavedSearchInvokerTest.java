@@ -100,6 +100,58 @@ public class InterleavedSearchInvokerTest {
         assertTrue("Degradataion reason is an adaptive timeout", result.getCoverage(false).isDegradedByAdapativeTimeout());
     }
 
+    @Test
+    public void requireThatMinCoverageOfTheQueryOverridesConfig() throws IOException {
+        SearchCluster cluster = new MockSearchCluster("!", createDispatchConfig(100.0), 1, 4);
+        for (int i = 0; i < 4; i++)
+            invokers.add(new MockInvoker(i, createCoverage(1000, 1000, 1000, 1, 1, 0)));
+        SearchInvoker invoker = createInterleavedInvoker(cluster, 0);
+        query.properties().set(Dispatcher.dispatchMinCoverage, 50.0);
+
+        expectedEvents.add(new Event(5000, 100, 0));
+        expectedEvents.add(new Event(4900, 100, 1));
+        expectedEvents.add(new Event(4800, 100, 2));
+        expectedEvents.add(new Event(0, 0, null));
+
+        Result result = invoker.search(query, null);
+
+        assertTrue("All test scenario events processed", expectedEvents.isEmpty());
+        assertNull("Result is not marked as an error", result.hits().getErrorHit());
+        assertTrue("Degradation reason is an adaptive timeout", result.getCoverage(false).isDegradedByAdapativeTimeout());
+        Coverage coverage = result.getCoverage(false);
+        assertEquals(3, coverage.getNodes());
+        assertEquals(4, coverage.getNodesTried());
+        assertEquals(3000, coverage.getDocs());
+        assertEquals("The documents of the nodes not responding are estimated", 4000, coverage.getActive());
+        assertEquals(75, coverage.getResultPercentage());
+    }
+
+    @Test
+    public void requireThatWaitAfterCoverageIsGivenByLatencyOfPendingNodes() throws IOException {
+        SearchCluster cluster = new MockSearchCluster("!", createDispatchConfig(100.0), 1, 4);
+        for (int i = 0; i < 4; i++)
+            invokers.add(new MockInvoker(i, createCoverage(1000, 1000, 1000, 1, 1, 0)));
+        SearchInvoker invoker = createInterleavedInvoker(cluster, 0);
+        for (SearchInvoker nodeInvoker : invokers) {
+            for (int i = 0; i < 40; i++)
+                nodeInvoker.node().get().recordSearchLatency(i < 36 ? 200 : 300);
+        }
+        query.properties().set(Dispatcher.dispatchMinCoverage, 50.0);
+        query.properties().set(Dispatcher.dispatchCoverageWaitPercentile, 90.0);
+
+        expectedEvents.add(new Event(5000, 100, 0));
+        expectedEvents.add(new Event(4900, 50, 1));
+        expectedEvents.add(new Event(50, 20, 2)); // the 90th percentile of the remaining nodes is 200 ms
+        expectedEvents.add(new Event(30, 30, null));
+
+        Result result = invoker.search(query, null);
+
+        assertTrue("All test scenario events processed", expectedEvents.isEmpty());
+        assertNull("Result is not marked as an error", result.hits().getErrorHit());
+        assertTrue("Degradation reason is an adaptive timeout", result.getCoverage(false).isDegradedByAdapativeTimeout());
+        assertEquals(3, result.getCoverage(false).getNodes());
+    }
+
     @Test
     public void requireCorrectCoverageCalculationWhenAllNodesOk() throws IOException {
         SearchCluster cluster = new MockSearchCluster("!", 1, 2);
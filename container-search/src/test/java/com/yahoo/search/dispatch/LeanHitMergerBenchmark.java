@@ -0,0 +1,122 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the time and allocation per query of merging the hits from many content nodes
+ * with {@link LeanHitMerger} against merging them pairwise as each response arrives.
+ *
+ * Run with the main method.
+ */
+public class LeanHitMergerBenchmark {
+
+    private static final int hits = 400;
+    private static final int queries = 200;
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    public void run() {
+        for (int nodes : new int[] { 10, 50, 100, 200 }) {
+            List<List<List<LeanHit>>> responses = createResponses(nodes);
+            out("Warming up " + nodes + " nodes...");
+            for (int i = 0; i < 10; i++) {
+                mergeAll(responses, true);
+                mergeAll(responses, false);
+            }
+            measure("k-way merge    ", nodes, responses, true);
+            measure("pairwise merge ", nodes, responses, false);
+        }
+    }
+
+    private void measure(String name, int nodes, List<List<List<LeanHit>>> responses, boolean kWay) {
+        long startBytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long startTime = System.nanoTime();
+        int count = mergeAll(responses, kWay);
+        long elapsed = System.nanoTime() - startTime;
+        long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - startBytes;
+        out(name + nodes + " nodes: " + (elapsed / 1000 / queries) + " us/query, " + (allocated / queries) +
+            " bytes/query (" + count + " hits)");
+    }
+
+    private int mergeAll(List<List<List<LeanHit>>> responses, boolean kWay) {
+        int count = 0;
+        for (List<List<LeanHit>> response : responses)
+            count += kWay ? kWayMerge(response).size() : pairwiseMerge(response).size();
+        return count;
+    }
+
+    private static List<LeanHit> kWayMerge(List<List<LeanHit>> response) {
+        LeanHitMerger merger = new LeanHitMerger(hits);
+        for (List<LeanHit> partial : response)
+            merger.add(partial);
+        List<LeanHit> merged = new ArrayList<>(hits);
+        merger.mergeInto(merged, 0);
+        return merged;
+    }
+
+    /** The merge previously done by {@link InterleavedSearchInvoker} */
+    private static List<LeanHit> pairwiseMerge(List<List<LeanHit>> response) {
+        List<LeanHit> current = new ArrayList<>();
+        for (List<LeanHit> partial : response) {
+            if (current.isEmpty()) {
+                current = partial;
+                continue;
+            }
+            List<LeanHit> merged = new ArrayList<>(hits);
+            int indexCurrent = 0;
+            int indexPartial = 0;
+            while (indexCurrent < current.size() && indexPartial < partial.size() && merged.size() < hits) {
+                int cmpRes = current.get(indexCurrent).compareTo(partial.get(indexPartial));
+                if (cmpRes < 0) {
+                    merged.add(current.get(indexCurrent++));
+                } else if (cmpRes > 0) {
+                    merged.add(partial.get(indexPartial++));
+                } else {
+                    merged.add(current.get(indexCurrent++));
+                    indexPartial++;
+                }
+            }
+            while (indexCurrent < current.size() && merged.size() < hits)
+                merged.add(current.get(indexCurrent++));
+            while (indexPartial < partial.size() && merged.size() < hits)
+                merged.add(partial.get(indexPartial++));
+            current = merged;
+        }
+        return current;
+    }
+
+    private static List<List<List<LeanHit>>> createResponses(int nodes) {
+        Random random = new Random(nodes);
+        List<List<List<LeanHit>>> responses = new ArrayList<>();
+        for (int q = 0; q < queries; q++) {
+            List<List<LeanHit>> response = new ArrayList<>();
+            for (int node = 0; node < nodes; node++) {
+                List<LeanHit> partial = new ArrayList<>(hits);
+                double relevance = 1.0;
+                for (int i = 0; i < hits; i++) {
+                    relevance -= random.nextDouble() / hits;
+                    byte[] gid = new byte[12];
+                    random.nextBytes(gid);
+                    partial.add(new LeanHit(gid, 0, node, relevance));
+                }
+                response.add(partial);
+            }
+            responses.add(response);
+        }
+        return responses;
+    }
+
+    private void out(String string) {
+        System.out.println(string);
+    }
+
+    public static void main(String[] args) {
+        new LeanHitMergerBenchmark().run();
+    }
+
+}
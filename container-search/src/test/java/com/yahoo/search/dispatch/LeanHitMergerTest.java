@@ -0,0 +1,75 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LeanHitMergerTest {
+
+    @Test
+    public void requireThatHitsAreMergedInOrder() {
+        LeanHitMerger merger = new LeanHitMerger(5);
+        merger.add(hits(1, 9, 7, 5, 3, 1));
+        merger.add(hits(2, 10, 8, 6, 4, 2));
+        assertEquals(List.of(10.0, 9.0, 8.0, 7.0, 6.0), relevances(merger, 0));
+    }
+
+    @Test
+    public void requireThatOffsetIsApplied() {
+        LeanHitMerger merger = new LeanHitMerger(5);
+        merger.add(hits(1, 9, 7, 5, 3, 1));
+        merger.add(hits(2, 10, 8, 6, 4, 2));
+        assertEquals(List.of(8.0, 7.0, 6.0), relevances(merger, 2));
+    }
+
+    @Test
+    public void requireThatHitsWhichCannotMakeTheWindowAreDropped() {
+        LeanHitMerger merger = new LeanHitMerger(3);
+        merger.add(hits(1, 1, 0.9, 0.8, 0.7));
+        assertEquals(3, merger.size());
+        merger.add(hits(2, 0.85, 0.5, 0.4));
+        assertEquals("Only hits better than the third hit from the first node are kept", 4, merger.size());
+        merger.add(hits(3, 0.6, 0.5));
+        assertEquals("Nodes with no hits better than the cutoff are dropped", 4, merger.size());
+        merger.add(hits(4, 2, 1.5, 1.2));
+        assertEquals(3, merger.size());
+        assertEquals(List.of(2.0, 1.5, 1.2), relevances(merger, 0));
+    }
+
+    @Test
+    public void requireThatDuplicatesAreRemoved() {
+        LeanHitMerger merger = new LeanHitMerger(4);
+        merger.add(hits(1, 9, 7, 5));
+        merger.add(hits(1, 9, 7, 5));
+        merger.add(hits(2, 8));
+        assertEquals(List.of(9.0, 8.0, 7.0, 5.0), relevances(merger, 0));
+    }
+
+    @Test
+    public void requireThatEmptyInputProducesNoHits() {
+        LeanHitMerger merger = new LeanHitMerger(10);
+        merger.add(List.of());
+        assertEquals(List.of(), relevances(merger, 0));
+    }
+
+    private static List<LeanHit> hits(int node, double ... relevances) {
+        List<LeanHit> hits = new ArrayList<>();
+        for (double relevance : relevances)
+            hits.add(new LeanHit(new byte[] { (byte)relevance, (byte)(relevance * 100) }, 0, node, relevance));
+        return hits;
+    }
+
+    private static List<Double> relevances(LeanHitMerger merger, int offset) {
+        List<LeanHit> merged = new ArrayList<>();
+        merger.mergeInto(merged, offset);
+        List<Double> relevances = new ArrayList<>();
+        for (LeanHit hit : merged)
+            relevances.add(hit.getRelevance());
+        return relevances;
+    }
+
+}
@@ -0,0 +1,222 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.search.dispatch.searchcluster.Group;
+import com.yahoo.test.ManualClock;
+import com.yahoo.vespa.config.search.DispatchConfig.DistributionPolicy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Simulates queries arriving at a fixed rate to a {@link LoadBalancer}, where each group serves a limited
+ * number of queries concurrently and the search time of each query is taken from a latency trace.
+ * Time is simulated, so the simulation runs much faster than real time and is deterministic.
+ *
+ * Run with the main method to compare the distribution policies under a set of skewed scenarios,
+ * or with the name of a trace file to replay. Each non-empty line of a trace file is
+ * <code>timeMillis group searchTimeMillis</code>, setting the search time of queries to the group
+ * starting at the given time.
+ */
+class LoadBalancerSimulator {
+
+    private final int groups;
+    private final int concurrencyPerGroup;
+    private final double queriesPerSecond;
+    private final long durationMillis;
+    private final LatencyTrace trace;
+
+    LoadBalancerSimulator(int groups, int concurrencyPerGroup, double queriesPerSecond, long durationMillis, LatencyTrace trace) {
+        this.groups = groups;
+        this.concurrencyPerGroup = concurrencyPerGroup;
+        this.queriesPerSecond = queriesPerSecond;
+        this.durationMillis = durationMillis;
+        this.trace = trace;
+    }
+
+    Statistics run(DistributionPolicy.Enum policy) {
+        ManualClock clock = new ManualClock(Instant.EPOCH);
+        Random random = new Random(42);
+        MockSearchCluster searchCluster = new MockSearchCluster("simulation", groups, 1);
+        searchCluster.shutDown();
+        LoadBalancer loadBalancer = new LoadBalancer(searchCluster, policy, 5.0, clock);
+        double[][] freeAt = new double[groups][concurrencyPerGroup];
+        PriorityQueue<Completion> completions = new PriorityQueue<>();
+        Statistics statistics = new Statistics(policy, groups);
+
+        double interval = 1000.0 / queriesPerSecond;
+        for (double now = 0; now < durationMillis; now += interval) {
+            while ( ! completions.isEmpty() && completions.peek().time <= now) {
+                Completion completion = completions.poll();
+                clock.setInstant(instantOf(completion.time));
+                loadBalancer.releaseGroup(completion.group, true, completion.latency);
+            }
+            clock.setInstant(instantOf(now));
+
+            Group group = loadBalancer.takeGroup(null).get();
+            double searchTime = trace.searchTimeMillis(group.id(), (long)now) * Math.exp(random.nextGaussian() * 0.25);
+            double[] slots = freeAt[group.id()];
+            int slot = 0;
+            for (int i = 1; i < slots.length; i++) {
+                if (slots[i] < slots[slot])
+                    slot = i;
+            }
+            double finish = Math.max(now, slots[slot]) + searchTime;
+            slots[slot] = finish;
+            completions.add(new Completion(finish, group, finish - now));
+            statistics.add(group.id(), finish - now);
+        }
+        return statistics;
+    }
+
+    private static Instant instantOf(double millis) {
+        return Instant.ofEpochMilli((long)millis);
+    }
+
+    /** The search time of queries to each group as a function of time */
+    static class LatencyTrace {
+
+        private final double defaultSearchTimeMillis;
+        private final Map<Integer, TreeMap<Long, Double>> searchTimes = new HashMap<>();
+
+        LatencyTrace(double defaultSearchTimeMillis) {
+            this.defaultSearchTimeMillis = defaultSearchTimeMillis;
+        }
+
+        /** Sets the search time of the given group from the given time */
+        LatencyTrace set(int group, long fromMillis, double searchTimeMillis) {
+            searchTimes.computeIfAbsent(group, __ -> new TreeMap<>()).put(fromMillis, searchTimeMillis);
+            return this;
+        }
+
+        /** Sets the search time of the given group in the given period, and the default after it */
+        LatencyTrace set(int group, long fromMillis, long toMillis, double searchTimeMillis) {
+            return set(group, fromMillis, searchTimeMillis).set(group, toMillis, defaultSearchTimeMillis);
+        }
+
+        double searchTimeMillis(int group, long timeMillis) {
+            TreeMap<Long, Double> groupTimes = searchTimes.get(group);
+            if (groupTimes == null) return defaultSearchTimeMillis;
+            Map.Entry<Long, Double> entry = groupTimes.floorEntry(timeMillis);
+            return entry == null ? defaultSearchTimeMillis : entry.getValue();
+        }
+
+        static LatencyTrace parse(double defaultSearchTimeMillis, List<String> lines) {
+            LatencyTrace trace = new LatencyTrace(defaultSearchTimeMillis);
+            for (String line : lines) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\\s+");
+                if (fields.length != 3)
+                    throw new IllegalArgumentException("Expected 'timeMillis group searchTimeMillis', got '" + line + "'");
+                trace.set(Integer.parseInt(fields[1]), Long.parseLong(fields[0]), Double.parseDouble(fields[2]));
+            }
+            return trace;
+        }
+
+    }
+
+    /** The latencies observed by the queries of a simulation */
+    static class Statistics {
+
+        private final DistributionPolicy.Enum policy;
+        private final List<Double> latencies = new ArrayList<>();
+        private final int[] queriesPerGroup;
+        private double[] sorted = null;
+
+        Statistics(DistributionPolicy.Enum policy, int groups) {
+            this.policy = policy;
+            this.queriesPerGroup = new int[groups];
+        }
+
+        void add(int group, double latency) {
+            latencies.add(latency);
+            queriesPerGroup[group]++;
+            sorted = null;
+        }
+
+        double percentile(double percentile) {
+            if (sorted == null) {
+                sorted = latencies.stream().mapToDouble(Double::doubleValue).toArray();
+                Arrays.sort(sorted);
+            }
+            return sorted[Math.min(sorted.length - 1, (int)(sorted.length * percentile / 100))];
+        }
+
+        double mean() {
+            return latencies.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        }
+
+        int queries(int group) { return queriesPerGroup[group]; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%-10s mean %7.1f ms  p50 %7.1f ms  p99 %7.1f ms  p99.9 %7.1f ms  queries per group %s",
+                                 policy, mean(), percentile(50), percentile(99), percentile(99.9), Arrays.toString(queriesPerGroup));
+        }
+
+    }
+
+    private static class Completion implements Comparable<Completion> {
+
+        final double time;
+        final Group group;
+        final double latency;
+
+        Completion(double time, Group group, double latency) {
+            this.time = time;
+            this.group = group;
+            this.latency = latency;
+        }
+
+        @Override
+        public int compareTo(Completion other) {
+            return Double.compare(time, other.time);
+        }
+
+    }
+
+    private static void compare(String scenario, LoadBalancerSimulator simulator) {
+        System.out.println(scenario + ":");
+        for (DistributionPolicy.Enum policy : DistributionPolicy.Enum.values())
+            System.out.println("  " + simulator.run(policy));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int groups = 4;
+        int concurrency = 8;
+        double qps = 2000; // about 60% of the capacity at 10 ms per query
+        long duration = 60 * 1000;
+
+        if (args.length > 0) {
+            LatencyTrace trace = LatencyTrace.parse(10, Files.readAllLines(Paths.get(args[0])));
+            compare("Trace " + args[0], new LoadBalancerSimulator(groups, concurrency, qps, duration, trace));
+            return;
+        }
+
+        compare("Uniform", new LoadBalancerSimulator(groups, concurrency, qps, duration, new LatencyTrace(10)));
+
+        LatencyTrace pauses = new LatencyTrace(10);
+        for (long start = 5000; start < duration; start += 15000)
+            pauses.set((int)(start / 15000) % groups, start, start + 1000, 500);
+        compare("One second GC pauses", new LoadBalancerSimulator(groups, concurrency, qps, duration, pauses));
+
+        compare("One group 3x slower", new LoadBalancerSimulator(groups, concurrency, qps, duration,
+                                                                 new LatencyTrace(10).set(0, 0, 30)));
+
+        LatencyTrace hotNode = new LatencyTrace(10).set(1, 10000, 40000, 25);
+        compare("Hot node in one group for 30 seconds", new LoadBalancerSimulator(groups, concurrency, qps, duration, hotNode));
+    }
+
+}
@@ -2,13 +2,20 @@
 package com.yahoo.search.dispatch;
 
 import com.yahoo.search.dispatch.LoadBalancer.AdaptiveScheduler;
+import com.yahoo.search.dispatch.LoadBalancer.BestOfTwoScheduler;
 import com.yahoo.search.dispatch.LoadBalancer.GroupStatus;
+import com.yahoo.search.dispatch.LoadBalancerSimulator.LatencyTrace;
+import com.yahoo.search.dispatch.LoadBalancerSimulator.Statistics;
 import com.yahoo.search.dispatch.searchcluster.Group;
 import com.yahoo.search.dispatch.searchcluster.Node;
 import com.yahoo.search.dispatch.searchcluster.SearchCluster;
+import com.yahoo.test.ManualClock;
+import com.yahoo.vespa.config.search.DispatchConfig.DistributionPolicy;
 import junit.framework.AssertionFailedError;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -18,7 +25,9 @@ import java.util.Random;
 import static com.yahoo.search.dispatch.MockSearchCluster.createDispatchConfig;
 import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertThat;
 
@@ -156,6 +165,71 @@ public class LoadBalancerTest {
         assertThat(sched.takeNextGroup(null).get().groupId(), equalTo(4));
     }
 
+    @Test
+    public void requireThatBestOfTwoSchedulerPicksTheCheapestOfTwoGroups() {
+        ManualClock clock = new ManualClock(Instant.EPOCH);
+        List<GroupStatus> scoreboard = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            scoreboard.add(newGroupStatus(i));
+        }
+        Random seq = intSequence(0, 0, 0, 1, 1, 1, 1, 1);
+        BestOfTwoScheduler sched = new BestOfTwoScheduler(seq, scoreboard, clock, 5.0);
+        sched.release(scoreboard.get(0), true, 0.1);
+        sched.release(scoreboard.get(1), true, 0.01);
+        sched.release(scoreboard.get(2), true, 0.02);
+
+        assertThat(sched.takeNextGroup(null).get().groupId(), equalTo(1)); // 0 vs 1
+        assertThat(sched.takeNextGroup(null).get().groupId(), equalTo(2)); // 0 vs 2
+        assertThat(sched.takeNextGroup(null).get().groupId(), equalTo(1)); // 1 vs 2
+
+        for (int i = 0; i < 3; i++) {
+            scoreboard.get(1).allocate();
+        }
+        assertThat("Queries in flight makes a group more costly",
+                   sched.takeNextGroup(null).get().groupId(), equalTo(2));
+    }
+
+    @Test
+    public void requireThatPeakSearchTimeReactsToSlowQueriesAndDecays() {
+        ManualClock clock = new ManualClock(Instant.EPOCH);
+        GroupStatus gs = newGroupStatus(0);
+        BestOfTwoScheduler sched = new BestOfTwoScheduler(new Random(), List.of(gs), clock, 5.0);
+        final double SMALL = 0.00001;
+
+        sched.release(gs, true, 0.01);
+        assertThat(sched.cost(gs), closeTo(0.01, SMALL));
+        sched.release(gs, true, 1.0);
+        assertThat("A slow query takes effect at once", sched.cost(gs), closeTo(1.0, SMALL));
+
+        clock.advance(Duration.ofSeconds(5));
+        assertThat("Decays when not used", sched.cost(gs), closeTo(1.0 / Math.E, SMALL));
+
+        sched.release(gs, false, 0.001);
+        assertThat("A fast failure does not make the group look fast", sched.cost(gs), closeTo(1.0 / Math.E, SMALL));
+
+        for (int i = 0; i < 400; i++) {
+            clock.advance(Duration.ofMillis(100));
+            sched.release(gs, true, 0.01);
+        }
+        assertThat(sched.cost(gs), closeTo(0.01, 0.001));
+        gs.allocate();
+        assertThat(sched.cost(gs), closeTo(0.02, 0.002));
+    }
+
+    @Test
+    public void requireThatBestOfTwoSchedulerHandlesGroupPausesBetterThanOtherPolicies() {
+        LatencyTrace trace = new LatencyTrace(10).set(1, 2000, 3000, 500);
+        LoadBalancerSimulator simulator = new LoadBalancerSimulator(4, 8, 2000, 10000, trace);
+        Statistics roundRobin = simulator.run(DistributionPolicy.ROUNDROBIN);
+        Statistics adaptive = simulator.run(DistributionPolicy.ADAPTIVE);
+        Statistics bestOfTwo = simulator.run(DistributionPolicy.BESTOFTWO);
+
+        assertThat(bestOfTwo.percentile(99), lessThan(roundRobin.percentile(99)));
+        assertThat(bestOfTwo.percentile(99), lessThan(adaptive.percentile(99)));
+        assertThat(bestOfTwo.percentile(99), lessThan(50.0));
+        assertThat(bestOfTwo.queries(0), greaterThan(bestOfTwo.queries(1)));
+    }
+
     private static void updateSearchTime(GroupStatus gs, double time) {
         gs.allocate();
         gs.release(true, time);
@@ -171,6 +245,19 @@ public class LoadBalancerTest {
         return new GroupStatus(dummyGroup);
     }
 
+    private Random intSequence(int... values) {
+        return new Random() {
+            private int index = 0;
+
+            @Override
+            public int nextInt(int bound) {
+                int retv = values[index] % bound;
+                index = (index + 1) % values.length;
+                return retv;
+            }
+        };
+    }
+
     private Random sequence(double... values) {
         return new Random() {
             private int index = 0;
@@ -0,0 +1,171 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.data.access.Inspector;
+import com.yahoo.data.access.slime.SlimeAdapter;
+import com.yahoo.prelude.fastsearch.test.MockMetric;
+import com.yahoo.search.Query;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.search.result.ErrorMessage;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Slime;
+import com.yahoo.test.ManualClock;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResultCacheTest {
+
+    private final ManualClock clock = new ManualClock(Instant.now());
+    private final AtomicLong clusterStateGeneration = new AtomicLong(0);
+    private final MockSearchCluster searchCluster = new MockSearchCluster("test", 1, 2) {
+        @Override
+        public long stateGeneration() { return clusterStateGeneration.get(); }
+    };
+
+    @Test
+    public void requireThatHitsAreCachedPerQuery() {
+        ResultCache cache = createCache(100000);
+        Query query = new Query("?query=foo&hits=2");
+        ResultCache.Key key = cache.hitsKey(query);
+        assertEquals(key, cache.hitsKey(new Query("?query=foo&hits=2")));
+        assertNotEquals(key, cache.hitsKey(new Query("?query=bar&hits=2")));
+        assertNotEquals(key, cache.hitsKey(new Query("?query=foo&hits=3")));
+        assertNotEquals(key, cache.hitsKey(new Query("?query=foo&hits=2&ranking=other")));
+
+        assertFalse(cache.getHits(key).isPresent());
+        cache.putHits(key, result(query, 2), 0);
+        assertTrue(cache.getHits(key).isPresent());
+
+        InvokerResult cached = cache.getHits(key).get().toResult(query);
+        assertEquals(2, cached.getLeanHits().size());
+        assertEquals(1.0, cached.getLeanHits().get(0).getRelevance(), 0.0);
+        assertEquals(2, cached.getResult().getTotalHitCount());
+        assertEquals(2, cached.getResult().getCoverage(false).getNodes());
+    }
+
+    @Test
+    public void requireThatIncompleteResultsAreNotCached() {
+        ResultCache cache = createCache(100000);
+        Query query = new Query("?query=foo");
+        ResultCache.Key key = cache.hitsKey(query);
+
+        InvokerResult withError = result(query, 2);
+        withError.getResult().hits().addError(ErrorMessage.createTimeout("timeout"));
+        cache.putHits(key, withError, 0);
+        assertFalse(cache.getHits(key).isPresent());
+
+        InvokerResult degraded = result(query, 2);
+        degraded.getResult().setCoverage(new Coverage(100, 200, 1, 1).setNodesTried(2));
+        cache.putHits(key, degraded, 0);
+        assertFalse(cache.getHits(key).isPresent());
+    }
+
+    @Test
+    public void requireThatEntriesExpire() {
+        ResultCache cache = createCache(100000);
+        Query query = new Query("?query=foo");
+        ResultCache.Key key = cache.hitsKey(query);
+        cache.putHits(key, result(query, 2), 0);
+
+        clock.advance(Duration.ofSeconds(59));
+        assertTrue(cache.getHits(key).isPresent());
+        clock.advance(Duration.ofSeconds(2));
+        assertFalse(cache.getHits(key).isPresent());
+        assertEquals(0, cache.bytes());
+    }
+
+    @Test
+    public void requireThatCacheIsInvalidatedOnClusterStateChanges() {
+        ResultCache cache = createCache(100000);
+        Query query = new Query("?query=foo");
+        ResultCache.Key key = cache.hitsKey(query);
+        cache.putHits(key, result(query, 2), 0);
+        assertTrue(cache.getHits(key).isPresent());
+
+        clusterStateGeneration.incrementAndGet();
+        assertFalse(cache.getHits(key).isPresent());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void requireThatLeastRecentlyUsedEntriesAreEvictedWhenFull() {
+        Query query1 = new Query("?query=foo");
+        Query query2 = new Query("?query=bar");
+        Query query3 = new Query("?query=baz");
+        ResultCache sizing = createCache(100000);
+        sizing.putHits(sizing.hitsKey(query1), result(query1, 10), 0);
+        long entrySize = sizing.bytes();
+
+        ResultCache cache = createCache(entrySize * 2 + entrySize / 2);
+        cache.putHits(cache.hitsKey(query1), result(query1, 10), 0);
+        cache.putHits(cache.hitsKey(query2), result(query2, 10), 0);
+        assertTrue(cache.getHits(cache.hitsKey(query1)).isPresent());
+        cache.putHits(cache.hitsKey(query3), result(query3, 10), 0);
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.getHits(cache.hitsKey(query1)).isPresent());
+        assertFalse(cache.getHits(cache.hitsKey(query2)).isPresent());
+        assertTrue(cache.getHits(cache.hitsKey(query3)).isPresent());
+        assertTrue(cache.bytes() <= entrySize * 2 + entrySize / 2);
+    }
+
+    @Test
+    public void requireThatSummariesAreCachedPerDocument() {
+        ResultCache cache = createCache(100000);
+        Query query = new Query("?query=foo");
+        byte[] prefix = cache.summaryKeyPrefix(query, "default", false);
+        byte[] gid1 = new byte[] { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 };
+        byte[] gid2 = new byte[] { 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2 };
+
+        Slime slime = new Slime();
+        Cursor summary = slime.setObject();
+        summary.setString("title", "A title");
+        summary.setLong("year", 2019);
+        Cursor array = summary.setArray("tags");
+        array.addString("a");
+        array.addString("b");
+        cache.putSummary(prefix, gid1, new SlimeAdapter(slime.get()));
+
+        assertFalse(cache.getSummary(prefix, gid2).isPresent());
+        assertFalse(cache.getSummary(cache.summaryKeyPrefix(query, "other", false), gid1).isPresent());
+        Inspector cached = cache.getSummary(cache.summaryKeyPrefix(new Query("?query=bar"), "default", false), gid1).get();
+        assertEquals("A title", cached.field("title").asString());
+        assertEquals(2019, cached.field("year").asLong());
+        assertEquals("b", cached.field("tags").entry(1).asString());
+
+        assertFalse("Query dependent summaries are cached per query",
+                    cache.getSummary(cache.summaryKeyPrefix(new Query("?query=bar"), "default", true), gid1).isPresent());
+    }
+
+    @Test
+    public void requireThatQueriesCanBypassCache() {
+        ResultCache cache = createCache(100000);
+        assertTrue(cache.isHitsCacheable(new Query("?query=foo")));
+        assertFalse(cache.isHitsCacheable(new Query("?query=foo&nocache=true")));
+        assertFalse(cache.isHitsCacheable(new Query("?query=foo&tracelevel=1")));
+        assertTrue(cache.isSummariesCacheable(new Query("?query=foo")));
+        assertFalse(cache.isSummariesCacheable(new Query("?query=foo&ranking.listFeatures=true")));
+    }
+
+    private ResultCache createCache(long maxBytes) {
+        return new ResultCache(maxBytes, 60 * 1000, searchCluster, clock, new MockMetric());
+    }
+
+    private static InvokerResult result(Query query, int hits) {
+        InvokerResult result = new InvokerResult(query, hits);
+        for (int i = 0; i < hits; i++)
+            result.getLeanHits().add(new LeanHit(new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte)i }, 0, 1, 1.0 / (i + 1)));
+        result.getResult().setTotalHitCount(hits);
+        result.getResult().setCoverage(new Coverage(100, 100, 2, 1).setNodesTried(2));
+        return result;
+    }
+
+}
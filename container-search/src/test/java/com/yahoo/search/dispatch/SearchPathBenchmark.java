@@ -0,0 +1,261 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import com.yahoo.component.chain.Chain;
+import com.yahoo.container.jdisc.HttpRequest;
+import com.yahoo.document.GlobalId;
+import com.yahoo.document.idstring.IdString;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.dispatch.searchcluster.Node;
+import com.yahoo.search.dispatch.searchcluster.SearchCluster;
+import com.yahoo.search.rendering.JsonRenderer;
+import com.yahoo.search.result.Coverage;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.search.yql.MinimalQueryInserter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Measures the time and allocation per query of the container part of the search path:
+ * Creating the query from a HTTP request, parsing YQL, executing the searcher chain, dispatching to
+ * and merging the responses of content nodes in {@link InterleavedSearchInvoker}, and rendering the result as JSON.
+ * The content nodes are simulated by invokers which respond immediately with precomputed hits.
+ * <p>
+ * Run with the main method. With no arguments this measures each stage of the path for a few typical queries.
+ * Given a query log file, containing one request URI (such as "/search/?yql=...") per line,
+ * it replays the queries in it instead, and reports the throughput and allocation per query of the whole path.
+ * Lines starting with # are ignored.
+ * <p>
+ * Usage: SearchPathBenchmark [queryLogFile [repetitions [contentNodes]]]
+ * <p>
+ * SearchPathBenchmarkTest replays the default queries with generous bounds to keep this working and
+ * catch gross regressions in the search path.
+ */
+public class SearchPathBenchmark {
+
+    static final List<String> defaultQueries =
+            List.of("/search/?query=test",
+                    "/search/?query=test&hits=100",
+                    "/search/?yql=select%20*%20from%20sources%20*%20where%20title%20contains%20%22test%22%3B",
+                    "/search/?yql=select%20*%20from%20sources%20*%20where%20title%20contains%20%22test%22%20" +
+                    "and%20(body%20contains%20%22foo%22%20or%20body%20contains%20%22bar%22)%20" +
+                    "and%20price%20%3C%20100%20limit%2050%3B");
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    private final Chain<Searcher> chain;
+    private final JsonRenderer rendererPrototype = new JsonRenderer();
+
+    public SearchPathBenchmark(int contentNodes) {
+        chain = new Chain<>("benchmark", new MinimalQueryInserter(), new DispatchingSearcher(contentNodes));
+    }
+
+    /** Measures each stage of the search path for the default queries */
+    public void run() throws Exception {
+        out("Warming up...");
+        for (int i = 0; i < 2000; i++)
+            for (String uri : defaultQueries)
+                render(search(createQuery(uri)));
+
+        for (String uri : defaultQueries) {
+            int queries = 2000;
+            out(uri + ":");
+            measure("  query creation       ", queries, () -> createQuery(uri));
+            measure("  + chain and dispatch ", queries, () -> search(createQuery(uri)));
+            measure("  + rendering          ", queries, () -> render(search(createQuery(uri))));
+        }
+    }
+
+    /** Replays the given queries and reports and returns throughput and allocation per query */
+    public Measurement replay(List<String> uris, int repetitions) throws Exception {
+        out("Warming up with " + uris.size() + " queries...");
+        for (String uri : uris)
+            render(search(createQuery(uri)));
+
+        int errors = 0;
+        long bytes = 0;
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < repetitions; i++) {
+            for (String uri : uris) {
+                Result result = search(createQuery(uri));
+                if (result.hits().getError() != null)
+                    errors++;
+                bytes += render(result);
+            }
+        }
+        long nanos = System.nanoTime() - startTime;
+        long allocated = allocatedBytes() - startBytes;
+        long queries = (long)repetitions * uris.size();
+        Measurement measurement = new Measurement(queries, nanos, allocated, bytes, errors);
+        out(measurement.toString());
+        return measurement;
+    }
+
+    private void measure(String name, int queries, Task task) throws Exception {
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < queries; i++)
+            task.run();
+        long nanos = System.nanoTime() - startTime;
+        long bytes = allocatedBytes() - startBytes;
+        out(name + ": " + (nanos / queries / 1000) + " us/query, " + (bytes / queries) + " bytes allocated/query");
+    }
+
+    private Query createQuery(String uri) {
+        return new Query(HttpRequest.createTestRequest(uri, com.yahoo.jdisc.http.HttpRequest.Method.GET));
+    }
+
+    private Result search(Query query) {
+        return new Execution(chain, Execution.Context.createContextStub()).search(query);
+    }
+
+    private int render(Result result) throws Exception {
+        JsonRenderer renderer = (JsonRenderer)rendererPrototype.clone();
+        renderer.init();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        renderer.render(stream, result, new Execution(Execution.Context.createContextStub()), null).get();
+        return stream.size();
+    }
+
+    private long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void out(String s) {
+        System.out.println(s);
+    }
+
+    /** The outcome of replaying queries */
+    static class Measurement {
+
+        final long queries;
+        final long nanos;
+        final long allocatedBytes;
+        final long renderedBytes;
+        final int errors;
+
+        Measurement(long queries, long nanos, long allocatedBytes, long renderedBytes, int errors) {
+            this.queries = queries;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.renderedBytes = renderedBytes;
+            this.errors = errors;
+        }
+
+        long microsPerQuery() { return nanos / queries / 1000; }
+        long allocatedBytesPerQuery() { return allocatedBytes / queries; }
+        long renderedBytesPerQuery() { return renderedBytes / queries; }
+
+        @Override
+        public String toString() {
+            return queries + " queries: " + (queries * 1_000_000_000L / Math.max(1, nanos)) + " queries/s, " +
+                   microsPerQuery() + " us/query, " + allocatedBytesPerQuery() + " bytes allocated/query, " +
+                   renderedBytesPerQuery() + " bytes rendered/query, " + errors + " errors";
+        }
+
+    }
+
+    private interface Task {
+
+        void run() throws Exception;
+
+    }
+
+    /** Searches a group of simulated content nodes through an {@link InterleavedSearchInvoker} */
+    private static class DispatchingSearcher extends Searcher {
+
+        private final SearchCluster searchCluster;
+        private final List<List<LeanHit>> nodeHits = new ArrayList<>();
+
+        DispatchingSearcher(int contentNodes) {
+            searchCluster = new MockSearchCluster("benchmark", 1, contentNodes);
+            Random random = new Random(1);
+            for (int node = 0; node < contentNodes; node++) {
+                List<LeanHit> hits = new ArrayList<>();
+                for (int i = 0; i < 400; i++) {
+                    byte[] gid = new GlobalId(IdString.createIdString("id:benchmark:doc::" + node + "-" + i)).getRawId();
+                    hits.add(new LeanHit(gid, 0, node, random.nextDouble()));
+                }
+                Collections.sort(hits);
+                nodeHits.add(hits);
+            }
+        }
+
+        @Override
+        public Result search(Query query, Execution execution) {
+            List<SearchInvoker> invokers = new ArrayList<>(nodeHits.size());
+            for (int node = 0; node < nodeHits.size(); node++)
+                invokers.add(new ContentNode(node, nodeHits.get(node)));
+            try (InterleavedSearchInvoker invoker = new InterleavedSearchInvoker(invokers, searchCluster, Collections.emptySet())) {
+                return invoker.search(query, execution);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+    }
+
+    /** A content node which responds immediately with the requested number of its hits */
+    private static class ContentNode extends SearchInvoker {
+
+        private final List<LeanHit> hits;
+        private Query query;
+
+        ContentNode(int key, List<LeanHit> hits) {
+            super(Optional.of(new Node(key, "host" + key, 0)));
+            this.hits = hits;
+        }
+
+        @Override
+        protected void sendSearchRequest(Query query) {
+            this.query = query;
+            responseAvailable();
+        }
+
+        @Override
+        protected InvokerResult getSearchResult(Execution execution) {
+            int count = Math.min(hits.size(), query.getHits());
+            InvokerResult result = new InvokerResult(query, count);
+            result.getResult().setCoverage(new Coverage(100000, 100000, 1));
+            result.getResult().setTotalHitCount(hits.size());
+            result.getLeanHits().addAll(hits.subList(0, count));
+            return result;
+        }
+
+        @Override
+        protected void release() { }
+
+    }
+
+    public static void main(String[] args) throws Exception {
+        int contentNodes = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        SearchPathBenchmark benchmark = new SearchPathBenchmark(contentNodes);
+        if (args.length == 0) {
+            benchmark.run();
+        }
+        else {
+            List<String> uris = Files.lines(Paths.get(args[0]))
+                                     .map(String::trim)
+                                     .filter(line -> ! line.isEmpty() && ! line.startsWith("#"))
+                                     .collect(Collectors.toList());
+            benchmark.replay(uris, args.length > 1 ? Integer.parseInt(args[1]) : 10);
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link SearchPathBenchmark} briefly with bounds generous enough to hold on any test machine,
+ * such that it keeps working and gross regressions in the search path are caught.
+ */
+public class SearchPathBenchmarkTest {
+
+    @Test
+    public void requireThatTheSearchPathIsReasonablyFastAndLean() throws Exception {
+        SearchPathBenchmark benchmark = new SearchPathBenchmark(10);
+        SearchPathBenchmark.Measurement measurement = benchmark.replay(SearchPathBenchmark.defaultQueries, 25);
+
+        assertEquals(100, measurement.queries);
+        assertEquals(0, measurement.errors);
+        assertTrue("Results are rendered", measurement.renderedBytesPerQuery() > 0);
+        assertTrue("At most 100 ms per query: " + measurement, measurement.microsPerQuery() < 100_000);
+        assertTrue("At most 50 Mb allocated per query: " + measurement, measurement.allocatedBytesPerQuery() < 50_000_000);
+    }
+
+}
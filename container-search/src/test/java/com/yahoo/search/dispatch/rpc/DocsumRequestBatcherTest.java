@@ -0,0 +1,246 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch.rpc;
+
+import ai.vespa.searchlib.searchprotocol.protobuf.SearchProtocol;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
+import com.yahoo.data.access.Inspector;
+import com.yahoo.jdisc.Metric;
+import com.yahoo.prelude.fastsearch.DocsumDefinition;
+import com.yahoo.prelude.fastsearch.DocsumDefinitionSet;
+import com.yahoo.prelude.fastsearch.DocsumField;
+import com.yahoo.prelude.fastsearch.DocumentDatabase;
+import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.dispatch.rpc.Client.ProtobufResponse;
+import com.yahoo.search.dispatch.rpc.Client.ResponseOrError;
+import com.yahoo.search.dispatch.rpc.Client.ResponseReceiver;
+import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Slime;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests coalescing docsum requests from concurrent queries
+ */
+public class DocsumRequestBatcherTest {
+
+    private final MockClient client = new MockClient();
+    private final RecordingNodeConnection connection = new RecordingNodeConnection();
+    private final RecordingMetric metric = new RecordingMetric();
+
+    @Test
+    public void testRequestsAreCoalescedAndRepliesDemultiplexed() {
+        RpcResourcePool pool = new RpcResourcePool(Map.of(0, connection), TimeUnit.SECONDS.toNanos(60), 5, metric);
+
+        Result result1 = new Result(new Query());
+        result1.hits().add(createHit(0, 1));
+        result1.hits().add(createHit(0, 2));
+        Result result2 = new Result(new Query());
+        result2.hits().add(createHit(0, 3));
+        result2.hits().add(createHit(0, 4));
+        result2.hits().add(createHit(0, 5));
+
+        RpcProtobufFillInvoker invoker1 = new RpcProtobufFillInvoker(pool, db(), "test", false);
+        RpcProtobufFillInvoker invoker2 = new RpcProtobufFillInvoker(pool, db(), "test", false);
+        invoker1.sendFillRequest(result1, "summaryClass1");
+        assertEquals("The first request waits for more", 0, connection.requests.size());
+        invoker2.sendFillRequest(result2, "summaryClass1");
+        assertEquals("The batch is sent when it is full", 1, connection.requests.size());
+        assertEquals(5, connection.requests.get(0).getGlobalIdsCount());
+
+        invoker1.getFillResults(result1, "summaryClass1");
+        invoker2.getFillResults(result2, "summaryClass1");
+        assertNull(result1.hits().getError());
+        assertNull(result2.hits().getError());
+        assertEquals(2, result1.hits().size());
+        assertEquals(3, result2.hits().size());
+        for (int i = 1; i <= 5; i++) {
+            Result result = i <= 2 ? result1 : result2;
+            assertEquals("s." + i, result.hits().get("hit:" + i).getField("field1").toString());
+            assertEquals((long)i, result.hits().get("hit:" + i).getField("field2"));
+        }
+
+        assertEquals(List.of(2), metric.values(DocsumRequestBatcher.BATCH_REQUESTS_METRIC));
+        assertEquals(List.of(5), metric.values(DocsumRequestBatcher.BATCH_HITS_METRIC));
+        pool.release();
+    }
+
+    @Test
+    public void testPendingBatchesAreSentOnFlush() {
+        RpcResourcePool pool = new RpcResourcePool(Map.of(0, connection), TimeUnit.SECONDS.toNanos(60), 1000, metric);
+        DocsumRequestBatcher batcher = pool.docsumBatcher().get();
+
+        var request1 = SearchProtocol.DocsumRequest.newBuilder().setSummaryClass("summaryClass1");
+        var request2 = SearchProtocol.DocsumRequest.newBuilder().setSummaryClass("summaryClass2");
+        List<Integer> offsets = new ArrayList<>();
+        DocsumRequestBatcher.Receiver receiver = (summaries, offset) -> offsets.add(offset);
+        batcher.send(0, request1, List.of(createHit(0, 1), createHit(0, 2)), CompressionType.NONE, 10, receiver);
+        batcher.send(0, request2, List.of(createHit(0, 3)), CompressionType.NONE, 10, receiver);
+        batcher.send(0, request1, List.of(createHit(0, 4)), CompressionType.NONE, 10, receiver);
+        assertEquals(0, connection.requests.size());
+
+        batcher.flush();
+        assertEquals("Requests for different summary classes are not coalesced", 2, connection.requests.size());
+        Collections.sort(offsets);
+        assertEquals(List.of(0, 0, 2), offsets);
+        pool.release();
+    }
+
+    @Test
+    public void testTimedOutRequestsAreFailedRatherThanSent() {
+        RpcResourcePool pool = new RpcResourcePool(Map.of(0, connection), TimeUnit.SECONDS.toNanos(60), 1000, metric);
+        DocsumRequestBatcher batcher = pool.docsumBatcher().get();
+
+        var request = SearchProtocol.DocsumRequest.newBuilder().setSummaryClass("summaryClass1");
+        List<String> errors = new ArrayList<>();
+        List<Inspector> replies = new ArrayList<>();
+        DocsumRequestBatcher.Receiver receiver = (summaries, offset) -> {
+            summaries.error().ifPresent(errors::add);
+            summaries.response().ifPresent(replies::add);
+        };
+        batcher.send(0, request, List.of(createHit(0, 1), createHit(0, 2)), CompressionType.NONE, -1, receiver);
+        batcher.send(0, request, List.of(createHit(0, 3)), CompressionType.NONE, 10, receiver);
+        batcher.flush();
+        assertEquals(List.of("Timed out waiting to send the docsum request"), errors);
+        assertEquals(1, replies.size());
+        assertEquals(1, connection.requests.size());
+        assertEquals(1, connection.requests.get(0).getGlobalIdsCount());
+        assertTrue(connection.requests.get(0).getTimeout() > 0);
+
+        batcher.send(0, request, List.of(createHit(0, 4)), CompressionType.NONE, -1, receiver);
+        batcher.flush();
+        assertEquals("Nothing is sent when all requests have timed out", 1, connection.requests.size());
+        assertEquals(2, errors.size());
+        pool.release();
+    }
+
+    @Test
+    public void testErrorsArePassedToAllRequestsInTheBatch() {
+        connection.error = "Malfunctioning";
+        RpcResourcePool pool = new RpcResourcePool(Map.of(0, connection), TimeUnit.SECONDS.toNanos(60), 2, metric);
+
+        Result result1 = new Result(new Query());
+        result1.hits().add(createHit(0, 1));
+        Result result2 = new Result(new Query());
+        result2.hits().add(createHit(0, 2));
+
+        RpcProtobufFillInvoker invoker1 = new RpcProtobufFillInvoker(pool, db(), "test", false);
+        RpcProtobufFillInvoker invoker2 = new RpcProtobufFillInvoker(pool, db(), "test", false);
+        invoker1.sendFillRequest(result1, "summaryClass1");
+        invoker2.sendFillRequest(result2, "summaryClass1");
+        invoker1.getFillResults(result1, "summaryClass1");
+        invoker2.getFillResults(result2, "summaryClass1");
+        assertEquals("Malfunctioning", result1.hits().getError().getDetailedMessage());
+        assertEquals("Malfunctioning", result2.hits().getError().getDetailedMessage());
+        pool.release();
+    }
+
+    private DocumentDatabase db() {
+        List<DocsumField> fields = new ArrayList<>();
+        fields.add(DocsumField.create("field1", "string"));
+        fields.add(DocsumField.create("field2", "int64"));
+        DocsumDefinitionSet docsums = new DocsumDefinitionSet(Collections.singleton(new DocsumDefinition("summaryClass1", fields)));
+        return new DocumentDatabase("default", docsums, Collections.emptySet());
+    }
+
+    private FastHit createHit(int sourceNodeId, int hitId) {
+        FastHit hit = new FastHit("hit:" + hitId, 1.0);
+        hit.setPartId(sourceNodeId);
+        hit.setDistributionKey(sourceNodeId);
+        hit.setGlobalId(client.globalIdFrom(hitId).getRawId());
+        connection.hitIds.put(ByteString.copyFrom(hit.getRawGlobalId()), hitId);
+        return hit;
+    }
+
+    /** Records requests and replies immediately with the summary of each hit */
+    private static class RecordingNodeConnection implements Client.NodeConnection {
+
+        final Map<ByteString, Integer> hitIds = new HashMap<>();
+        final List<SearchProtocol.DocsumRequest> requests = Collections.synchronizedList(new ArrayList<>());
+        final Compressor compressor = new Compressor();
+        String error = null;
+
+        @Override
+        public void getDocsums(List<FastHit> hits, CompressionType compression, int uncompressedLength, byte[] compressedSlime,
+                               RpcFillInvoker.GetDocsumsResponseReceiver responseReceiver, double timeoutSeconds) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void request(String rpcMethod, CompressionType compression, int uncompressedLength, byte[] compressedPayload,
+                            ResponseReceiver responseReceiver, double timeoutSeconds) {
+            try {
+                var request = SearchProtocol.DocsumRequest.parseFrom(compressor.decompress(compressedPayload, compression, uncompressedLength));
+                requests.add(request);
+                if (error != null) {
+                    responseReceiver.receive(ResponseOrError.fromError(error));
+                    return;
+                }
+
+                Slime slime = new Slime();
+                Cursor docsums = slime.setObject().setArray("docsums");
+                for (ByteString globalId : request.getGlobalIdsList()) {
+                    int hitId = hitIds.get(globalId);
+                    Cursor docsum = docsums.addObject().setObject("docsum");
+                    docsum.setString("field1", "s." + hitId);
+                    docsum.setLong("field2", hitId);
+                }
+                byte[] payload = SearchProtocol.DocsumReply.newBuilder()
+                                                           .setSlimeSummaries(ByteString.copyFrom(BinaryFormat.encode(slime)))
+                                                           .build().toByteArray();
+                var compressed = compressor.compress(CompressionType.LZ4, payload);
+                responseReceiver.receive(ResponseOrError.fromResponse(new ProtobufResponse(compressed.type().getCode(),
+                                                                                           payload.length,
+                                                                                           compressed.data())));
+            }
+            catch (InvalidProtocolBufferException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        @Override
+        public void close() { }
+
+    }
+
+    private static class RecordingMetric implements Metric {
+
+        private final Map<String, List<Number>> values = new HashMap<>();
+
+        synchronized List<Number> values(String key) {
+            return values.getOrDefault(key, List.of());
+        }
+
+        @Override
+        public synchronized void set(String key, Number value, Context context) {
+            values.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+        }
+
+        @Override
+        public void add(String key, Number value, Context context) {
+            set(key, value, context);
+        }
+
+        @Override
+        public Context createContext(Map<String, ?> properties) {
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,164 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch.rpc;
+
+import ai.vespa.searchlib.searchprotocol.protobuf.SearchProtocol;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.yahoo.data.access.Inspector;
+import com.yahoo.data.access.slime.SlimeAdapter;
+import com.yahoo.prelude.fastsearch.DocsumDefinition;
+import com.yahoo.prelude.fastsearch.DocsumDefinitionSet;
+import com.yahoo.prelude.fastsearch.DocsumField;
+import com.yahoo.prelude.fastsearch.DocumentDatabase;
+import com.yahoo.prelude.fastsearch.FastHit;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.rendering.JsonRenderer;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Slime;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Compares the time and allocation per hit of filling 400 hits from a protobuf docsum reply
+ * and rendering them as JSON, when the summaries are viewed in the reply bytes by {@link RpcProtobufFillInvoker}
+ * and when they are decoded to slime as was done previously.
+ *
+ * Run with the main method.
+ */
+public class SummaryFillBenchmark {
+
+    private static final int hits = 400;
+    private static final int fills = 200;
+    private static final String summaryClass = "default";
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    private final DocumentDatabase documentDb = createDocumentDatabase();
+    private final RpcProtobufFillInvoker invoker = new RpcProtobufFillInvoker(null, documentDb, "benchmark", false);
+    private final JsonRenderer rendererPrototype = new JsonRenderer();
+    private final byte[] payload = createPayload();
+
+    public void run() throws Exception {
+        out("Warming up...");
+        for (int i = 0; i < 20; i++) {
+            fillAndRender(true);
+            fillAndRender(false);
+        }
+        measure("slime decoding ", false);
+        measure("binary view    ", true);
+    }
+
+    private void measure(String name, boolean view) throws Exception {
+        long fillBytes = 0, renderBytes = 0, fillNanos = 0, renderNanos = 0;
+        for (int i = 0; i < fills; i++) {
+            long startBytes = allocatedBytes();
+            long startTime = System.nanoTime();
+            Result result = fill(view);
+            long filledTime = System.nanoTime();
+            long filledBytes = allocatedBytes();
+            render(result);
+            renderNanos += System.nanoTime() - filledTime;
+            renderBytes += allocatedBytes() - filledBytes;
+            fillNanos += filledTime - startTime;
+            fillBytes += filledBytes - startBytes;
+        }
+        long filledHits = (long)fills * hits;
+        out(name + ": fill " + (fillNanos / filledHits) + " ns/hit, " + (fillBytes / filledHits) + " bytes/hit; " +
+            "render " + (renderNanos / filledHits) + " ns/hit, " + (renderBytes / filledHits) + " bytes/hit");
+    }
+
+    private void fillAndRender(boolean view) throws Exception {
+        render(fill(view));
+    }
+
+    private Result fill(boolean view) throws IOException {
+        Result result = new Result(new Query("?query=test&hits=" + hits));
+        List<FastHit> hitList = new ArrayList<>(hits);
+        for (int i = 0; i < hits; i++) {
+            FastHit hit = new FastHit("hit:" + i, hits - i);
+            hitList.add(hit);
+            result.hits().add(hit);
+        }
+        if (view)
+            invoker.fill(result, hitList, summaryClass, RpcProtobufFillInvoker.decodeSummaries(payload), 0);
+        else
+            decodingFill(hitList);
+        return result;
+    }
+
+    /** The fill previously done by {@link RpcProtobufFillInvoker} */
+    private void decodingFill(List<FastHit> hitList) throws InvalidProtocolBufferException {
+        var protobuf = SearchProtocol.DocsumReply.parseFrom(payload);
+        var root = BinaryFormat.decode(protobuf.getSlimeSummaries().toByteArray()).get();
+        Inspector summaries = new SlimeAdapter(root.field("docsums"));
+        for (int i = 0; i < hitList.size(); i++) {
+            hitList.get(i).addSummary(documentDb.getDocsumDefinitionSet().getDocsum(summaryClass),
+                                      summaries.entry(i).field("docsum"));
+            hitList.get(i).setFilled(summaryClass);
+        }
+    }
+
+    private void render(Result result) throws ExecutionException, InterruptedException {
+        JsonRenderer renderer = (JsonRenderer)rendererPrototype.clone();
+        renderer.init();
+        renderer.render(OutputStream.nullOutputStream(), result, new Execution(Execution.Context.createContextStub()), null).get();
+    }
+
+    private long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static DocumentDatabase createDocumentDatabase() {
+        List<DocsumField> fields = new ArrayList<>();
+        fields.add(DocsumField.create("title", "string"));
+        fields.add(DocsumField.create("body", "longstring"));
+        fields.add(DocsumField.create("popularity", "int64"));
+        fields.add(DocsumField.create("price", "double"));
+        fields.add(DocsumField.create("attributes", "jsonstring"));
+        DocsumDefinitionSet docsums = new DocsumDefinitionSet(Collections.singleton(new DocsumDefinition(summaryClass, fields)));
+        return new DocumentDatabase("benchmark", docsums, Collections.emptySet());
+    }
+
+    private static byte[] createPayload() {
+        Slime slime = new Slime();
+        Cursor docsums = slime.setObject().setArray("docsums");
+        for (int i = 0; i < hits; i++) {
+            Cursor docsum = docsums.addObject().setObject("docsum");
+            docsum.setString("title", "The title of document number " + i);
+            docsum.setString("body", "A body text which is long enough to be a typical dynamic summary snippet, " +
+                                     "with the matched terms highlighted: <hi>test</hi> " + i + " ".repeat(i % 7) +
+                                     "and some more text following the highlighted terms to make up a few sentences.");
+            docsum.setLong("popularity", i * 37);
+            docsum.setDouble("price", i * 1.25);
+            Cursor attributes = docsum.setArray("attributes");
+            for (int j = 0; j < 5; j++) {
+                Cursor entry = attributes.addObject();
+                entry.setString("key", "attribute" + j);
+                entry.setString("value", "value" + (i + j));
+            }
+        }
+        return SearchProtocol.DocsumReply.newBuilder()
+                                         .setSlimeSummaries(ByteString.copyFrom(BinaryFormat.encode(slime)))
+                                         .build()
+                                         .toByteArray();
+    }
+
+    private static void out(String s) {
+        System.out.println(s);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new SummaryFillBenchmark().run();
+    }
+
+}
@@ -0,0 +1,48 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.dispatch.searchcluster;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.OptionalLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyTrackerTest {
+
+    @Test
+    public void requireThatPercentilesAreComputedOverRecentSamples() {
+        LatencyTracker tracker = new LatencyTracker();
+        for (int i = 1; i < LatencyTracker.MIN_SAMPLES; i++)
+            tracker.add(i);
+        assertEquals("Too few samples", OptionalLong.empty(), tracker.percentile(50));
+
+        for (int i = LatencyTracker.MIN_SAMPLES; i <= 100; i++)
+            tracker.add(i);
+        assertEquals(50, tracker.percentile(50).getAsLong());
+        assertEquals(99, tracker.percentile(99).getAsLong());
+        assertEquals(100, tracker.percentile(100).getAsLong());
+        assertEquals(1, tracker.percentile(0).getAsLong());
+
+        for (int i = 0; i < LatencyTracker.SAMPLES; i++)
+            tracker.add(1000);
+        assertEquals("Old samples are forgotten", 1000, tracker.percentile(1).getAsLong());
+    }
+
+    @Test
+    public void requireThatGroupPercentileIsTheMaxOfItsWorkingNodes() {
+        Node n1 = new Node(0, "host1", 0);
+        Node n2 = new Node(1, "host2", 0);
+        Node n3 = new Node(2, "host3", 0);
+        Group group = new Group(0, List.of(n1, n2, n3));
+        for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) {
+            n1.recordSearchLatency(10);
+            n2.recordSearchLatency(20);
+        }
+        assertEquals("Unknown for one node", OptionalLong.empty(), group.searchLatencyPercentile(90));
+
+        n3.setWorking(false);
+        assertEquals(20, group.searchLatencyPercentile(90).getAsLong());
+    }
+
+}
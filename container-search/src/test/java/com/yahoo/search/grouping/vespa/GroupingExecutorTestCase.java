@@ -49,6 +49,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -205,6 +206,35 @@ public class GroupingExecutorTestCase {
         assertEquals(9L, hit.getField("max(bar)"));
     }
 
+    @Test
+    public void requireThatPartialResultsAreMergedPairwiseAsWhenMergedOneByOne() {
+        List<Grouping> pairwise = new ArrayList<>();
+        List<Grouping> oneByOne = new ArrayList<>();
+        for (int node = 0; node < 7; node++) {
+            com.yahoo.searchlib.aggregation.Group root = new com.yahoo.searchlib.aggregation.Group();
+            for (int id = node; id < node + 3; id++) { // ids overlap with the next two nodes
+                root.addChild(new com.yahoo.searchlib.aggregation.Group().setId(new IntegerResultNode(id))
+                                      .addAggregationResult(new CountAggregationResult(id + node)));
+            }
+            Grouping grouping = new Grouping(0);
+            grouping.setFirstLevel(0);
+            grouping.setLastLevel(1);
+            grouping.setRoot(root);
+            pairwise.add(grouping);
+            oneByOne.add(grouping.clone());
+        }
+        for (int i = 1; i < oneByOne.size(); i++)
+            oneByOne.get(0).merge(oneByOne.get(i));
+
+        Grouping merged = GroupingExecutor.merge(pairwise);
+        assertSame(pairwise.get(0), merged);
+        assertEquals(oneByOne.get(0), merged);
+        List<com.yahoo.searchlib.aggregation.Group> groups = merged.getRoot().getChildren();
+        assertEquals(9, groups.size());
+        assertEquals(0L, ((CountAggregationResult)groups.get(0).getAggregationResults().get(0)).getCount());
+        assertEquals(4L + 5 + 6, ((CountAggregationResult)groups.get(3).getAggregationResults().get(0)).getCount());
+    }
+
     @Test
     public void requireThatUnexpectedGroupingResultsAreIgnored() {
         Query query = newQuery();
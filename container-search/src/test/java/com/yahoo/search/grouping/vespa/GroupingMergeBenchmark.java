@@ -0,0 +1,113 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.grouping.vespa;
+
+import com.yahoo.searchlib.aggregation.CountAggregationResult;
+import com.yahoo.searchlib.aggregation.Group;
+import com.yahoo.searchlib.aggregation.Grouping;
+import com.yahoo.searchlib.aggregation.GroupingLevel;
+import com.yahoo.searchlib.aggregation.SumAggregationResult;
+import com.yahoo.searchlib.expression.IntegerResultNode;
+import com.yahoo.searchlib.expression.StringResultNode;
+import com.yahoo.vespa.objects.BufferSerializer;
+import com.yahoo.vespa.objects.Identifiable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Measures deserializing and merging the grouping results of 100 content nodes returning 10000 groups each,
+ * when the results are merged one by one into the first, and pairwise by {@link GroupingExecutor#merge}.
+ * The group ids of the nodes overlap fully, partially, and hardly at all.
+ *
+ * Run with the main method, e.g with -Xmx4g.
+ */
+public class GroupingMergeBenchmark {
+
+    private static final int nodes = 100;
+    private static final int groups = 10000;
+    private static final int repetitions = 5;
+
+    public void run() {
+        for (int idSpace : new int[] { groups, 2 * groups, 100 * groups }) {
+            List<byte[]> replies = createReplies(idSpace);
+            out("Group ids in [0, " + idSpace + "):");
+            for (int i = 0; i < repetitions; i++) {
+                measure("  one by one", replies, false);
+                measure("  pairwise  ", replies, true);
+            }
+        }
+    }
+
+    private void measure(String name, List<byte[]> replies, boolean pairwise) {
+        System.gc();
+        long startTime = System.nanoTime();
+        List<Grouping> groupings = new ArrayList<>(replies.size());
+        for (byte[] reply : replies)
+            groupings.add((Grouping)Identifiable.create(new BufferSerializer(reply)));
+        long deserializedTime = System.nanoTime();
+
+        Grouping merged;
+        if (pairwise) {
+            merged = GroupingExecutor.merge(groupings);
+        }
+        else {
+            merged = groupings.get(0);
+            for (int i = 1; i < groupings.size(); i++)
+                merged.merge(groupings.get(i));
+        }
+        merged.postMerge();
+        long mergedTime = System.nanoTime();
+
+        out(name + ": Deserialize " + (deserializedTime - startTime) / 1000000 + " ms, " +
+            "merge " + (mergedTime - deserializedTime) / 1000000 + " ms, " +
+            merged.getRoot().getChildren().size() + " groups");
+    }
+
+    private List<byte[]> createReplies(int idSpace) {
+        Random random = new Random(1);
+        List<byte[]> replies = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; i++) {
+            BufferSerializer buffer = new BufferSerializer();
+            createGrouping(random, idSpace).serializeWithId(buffer);
+            replies.add(Arrays.copyOf(buffer.getBuf().array(), buffer.position()));
+        }
+        return replies;
+    }
+
+    /** Returns a grouping on two levels, like all(group(a) each(output(count(),sum(b)) all(group(c) each(output(count()))))) */
+    private Grouping createGrouping(Random random, int idSpace) {
+        TreeSet<Long> ids = new TreeSet<>();
+        while (ids.size() < groups)
+            ids.add((long)random.nextInt(idSpace));
+
+        Group root = new Group();
+        for (long id : ids) {
+            Group group = new Group().setId(new IntegerResultNode(id)).setRank(random.nextDouble());
+            group.addAggregationResult(new CountAggregationResult(random.nextInt(100)));
+            group.addAggregationResult(new SumAggregationResult(new IntegerResultNode(random.nextInt(1000))));
+            for (int i = 0; i < 2; i++) {
+                Group child = new Group().setId(new StringResultNode("c" + i)).setRank(random.nextDouble());
+                child.addAggregationResult(new CountAggregationResult(random.nextInt(100)));
+                group.addChild(child);
+            }
+            root.addChild(group);
+        }
+        return new Grouping().setFirstLevel(0)
+                             .setLastLevel(2)
+                             .addLevel(new GroupingLevel().setMaxGroups(-1))
+                             .addLevel(new GroupingLevel().setMaxGroups(-1))
+                             .setRoot(root);
+    }
+
+    private void out(String s) {
+        System.out.println(s);
+    }
+
+    public static void main(String[] args) {
+        new GroupingMergeBenchmark().run();
+    }
+
+}
@@ -105,6 +105,14 @@ public class SearchHandlerTestCase {
             );
     }
 
+    @Test
+    public void testPooledOutputBuffers() throws Exception {
+        try (RequestHandlerTestDriver newDriver = driverWithConfig("config_pooled_buffers")) {
+            for (int i = 0; i < 10; i++) // more than the pool keeps
+                assertJsonResult("http://localhost?query=abc", newDriver);
+        }
+    }
+
     @Test
     public void testFailing() {
          assertTrue(driver.sendRequest("http://localhost?query=test&searchChain=classLoadingError").readAll().contains("NoClassDefFoundError"));
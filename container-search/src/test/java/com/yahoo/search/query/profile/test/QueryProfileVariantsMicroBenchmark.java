@@ -0,0 +1,82 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.query.profile.test;
+
+import com.yahoo.container.jdisc.HttpRequest;
+import com.yahoo.jdisc.http.HttpRequest.Method;
+import com.yahoo.processing.request.CompoundName;
+import com.yahoo.search.Query;
+import com.yahoo.search.query.profile.QueryProfile;
+import com.yahoo.search.query.profile.compiled.CompiledQueryProfile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the cost of setting up queries, and looking up properties in them,
+ * from a query profile with 5 dimensions and more than 1000 variants.
+ */
+public class QueryProfileVariantsMicroBenchmark {
+
+    private static final String[] dimensions = { "region", "device", "bucket", "client", "language" };
+    private static final int variants = 1200;
+    private static final int valuesPerDimension = 6;
+
+    private final CompiledQueryProfile profile;
+    private final List<CompoundName> properties = new ArrayList<>();
+    private final List<HttpRequest> requests = new ArrayList<>();
+
+    public QueryProfileVariantsMicroBenchmark() {
+        Random random = new Random(1);
+        QueryProfile profile = new QueryProfile("variants");
+        profile.setDimensions(dimensions);
+        for (int i = 0; i < 100; i++) {
+            properties.add(new CompoundName("property" + i));
+            profile.set("property" + i, "default" + i, null);
+        }
+        profile.set("hits", "10", null);
+        profile.set("ranking.profile", "default", null);
+        for (int i = 0; i < variants; i++) {
+            String[] binding = new String[dimensions.length];
+            for (int d = 0; d < dimensions.length; d++)
+                binding[d] = random.nextInt(3) == 0 ? null : dimensions[d] + random.nextInt(valuesPerDimension);
+            for (int j = 0; j < 10; j++)
+                profile.set("property" + random.nextInt(properties.size()), "value" + i + "." + j, binding, null);
+            profile.set("hits", String.valueOf(10 + random.nextInt(20)), binding, null);
+            profile.set("ranking.profile", "profile" + random.nextInt(10), binding, null);
+        }
+        profile.freeze();
+        this.profile = profile.compile(null);
+
+        for (int i = 0; i < 100; i++) {
+            StringBuilder request = new StringBuilder("?query=test");
+            for (String dimension : dimensions)
+                request.append("&").append(dimension).append("=").append(dimension).append(random.nextInt(valuesPerDimension + 1));
+            requests.add(HttpRequest.createTestRequest(request.toString(), Method.GET));
+        }
+    }
+
+    public void benchmark(int count) {
+        run(count / 10); // warm-up
+        long startTime = System.nanoTime();
+        run(count);
+        long totalTime = System.nanoTime() - startTime;
+        System.out.println("Set up " + count + " queries with " + properties.size() + " property lookups each in " +
+                           totalTime / 1000000 + " ms (" + totalTime / count / 1000 + " microseconds per query)");
+    }
+
+    private void run(int count) {
+        for (int i = 0; i < count; i++) {
+            Query query = new Query(requests.get(i % requests.size()), profile);
+            for (CompoundName property : properties) {
+                if (query.properties().get(property) == null)
+                    throw new RuntimeException("Expected a value for " + property);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        new QueryProfileVariantsMicroBenchmark().benchmark(100000);
+    }
+
+}
@@ -3,6 +3,7 @@ package com.yahoo.search.query.profile.test;
 
 import com.yahoo.jdisc.http.HttpRequest.Method;
 import com.yahoo.container.jdisc.HttpRequest;
+import com.yahoo.processing.request.CompoundName;
 import com.yahoo.search.Query;
 import com.yahoo.search.query.Properties;
 import com.yahoo.search.query.profile.BackedOverridableQueryProfile;
@@ -19,6 +20,10 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -162,6 +167,38 @@ public class QueryProfileVariantsTestCase {
         assertEquals("a, b, c, d", listedKeys);
     }
 
+    @Test
+    public void testVariantLookups() {
+        QueryProfile profile = new QueryProfile("test");
+        profile.setDimensions(new String[] {"region", "model", "bucket"});
+        profile.set("a", "default", null);
+        profile.set("a", "us,*,*", new String[] {"us", null, null}, null);
+        profile.set("a", "us,nokia,*", new String[] {"us", "nokia", null}, null);
+        profile.set("b", "*,*,bucket1", new String[] {null, null, "bucket1"}, null);
+        CompiledQueryProfile cprofile = profile.compile(null);
+
+        var usNokia = cprofile.lookup(toMap("region=us", "model=nokia", "query=foo"));
+        assertEquals("us,nokia,*", cprofile.get(new CompoundName("a"), usNokia, null, null));
+        assertNull(cprofile.get(new CompoundName("b"), usNokia, null, null));
+        assertNull(cprofile.get(new CompoundName("c"), usNokia, null, null));
+
+        // Values not bound in any variant resolve to the same variant
+        assertSame(usNokia, cprofile.lookup(toMap("region=us", "model=nokia", "bucket=bucket2", "query=bar")));
+        assertTrue(cprofile.isValid(usNokia, toMap("region=us", "model=nokia", "bucket=bucket2")));
+        assertFalse(cprofile.isValid(usNokia, toMap("region=us", "model=nokia", "bucket=bucket1")));
+        assertFalse(cprofile.isValid(usNokia, toMap("region=us")));
+        assertNotEquals(usNokia.id(), cprofile.lookup(toMap("region=us")).id());
+
+        var noBindings = cprofile.lookup(toMap("region=eu", "query=foo"));
+        assertSame(noBindings, cprofile.lookup(null));
+        assertTrue(cprofile.isValid(noBindings, null));
+        assertEquals("default", cprofile.get(new CompoundName("a"), noBindings, null, null));
+
+        var usBucket1 = toMap("region=us", "bucket=bucket1");
+        assertEquals(cprofile.get("a", usBucket1), cprofile.get(new CompoundName("a"), cprofile.lookup(usBucket1), null, null));
+        assertEquals("*,*,bucket1", cprofile.get(new CompoundName("b"), cprofile.lookup(usBucket1), null, null));
+    }
+
     @Test
     public void testVariantsOfExplicitCompound() {
         QueryProfile a1 = new QueryProfile("a1");
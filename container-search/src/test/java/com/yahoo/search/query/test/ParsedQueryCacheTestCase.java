@@ -0,0 +1,84 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.query.test;
+
+import com.yahoo.component.chain.Chain;
+import com.yahoo.prelude.IndexFacts;
+import com.yahoo.prelude.query.AndItem;
+import com.yahoo.prelude.query.WordItem;
+import com.yahoo.search.Query;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.query.ParsedQueryCache;
+import com.yahoo.search.query.QueryTree;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.search.searchchain.ExecutionFactory;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+public class ParsedQueryCacheTestCase {
+
+    private final ExecutionFactory executionFactory = ExecutionFactory.empty();
+    private final ParsedQueryCache cache = executionFactory.parsedQueryCache();
+
+    @Test
+    public void testCaching() {
+        QueryTree first = parse("?query=foo+bar");
+        assertEquals("AND foo bar", first.getRoot().toString());
+        assertCacheCounts(0, 1, 1);
+
+        QueryTree second = parse("?query=foo+bar");
+        assertEquals(first, second);
+        assertNotSame(first.getRoot(), second.getRoot());
+        assertCacheCounts(1, 1, 1);
+
+        // Modifying a returned tree does not change the cached one
+        ((AndItem)second.getRoot()).addItem(new WordItem("baz"));
+        assertEquals("AND foo bar", parse("?query=foo+bar").getRoot().toString());
+        assertCacheCounts(2, 1, 1);
+    }
+
+    @Test
+    public void testParsingParametersAreIncludedInTheKey() {
+        parse("?query=foo+bar");
+        parse("?query=foo+bar&type=any");
+        parse("?query=foo+bar&default-index=title");
+        parse("?query=foo+bar&filter=%2Bbaz");
+        parse("?query=foo+bar&language=de");
+        parse("?query=foo+bar&sources=a");
+        parse("?query=foo+bar&restrict=b");
+        assertCacheCounts(0, 7, 7);
+
+        assertEquals("OR foo bar", parse("?query=foo+bar&type=any").getRoot().toString());
+        assertCacheCounts(1, 7, 7);
+    }
+
+    @Test
+    public void testCacheIsNotUsedWithAnotherParserEnvironment() {
+        Execution execution = executionFactory.newExecution(new Chain<Searcher>());
+        execution.context().setIndexFacts(new IndexFacts());
+        Query query = new Query("?query=foo+bar");
+        execution.search(query);
+        assertEquals("AND foo bar", query.getModel().getQueryTree().getRoot().toString());
+        assertCacheCounts(0, 0, 0);
+    }
+
+    @Test
+    public void testSelectQueriesAreNotCached() {
+        parse("?select.where=%7B%22contains%22%3A%5B%22title%22%2C%22foo%22%5D%7D&type=select");
+        assertCacheCounts(0, 0, 0);
+    }
+
+    private QueryTree parse(String request) {
+        Query query = new Query(request);
+        executionFactory.newExecution(new Chain<Searcher>()).search(query);
+        return query.getModel().getQueryTree();
+    }
+
+    private void assertCacheCounts(long hits, long misses, int size) {
+        assertEquals("hits", hits, cache.hits());
+        assertEquals("misses", misses, cache.misses());
+        assertEquals("size", size, cache.size());
+    }
+
+}
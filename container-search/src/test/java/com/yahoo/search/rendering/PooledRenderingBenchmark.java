@@ -0,0 +1,120 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.rendering;
+
+import com.yahoo.container.jdisc.ByteBufferPool;
+import com.yahoo.container.jdisc.ContentChannelOutputStream;
+import com.yahoo.jdisc.handler.CompletionHandler;
+import com.yahoo.jdisc.handler.ContentChannel;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.result.Hit;
+import com.yahoo.search.searchchain.Execution;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Compares the time and allocation per response of rendering results of 10, 100 and 1000 hits as JSON
+ * into a content channel, when the output stream allocates new buffers and when it uses pooled buffers.
+ *
+ * Run with the main method.
+ */
+public class PooledRenderingBenchmark {
+
+    private static final int responseBytes = 100_000_000;
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    private final JsonRenderer rendererPrototype = new JsonRenderer();
+    private final ByteBufferPool pool = new ByteBufferPool(ByteBufferPool.DEFAULT_BUFFER_SIZE, 1024);
+    private final ContentChannel channel = new DrainingContentChannel();
+
+    public void run() throws Exception {
+        for (int hits : List.of(10, 100, 1000)) {
+            Result result = createResult(hits);
+            out("Warming up " + hits + " hits...");
+            for (int i = 0; i < 1000; i++) {
+                render(result, null);
+                render(result, pool);
+            }
+            int renderings = Math.max(100, responseBytes / render(result, null));
+            measure(hits + " hits, allocated buffers", result, null, renderings);
+            measure(hits + " hits, pooled buffers   ", result, pool, renderings);
+        }
+        out("Pool: " + pool.allocated() + " buffers allocated, " + pool.available() + " available, " +
+            pool.inUse() + " in use");
+    }
+
+    private void measure(String name, Result result, ByteBufferPool pool, int renderings) throws Exception {
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime();
+        long written = 0;
+        for (int i = 0; i < renderings; i++)
+            written += render(result, pool);
+        long nanos = System.nanoTime() - startTime;
+        long bytes = allocatedBytes() - startBytes;
+        out(name + ": " + (nanos / renderings / 1000) + " us/response, " + (bytes / renderings) + " bytes allocated/response, " +
+            (written / renderings) + " bytes written/response");
+    }
+
+    private int render(Result result, ByteBufferPool pool) throws Exception {
+        JsonRenderer renderer = (JsonRenderer)rendererPrototype.clone();
+        renderer.init();
+        ContentChannelOutputStream stream = new ContentChannelOutputStream(channel, pool);
+        renderer.render(stream, result, new Execution(Execution.Context.createContextStub()), null).get();
+        stream.flush();
+        return (int)stream.written();
+    }
+
+    private long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static Result createResult(int hits) {
+        Result result = new Result(new Query("?query=test&hits=" + hits));
+        result.setTotalHitCount(hits * 1000L);
+        for (int i = 0; i < hits; i++) {
+            Hit hit = new Hit("id:benchmark:doc::" + i, 1.0 / (i + 1));
+            hit.setSource("benchmark");
+            hit.setField("title", "The title of document number " + i);
+            hit.setField("body", "A body text which is long enough to be a typical dynamic summary snippet, " +
+                                 "with the matched terms highlighted: <hi>test</hi> " + i + " " +
+                                 "and some more text following the highlighted terms to make up a few sentences.");
+            hit.setField("url", "http://www.example.com/documents/" + i + ".html");
+            hit.setField("popularity", i * 37L);
+            hit.setField("price", i * 1.25);
+            hit.setField("instock", i % 3 == 0);
+            result.hits().add(hit);
+        }
+        return result;
+    }
+
+    /** Consumes written data and completes each write immediately, as a fast network would */
+    private static class DrainingContentChannel implements ContentChannel {
+
+        @Override
+        public void write(ByteBuffer buf, CompletionHandler handler) {
+            buf.position(buf.limit());
+            if (handler != null)
+                handler.completed();
+        }
+
+        @Override
+        public void close(CompletionHandler handler) {
+            if (handler != null)
+                handler.completed();
+        }
+
+    }
+
+    private static void out(String s) {
+        System.out.println(s);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new PooledRenderingBenchmark().run();
+    }
+
+}
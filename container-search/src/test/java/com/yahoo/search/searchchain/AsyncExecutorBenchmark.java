@@ -0,0 +1,133 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchchain;
+
+import com.yahoo.component.ComponentId;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A load test of the modes of the async executor under federation with a 10x fan-out:
+ * Each query is sent to 10 source chains in parallel, and each source spends some time waiting
+ * for a backend and some time computing. This reports the 99 percentile query latency and the peak
+ * number of live threads in each mode.
+ */
+public class AsyncExecutorBenchmark {
+
+    private final int clientCount = 64;
+    private final int queriesPerClient = 200;
+    private final int fanOut = 10;
+    private final int sourceWaitMs = 2;
+    private final int sourceComputeMicros = 200;
+
+    private final List<ComponentId> sources = new ArrayList<>();
+
+    public AsyncExecutorBenchmark() {
+        for (int i = 0; i < fanOut; i++)
+            sources.add(new ComponentId("source" + i));
+    }
+
+    public void run() throws InterruptedException {
+        run("Thread per task", new AsyncExecutor(AsyncExecutor.Mode.threadPerTask, 0, 0));
+        run("Bounded", new AsyncExecutor(AsyncExecutor.Mode.bounded, 4 * Runtime.getRuntime().availableProcessors(), 0));
+        run("Bounded, limited per chain", new AsyncExecutor(AsyncExecutor.Mode.bounded,
+                                                            4 * Runtime.getRuntime().availableProcessors(),
+                                                            clientCount / 2));
+    }
+
+    private void run(String name, AsyncExecutor executor) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        AtomicInteger peakQueued = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread sampler = new Thread(() -> {
+            while (running.get()) {
+                peakQueued.accumulateAndGet(executor.queuedTasks(), Math::max);
+                sleep(1);
+            }
+        });
+        sampler.start();
+
+        long[] latencies = new long[clientCount * queriesPerClient];
+        AtomicInteger latencyCount = new AtomicInteger();
+        List<Thread> clients = new ArrayList<>();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < clientCount; i++) {
+            Thread client = new Thread(() -> {
+                for (int q = 0; q < queriesPerClient; q++)
+                    latencies[latencyCount.getAndIncrement()] = query(executor);
+            });
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients)
+            client.join();
+        long totalMs = (System.nanoTime() - startTime) / 1000_000;
+        running.set(false);
+        sampler.join();
+        executor.shutdown();
+
+        Arrays.sort(latencies);
+        System.out.println(name + ": " +
+                           "p50 " + format(latencies[latencies.length / 2] / 1000_000.0) + " ms, " +
+                           "p99 " + format(latencies[latencies.length * 99 / 100] / 1000_000.0) + " ms, " +
+                           "peak threads " + threads.getPeakThreadCount() + ", " +
+                           "peak queued tasks " + peakQueued.get() + ", " +
+                           "throughput " + (latencies.length * 1000L / Math.max(1, totalMs)) + " qps");
+    }
+
+    /** Runs a query against all the sources and returns the time it took in nanoseconds */
+    private long query(AsyncExecutor executor) {
+        long start = System.nanoTime();
+        List<FutureTask<Double>> futures = new ArrayList<>(fanOut);
+        for (ComponentId source : sources) {
+            FutureTask<Double> future = new FutureTask<>(this::searchSource);
+            executor.execute(source, future);
+            futures.add(future);
+        }
+        try {
+            for (FutureTask<Double> future : futures)
+                future.get();
+        }
+        catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private double searchSource() {
+        sleep(sourceWaitMs);
+        double sum = 0;
+        long end = System.nanoTime() + sourceComputeMicros * 1000L;
+        while (System.nanoTime() < end)
+            sum += ThreadLocalRandom.current().nextDouble();
+        return sum;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ENGLISH, "%.2f", value);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        new AsyncExecutorBenchmark().run();
+    }
+
+}
@@ -0,0 +1,145 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchchain;
+
+import com.yahoo.component.ComponentId;
+import com.yahoo.search.config.AsyncExecutionConfig;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncExecutorTestCase {
+
+    @Test
+    public void testConcurrencyLimitPerChain() throws InterruptedException {
+        AsyncExecutor executor = new AsyncExecutor(AsyncExecutor.Mode.bounded, 4, 2);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch completed = new CountDownLatch(6);
+            AtomicInteger maxConcurrentInA = new AtomicInteger();
+            AtomicInteger concurrentInA = new AtomicInteger();
+            ComponentId a = new ComponentId("a");
+            ComponentId b = new ComponentId("b");
+            for (int i = 0; i < 5; i++) {
+                executor.execute(a, () -> {
+                    maxConcurrentInA.accumulateAndGet(concurrentInA.incrementAndGet(), Math::max);
+                    await(release);
+                    concurrentInA.decrementAndGet();
+                    completed.countDown();
+                });
+            }
+            executor.execute(b, () -> { await(release); completed.countDown(); });
+
+            awaitValue(3, executor::activeTasks);
+            assertEquals(3, executor.queuedTasks());
+
+            release.countDown();
+            assertTrue(completed.await(60, TimeUnit.SECONDS));
+            assertEquals(2, maxConcurrentInA.get());
+            awaitValue(0, executor::activeTasks);
+            assertEquals(0, executor.queuedTasks());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBoundedThreads() throws InterruptedException {
+        AsyncExecutor executor = new AsyncExecutor(AsyncExecutor.Mode.bounded, 2, 0);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch completed = new CountDownLatch(10);
+            for (int i = 0; i < 10; i++)
+                executor.execute(new ComponentId("chain" + i), () -> { await(release); completed.countDown(); });
+
+            awaitValue(2, executor::activeTasks);
+            assertEquals(8, executor.queuedTasks());
+            assertEquals(2, executor.threads());
+
+            release.countDown();
+            assertTrue(completed.await(60, TimeUnit.SECONDS));
+            assertEquals(2, executor.threads());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testThreadPerTask() throws InterruptedException {
+        AsyncExecutor executor = new AsyncExecutor(AsyncExecutor.Mode.threadPerTask, 0, 0);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch completed = new CountDownLatch(200);
+            for (int i = 0; i < 200; i++)
+                executor.execute(new ComponentId("chain"), () -> { await(release); completed.countDown(); });
+
+            awaitValue(200, executor::activeTasks);
+            assertEquals(0, executor.queuedTasks());
+
+            release.countDown();
+            assertTrue(completed.await(60, TimeUnit.SECONDS));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectedTasksAreNotCounted() {
+        AsyncExecutor executor = new AsyncExecutor(AsyncExecutor.Mode.bounded, 1, 1);
+        executor.shutdown();
+        // The second task would be left waiting for the chain if the first had kept its slot
+        for (int i = 0; i < 2; i++) {
+            try {
+                executor.execute(new ComponentId("chain"), () -> {});
+                fail("Expected the task to be rejected");
+            }
+            catch (RejectedExecutionException expected) {
+                assertEquals(0, executor.queuedTasks());
+            }
+        }
+    }
+
+    @Test
+    public void testCreationFromConfig() {
+        assertSame(AsyncExecutor.defaultExecutor, AsyncExecutor.from(new AsyncExecutionConfig.Builder().build()));
+
+        AsyncExecutor executor = AsyncExecutor.from(new AsyncExecutionConfig.Builder().mode(AsyncExecutionConfig.Mode.BOUNDED)
+                                                                                      .threads(3)
+                                                                                      .build());
+        try {
+            assertEquals(AsyncExecutor.Mode.bounded, executor.mode());
+            assertEquals(3, executor.threads());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void awaitValue(int expected, IntSupplier value) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (value.getAsInt() != expected && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(expected, value.getAsInt());
+    }
+
+}
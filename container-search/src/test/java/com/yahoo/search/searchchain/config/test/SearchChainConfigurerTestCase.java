@@ -141,6 +141,7 @@ public class SearchChainConfigurerTestCase {
         copyFile(testDir + "specialtokens.cfg", cfgDir +  "/specialtokens.cfg");
         copyFile(testDir + "three-searchers.cfg", cfgDir +  "/chains.cfg");
         copyFile(testDir + "container-http.cfg", cfgDir +  "/container-http.cfg");
+        copyFile(testDir + "async-execution.cfg", cfgDir +  "/async-execution.cfg");
         createComponentsConfig(testDir + "three-searchers.cfg", testDir + "handlers.cfg", cfgDir +  "/components.cfg");
         printFile(new File(cfgDir + "/int.cfg"), "intVal 16\n");
         printFile(new File(cfgDir + "/string.cfg"), "stringVal \"testSearcherConfigUpdate\"\n");
@@ -194,6 +195,7 @@ public class SearchChainConfigurerTestCase {
         copyFile(testDir + "specialtokens.cfg", cfgDir +  "/specialtokens.cfg");
         copyFile(testDir + "chainsConfigUpdate_1.cfg", cfgDir +  "/chains.cfg");
         copyFile(testDir + "container-http.cfg", cfgDir +  "/container-http.cfg");
+        copyFile(testDir + "async-execution.cfg", cfgDir +  "/async-execution.cfg");
         createComponentsConfig(testDir + "chainsConfigUpdate_1.cfg", testDir + "handlers.cfg", cfgDir +  "/components.cfg");
 
         HandlersConfigurerTestWrapper configurer = new HandlersConfigurerTestWrapper("dir:" + cfgDir);
@@ -0,0 +1,157 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.search.searchers.test;
+
+import com.yahoo.component.chain.Chain;
+import com.yahoo.metrics.simple.MetricReceiver;
+import com.yahoo.metrics.simple.Point;
+import com.yahoo.metrics.simple.UntypedMetric;
+import com.yahoo.search.Query;
+import com.yahoo.search.Result;
+import com.yahoo.search.Searcher;
+import com.yahoo.search.config.ConcurrencyLimitingConfig;
+import com.yahoo.search.result.Hit;
+import com.yahoo.search.searchchain.Execution;
+import com.yahoo.search.searchers.ConcurrencyLimitingSearcher;
+import com.yahoo.test.ManualClock;
+import com.yahoo.yolean.chain.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for ConcurrencyLimitingSearcher.
+ * Concurrent queries are simulated by executing queries nested in other queries, which makes
+ * all the nested queries in flight at the same time.
+ */
+public class ConcurrencyLimitingSearcherTestCase {
+
+    private final ManualClock clock = new ManualClock();
+    private final MetricReceiver.MockReceiver metric = new MetricReceiver.MockReceiver();
+
+    @Test
+    public void testRejectionAboveLimit() {
+        ConcurrencyLimitingSearcher limiter = createLimiter(4, 0);
+        Chain<Searcher> chain = new Chain<>("test", limiter, new NestingSearcher(clock));
+
+        assertEquals("All queries within the limit are executed", 4, executed(chain, 4, 10, null, false));
+        assertEquals("Queries above the limit are rejected", 4, executed(chain, 6, 10, null, false));
+        assertEquals(0, limiter.inFlight("test"));
+        assertEquals("Dry run does not reject", 6, executed(chain, 6, 10, null, true));
+
+        Map<Point, UntypedMetric> rejections = metric.getSnapshot().getMapForMetric("requestsOverConcurrencyLimit");
+        assertEquals("The first query over the limit is rejected, and both in dry run",
+                     1 + 2, rejections.get(point("test", "default")).getCount());
+    }
+
+    @Test
+    public void testPriorityClasses() {
+        ConcurrencyLimitingSearcher limiter = createLimiter(8, 0);
+        Chain<Searcher> chain = new Chain<>("test", limiter, new NestingSearcher(clock));
+
+        assertEquals(8, executed(chain, 10, 10, null, false));
+        assertEquals(8, executed(chain, 10, 10, "high", false));
+        assertEquals(4, executed(chain, 10, 10, "low", false));
+        assertEquals("Unknown classes have the default share", 8, executed(chain, 10, 10, "unknown", false));
+
+        Map<Point, UntypedMetric> rejections = metric.getSnapshot().getMapForMetric("requestsOverConcurrencyLimit");
+        assertEquals(1, rejections.get(point("test", "low")).getCount());
+    }
+
+    @Test
+    public void testLimitAdaptsToLatency() {
+        ConcurrencyLimitingSearcher limiter = createLimiter(10, 0.2);
+        Chain<Searcher> chain = new Chain<>("test", limiter, new NestingSearcher(clock));
+
+        for (int i = 0; i < 50; i++)
+            executed(chain, 8, 10, null, false);
+        int stableLatencyLimit = limiter.limit("test");
+        assertTrue("Limit increases while latency is stable: " + stableLatencyLimit, stableLatencyLimit > 10);
+
+        for (int i = 0; i < 50; i++)
+            executed(chain, stableLatencyLimit, 50, null, false);
+        int increasedLatencyLimit = limiter.limit("test");
+        assertTrue("Limit decreases when latency increases: " + increasedLatencyLimit,
+                   increasedLatencyLimit < stableLatencyLimit);
+        assertTrue("Limit stays above the min limit", increasedLatencyLimit >= 2);
+
+        Map<Point, UntypedMetric> limits = metric.getSnapshot().getMapForMetric("concurrencyLimit");
+        assertTrue(limits.containsKey(metric.point("chain", "test")));
+    }
+
+    /** Creates a limiter, where smoothing 0 means the limit does not change */
+    private ConcurrencyLimitingSearcher createLimiter(int initialLimit, double smoothing) {
+        ConcurrencyLimitingConfig.Builder config = new ConcurrencyLimitingConfig.Builder();
+        config.initialLimit(initialLimit);
+        config.smoothing(smoothing);
+        config.minLimit(2);
+        config.maxLimit(100);
+        config.priority(new ConcurrencyLimitingConfig.Priority.Builder().name("high").share(1.0));
+        config.priority(new ConcurrencyLimitingConfig.Priority.Builder().name("low").share(0.5));
+        return new ConcurrencyLimitingSearcher(new ConcurrencyLimitingConfig(config), metric, clock);
+    }
+
+    private Point point(String chain, String priority) {
+        return metric.pointBuilder().set("chain", chain).set("priority", priority).build();
+    }
+
+    /**
+     * Executes the given number of queries nested in each other
+     *
+     * @return the number of those queries which were executed (not rejected)
+     */
+    private int executed(Chain<Searcher> chain, int concurrency, int latencyMillis, String priority, boolean dryRun) {
+        Query query = new Query();
+        query.properties().set("depth", concurrency - 1);
+        query.properties().set("latency", latencyMillis);
+        if (priority != null)
+            query.properties().set("concurrency.priority", priority);
+        query.properties().set("concurrency.dryRun", dryRun);
+        return executed(new Execution(chain, Execution.Context.createContextStub()).search(query));
+    }
+
+    private static int executed(Result result) {
+        if (result.hits().getError() != null) return 0;
+        return (int)result.hits().get(0).getField("executed");
+    }
+
+    /**
+     * Executes a nested query until the depth is 0 or the nested query is rejected,
+     * then advances the clock by the latency.
+     * Returns a hit with the number of queries executed below and including this.
+     */
+    @After(ConcurrencyLimitingSearcher.CONCURRENCY_LIMITING)
+    private static class NestingSearcher extends Searcher {
+
+        private final ManualClock clock;
+
+        NestingSearcher(ManualClock clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Result search(Query query, Execution execution) {
+            int depth = query.properties().getInteger("depth");
+            int executed = 1;
+            if (depth > 0) {
+                Query nested = query.clone();
+                nested.properties().set("depth", depth - 1);
+                Chain<Searcher> chain = (Chain<Searcher>)execution.chain();
+                executed += executed(new Execution(chain, execution.context()).search(nested));
+            }
+            if (executed == 1) // this is the innermost executed query
+                clock.advance(Duration.ofMillis(query.properties().getInteger("latency")));
+            Result result = new Result(query);
+            Hit hit = new Hit("depth:" + depth);
+            hit.setField("executed", executed);
+            result.hits().add(hit);
+            return result;
+        }
+
+    }
+
+}
@@ -18,6 +18,9 @@ public class StructDataType extends BaseStructDataType {
     public static final int classId = registerClass(Ids.document + 57, StructDataType.class);
     private StructDataType superType = null;
 
+    /** The ids of all the fields of this in increasing order, or null if not computed since fields were changed */
+    private volatile int[] fieldIdsInOrder = null;
+
     public StructDataType(String name) {
         super(name);
     }
@@ -59,6 +62,7 @@ public class StructDataType extends BaseStructDataType {
     public void assign(StructDataType type) {
         super.assign(type);
         superType = type.superType;
+        fieldIdsInOrder = null;
     }
 
     @Override
@@ -88,6 +92,20 @@ public class StructDataType extends BaseStructDataType {
             throw new IllegalArgumentException(field.toString() + " already present in inherited type '" + superType.toString() + "', " + this.toString() + " cannot override.");
         }
         super.addField(field);
+        fieldIdsInOrder = null;
+    }
+
+    @Override
+    public Field removeField(String fieldName) {
+        Field removed = super.removeField(fieldName);
+        fieldIdsInOrder = null;
+        return removed;
+    }
+
+    @Override
+    public void clearFields() {
+        super.clearFields();
+        fieldIdsInOrder = null;
     }
 
     @Override
@@ -110,6 +128,21 @@ public class StructDataType extends BaseStructDataType {
         return getFields().size();
     }
 
+    /**
+     * Returns the ids of all the fields of this, including inherited ones, in increasing order.
+     * Structs of this type store the values of these fields at their index in this array.
+     * Fields added to an inherited type after this is called are not included.
+     * The returned array must not be modified.
+     */
+    public int[] getFieldIdsInOrder() {
+        int[] ids = fieldIdsInOrder;
+        if (ids == null) {
+            ids = getFields().stream().mapToInt(Field::getId).sorted().toArray();
+            fieldIdsInOrder = ids;
+        }
+        return ids;
+    }
+
     @Override
     public Class getValueClass() {
         return Struct.class;
@@ -138,6 +171,7 @@ public class StructDataType extends BaseStructDataType {
             }
         }
         superType = type;
+        fieldIdsInOrder = null;
     }
 
     public Collection<StructDataType> getInheritedTypes() {
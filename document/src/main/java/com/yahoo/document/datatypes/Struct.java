@@ -1,7 +1,6 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.document.datatypes;
 
-import com.yahoo.collections.Hashlet;
 import com.yahoo.document.DataType;
 import com.yahoo.document.Document;
 import com.yahoo.document.Field;
@@ -13,6 +12,8 @@ import com.yahoo.document.serialization.XmlSerializationHelper;
 import com.yahoo.document.serialization.XmlStream;
 import com.yahoo.vespa.objects.Ids;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.AbstractSet;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -22,30 +23,61 @@ import java.util.Set;
 
 
 /**
+ * A struct value. Field values are stored in small arrays sorted by field id until a fraction of the fields of the
+ * type are set. Then the values of the fields of the type are moved to arrays indexed by the position of the field id
+ * among the ids of the type, while values of fields not known by the type at that point stay in the sorted arrays.
+ * Numeric and bool values set by {@link #setPrimitiveFieldValue} are stored unboxed until they are accessed
+ * as field values.
+ *
+ * A struct may be read by multiple threads, but it must not be read while it is modified.
+ *
  * @author Håkon Humberset
  */
 public class Struct extends StructuredFieldValue {
 
     public static final int classId = registerClass(Ids.document + 33, Struct.class);
-    private Hashlet<Integer, FieldValue> values = new Hashlet<>();
-    private int [] order = null;
 
-    private int version;
+    // The types of values which are stored unboxed
+    private static final byte unboxedByte = 1;
+    private static final byte unboxedInt = 2;
+    private static final byte unboxedLong = 3;
+    private static final byte unboxedFloat = 4;
+    private static final byte unboxedDouble = 5;
+    private static final byte unboxedBool = 6;
 
-    private int [] getInOrder() {
-        if (order == null) {
-            order = new int[values.size()];
-            for (int i = 0; i < values.size(); i++) {
-                order[i] = values.key(i);
-            }
-            Arrays.sort(order);
-        }
-        return order;
-    }
+    /** Values are stored densely once more than one in this many of the fields of the type are set */
+    private static final int denseFraction = 2;
 
-    private void invalidateOrder() {
-        order = null;
-    }
+    /** Used to publish field values created from unboxed values safely to concurrent readers */
+    private static final VarHandle valueHandle = MethodHandles.arrayElementVarHandle(FieldValue[].class);
+
+    /** The field ids of the type in increasing order, giving the index of each field in the arrays below. Null while sparse */
+    private int[] fieldIds = null;
+
+    /** The field values at the index of their field id, or null if not set or unboxed. Null while sparse */
+    private FieldValue[] values = null;
+
+    /** The type of the unboxed value at each index, or 0 if none. Null if no values are unboxed */
+    private byte[] unboxedTypes = null;
+
+    /** The unboxed values, with floats and doubles as their raw bits. Null if no values are unboxed */
+    private long[] unboxedValues = null;
+
+    /**
+     * The ids of the fields stored sparsely, in increasing order, or null if none:
+     * All the fields set while this is sparse, and the fields which are not in fieldIds after that.
+     * The values of these are stored in the sparse arrays below like in the dense ones above.
+     */
+    private int[] sparseIds = null;
+    private FieldValue[] sparseValues = null;
+    private byte[] sparseUnboxedTypes = null;
+    private long[] sparseUnboxedValues = null;
+    private int sparseCount = 0;
+
+    /** The number of fields set in this */
+    private int count = 0;
+
+    private int version;
 
     public Struct(DataType type) {
         super((StructDataType) type);
@@ -89,18 +121,45 @@ public class Struct extends StructuredFieldValue {
     @Override
     public Struct clone() {
         Struct struct = (Struct) super.clone();
-        struct.values = new Hashlet<>();
-        struct.values.reserve(values.size());
-        for (int i = 0; i < values.size(); i++) {
-            struct.values.put(values.key(i), values.value(i).clone());
+        if (values != null)
+            struct.values = cloneValues(values, values.length);
+        if (unboxedTypes != null) {
+            struct.unboxedTypes = unboxedTypes.clone();
+            struct.unboxedValues = unboxedValues.clone();
+        }
+        if (sparseIds != null) {
+            struct.sparseIds = sparseIds.clone();
+            struct.sparseValues = cloneValues(sparseValues, sparseCount);
+        }
+        if (sparseUnboxedTypes != null) {
+            struct.sparseUnboxedTypes = sparseUnboxedTypes.clone();
+            struct.sparseUnboxedValues = sparseUnboxedValues.clone();
         }
         return struct;
     }
 
     @Override
     public void clear() {
-        values = new Hashlet<>();
-        invalidateOrder();
+        fieldIds = null;
+        values = null;
+        unboxedTypes = null;
+        unboxedValues = null;
+        sparseIds = null;
+        sparseValues = null;
+        sparseUnboxedTypes = null;
+        sparseUnboxedValues = null;
+        sparseCount = 0;
+        count = 0;
+    }
+
+    /** Returns a copy of the given values array holding clones of the values in the given number of first entries */
+    private static FieldValue[] cloneValues(FieldValue[] values, int length) {
+        FieldValue[] clone = new FieldValue[values.length];
+        for (int i = 0; i < length; i++) {
+            FieldValue value = (FieldValue) valueHandle.getAcquire(values, i);
+            clone[i] = value == null ? null : value.clone();
+        }
+        return clone;
     }
 
     @Override
@@ -127,7 +186,7 @@ public class Struct extends StructuredFieldValue {
 
     @Override
     public FieldValue getFieldValue(Field field) {
-        return values.get(field.getId());
+        return get(field.getId());
     }
 
 
@@ -138,7 +197,7 @@ public class Struct extends StructuredFieldValue {
 
     @Override
     public int getFieldCount() {
-        return values.size();
+        return count;
     }
 
     @Override
@@ -164,30 +223,287 @@ public class Struct extends StructuredFieldValue {
                     "Inconsistent field: " + field);
         }
 
-        int index = values.getIndexOfKey(field.getId());
-        if (index == -1) {
-            values.put(field.getId(), value);
-            invalidateOrder();
-        } else {
-            values.setValue(index, value);
+        put(field.getId(), value);
+    }
+
+    /**
+     * Sets the value of a field of type byte, int, long, float, double or bool. The value is stored unboxed,
+     * and a field value is only created for it if it is accessed.
+     *
+     * @param field the field to set
+     * @param value the value to set, where a bool is 0 or 1, and a float or double is given by the raw bits
+     *              returned by {@link Float#floatToRawIntBits} or {@link Double#doubleToRawLongBits}
+     * @throws IllegalArgumentException if the field is not in the type of this, or not of one of the above types
+     */
+    public void setPrimitiveFieldValue(Field field, long value) {
+        Field myField = getDataType().getField(field.getId());
+        if (myField == null)
+            throw new IllegalArgumentException("No such field in " + getDataType() + " : " + field.getName());
+        byte type = unboxedType(myField.getDataType());
+        if (type == 0)
+            throw new IllegalArgumentException("Field " + field.getName() + " of type " + myField.getDataType() +
+                                               " can not be set from a primitive value");
+
+        int index = denseIndexForWrite(field.getId());
+        if (index >= 0) {
+            if ( ! isSet(values, unboxedTypes, index))
+                count++;
+            if (unboxedTypes == null) {
+                unboxedTypes = new byte[values.length];
+                unboxedValues = new long[values.length];
+            }
+            values[index] = null;
+            unboxedTypes[index] = type;
+            unboxedValues[index] = value;
+        }
+        else {
+            index = sparseIndexForWrite(field.getId());
+            if ( ! isSet(sparseValues, sparseUnboxedTypes, index))
+                count++;
+            if (sparseUnboxedTypes == null) {
+                sparseUnboxedTypes = new byte[sparseIds.length];
+                sparseUnboxedValues = new long[sparseIds.length];
+            }
+            sparseValues[index] = null;
+            sparseUnboxedTypes[index] = type;
+            sparseUnboxedValues[index] = value;
         }
     }
 
     @Override
     public FieldValue removeFieldValue(Field field) {
-        FieldValue found = values.get(field.getId());
-        if (found != null) {
-            Hashlet<Integer, FieldValue> copy = new Hashlet<>();
-            copy.reserve(values.size() - 1);
-            for (int i=0; i < values.size(); i++) {
-                if (values.key(i) != field.getId()) {
-                    copy.put(values.key(i), values.value(i));
+        int index = denseIndex(field.getId());
+        if (index >= 0) {
+            FieldValue found = valueAt(values, unboxedTypes, unboxedValues, index, false);
+            if (found != null) {
+                values[index] = null;
+                if (unboxedTypes != null)
+                    unboxedTypes[index] = 0;
+                count--;
+            }
+            return found;
+        }
+
+        int sparseIndex = sparseIndex(field.getId());
+        if (sparseIndex < 0) return null;
+        FieldValue found = valueAt(sparseValues, sparseUnboxedTypes, sparseUnboxedValues, sparseIndex, false);
+        int moved = sparseCount - sparseIndex - 1;
+        System.arraycopy(sparseIds, sparseIndex + 1, sparseIds, sparseIndex, moved);
+        System.arraycopy(sparseValues, sparseIndex + 1, sparseValues, sparseIndex, moved);
+        if (sparseUnboxedTypes != null) {
+            System.arraycopy(sparseUnboxedTypes, sparseIndex + 1, sparseUnboxedTypes, sparseIndex, moved);
+            System.arraycopy(sparseUnboxedValues, sparseIndex + 1, sparseUnboxedValues, sparseIndex, moved);
+        }
+        sparseCount--;
+        sparseValues[sparseCount] = null;
+        if (sparseUnboxedTypes != null)
+            sparseUnboxedTypes[sparseCount] = 0;
+        count--;
+        return found;
+    }
+
+    /** Returns the value of the given field id, or null if it is not set */
+    private FieldValue get(int fieldId) {
+        int index = denseIndex(fieldId);
+        if (index >= 0) return valueAt(values, unboxedTypes, unboxedValues, index, true);
+        int sparseIndex = sparseIndex(fieldId);
+        if (sparseIndex < 0) return null;
+        return valueAt(sparseValues, sparseUnboxedTypes, sparseUnboxedValues, sparseIndex, true);
+    }
+
+    /** Sets the value of the given field id and returns the previous value, or null if none */
+    private FieldValue put(int fieldId, FieldValue value) {
+        int index = denseIndexForWrite(fieldId);
+        if (index >= 0) {
+            FieldValue previous = valueAt(values, unboxedTypes, unboxedValues, index, false);
+            if (previous == null)
+                count++;
+            values[index] = value;
+            if (unboxedTypes != null)
+                unboxedTypes[index] = 0;
+            return previous;
+        }
+
+        index = sparseIndexForWrite(fieldId);
+        FieldValue previous = valueAt(sparseValues, sparseUnboxedTypes, sparseUnboxedValues, index, false);
+        if (previous == null)
+            count++;
+        sparseValues[index] = value;
+        if (sparseUnboxedTypes != null)
+            sparseUnboxedTypes[index] = 0;
+        return previous;
+    }
+
+    /** Returns the index of the given field id in the dense arrays, or -1 if it has none */
+    private int denseIndex(int fieldId) {
+        if (values == null) return -1;
+        return Math.max(-1, Arrays.binarySearch(fieldIds, fieldId));
+    }
+
+    /**
+     * Returns the index of the given field id in the dense arrays, or -1 if it should be stored sparsely.
+     * This switches to dense storage when enough fields are set.
+     */
+    private int denseIndexForWrite(int fieldId) {
+        if (values == null) {
+            // Use the fields of the type as they are when switching
+            int[] typeFieldIds = getDataType().getFieldIdsInOrder();
+            if (sparseCount * denseFraction < typeFieldIds.length) return -1;
+            if (Arrays.binarySearch(typeFieldIds, fieldId) < 0) return -1;
+            switchToDense(typeFieldIds);
+        }
+        return denseIndex(fieldId);
+    }
+
+    /** Moves the values of the fields of the type from the sparse arrays to their index in the dense arrays */
+    private void switchToDense(int[] typeFieldIds) {
+        fieldIds = typeFieldIds;
+        values = new FieldValue[fieldIds.length];
+        int kept = 0;
+        for (int i = 0; i < sparseCount; i++) {
+            int index = Arrays.binarySearch(fieldIds, sparseIds[i]);
+            if (index >= 0) {
+                values[index] = sparseValues[i];
+                if (sparseUnboxedTypes != null && sparseUnboxedTypes[i] != 0) {
+                    if (unboxedTypes == null) {
+                        unboxedTypes = new byte[values.length];
+                        unboxedValues = new long[values.length];
+                    }
+                    unboxedTypes[index] = sparseUnboxedTypes[i];
+                    unboxedValues[index] = sparseUnboxedValues[i];
+                }
+            }
+            else {
+                sparseIds[kept] = sparseIds[i];
+                sparseValues[kept] = sparseValues[i];
+                if (sparseUnboxedTypes != null) {
+                    sparseUnboxedTypes[kept] = sparseUnboxedTypes[i];
+                    sparseUnboxedValues[kept] = sparseUnboxedValues[i];
                 }
+                kept++;
             }
-            values = copy;
-            invalidateOrder();
         }
-        return found;
+        sparseCount = kept;
+        if (kept == 0) {
+            sparseIds = null;
+            sparseValues = null;
+            sparseUnboxedTypes = null;
+            sparseUnboxedValues = null;
+            return;
+        }
+        for (int i = kept; i < sparseValues.length; i++) {
+            sparseValues[i] = null;
+            if (sparseUnboxedTypes != null)
+                sparseUnboxedTypes[i] = 0;
+        }
+    }
+
+    /** Returns the position of the given field id among the sparse ids, or (-(insertion point) - 1) if not present */
+    private int sparseIndex(int fieldId) {
+        if (sparseIds == null) return -1;
+        return Arrays.binarySearch(sparseIds, 0, sparseCount, fieldId);
+    }
+
+    /** Returns the position of the given field id among the sparse ids, inserting it with no value if not present */
+    private int sparseIndexForWrite(int fieldId) {
+        int sparseIndex = sparseIndex(fieldId);
+        if (sparseIndex >= 0) return sparseIndex;
+
+        int insertAt = -sparseIndex - 1;
+        if (sparseIds == null) {
+            sparseIds = new int[2];
+            sparseValues = new FieldValue[2];
+        }
+        else if (sparseCount == sparseIds.length) {
+            sparseIds = Arrays.copyOf(sparseIds, sparseCount * 2);
+            sparseValues = Arrays.copyOf(sparseValues, sparseCount * 2);
+            if (sparseUnboxedTypes != null) {
+                sparseUnboxedTypes = Arrays.copyOf(sparseUnboxedTypes, sparseCount * 2);
+                sparseUnboxedValues = Arrays.copyOf(sparseUnboxedValues, sparseCount * 2);
+            }
+        }
+        int moved = sparseCount - insertAt;
+        System.arraycopy(sparseIds, insertAt, sparseIds, insertAt + 1, moved);
+        System.arraycopy(sparseValues, insertAt, sparseValues, insertAt + 1, moved);
+        if (sparseUnboxedTypes != null) {
+            System.arraycopy(sparseUnboxedTypes, insertAt, sparseUnboxedTypes, insertAt + 1, moved);
+            System.arraycopy(sparseUnboxedValues, insertAt, sparseUnboxedValues, insertAt + 1, moved);
+            sparseUnboxedTypes[insertAt] = 0;
+        }
+        sparseIds[insertAt] = fieldId;
+        sparseValues[insertAt] = null;
+        sparseCount++;
+        return insertAt;
+    }
+
+    private static boolean isSet(FieldValue[] values, byte[] unboxedTypes, int index) {
+        return values[index] != null || (unboxedTypes != null && unboxedTypes[index] != 0);
+    }
+
+    /**
+     * Returns the value at the given index in the given value arrays, or null if none.
+     * An unboxed value is returned in a new field value, which is kept if keep is true.
+     * Kept values are published safely, such that concurrent readers all get the same field value.
+     */
+    private static FieldValue valueAt(FieldValue[] values, byte[] unboxedTypes, long[] unboxedValues,
+                                      int index, boolean keep) {
+        FieldValue value = (FieldValue) valueHandle.getAcquire(values, index);
+        if (value != null || unboxedTypes == null || unboxedTypes[index] == 0) return value;
+
+        value = box(unboxedTypes[index], unboxedValues[index]);
+        if ( ! keep) return value;
+        // The unboxed type is left as is, and if another reader kept a value first, that one is returned
+        FieldValue kept = (FieldValue) valueHandle.compareAndExchangeRelease(values, index, null, value);
+        return kept == null ? value : kept;
+    }
+
+    private static byte unboxedType(DataType type) {
+        if (type == DataType.BYTE) return unboxedByte;
+        if (type == DataType.INT) return unboxedInt;
+        if (type == DataType.LONG) return unboxedLong;
+        if (type == DataType.FLOAT) return unboxedFloat;
+        if (type == DataType.DOUBLE) return unboxedDouble;
+        if (type == DataType.BOOL) return unboxedBool;
+        return 0;
+    }
+
+    private static FieldValue box(byte type, long value) {
+        switch (type) {
+            case unboxedByte: return new ByteFieldValue((byte)value);
+            case unboxedInt: return new IntegerFieldValue((int)value);
+            case unboxedLong: return new LongFieldValue(value);
+            case unboxedFloat: return new FloatFieldValue(Float.intBitsToFloat((int)value));
+            case unboxedDouble: return new DoubleFieldValue(Double.longBitsToDouble(value));
+            case unboxedBool: return new BoolFieldValue(value != 0);
+            default: throw new IllegalStateException("Unknown unboxed type " + type);
+        }
+    }
+
+    /** Returns the ids of the fields set in this in increasing order */
+    private int[] getInOrder() {
+        int[] ids = new int[count];
+        int i = 0;
+        int sparse = 0;
+        if (values != null) {
+            for (int index = 0; index < values.length; index++) {
+                if ( ! isSet(values, unboxedTypes, index)) continue;
+                while (sparse < sparseCount && sparseIds[sparse] < fieldIds[index])
+                    ids[i++] = sparseIds[sparse++];
+                ids[i++] = fieldIds[index];
+            }
+        }
+        while (sparse < sparseCount)
+            ids[i++] = sparseIds[sparse++];
+        return ids;
+    }
+
+    /** Returns the value of the given field id without keeping any field value created for an unboxed value */
+    private FieldValue peek(int fieldId) {
+        int index = denseIndex(fieldId);
+        if (index >= 0) return valueAt(values, unboxedTypes, unboxedValues, index, false);
+        int sparseIndex = sparseIndex(fieldId);
+        if (sparseIndex < 0) return null;
+        return valueAt(sparseValues, sparseUnboxedTypes, sparseUnboxedValues, sparseIndex, false);
     }
 
     @Override
@@ -223,13 +539,20 @@ public class Struct extends StructuredFieldValue {
         if (!super.equals(o)) return false;
 
         Struct struct = (Struct) o;
-        return values.equals(struct.values);
+        if (count != struct.count) return false;
+        for (int id : getInOrder()) {
+            if ( ! peek(id).equals(struct.peek(id))) return false;
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
         int result = super.hashCode();
-        result = 31 * result + values.hashCode();
+        int valuesHash = 0;
+        for (int id : getInOrder())
+            valuesHash += id ^ peek(id).hashCode();
+        result = 31 * result + valuesHash;
         return result;
     }
 
@@ -240,7 +563,7 @@ public class Struct extends StructuredFieldValue {
         int [] increasing = getInOrder();
         for (int i = 0; i < increasing.length; i++) {
             int id = increasing[i];
-            retVal.append(getDataType().getField(id)).append("=").append(values.get(id)).append(", ");
+            retVal.append(getDataType().getField(id)).append("=").append(peek(id)).append(", ");
         }
         return retVal.toString();
     }
@@ -257,14 +580,14 @@ public class Struct extends StructuredFieldValue {
             return cmp;
         }
         Struct rhs = (Struct)obj;
-        cmp = values.size() - rhs.values.size();
+        cmp = count - rhs.count;
         if (cmp != 0) {
             return cmp;
         }
         StructDataType type = getDataType();
         for (Field field : type.getFields()) {
-            FieldValue lhsField = getFieldValue(field);
-            FieldValue rhsField = rhs.getFieldValue(field);
+            FieldValue lhsField = peek(field.getId());
+            FieldValue rhsField = rhs.peek(field.getId());
             if (lhsField != null && rhsField != null) {
                 cmp = lhsField.compareTo(rhsField);
                 if (cmp != 0) {
@@ -297,8 +620,9 @@ public class Struct extends StructuredFieldValue {
             return getDataType().getField(id);
         }
 
+        /** Returns the value of this field, which is a new field value not kept in this struct if it is stored unboxed */
         public FieldValue getValue() {
-            return values.get(id);
+            return peek(id);
         }
 
         public FieldValue setValue(FieldValue value) {
@@ -306,17 +630,7 @@ public class Struct extends StructuredFieldValue {
                 throw new NullPointerException("Null values in Struct not supported, use removeFieldValue() to remove value instead.");
             }
 
-            int index = values.getIndexOfKey(id);
-            FieldValue retVal = null;
-            if (index == -1) {
-                values.put(id, value);
-                invalidateOrder();
-            } else {
-                retVal = values.value(index);
-                values.setValue(index, value);
-            }
-
-            return retVal;
+            return put(id, value);
         }
 
         public boolean equals(Object o) {
@@ -335,7 +649,7 @@ public class Struct extends StructuredFieldValue {
     private class FieldSet extends AbstractSet<Map.Entry<Field, FieldValue>> {
         @Override
         public int size() {
-            return values.size();
+            return count;
         }
 
         @Override
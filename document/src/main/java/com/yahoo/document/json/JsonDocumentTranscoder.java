@@ -0,0 +1,324 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Preconditions;
+import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.StructDataType;
+import com.yahoo.document.json.document.DocumentParser;
+import com.yahoo.document.json.readers.DocumentParseInfo;
+import com.yahoo.document.serialization.DocumentSerializer;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.text.Text;
+import com.yahoo.text.Utf8;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+
+import static com.yahoo.document.json.readers.JsonParserHelpers.expectArrayStart;
+import static com.yahoo.document.json.readers.JsonParserHelpers.expectObjectStart;
+import static com.yahoo.document.json.readers.SingleValueReader.readSingleValue;
+
+/**
+ * Writes the document of a put operation read from JSON in the binary document format, without creating a
+ * {@link Document}. This produces the same document as serializing the one read by {@link JsonReader},
+ * except that fields are written in the order they are given.
+ *
+ * <p>
+ * Fields of primitive types and arrays of these are written as their values are read. Fields of other types
+ * are read into field values by the readers used by {@link JsonReader}, which are then serialized.
+ *
+ * <p>
+ * Instances are not thread safe, as they reuse the buffers fields are written to.
+ */
+public class JsonDocumentTranscoder {
+
+    private final DocumentTypeManager typeManager;
+
+    /** Holds the values of the fields of the document being written, in the order they are read */
+    private final GrowableByteBuffer fieldBuffer = new GrowableByteBuffer(4096, 2.0f);
+    private final DocumentSerializer fieldSerializer = DocumentSerializerFactory.createHead(fieldBuffer);
+
+    /** Holds the elements of an array field until they are counted */
+    private final GrowableByteBuffer arrayBuffer = new GrowableByteBuffer(1024, 2.0f);
+
+    /** The fields written to the field buffer */
+    private final List<WrittenField> fields = new ArrayList<>();
+
+    public JsonDocumentTranscoder(DocumentTypeManager typeManager) {
+        this.typeManager = typeManager;
+    }
+
+    /** Returns the types of the documents this can write */
+    public DocumentTypeManager getTypeManager() { return typeManager; }
+
+    /**
+     * Writes the document of the given put operation, as parsed by {@link DocumentParser},
+     * at the position of the given buffer.
+     *
+     * @throws IllegalArgumentException if the operation is not a put, or does not match its document type
+     */
+    public void write(DocumentParseInfo put, GrowableByteBuffer buffer) {
+        writeDocument(put, writeFields(put), buffer);
+    }
+
+    /**
+     * Writes the document of the given put operation, as parsed by {@link DocumentParser},
+     * to a new buffer sized to hold it, such that it does not waste memory while the operation is pending.
+     *
+     * @return the buffer holding the document from its start up to its position
+     * @throws IllegalArgumentException if the operation is not a put, or does not match its document type
+     */
+    public GrowableByteBuffer write(DocumentParseInfo put) {
+        DocumentType type = writeFields(put);
+        GrowableByteBuffer buffer = new GrowableByteBuffer(maxDocumentSize(put, type), 2.0f);
+        writeDocument(put, type, buffer);
+        return buffer;
+    }
+
+    /** Writes the fields of the given put to the field buffer, and returns its document type */
+    private DocumentType writeFields(DocumentParseInfo put) {
+        if (put.operationType != DocumentParser.SupportedOperation.PUT)
+            throw new IllegalArgumentException("Expected a put operation, got " + put.operationType);
+        DocumentType type = typeManager.getDocumentType(put.documentId.getDocType());
+        if (type == null)
+            throw new IllegalArgumentException(String.format("Document type %s does not exist", put.documentId.getDocType()));
+
+        try {
+            writeFields(put, type);
+        }
+        catch (JsonReaderException e) {
+            throw JsonReaderException.addDocId(e, put.documentId);
+        }
+        return type;
+    }
+
+    /** Returns the max size of the document of the given put, after its fields are written to the field buffer */
+    private int maxDocumentSize(DocumentParseInfo put, DocumentType type) {
+        int envelope = 2 + 4 + Utf8.byteCount(put.documentId.toString()) + 1 + 1 + Utf8.byteCount(type.getName()) + 1 + 2;
+        int structs = 2 * (4 + 1 + 8 + 4);
+        int fieldHeaders = fields.size() * (4 + 8);
+        return envelope + structs + fieldHeaders + fieldBuffer.position();
+    }
+
+    private void writeFields(DocumentParseInfo put, DocumentType type) {
+        fields.clear();
+        fieldBuffer.clear();
+        TokenBuffer tokens = put.fieldsBuffer;
+        if (tokens.isEmpty())
+            throw new IllegalArgumentException("put of document " + put.documentId + " is missing a 'fields' map");
+        expectObjectStart(tokens.currentToken());
+
+        int initNesting = tokens.nesting();
+        tokens.next();
+        while (tokens.nesting() >= initNesting) {
+            Field field = type.getField(tokens.currentName());
+            if (field == null)
+                throw new IllegalArgumentException("No field '" + tokens.currentName() + "' in the structure of type '" +
+                                                   type.getDataTypeName() + "'");
+            try {
+                // skip fields set to null
+                if (tokens.currentToken() != JsonToken.VALUE_NULL) {
+                    int start = fieldBuffer.position();
+                    writeValue(field, tokens);
+                    add(new WrittenField(field, start, fieldBuffer.position() - start));
+                }
+                tokens.next();
+            }
+            catch (IllegalArgumentException e) {
+                throw new JsonReaderException(field, e);
+            }
+        }
+        Preconditions.checkState(tokens.currentToken() == JsonToken.END_OBJECT,
+                                 "Expected end of JSON struct (%s), got %s", JsonToken.END_OBJECT, tokens.currentToken());
+        Preconditions.checkState(tokens.nesting() == 0, "Nesting not zero at end of operation");
+        Preconditions.checkState(tokens.next() == null, "Dangling data at end of operation");
+    }
+
+    /** Adds a written field, replacing any earlier value of the same field, as setting a field value does */
+    private void add(WrittenField written) {
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).field.equals(written.field)) {
+                fields.remove(i);
+                break;
+            }
+        }
+        fields.add(written);
+    }
+
+    private void writeValue(Field field, TokenBuffer tokens) {
+        DataType type = field.getDataType();
+        if (isPrimitive(type)) {
+            writePrimitive(type, tokens, fieldBuffer);
+        }
+        else if (type instanceof ArrayDataType && isPrimitive(((ArrayDataType)type).getNestedType())) {
+            writeArray(((ArrayDataType)type).getNestedType(), tokens);
+        }
+        else {
+            readSingleValue(tokens, type).serialize(field, fieldSerializer);
+        }
+    }
+
+    private static boolean isPrimitive(DataType type) {
+        return type == DataType.STRING || type == DataType.INT || type == DataType.LONG || type == DataType.BYTE ||
+               type == DataType.FLOAT || type == DataType.DOUBLE || type == DataType.BOOL;
+    }
+
+    private void writeArray(DataType elementType, TokenBuffer tokens) {
+        expectArrayStart(tokens.currentToken());
+        arrayBuffer.clear();
+        int size = 0;
+        int initNesting = tokens.nesting();
+        tokens.next();
+        while (tokens.nesting() >= initNesting) {
+            Preconditions.checkArgument(tokens.currentToken() != JsonToken.VALUE_NULL, "Illegal null value for array entry");
+            writePrimitive(elementType, tokens, arrayBuffer);
+            size++;
+            tokens.next();
+        }
+        fieldBuffer.putInt1_2_4Bytes(size);
+        fieldBuffer.put(arrayBuffer.array(), 0, arrayBuffer.position());
+    }
+
+    /** Writes a primitive value as written by the document serializer */
+    private static void writePrimitive(DataType type, TokenBuffer tokens, GrowableByteBuffer buffer) {
+        if ( ! tokens.currentToken().isScalarValue())
+            throw new IllegalArgumentException("Expected a " + type.getName() + " value but got " + tokens.currentToken());
+        String text = tokens.currentText();
+        if (type == DataType.STRING) {
+            OptionalInt illegalCodePoint = Text.validateTextString(text);
+            if (illegalCodePoint.isPresent())
+                throw new IllegalArgumentException("The string field value contains illegal code point 0x" +
+                                                   Integer.toHexString(illegalCodePoint.getAsInt()).toUpperCase());
+            byte[] bytes = Utf8.toBytes(text);
+            buffer.put((byte)0); // coding: no span trees
+            buffer.putInt1_4Bytes(bytes.length + 1);
+            buffer.put(bytes);
+            buffer.put((byte)0);
+        }
+        else if (type == DataType.INT) {
+            buffer.putInt(Integer.parseInt(text));
+        }
+        else if (type == DataType.LONG) {
+            buffer.putLong(Long.parseLong(text));
+        }
+        else if (type == DataType.BYTE) {
+            buffer.put(Byte.parseByte(text));
+        }
+        else if (type == DataType.FLOAT) {
+            buffer.putFloat(Float.parseFloat(text));
+        }
+        else if (type == DataType.DOUBLE) {
+            buffer.putDouble(Double.parseDouble(text));
+        }
+        else if (type == DataType.BOOL) {
+            buffer.put(Boolean.parseBoolean(text) ? (byte)1 : (byte)0);
+        }
+        else {
+            throw new IllegalStateException("Not a primitive type: " + type);
+        }
+    }
+
+    /** Writes the document envelope and the header and body structs, as written by the document serializer */
+    @SuppressWarnings("deprecation")
+    private void writeDocument(DocumentParseInfo put, DocumentType type, GrowableByteBuffer buffer) {
+        DocumentSerializer serializer = DocumentSerializerFactory.createHead(buffer);
+        buffer.putShort(Document.SERIALIZED_VERSION);
+        int lengthPosition = buffer.position();
+        buffer.putInt(0); // Filled in below
+
+        serializer.write(put.documentId);
+        int headerFields = 0;
+        for (WrittenField written : fields)
+            if (written.field.isHeader()) headerFields++;
+        int bodyFields = fields.size() - headerFields;
+        byte contents = 0x01; // has a document type
+        if (headerFields > 0)
+            contents |= 0x2;
+        if (bodyFields > 0)
+            contents |= 0x4;
+        buffer.put(contents);
+
+        serializer.write(type);
+        if (headerFields > 0)
+            writeStruct(type.contentStruct(), true, headerFields, buffer);
+        if (bodyFields > 0)
+            writeStruct(type.getBodyType(), false, bodyFields, buffer);
+
+        int endPosition = buffer.position();
+        buffer.position(lengthPosition);
+        buffer.putInt(endPosition - lengthPosition - 4); // excluding the length itself and the version
+        buffer.position(endPosition);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void writeStruct(StructDataType structType, boolean header, int fieldCount, GrowableByteBuffer buffer) {
+        Compressor compressor = structType.getCompressor();
+        Compressor.Compression compression = null;
+        int uncompressedSize = 0;
+        for (WrittenField written : fields)
+            if (written.field.isHeader() == header) uncompressedSize += written.length;
+        if (compressor.type() != CompressionType.NONE) {
+            byte[] data = new byte[uncompressedSize];
+            int position = 0;
+            for (WrittenField written : fields) {
+                if (written.field.isHeader() != header) continue;
+                System.arraycopy(fieldBuffer.array(), written.start, data, position, written.length);
+                position += written.length;
+            }
+            compression = compressor.compress(data, uncompressedSize);
+        }
+        boolean compressed = compression != null && compression.data() != null && compression.type().isCompressed();
+
+        int lengthPosition = buffer.position();
+        buffer.putInt(0); // Filled in below
+        buffer.put(compression != null ? compression.type().getCode() : CompressionType.NONE.getCode());
+        if (compressed)
+            buffer.putInt2_4_8Bytes(uncompressedSize);
+        buffer.putInt1_4Bytes(fieldCount);
+        for (WrittenField written : fields) {
+            if (written.field.isHeader() != header) continue;
+            buffer.putInt1_4Bytes(written.field.getId());
+            buffer.putInt2_4_8Bytes(written.length);
+        }
+
+        int dataPosition = buffer.position();
+        if (compressed) {
+            buffer.put(compression.data());
+        }
+        else {
+            for (WrittenField written : fields)
+                if (written.field.isHeader() == header)
+                    buffer.put(fieldBuffer.array(), written.start, written.length);
+        }
+        int endPosition = buffer.position();
+        buffer.position(lengthPosition);
+        buffer.putInt(endPosition - dataPosition);
+        buffer.position(endPosition);
+    }
+
+    /** The location of the value of a field in the field buffer */
+    private static class WrittenField {
+
+        final Field field;
+        final int start;
+        final int length;
+
+        WrittenField(Field field, int start, int length) {
+            this.field = field;
+            this.start = start;
+            this.length = length;
+        }
+
+    }
+
+}
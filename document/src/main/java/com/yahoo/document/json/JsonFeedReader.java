@@ -2,6 +2,7 @@
 package com.yahoo.document.json;
 
 import java.io.InputStream;
+import java.util.Optional;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.yahoo.document.DocumentOperation;
@@ -9,6 +10,9 @@ import com.yahoo.document.DocumentPut;
 import com.yahoo.document.DocumentRemove;
 import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.document.DocumentUpdate;
+import com.yahoo.document.TestAndSetCondition;
+import com.yahoo.document.json.document.DocumentParser;
+import com.yahoo.document.json.readers.DocumentParseInfo;
 import com.yahoo.vespaxmlparser.DocumentFeedOperation;
 import com.yahoo.vespaxmlparser.DocumentUpdateFeedOperation;
 import com.yahoo.vespaxmlparser.FeedOperation;
@@ -28,23 +32,48 @@ import com.yahoo.vespaxmlparser.RemoveFeedOperation;
 public class JsonFeedReader implements FeedReader {
 
     private final JsonReader reader;
+    private final DocumentTypeManager docMan;
+    private final JsonDocumentTranscoder transcoder;
     private InputStream stream;
     private static final JsonFactory jsonFactory = new JsonFactory().disable(JsonFactory.Feature.CANONICALIZE_FIELD_NAMES);
 
     public JsonFeedReader(InputStream stream, DocumentTypeManager docMan) {
+        this(stream, docMan, null);
+    }
+
+    /**
+     * Creates a feed reader which returns puts as {@link SerializedDocumentFeedOperation}s,
+     * with the document written by the given transcoder instead of read into a Document.
+     *
+     * @param transcoder the transcoder to write put documents by, or null to read them into Documents.
+     *                   This must be created with the given type manager, and not be used by other threads.
+     */
+    public JsonFeedReader(InputStream stream, DocumentTypeManager docMan, JsonDocumentTranscoder transcoder) {
         reader = new JsonReader(docMan, stream, jsonFactory);
+        this.docMan = docMan;
+        this.transcoder = transcoder;
         this.stream = stream;
     }
 
     @Override
     public FeedOperation read() throws Exception {
-        DocumentOperation documentOperation = reader.next();
+        Optional<DocumentParseInfo> documentParseInfo = reader.nextParsed();
 
-        if (documentOperation == null) {
+        if ( ! documentParseInfo.isPresent()) {
             stream.close();
             return FeedOperation.INVALID;
         }
+        if (transcoder != null && documentParseInfo.get().operationType == DocumentParser.SupportedOperation.PUT)
+            return transcode(documentParseInfo.get());
+        return toFeedOperation(reader.toOperation(documentParseInfo.get()));
+    }
+
+    private FeedOperation transcode(DocumentParseInfo put) {
+        return new SerializedDocumentFeedOperation(put.documentId, transcoder.write(put), docMan,
+                                                   TestAndSetCondition.fromConditionString(put.condition));
+    }
 
+    static FeedOperation toFeedOperation(DocumentOperation documentOperation) {
         if (documentOperation instanceof DocumentUpdate) {
             return new DocumentUpdateFeedOperation((DocumentUpdate) documentOperation, documentOperation.getCondition());
         } else if (documentOperation instanceof DocumentRemove) {
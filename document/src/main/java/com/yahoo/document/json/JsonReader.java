@@ -80,6 +80,13 @@ public class JsonReader {
 
     /** Returns the next document operation, or null if we have reached the end */
     public DocumentOperation next() {
+        Optional<DocumentParseInfo> documentParseInfo = nextParsed();
+        if ( ! documentParseInfo.isPresent()) return null;
+        return toOperation(documentParseInfo.get());
+    }
+
+    /** Returns the next operation with its fields not yet read, or empty if we have reached the end */
+    Optional<DocumentParseInfo> nextParsed() {
         switch (state) {
             case AT_START:
                 JsonToken t = nextToken(parser);
@@ -87,7 +94,7 @@ public class JsonReader {
                 state = ReaderState.READING;
                 break;
             case END_OF_FEED:
-                return null;
+                return Optional.empty();
             case READING:
                 break;
         }
@@ -99,19 +106,34 @@ public class JsonReader {
             state = END_OF_FEED;
             throw new IllegalArgumentException(r);
         }
-        if ( ! documentParseInfo.isPresent()) {
+        if ( ! documentParseInfo.isPresent())
             state = END_OF_FEED;
-            return null;
-        }
+        return documentParseInfo;
+    }
+
+    /** Reads the fields of the given parsed operation into a document operation */
+    DocumentOperation toOperation(DocumentParseInfo documentParseInfo) {
         VespaJsonDocumentReader vespaJsonDocumentReader = new VespaJsonDocumentReader();
         DocumentOperation operation = vespaJsonDocumentReader.createDocumentOperation(
-                getDocumentTypeFromString(documentParseInfo.get().documentId.getDocType(), typeManager),
-                documentParseInfo.get());
-        operation.setCondition(TestAndSetCondition.fromConditionString(documentParseInfo.get().condition));
+                getDocumentTypeFromString(documentParseInfo.documentId.getDocType(), typeManager),
+                documentParseInfo);
+        operation.setCondition(TestAndSetCondition.fromConditionString(documentParseInfo.condition));
         return operation;
     }
 
 
+    /**
+     * Reads a single operation which is not part of an array, e.g one element of a feed which
+     * has been split up by {@link ParallelJsonFeedReader}.
+     *
+     * @return the operation, or null if there is no operation in the input
+     */
+    DocumentOperation readOperation() {
+        if (state == ReaderState.AT_START)
+            state = ReaderState.READING;
+        return next();
+    }
+
     public DocumentType readDocumentType(DocumentId docId) {
         return getDocumentTypeFromString(docId.getDocType(), typeManager);
     }
@@ -0,0 +1,223 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.yahoo.document.DocumentOperation;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.vespaxmlparser.FeedOperation;
+import com.yahoo.vespaxmlparser.FeedReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.yahoo.document.json.readers.JsonParserHelpers.expectArrayStart;
+
+/**
+ * A FeedReader which parses the operations of a JSON feed in parallel.
+ *
+ * <p>
+ * The feed stream is split into the bytes of each operation by skipping over it with a parser which does
+ * not build any values, and each operation is then parsed into a document operation by a task
+ * run by the given executor. Operations are returned in the order of the feed, so the order of operations
+ * to the same document is preserved. At most the given number of operations are parsed ahead of the one
+ * which is read. Operations are parsed by the reading thread instead if the executor rejects them.
+ * A syntax error in the structure of the feed is thrown when the operations before it have been read.
+ *
+ * <p>
+ * Like {@link JsonFeedReader}, this takes ownership of the input stream and closes it when the
+ * last parseable document has been read.
+ */
+public class ParallelJsonFeedReader implements FeedReader {
+
+    private static final JsonFactory jsonFactory = new JsonFactory().disable(JsonFactory.Feature.CANONICALIZE_FIELD_NAMES);
+
+    /** Jackson only creates a parser which tracks byte offsets when field names are canonicalized */
+    private static final JsonFactory splitterFactory = new JsonFactory();
+
+    private final DocumentTypeManager typeManager;
+    private final Executor executor;
+    private final int maxPending;
+    private final RecordingInputStream stream;
+    private final JsonParser splitter;
+    private final Deque<FutureTask<DocumentOperation>> pending = new ArrayDeque<>();
+
+    private boolean started = false;
+    private boolean endOfFeed = false;
+
+    /** A syntax error in the structure of the feed, to throw when the operations before it have been read */
+    private IllegalArgumentException syntaxError = null;
+
+    /**
+     * Creates a reader of the given stream
+     *
+     * @param stream the stream containing a JSON array of document operations
+     * @param typeManager the document types of the operations
+     * @param executor the executor running the tasks parsing each operation
+     * @param maxPending the max number of operations to parse ahead of the one which is read, typically a small
+     *                   multiple of the number of threads of the executor
+     */
+    public ParallelJsonFeedReader(InputStream stream, DocumentTypeManager typeManager, Executor executor, int maxPending) {
+        if (maxPending < 1) throw new IllegalArgumentException("maxPending must be positive, not " + maxPending);
+        this.typeManager = typeManager;
+        this.executor = executor;
+        this.maxPending = maxPending;
+        this.stream = new RecordingInputStream(stream);
+        try {
+            this.splitter = splitterFactory.createParser(this.stream);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public FeedOperation read() throws Exception {
+        while ( ! endOfFeed && pending.size() < maxPending)
+            submitNext();
+
+        FutureTask<DocumentOperation> next = pending.poll();
+        DocumentOperation operation = next == null ? null : result(next);
+        if (operation == null) {
+            endOfFeed = true;
+            pending.clear();
+            stream.close();
+            if (syntaxError != null) {
+                IllegalArgumentException e = syntaxError;
+                syntaxError = null;
+                throw e;
+            }
+            return FeedOperation.INVALID;
+        }
+        return JsonFeedReader.toFeedOperation(operation);
+    }
+
+    /** Finds the bytes of the next operation in the feed and submits a task parsing them */
+    private void submitNext() {
+        byte[] operation = nextOperation();
+        if (operation == null) {
+            endOfFeed = true;
+            return;
+        }
+        FutureTask<DocumentOperation> task = new FutureTask<>(() -> parse(operation));
+        pending.add(task);
+        try {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /** Returns the bytes of the next operation in the feed, or null if there are no more or the feed is not valid JSON */
+    private byte[] nextOperation() {
+        try {
+            if ( ! started) {
+                expectArrayStart(splitter.nextToken());
+                started = true;
+            }
+            JsonToken token = splitter.nextToken();
+            if (token == null || token == JsonToken.END_ARRAY) return null;
+            if (token != JsonToken.START_OBJECT)
+                throw new IllegalArgumentException("Expected a document operation object, got " + token);
+
+            long start = splitter.getTokenLocation().getByteOffset();
+            splitter.skipChildren();
+            long end = splitter.getCurrentLocation().getByteOffset();
+            return stream.consume(start, end);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            // Jackson is not able to recover from structural parse errors
+            endOfFeed = true;
+            syntaxError = e instanceof IllegalArgumentException ? (IllegalArgumentException)e : new IllegalArgumentException(e);
+            return null;
+        }
+    }
+
+    private DocumentOperation parse(byte[] operation) {
+        return new JsonReader(typeManager, new ByteArrayInputStream(operation), jsonFactory).readOperation();
+    }
+
+    private static DocumentOperation result(FutureTask<DocumentOperation> task) throws Exception {
+        try {
+            return task.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception)e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * An input stream which keeps the bytes read from it until they are consumed,
+     * such that the bytes of an operation found by the splitting parser can be copied out.
+     */
+    private static class RecordingInputStream extends FilterInputStream {
+
+        private byte[] buffer = new byte[16 * 1024];
+
+        /** The number of bytes in the buffer */
+        private int length = 0;
+
+        /** The offset in the stream of the first byte in the buffer */
+        private long offset = 0;
+
+        RecordingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                record(new byte[] { (byte)b }, 0, 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0)
+                record(b, off, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new IOException("Skipping is not supported");
+        }
+
+        private void record(byte[] b, int off, int len) {
+            if (length + len > buffer.length)
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + len));
+            System.arraycopy(b, off, buffer, length, len);
+            length += len;
+        }
+
+        /** Returns a copy of the bytes between the given stream offsets, and discards all bytes before the end */
+        byte[] consume(long start, long end) {
+            if (start < offset || end > offset + length || start > end)
+                throw new IllegalStateException("Bytes [" + start + ", " + end + ") are not in the buffer holding [" +
+                                                offset + ", " + (offset + length) + ")");
+            byte[] bytes = Arrays.copyOfRange(buffer, (int)(start - offset), (int)(end - offset));
+            int consumed = (int)(end - offset);
+            System.arraycopy(buffer, consumed, buffer, 0, length - consumed);
+            length -= consumed;
+            offset = end;
+            return bytes;
+        }
+
+    }
+
+}
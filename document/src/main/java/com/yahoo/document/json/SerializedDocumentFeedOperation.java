@@ -0,0 +1,53 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json;
+
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentId;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.TestAndSetCondition;
+import com.yahoo.document.serialization.DocumentDeserializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.vespaxmlparser.ConditionalFeedOperation;
+
+/**
+ * A put feed operation whose document is already written in the binary document format,
+ * by {@link JsonDocumentTranscoder}. The document is only created if it is accessed.
+ */
+public class SerializedDocumentFeedOperation extends ConditionalFeedOperation {
+
+    private final DocumentId documentId;
+    private final GrowableByteBuffer serialized;
+    private final DocumentTypeManager typeManager;
+
+    /**
+     * Creates a put operation of a serialized document
+     *
+     * @param documentId the id of the serialized document
+     * @param serialized a buffer containing the serialized document, from the start up to the position of the buffer
+     * @param typeManager the types used to deserialize the document if it is accessed
+     * @param condition the condition of the put
+     */
+    public SerializedDocumentFeedOperation(DocumentId documentId, GrowableByteBuffer serialized,
+                                           DocumentTypeManager typeManager, TestAndSetCondition condition) {
+        super(Type.DOCUMENT, condition);
+        this.documentId = documentId;
+        this.serialized = serialized;
+        this.typeManager = typeManager;
+    }
+
+    public DocumentId getDocumentId() { return documentId; }
+
+    /** Returns the buffer holding the serialized document, from the start up to the position of the buffer */
+    public GrowableByteBuffer getSerializedDocument() { return serialized; }
+
+    public DocumentTypeManager getTypeManager() { return typeManager; }
+
+    /** Returns a new document deserialized from the serialized document of this */
+    @Override
+    public Document getDocument() {
+        GrowableByteBuffer document = serialized.duplicate();
+        document.flip();
+        return new Document(DocumentDeserializerFactory.createHead(typeManager, document));
+    }
+
+}
@@ -314,9 +314,7 @@ public class VespaDocumentDeserializer6 extends BufferSerializer implements Docu
                 position(position() + fieldIdsAndLengths.get(i).second.intValue());
             } else {
                 int posBefore = position();
-                FieldValue value = structField.getDataType().createFieldValue();
-                value.deserialize(structField, this);
-                s.setFieldValue(structField, value);
+                readFieldValue(s, structField);
                 //jump to beginning of next field:
                 position(posBefore + fieldIdsAndLengths.get(i).second.intValue());
             }
@@ -326,6 +324,28 @@ public class VespaDocumentDeserializer6 extends BufferSerializer implements Docu
         buf = bigBuf;
     }
 
+    /** Reads the value of the given field into the given struct, without boxing values of primitive types */
+    private void readFieldValue(Struct s, Field field) {
+        DataType type = field.getDataType();
+        if (type == DataType.INT)
+            s.setPrimitiveFieldValue(field, getInt(null));
+        else if (type == DataType.LONG)
+            s.setPrimitiveFieldValue(field, getLong(null));
+        else if (type == DataType.BYTE)
+            s.setPrimitiveFieldValue(field, getByte(null));
+        else if (type == DataType.FLOAT)
+            s.setPrimitiveFieldValue(field, Float.floatToRawIntBits(getFloat(null)));
+        else if (type == DataType.DOUBLE)
+            s.setPrimitiveFieldValue(field, Double.doubleToRawLongBits(getDouble(null)));
+        else if (type == DataType.BOOL)
+            s.setPrimitiveFieldValue(field, getByte(null) != 0 ? 1 : 0);
+        else {
+            FieldValue value = type.createFieldValue();
+            value.deserialize(field, this);
+            s.setFieldValue(field, value);
+        }
+    }
+
     private void readHeaderBody(Struct primary, Struct alternate) {
         primary.setVersion(version);
 
@@ -386,9 +406,7 @@ public class VespaDocumentDeserializer6 extends BufferSerializer implements Docu
                 }
             }
             if (s != null) {
-              FieldValue value = structField.getDataType().createFieldValue();
-              value.deserialize(structField, this);
-              s.setFieldValue(structField, value);
+              readFieldValue(s, structField);
             }
             //jump to beginning of next field:
             position(posBefore + fieldIdsAndLengths.get(i).second.intValue());
@@ -1,6 +1,7 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.document.serialization;
 
+import com.yahoo.compress.CompressionType;
 import com.yahoo.compress.Compressor;
 
 import com.yahoo.document.ArrayDataType;
@@ -52,6 +53,7 @@ import com.yahoo.document.update.TensorAddUpdate;
 import com.yahoo.document.update.TensorModifyUpdate;
 import com.yahoo.document.update.TensorRemoveUpdate;
 import com.yahoo.document.update.ValueUpdate;
+import com.yahoo.io.BufferPool;
 import com.yahoo.io.GrowableByteBuffer;
 import com.yahoo.tensor.serialization.TypedBinaryFormat;
 import com.yahoo.vespa.objects.BufferSerializer;
@@ -61,7 +63,6 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -331,20 +332,22 @@ public class VespaDocumentSerializer6 extends BufferSerializer implements Docume
         //keep the buffer we're serializing everything into:
         GrowableByteBuffer bigBuffer = buf;
 
-        //create a new buffer and serialize into that for a while:
-        GrowableByteBuffer buffer = new GrowableByteBuffer(4096, 2.0f);
+        //acquire a temporary buffer and serialize into that for a while:
+        GrowableByteBuffer buffer = new GrowableByteBuffer(BufferPool.shared().acquire(4096), 2.0f);
         buf = buffer;
 
-        List<Integer> fieldIds = new LinkedList<>();
-        List<java.lang.Integer> fieldLengths = new LinkedList<>();
+        int[] fieldIds = new int[s.getFieldCount()];
+        int[] fieldLengths = new int[s.getFieldCount()];
 
+        int fieldIndex = 0;
         for (Map.Entry<Field, FieldValue> value : s.getFields()) {
 
             int startPos = buffer.position();
             value.getValue().serialize(value.getKey(), this);
 
-            fieldLengths.add(buffer.position() - startPos);
-            fieldIds.add(value.getKey().getId());
+            fieldLengths[fieldIndex] = buffer.position() - startPos;
+            fieldIds[fieldIndex] = value.getKey().getId();
+            fieldIndex++;
         }
 
         // Switch buffers again:
@@ -352,27 +355,30 @@ public class VespaDocumentSerializer6 extends BufferSerializer implements Docume
         buf = bigBuffer;
 
         int uncompressedSize = buffer.remaining();
-        Compressor.Compression compression =
-            s.getDataType().getCompressor().compress(buffer.getByteBuffer().array(), buffer.remaining());
+        Compressor compressor = s.getDataType().getCompressor();
+        Compressor.Compression compression = compressor.type() == CompressionType.NONE
+                                             ? null // skip copying the data when it is not compressed
+                                             : compressor.compress(buffer.getByteBuffer().array(), buffer.remaining());
+        boolean compressed = compression != null && compression.data() != null && compression.type().isCompressed();
 
         // Actual serialization starts here.
         int lenPos = buf.position();
         putInt(null, 0); // Move back to this after compression is done.
-        buf.put(compression.type().getCode());
+        buf.put(compression != null ? compression.type().getCode() : CompressionType.NONE.getCode());
 
-        if (compression.data() != null && compression.type().isCompressed()) {
+        if (compressed) {
             buf.putInt2_4_8Bytes(uncompressedSize);
         }
 
         buf.putInt1_4Bytes(s.getFieldCount());
 
         for (int i = 0; i < s.getFieldCount(); ++i) {
-            putInt1_4Bytes(null, fieldIds.get(i));
-            putInt2_4_8Bytes(null, fieldLengths.get(i));
+            putInt1_4Bytes(null, fieldIds[i]);
+            putInt2_4_8Bytes(null, fieldLengths[i]);
         }
 
         int pos = buf.position();
-        if (compression.data() != null && compression.type().isCompressed()) {
+        if (compressed) {
             put(null, compression.data());
         } else {
             put(null, buffer.getByteBuffer());
@@ -383,6 +389,9 @@ public class VespaDocumentSerializer6 extends BufferSerializer implements Docume
         buf.position(lenPos);
         putInt(null, dataLength);
         buf.position(posNow);
+
+        // The buffer may have been replaced by a larger one as it grew, which is then pooled instead
+        BufferPool.shared().release(buffer.getByteBuffer());
     }
 
     /**
@@ -0,0 +1,141 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.datatypes;
+
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.serialization.DocumentDeserializerFactory;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Measures the heap retained per document of documents with many fields, most of them numeric,
+ * when built by setting field values, when deserialized, and when deserialized and then read field by field.
+ * This is measured both with all the fields set and with only a few of them set.
+ * Also reports the CPU time per document of deserializing, and of reading all the fields after that.
+ *
+ * Run with the main method.
+ */
+public class StructMemoryBenchmark {
+
+    private static final int documents = 20_000;
+    private static final int fields = 200;
+
+    /** The number of fields set in sparse documents */
+    private static final int sparseFields = 5;
+
+    private final DocumentTypeManager types = new DocumentTypeManager();
+    private final DocumentType type = new DocumentType("benchmark");
+
+    public StructMemoryBenchmark() {
+        for (int i = 0; i < fields; i++) {
+            if (i % 10 == 0)
+                type.addField("string" + i, DataType.STRING);
+            else if (i % 3 == 0)
+                type.addField("double" + i, DataType.DOUBLE);
+            else if (i % 3 == 1)
+                type.addField("long" + i, DataType.LONG);
+            else
+                type.addField("int" + i, DataType.INT);
+        }
+        types.registerDocumentType(type);
+    }
+
+    public void run() {
+        for (int fieldsSet : new int[] { fields, sparseFields }) {
+            out("With " + fieldsSet + " of " + fields + " fields set:");
+            Random random = new Random(1);
+            List<byte[]> serialized = new ArrayList<>(documents);
+            for (int i = 0; i < documents; i++)
+                serialized.add(serialize(createDocument(i, fieldsSet, random)));
+
+            for (int i = 0; i < 3; i++) {
+                measureBuilt(fieldsSet);
+                measureDeserialized(serialized, false);
+                measureDeserialized(serialized, true);
+            }
+        }
+    }
+
+    private void measureBuilt(int fieldsSet) {
+        Random random = new Random(1);
+        long before = usedHeap();
+        List<Document> retained = new ArrayList<>(documents);
+        for (int i = 0; i < documents; i++)
+            retained.add(createDocument(i, fieldsSet, random));
+        out("Built                  : " + (usedHeap() - before) / retained.size() + " bytes/document");
+    }
+
+    private void measureDeserialized(List<byte[]> serialized, boolean readFields) {
+        long before = usedHeap();
+        List<Document> retained = new ArrayList<>(documents);
+        long startTime = System.nanoTime();
+        for (byte[] data : serialized)
+            retained.add(new Document(DocumentDeserializerFactory.create6(types, GrowableByteBuffer.wrap(data))));
+        long deserializeNanos = System.nanoTime() - startTime;
+
+        long readNanos = 0;
+        if (readFields) {
+            long checksum = 0;
+            startTime = System.nanoTime();
+            for (Document document : retained)
+                for (Field field : type.getFields())
+                    checksum += Objects.hashCode(document.getFieldValue(field));
+            readNanos = System.nanoTime() - startTime;
+            if (checksum == 0) throw new IllegalStateException("Nothing read");
+        }
+        out((readFields ? "Deserialized and read  : " : "Deserialized           : ") +
+            (usedHeap() - before) / retained.size() + " bytes/document, " +
+            deserializeNanos / retained.size() / 1000 + " us/document to deserialize" +
+            (readFields ? ", " + readNanos / retained.size() / 1000 + " us/document to read all fields" : ""));
+    }
+
+    private Document createDocument(int i, int fieldsSet, Random random) {
+        Document document = new Document(type, "id:benchmark:benchmark::" + i);
+        int set = 0;
+        for (Field field : type.getFields()) {
+            if (set++ == fieldsSet) break;
+            if (field.getDataType() == DataType.STRING)
+                document.setFieldValue(field, new StringFieldValue("value" + random.nextInt(1000)));
+            else if (field.getDataType() == DataType.DOUBLE)
+                document.setFieldValue(field, new DoubleFieldValue(random.nextDouble()));
+            else if (field.getDataType() == DataType.LONG)
+                document.setFieldValue(field, new LongFieldValue(random.nextLong()));
+            else
+                document.setFieldValue(field, new IntegerFieldValue(random.nextInt()));
+        }
+        return document;
+    }
+
+    private byte[] serialize(Document document) {
+        GrowableByteBuffer buffer = new GrowableByteBuffer();
+        DocumentSerializerFactory.create6(buffer).write(document);
+        buffer.flip();
+        byte[] data = new byte[buffer.limit()];
+        buffer.getByteBuffer().get(data);
+        return data;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void out(String s) {
+        System.out.println(s);
+    }
+
+    public static void main(String[] args) {
+        new StructMemoryBenchmark().run();
+    }
+
+}
@@ -2,8 +2,14 @@
 package com.yahoo.document.datatypes;
 
 import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.document.Field;
 import com.yahoo.document.StructDataType;
+import com.yahoo.document.serialization.DocumentDeserializerFactory;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
 
 import java.nio.ByteBuffer;
 import java.util.Iterator;
@@ -353,4 +359,258 @@ public class StructTestCase {
         assertFalse(a.equals(b));
         assertFalse(b.equals(a));
     }
+
+    @Test
+    public void testPrimitiveFieldValuesAreBoxedWhenAccessed() {
+        StructDataType type = new StructDataType("test");
+        type.addField(new Field("byt", DataType.BYTE));
+        type.addField(new Field("int", DataType.INT));
+        type.addField(new Field("lng", DataType.LONG));
+        type.addField(new Field("flt", DataType.FLOAT));
+        type.addField(new Field("dbl", DataType.DOUBLE));
+        type.addField(new Field("bool", DataType.BOOL));
+        type.addField(new Field("str", DataType.STRING));
+
+        Struct struct = new Struct(type);
+        struct.setPrimitiveFieldValue(type.getField("byt"), -3);
+        struct.setPrimitiveFieldValue(type.getField("int"), 123);
+        struct.setPrimitiveFieldValue(type.getField("lng"), 59879879879079L);
+        struct.setPrimitiveFieldValue(type.getField("flt"), Float.floatToRawIntBits(5.44f));
+        struct.setPrimitiveFieldValue(type.getField("dbl"), Double.doubleToRawLongBits(-6.5));
+        struct.setPrimitiveFieldValue(type.getField("bool"), 1);
+        assertEquals(6, struct.getFieldCount());
+
+        assertEquals(new ByteFieldValue((byte)-3), struct.getFieldValue("byt"));
+        assertEquals(new IntegerFieldValue(123), struct.getFieldValue("int"));
+        assertEquals(new LongFieldValue(59879879879079L), struct.getFieldValue("lng"));
+        assertEquals(new FloatFieldValue(5.44f), struct.getFieldValue("flt"));
+        assertEquals(new DoubleFieldValue(-6.5), struct.getFieldValue("dbl"));
+        assertEquals(new BoolFieldValue(true), struct.getFieldValue("bool"));
+        assertNull(struct.getFieldValue("str"));
+
+        // Once accessed, the same value is returned such that changes to it are kept
+        IntegerFieldValue value = (IntegerFieldValue)struct.getFieldValue("int");
+        assertSame(value, struct.getFieldValue("int"));
+        value.assign(7);
+        assertEquals(new IntegerFieldValue(7), struct.getFieldValue("int"));
+
+        assertEquals(new LongFieldValue(59879879879079L), struct.removeFieldValue("lng"));
+        assertNull(struct.getFieldValue("lng"));
+        assertEquals(5, struct.getFieldCount());
+
+        assertEquals(new DoubleFieldValue(-6.5), struct.setFieldValue("dbl", new DoubleFieldValue(1.5)));
+        struct.setPrimitiveFieldValue(type.getField("dbl"), Double.doubleToRawLongBits(2.5));
+        assertEquals(new DoubleFieldValue(2.5), struct.getFieldValue("dbl"));
+        assertEquals(5, struct.getFieldCount());
+
+        try {
+            struct.setPrimitiveFieldValue(type.getField("str"), 1);
+            fail("Expected exception");
+        }
+        catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("can not be set from a primitive value"));
+        }
+    }
+
+    @Test
+    public void testEqualityAndCloningOfUnboxedValues() {
+        StructDataType type = new StructDataType("test");
+        type.addField(new Field("int", DataType.INT));
+        type.addField(new Field("dbl", DataType.DOUBLE));
+        type.addField(new Field("str", DataType.STRING));
+
+        Struct unboxed = new Struct(type);
+        unboxed.setPrimitiveFieldValue(type.getField("int"), 123);
+        unboxed.setPrimitiveFieldValue(type.getField("dbl"), Double.doubleToRawLongBits(45.6));
+        unboxed.setFieldValue("str", new StringFieldValue("hello world"));
+        Struct boxed = new Struct(type);
+        boxed.setFieldValue("str", new StringFieldValue("hello world"));
+        boxed.setFieldValue("dbl", new DoubleFieldValue(45.6));
+        boxed.setFieldValue("int", new IntegerFieldValue(123));
+
+        assertEquals(boxed, unboxed);
+        assertEquals(unboxed, boxed);
+        assertEquals(boxed.hashCode(), unboxed.hashCode());
+        assertEquals(0, unboxed.compareTo(boxed));
+        assertEquals(boxed.toString(), unboxed.toString());
+
+        Struct clone = unboxed.clone();
+        assertEquals(unboxed, clone);
+        ((IntegerFieldValue)clone.getFieldValue("int")).assign(124);
+        assertEquals(new IntegerFieldValue(123), unboxed.getFieldValue("int"));
+        assertFalse(unboxed.equals(clone));
+    }
+
+    @Test
+    public void testValuesAreKeptWhenSwitchingFromSparseToDenseStorage() {
+        StructDataType type = new StructDataType("test");
+        for (int i = 0; i < 20; i++)
+            type.addField(new Field("f" + i, i % 2 == 0 ? DataType.LONG : DataType.STRING));
+
+        Struct struct = new Struct(type);
+        Struct boxed = new Struct(type);
+        for (int i = 19; i >= 0; i--) { // in decreasing order to insert at the start of the sparse arrays
+            if (i % 2 == 0) {
+                struct.setPrimitiveFieldValue(type.getField("f" + i), i);
+                boxed.setFieldValue("f" + i, new LongFieldValue(i));
+            }
+            else {
+                struct.setFieldValue("f" + i, new StringFieldValue("v" + i));
+                boxed.setFieldValue("f" + i, new StringFieldValue("v" + i));
+            }
+            assertEquals(20 - i, struct.getFieldCount());
+            assertEquals(boxed, struct);
+            assertEquals(boxed.hashCode(), struct.hashCode());
+            assertEquals(boxed.clone(), struct.clone());
+            if (i == 15) { // still sparse: Values accessed now must keep their identity when switching
+                assertSame(struct.getFieldValue("f16"), struct.getFieldValue("f16"));
+            }
+        }
+        LongFieldValue accessed = (LongFieldValue)struct.getFieldValue("f16");
+        accessed.assign(160L);
+        assertEquals(new LongFieldValue(160L), struct.getFieldValue("f16"));
+        assertEquals(new LongFieldValue(18L), struct.getFieldValue("f18"));
+        assertEquals(new StringFieldValue("v19"), struct.getFieldValue("f19"));
+
+        int fields = 0;
+        int previousId = Integer.MIN_VALUE;
+        for (Map.Entry<Field, FieldValue> entry : struct.getFields()) { // in increasing field id order
+            assertTrue(entry.getKey().getId() > previousId);
+            previousId = entry.getKey().getId();
+            fields++;
+        }
+        assertEquals(20, fields);
+
+        assertEquals(new LongFieldValue(0L), struct.removeFieldValue("f0"));
+        assertEquals(new StringFieldValue("v1"), struct.removeFieldValue("f1"));
+        assertNull(struct.getFieldValue("f0"));
+        assertEquals(18, struct.getFieldCount());
+    }
+
+    @Test
+    public void testRemovingSparselyStoredValues() {
+        StructDataType type = new StructDataType("test");
+        for (int i = 0; i < 20; i++)
+            type.addField(new Field("f" + i, DataType.INT));
+
+        Struct struct = new Struct(type);
+        struct.setPrimitiveFieldValue(type.getField("f3"), 3);
+        struct.setFieldValue("f1", new IntegerFieldValue(1));
+        struct.setPrimitiveFieldValue(type.getField("f2"), 2);
+        assertEquals(new IntegerFieldValue(1), struct.removeFieldValue("f1"));
+        assertEquals(new IntegerFieldValue(2), struct.removeFieldValue("f2"));
+        assertNull(struct.removeFieldValue("f2"));
+        assertEquals(1, struct.getFieldCount());
+        assertEquals(new IntegerFieldValue(3), struct.getFieldValue("f3"));
+
+        struct.setFieldValue("f2", new IntegerFieldValue(20));
+        assertEquals(new IntegerFieldValue(20), struct.getFieldValue("f2"));
+        assertEquals(2, struct.getFieldCount());
+    }
+
+    @Test
+    public void testValuesOfFieldsAddedToTheTypeAfterValuesAreSet() {
+        StructDataType type = new StructDataType("test");
+        type.addField(new Field("b", 2, DataType.INT, true));
+        Struct struct = new Struct(type);
+        struct.setFieldValue("b", new IntegerFieldValue(2));
+
+        type.addField(new Field("a", 1, DataType.INT, true));
+        type.addField(new Field("c", 3, DataType.STRING, true));
+        struct.setPrimitiveFieldValue(type.getField("a"), 1);
+        struct.setFieldValue("c", new StringFieldValue("3"));
+        assertEquals(3, struct.getFieldCount());
+        assertEquals(new IntegerFieldValue(1), struct.getFieldValue("a"));
+        assertEquals(new IntegerFieldValue(2), struct.getFieldValue("b"));
+        assertEquals(new StringFieldValue("3"), struct.getFieldValue("c"));
+
+        Iterator<Map.Entry<Field, FieldValue>> it = struct.iterator();
+        assertEquals("a", it.next().getKey().getName());
+        assertEquals("b", it.next().getKey().getName());
+        assertEquals("c", it.next().getKey().getName());
+        assertFalse(it.hasNext());
+
+        Struct other = new Struct(type);
+        other.setFieldValue("c", new StringFieldValue("3"));
+        other.setFieldValue("b", new IntegerFieldValue(2));
+        other.setFieldValue("a", new IntegerFieldValue(1));
+        assertEquals(other, struct);
+        assertEquals(other.hashCode(), struct.hashCode());
+
+        assertEquals(new IntegerFieldValue(1), struct.removeFieldValue("a"));
+        assertEquals(2, struct.getFieldCount());
+        assertNull(struct.getFieldValue("a"));
+    }
+
+    @Test
+    public void testIteratingAndSerializingDoesNotKeepBoxedValues() {
+        DocumentTypeManager manager = new DocumentTypeManager();
+        StructDataType structType = new StructDataType("s");
+        structType.addField(new Field("int", DataType.INT));
+        DocumentType type = new DocumentType("test");
+        type.addField("s", structType);
+        manager.registerDocumentType(type);
+
+        Document document = new Document(type, "id:ns:test::1");
+        Struct struct = structType.createFieldValue();
+        struct.setPrimitiveFieldValue(structType.getField("int"), 123);
+        document.setFieldValue("s", struct);
+
+        FieldValue iterated = struct.iterator().next().getValue();
+        assertEquals(new IntegerFieldValue(123), iterated);
+        assertNotSame(iterated, struct.getFields().iterator().next().getValue());
+        ((IntegerFieldValue)iterated).assign(124);
+        assertEquals(new IntegerFieldValue(123), struct.iterator().next().getValue());
+
+        GrowableByteBuffer buffer = new GrowableByteBuffer();
+        DocumentSerializerFactory.create6(buffer).write(document);
+        buffer.flip();
+        assertEquals(document, new Document(DocumentDeserializerFactory.create6(manager, buffer)));
+        assertNotSame(struct.iterator().next().getValue(), struct.iterator().next().getValue());
+    }
+
+    @Test
+    public void testSerializationOfPrimitiveFieldValues() {
+        DocumentTypeManager manager = new DocumentTypeManager();
+        StructDataType position = new StructDataType("position");
+        position.addField(new Field("x", DataType.DOUBLE));
+        position.addField(new Field("y", DataType.FLOAT));
+        DocumentType type = new DocumentType("test");
+        type.addField("byt", DataType.BYTE);
+        type.addField("int", DataType.INT);
+        type.addField("lng", DataType.LONG);
+        type.addField("bool", DataType.BOOL);
+        type.addField("str", DataType.STRING);
+        type.addField("pos", position);
+        manager.registerDocumentType(type);
+
+        Document document = new Document(type, "id:ns:test::1");
+        document.setFieldValue("byt", new ByteFieldValue((byte)-1));
+        document.setFieldValue("int", new IntegerFieldValue(Integer.MIN_VALUE));
+        document.setFieldValue("lng", new LongFieldValue(Long.MAX_VALUE));
+        document.setFieldValue("bool", new BoolFieldValue(true));
+        document.setFieldValue("str", new StringFieldValue("foo"));
+        Struct pos = position.createFieldValue();
+        pos.setFieldValue("x", new DoubleFieldValue(-0.0));
+        pos.setFieldValue("y", new FloatFieldValue(Float.NaN));
+        document.setFieldValue("pos", pos);
+
+        GrowableByteBuffer buffer = new GrowableByteBuffer();
+        DocumentSerializerFactory.create6(buffer).write(document);
+        buffer.flip();
+        byte[] serialized = new byte[buffer.limit()];
+        buffer.getByteBuffer().duplicate().get(serialized);
+        Document deserialized = new Document(DocumentDeserializerFactory.create6(manager, buffer));
+        assertEquals(document, deserialized);
+        assertEquals(new LongFieldValue(Long.MAX_VALUE), deserialized.getFieldValue("lng"));
+        assertEquals(new FloatFieldValue(Float.NaN), ((Struct)deserialized.getFieldValue("pos")).getFieldValue("y"));
+
+        GrowableByteBuffer reserialized = new GrowableByteBuffer();
+        DocumentSerializerFactory.create6(reserialized).write(deserialized);
+        reserialized.flip();
+        byte[] reserializedBytes = new byte[reserialized.limit()];
+        reserialized.getByteBuffer().get(reserializedBytes);
+        assertArrayEquals(serialized, reserializedBytes);
+    }
+
 }
@@ -0,0 +1,154 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.DataType;
+import com.yahoo.document.DocumentPut;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.TensorDataType;
+import com.yahoo.document.WeightedSetDataType;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.tensor.TensorType;
+import com.yahoo.text.Utf8;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the CPU time and allocation per document of turning JSON puts into serialized documents,
+ * by reading a Document and serializing it, and by {@link JsonDocumentTranscoder}.
+ * The documents have string and array fields, which are transcoded directly,
+ * and optionally also weighted set and tensor fields, which are not.
+ *
+ * Run with the main method.
+ */
+public class JsonDocumentTranscoderBenchmark {
+
+    private static final int documents = 20_000;
+    private static final JsonFactory parserFactory = new JsonFactory().disable(JsonFactory.Feature.CANONICALIZE_FIELD_NAMES);
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    private final DocumentTypeManager types = new DocumentTypeManager();
+
+    public JsonDocumentTranscoderBenchmark() {
+        DocumentType type = new DocumentType("benchmark");
+        type.addField("title", DataType.STRING);
+        type.addField("body", DataType.STRING);
+        type.addField("popularity", DataType.INT);
+        type.addField("price", DataType.DOUBLE);
+        type.addField("tags", new ArrayDataType(DataType.STRING));
+        type.addField("categories", new WeightedSetDataType(DataType.STRING, false, false));
+        type.addField("embedding", new TensorDataType(TensorType.fromSpec("tensor(x[32])")));
+        types.registerDocumentType(type);
+    }
+
+    public void run() {
+        for (boolean allTypes : new boolean[] { false, true }) {
+            List<byte[]> puts = createPuts(allTypes);
+            out(allTypes ? "Documents with all field types:" : "Documents with string, number and array fields:");
+            for (int i = 0; i < 5; i++) {
+                measure("  read and serialize", puts, this::readAndSerialize);
+                measure("  transcode         ", puts, this::transcode);
+            }
+        }
+    }
+
+    private void measure(String name, List<byte[]> puts, Writer writer) {
+        GrowableByteBuffer buffer = new GrowableByteBuffer(64 * 1024);
+        JsonDocumentTranscoder transcoder = new JsonDocumentTranscoder(types);
+        long startBytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long startCpu = threadBean.getCurrentThreadCpuTime();
+        long serializedBytes = 0;
+        for (byte[] put : puts) {
+            buffer.clear();
+            writer.write(put, buffer, transcoder);
+            serializedBytes += buffer.position();
+        }
+        long cpu = threadBean.getCurrentThreadCpuTime() - startCpu;
+        long bytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - startBytes;
+        out(name + ": " + (cpu / puts.size() / 1000) + " us CPU/document, " +
+            (bytes / puts.size()) + " bytes allocated/document, " + (serializedBytes / puts.size()) + " bytes serialized/document");
+    }
+
+    private void readAndSerialize(byte[] put, GrowableByteBuffer buffer, JsonDocumentTranscoder transcoder) {
+        JsonReader reader = new JsonReader(types, new ByteArrayInputStream(put), parserFactory);
+        DocumentPut documentPut = (DocumentPut)reader.readOperation();
+        DocumentSerializerFactory.createHead(buffer).write(documentPut.getDocument());
+    }
+
+    private void transcode(byte[] put, GrowableByteBuffer buffer, JsonDocumentTranscoder transcoder) {
+        try {
+            JsonReader reader = new JsonReader(types, new ByteArrayInputStream(put), parserFactory);
+            transcoder.write(reader.parseDocument().get(), buffer);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private List<byte[]> createPuts(boolean allTypes) {
+        Random random = new Random(1);
+        List<byte[]> puts = new ArrayList<>(documents);
+        for (int i = 0; i < documents; i++) {
+            StringBuilder put = new StringBuilder();
+            put.append("{\"put\":\"id:benchmark:benchmark::").append(i).append("\",\"fields\":{");
+            put.append("\"title\":\"").append(words(random, 8)).append("\",");
+            put.append("\"body\":\"").append(words(random, 200)).append("\",");
+            put.append("\"popularity\":").append(random.nextInt(1000)).append(",");
+            put.append("\"price\":").append(random.nextDouble() * 100).append(",");
+            put.append("\"tags\":[");
+            for (int j = 0; j < 10; j++)
+                put.append(j > 0 ? "," : "").append("\"tag").append(random.nextInt(1000)).append("\"");
+            put.append("]");
+            if (allTypes) {
+                put.append(",\"categories\":{");
+                for (int j = 0; j < 5; j++)
+                    put.append(j > 0 ? "," : "").append("\"category").append(j).append("\":").append(random.nextInt(100));
+                put.append("},\"embedding\":{\"cells\":[");
+                for (int j = 0; j < 32; j++)
+                    put.append(j > 0 ? "," : "").append("{\"address\":{\"x\":\"").append(j).append("\"},\"value\":")
+                       .append(random.nextFloat()).append("}");
+                put.append("]}");
+            }
+            put.append("}}");
+            puts.add(Utf8.toBytes(put.toString()));
+        }
+        return puts;
+    }
+
+    private String words(Random random, int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                words.append(' ');
+            int length = 2 + random.nextInt(8);
+            for (int j = 0; j < length; j++)
+                words.append((char)('a' + random.nextInt(26)));
+        }
+        return words.toString();
+    }
+
+    private static void out(String s) {
+        System.out.println(s);
+    }
+
+    private interface Writer {
+
+        void write(byte[] put, GrowableByteBuffer buffer, JsonDocumentTranscoder transcoder);
+
+    }
+
+    public static void main(String[] args) {
+        new JsonDocumentTranscoderBenchmark().run();
+    }
+
+}
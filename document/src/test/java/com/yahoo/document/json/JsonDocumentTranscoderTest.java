@@ -0,0 +1,176 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentId;
+import com.yahoo.document.DocumentPut;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.MapDataType;
+import com.yahoo.document.StructDataType;
+import com.yahoo.document.TensorDataType;
+import com.yahoo.document.WeightedSetDataType;
+import com.yahoo.document.datatypes.StringFieldValue;
+import com.yahoo.document.json.readers.DocumentParseInfo;
+import com.yahoo.document.serialization.DocumentDeserializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
+import com.yahoo.tensor.TensorType;
+import com.yahoo.text.Utf8;
+import com.yahoo.vespaxmlparser.FeedOperation;
+import com.yahoo.vespaxmlparser.FeedReader;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonDocumentTranscoderTest {
+
+    private static final JsonFactory parserFactory = new JsonFactory();
+
+    private final DocumentTypeManager types = new DocumentTypeManager();
+
+    public JsonDocumentTranscoderTest() {
+        DocumentType type = new DocumentType("test");
+        type.addHeaderField("title", DataType.STRING);
+        type.addHeaderField("count", DataType.INT);
+        type.addField("body", DataType.STRING);
+        type.addField("timestamp", DataType.LONG);
+        type.addField("flags", DataType.BYTE);
+        type.addField("score", DataType.FLOAT);
+        type.addField("weight", DataType.DOUBLE);
+        type.addField("enabled", DataType.BOOL);
+        type.addField("tags", new ArrayDataType(DataType.STRING));
+        type.addField("numbers", new ArrayDataType(DataType.INT));
+        type.addField("categories", new WeightedSetDataType(DataType.STRING, false, false));
+        type.addField("attributes", new MapDataType(DataType.STRING, DataType.STRING));
+        type.addField("embedding", new TensorDataType(TensorType.fromSpec("tensor(x[3])")));
+        StructDataType person = new StructDataType("person");
+        person.addField(new Field("name", DataType.STRING));
+        type.addField("author", person);
+        types.registerDocumentType(type);
+    }
+
+    @Test
+    public void requireThatTranscodedDocumentsEqualReadDocuments() throws IOException {
+        assertTranscodedAsRead("{ 'put': 'id:test:test::0', 'fields': {",
+                               "    'title': 'The title æøå',",
+                               "    'count': 7,",
+                               "    'body': '',",
+                               "    'timestamp': 1234567890123,",
+                               "    'flags': 3,",
+                               "    'score': 1.5,",
+                               "    'weight': -2.25,",
+                               "    'enabled': true,",
+                               "    'tags': [ 'a', 'b', 'c' ],",
+                               "    'numbers': [ 1, 2, 3, 400000 ],",
+                               "    'categories': { 'foo': 1, 'bar': 2 },",
+                               "    'attributes': { 'key': 'value' },",
+                               "    'embedding': { 'cells': [ { 'address': { 'x': '1' }, 'value': 2.0 } ] },",
+                               "    'author': { 'name': 'Jane' }",
+                               "} }");
+    }
+
+    @Test
+    public void requireThatDocumentsWithOnlyHeaderOrBodyFieldsAreTranscoded() throws IOException {
+        assertTranscodedAsRead("{ 'put': 'id:test:test::0', 'fields': { } }");
+        assertTranscodedAsRead("{ 'put': 'id:test:test::0', 'fields': { 'title': 'title' } }");
+        assertTranscodedAsRead("{ 'put': 'id:test:test::0', 'fields': { 'body': 'body', 'tags': [] } }");
+    }
+
+    @Test
+    public void requireThatNullFieldsAreSkippedAndRepeatedFieldsHaveTheLastValue() throws IOException {
+        Document document = assertTranscodedAsRead("{ 'put': 'id:test:test::0', 'fields': {",
+                                                   "    'title': 'first',",
+                                                   "    'body': null,",
+                                                   "    'title': 'second'",
+                                                   "} }");
+        assertEquals(new StringFieldValue("second"), document.getFieldValue("title"));
+        assertEquals(1, document.getFieldCount());
+    }
+
+    @Test
+    public void requireThatInvalidDocumentsAreRejected() throws IOException {
+        assertRejected("No field 'nosuchfield' in the structure of type 'test'",
+                       "{ 'put': 'id:test:test::0', 'fields': { 'nosuchfield': 'value' } }");
+        assertRejected("Error in document 'id:test:test::0' - could not parse field 'count' of type 'int': " +
+                       "For input string: \"many\"",
+                       "{ 'put': 'id:test:test::0', 'fields': { 'count': 'many' } }");
+        assertRejected("Document type nosuchtype does not exist",
+                       "{ 'put': 'id:test:nosuchtype::0', 'fields': { } }");
+    }
+
+    @Test
+    public void requireThatAFeedReaderWithATranscoderReturnsSerializedPuts() throws Exception {
+        String json = json("[",
+                           "  { 'put': 'id:test:test::0', 'condition': 'test.count == 1', 'fields': { 'title': 'title', 'count': 7 } },",
+                           "  { 'remove': 'id:test:test::1' }",
+                           "]");
+        FeedReader reader = new JsonFeedReader(stream(json), types, new JsonDocumentTranscoder(types));
+
+        FeedOperation put = reader.read();
+        assertEquals(FeedOperation.Type.DOCUMENT, put.getType());
+        SerializedDocumentFeedOperation serialized = (SerializedDocumentFeedOperation)put;
+        assertEquals(new DocumentId("id:test:test::0"), serialized.getDocumentId());
+        assertEquals("test.count == 1", put.getCondition().getSelection());
+        Document expected = ((DocumentPut)new JsonReader(types, stream(json), parserFactory).next()).getDocument();
+        assertEquals(expected, put.getDocument());
+        assertEquals(expected, put.getDocument());
+
+        FeedOperation remove = reader.read();
+        assertEquals(FeedOperation.Type.REMOVE, remove.getType());
+        assertEquals(new DocumentId("id:test:test::1"), remove.getRemove());
+        assertEquals(FeedOperation.Type.INVALID, reader.read().getType());
+    }
+
+    private Document assertTranscodedAsRead(String ... jsonLines) throws IOException {
+        String json = json(jsonLines);
+        Document expected = ((DocumentPut)new JsonReader(types, stream(json), parserFactory).readOperation()).getDocument();
+
+        GrowableByteBuffer buffer = new GrowableByteBuffer();
+        buffer.putInt(17); // preceding data
+        new JsonDocumentTranscoder(types).write(parse(json), buffer);
+        buffer.flip();
+        assertEquals(17, buffer.getInt());
+        Document transcoded = Document.createDocument(DocumentDeserializerFactory.createHead(types, buffer));
+        assertEquals(0, buffer.remaining());
+        assertEquals(expected, transcoded);
+
+        GrowableByteBuffer sized = new JsonDocumentTranscoder(types).write(parse(json));
+        int size = sized.position();
+        assertTrue("The buffer is sized by the document: " + sized, sized.capacity() >= size && sized.capacity() <= size + 128);
+        sized.flip();
+        assertEquals(expected, Document.createDocument(DocumentDeserializerFactory.createHead(types, sized)));
+        return transcoded;
+    }
+
+    private void assertRejected(String expectedMessage, String json) throws IOException {
+        try {
+            new JsonDocumentTranscoder(types).write(parse(json(json)), new GrowableByteBuffer());
+            fail("Expected exception");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals(expectedMessage, e.getMessage());
+        }
+    }
+
+    private DocumentParseInfo parse(String json) throws IOException {
+        return new JsonReader(types, stream(json), parserFactory).parseDocument().get();
+    }
+
+    private static String json(String ... lines) {
+        return String.join("\n", lines).replace('\'', '"');
+    }
+
+    private static ByteArrayInputStream stream(String json) {
+        return new ByteArrayInputStream(Utf8.toBytes(json));
+    }
+
+}
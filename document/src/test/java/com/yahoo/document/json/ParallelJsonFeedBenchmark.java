@@ -0,0 +1,143 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json;
+
+import com.yahoo.concurrent.ThreadFactoryFactory;
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.DataType;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.TensorDataType;
+import com.yahoo.document.WeightedSetDataType;
+import com.yahoo.tensor.TensorType;
+import com.yahoo.text.Utf8;
+import com.yahoo.vespaxmlparser.FeedOperation;
+import com.yahoo.vespaxmlparser.FeedReader;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Measures the documents per second and bytes allocated per document when reading a feed of puts
+ * with {@link JsonFeedReader}, and with {@link ParallelJsonFeedReader} using various numbers of threads,
+ * for documents with string, array, weighted set and tensor fields.
+ * Allocation is summed over all threads.
+ *
+ * Run with the main method.
+ */
+public class ParallelJsonFeedBenchmark {
+
+    private static final int documents = 50_000;
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    private final DocumentTypeManager types = new DocumentTypeManager();
+
+    public ParallelJsonFeedBenchmark() {
+        DocumentType type = new DocumentType("benchmark");
+        type.addField(new Field("title", DataType.STRING));
+        type.addField(new Field("body", DataType.STRING));
+        type.addField(new Field("tags", new ArrayDataType(DataType.STRING)));
+        type.addField(new Field("categories", new WeightedSetDataType(DataType.STRING, false, false)));
+        type.addField(new Field("embedding", new TensorDataType(TensorType.fromSpec("tensor(x[32])"))));
+        types.registerDocumentType(type);
+    }
+
+    public void run() throws Exception {
+        byte[] feed = createFeed();
+        out("Feed of " + documents + " documents, " + feed.length / documents + " bytes/document");
+        out("Warming up...");
+        for (int i = 0; i < 3; i++) {
+            measure(null, feed, stream -> new JsonFeedReader(stream, types));
+            measureParallel(null, feed, 4);
+        }
+        for (int i = 0; i < 3; i++) {
+            measure("Sequential        ", feed, stream -> new JsonFeedReader(stream, types));
+            for (int threads : new int[] { 1, 2, 4, 8 })
+                measureParallel("Parallel, " + threads + " threads", feed, threads);
+        }
+    }
+
+    private void measureParallel(String name, byte[] feed, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, ThreadFactoryFactory.getDaemonThreadFactory("parser"));
+        try {
+            measure(name, feed, stream -> new ParallelJsonFeedReader(stream, types, executor, 4 * threads));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private void measure(String name, byte[] feed, Function<ByteArrayInputStream, FeedReader> readerFactory) throws Exception {
+        FeedReader reader = readerFactory.apply(new ByteArrayInputStream(feed));
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime();
+        int read = 0;
+        while (reader.read().getType() != FeedOperation.Type.INVALID)
+            read++;
+        long nanos = System.nanoTime() - startTime;
+        long bytes = allocatedBytes() - startBytes;
+        if (read != documents) throw new IllegalStateException("Read " + read + " documents, expected " + documents);
+        if (name != null)
+            out(name + ": " + (documents * 1_000_000_000L / nanos) + " documents/s, " +
+                (bytes / documents) + " bytes allocated/document");
+    }
+
+    private byte[] createFeed() {
+        Random random = new Random(1);
+        StringBuilder feed = new StringBuilder("[\n");
+        for (int i = 0; i < documents; i++) {
+            if (i > 0)
+                feed.append(",\n");
+            feed.append("{\"put\":\"id:benchmark:benchmark::").append(i).append("\",\"fields\":{");
+            feed.append("\"title\":\"").append(words(random, 8)).append("\",");
+            feed.append("\"body\":\"").append(words(random, 200)).append("\",");
+            feed.append("\"tags\":[");
+            for (int j = 0; j < 10; j++)
+                feed.append(j > 0 ? "," : "").append("\"tag").append(random.nextInt(1000)).append("\"");
+            feed.append("],\"categories\":{");
+            for (int j = 0; j < 5; j++)
+                feed.append(j > 0 ? "," : "").append("\"category").append(j).append("\":").append(random.nextInt(100));
+            feed.append("},\"embedding\":{\"cells\":[");
+            for (int j = 0; j < 32; j++)
+                feed.append(j > 0 ? "," : "").append("{\"address\":{\"x\":\"").append(j).append("\"},\"value\":")
+                    .append(random.nextFloat()).append("}");
+            feed.append("]}}}");
+        }
+        feed.append("\n]");
+        return Utf8.toBytes(feed.toString());
+    }
+
+    private String words(Random random, int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                words.append(' ');
+            int length = 2 + random.nextInt(8);
+            for (int j = 0; j < length; j++)
+                words.append((char)('a' + random.nextInt(26)));
+        }
+        return words.toString();
+    }
+
+    private long allocatedBytes() {
+        long bytes = 0;
+        for (long allocated : threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds()))
+            bytes += Math.max(0, allocated);
+        return bytes;
+    }
+
+    private static void out(String s) {
+        System.out.println(s);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new ParallelJsonFeedBenchmark().run();
+    }
+
+}
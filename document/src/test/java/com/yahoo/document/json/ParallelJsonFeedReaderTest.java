@@ -0,0 +1,135 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.document.json;
+
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.DataType;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.datatypes.StringFieldValue;
+import com.yahoo.text.Utf8;
+import com.yahoo.vespaxmlparser.FeedOperation;
+import com.yahoo.vespaxmlparser.FeedReader;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelJsonFeedReaderTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void requireThatOperationsAreReadInFeedOrder() throws Exception {
+        StringBuilder feed = new StringBuilder("[\n");
+        for (int i = 0; i < 1000; i++) {
+            if (i > 0)
+                feed.append(",\n");
+            String id = "id:test:test::" + (i % 10);
+            if (i % 3 == 0)
+                feed.append("{ \"update\": \"" + id + "\", \"fields\": { \"title\": { \"assign\": \"update " + i + "\" } } }");
+            else if (i % 7 == 0)
+                feed.append("{ \"remove\": \"" + id + "\" }");
+            else
+                feed.append("{ \"put\": \"" + id + "\", \"condition\": \"test.title\", " +
+                            "\"fields\": { \"title\": \"put \\\"" + i + "\\\" æøå\", \"tags\": [ \"a\", \"b\" ] } }");
+        }
+        feed.append("\n]");
+
+        List<FeedOperation> expected = readAll(new JsonFeedReader(stream(feed.toString()), types()));
+        List<FeedOperation> parallel = readAll(new ParallelJsonFeedReader(stream(feed.toString()), types(), executor, 8));
+        assertEquals(1000, expected.size());
+        assertEquals(expected.size(), parallel.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getType(), parallel.get(i).getType());
+            assertEquals(expected.get(i).getCondition().getSelection(), parallel.get(i).getCondition().getSelection());
+            assertEquals(expected.get(i).getDocument(), parallel.get(i).getDocument());
+            assertEquals(expected.get(i).getDocumentUpdate(), parallel.get(i).getDocumentUpdate());
+            assertEquals(expected.get(i).getRemove(), parallel.get(i).getRemove());
+        }
+        assertEquals(new StringFieldValue("put \"2\" æøå"), parallel.get(2).getDocument().getFieldValue("title"));
+    }
+
+    @Test
+    public void requireThatAnEmptyFeedHasNoOperations() throws Exception {
+        assertEquals(0, readAll(new ParallelJsonFeedReader(stream("[]"), types(), executor, 8)).size());
+    }
+
+    @Test
+    public void requireThatErrorsInOperationsAreThrownWhenTheOperationIsRead() throws Exception {
+        FeedReader reader = new ParallelJsonFeedReader(stream("[ { \"put\": \"id:test:test::0\", \"fields\": { \"title\": \"0\" } }," +
+                                                              "  { \"put\": \"id:test:nosuchtype::1\", \"fields\": { } } ]"),
+                                                       types(), executor, 8);
+        assertEquals(FeedOperation.Type.DOCUMENT, reader.read().getType());
+        try {
+            reader.read();
+            fail("Expected exception");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("Document type nosuchtype does not exist", e.getMessage());
+        }
+    }
+
+    @Test
+    public void requireThatStructuralErrorsAreThrownAfterTheOperationsBeforeThem() throws Exception {
+        FeedReader reader = new ParallelJsonFeedReader(stream("[ { \"put\": \"id:test:test::0\", \"fields\": { \"title\": \"0\" } }," +
+                                                              "  { \"put\": \"id:test:test::1\", \"fields\": { \"title\": \"1\" } }," +
+                                                              "  { \"put\": \"id:test:test::2\", \"fields\": [ } ]"),
+                                                       types(), executor, 8);
+        assertEquals("id:test:test::0", reader.read().getDocument().getId().toString());
+        assertEquals("id:test:test::1", reader.read().getDocument().getId().toString());
+        try {
+            reader.read();
+            fail("Expected exception");
+        }
+        catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Unexpected close marker"));
+        }
+        assertEquals(FeedOperation.Type.INVALID, reader.read().getType());
+    }
+
+    @Test
+    public void requireThatOperationsRejectedByTheExecutorAreParsedByTheReader() throws Exception {
+        Executor rejecting = task -> { throw new RejectedExecutionException("Full"); };
+        FeedReader reader = new ParallelJsonFeedReader(stream("[ { \"put\": \"id:test:test::0\", \"fields\": { \"title\": \"0\" } }," +
+                                                              "  { \"remove\": \"id:test:test::1\" } ]"),
+                                                       types(), rejecting, 8);
+        assertEquals(2, readAll(reader).size());
+    }
+
+    private static List<FeedOperation> readAll(FeedReader reader) throws Exception {
+        List<FeedOperation> operations = new ArrayList<>();
+        for (FeedOperation operation = reader.read(); operation.getType() != FeedOperation.Type.INVALID; operation = reader.read())
+            operations.add(operation);
+        return operations;
+    }
+
+    private static ByteArrayInputStream stream(String json) {
+        return new ByteArrayInputStream(Utf8.toBytes(json));
+    }
+
+    private static DocumentTypeManager types() {
+        DocumentTypeManager types = new DocumentTypeManager();
+        DocumentType type = new DocumentType("test");
+        type.addField(new Field("title", DataType.STRING));
+        type.addField(new Field("tags", new ArrayDataType(DataType.STRING)));
+        types.registerDocumentType(type);
+        return types;
+    }
+
+}
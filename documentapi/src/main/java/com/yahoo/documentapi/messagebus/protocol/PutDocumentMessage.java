@@ -1,9 +1,15 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.documentapi.messagebus.protocol;
 
+import com.yahoo.document.DocumentId;
 import com.yahoo.document.DocumentPut;
+import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.document.TestAndSetCondition;
 import com.yahoo.document.serialization.DocumentDeserializer;
+import com.yahoo.document.serialization.DocumentDeserializerFactory;
+import com.yahoo.document.serialization.DocumentSerializer;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
+import com.yahoo.io.GrowableByteBuffer;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -18,6 +24,10 @@ public class PutDocumentMessage extends TestAndSetMessage {
     private long time = 0;
     private LazyDecoder decoder = null;
 
+    /** The id and condition of a put which is serialized, such that these are available without deserializing it */
+    private DocumentId serializedId = null;
+    private TestAndSetCondition serializedCondition = null;
+
     /**
      * Constructs a new message for deserialization.
      */
@@ -41,6 +51,31 @@ public class PutDocumentMessage extends TestAndSetMessage {
         this.put = put;
     }
 
+    /**
+     * Creates a message containing a put whose document is already serialized, such that it can be sent
+     * without creating and serializing the document. The put is only deserialized if it is accessed.
+     *
+     * @param id the id of the serialized document
+     * @param condition the condition of the put
+     * @param document a buffer containing the serialized document, from the start up to the position of the buffer.
+     *                 The rest of the put is appended to this buffer, which must not be changed after this
+     * @param typeManager the types used to deserialize the document if it is accessed
+     */
+    public static PutDocumentMessage createSerialized(DocumentId id, TestAndSetCondition condition,
+                                                      GrowableByteBuffer document, DocumentTypeManager typeManager) {
+        DocumentSerializer serializer = DocumentSerializerFactory.createHead(document);
+        serializer.putLong(null, 0); // timestamp
+        AbstractRoutableFactory.encodeString(condition.getSelection(), serializer);
+        document.flip();
+
+        RoutableFactories60.PutDocumentMessageFactory factory = new RoutableFactories60.PutDocumentMessageFactory();
+        PutDocumentMessage message = new PutDocumentMessage((obj, buf) -> factory.decodeInto((PutDocumentMessage)obj, buf),
+                                                            DocumentDeserializerFactory.createHead(typeManager, document));
+        message.serializedId = id;
+        message.serializedCondition = condition;
+        return message;
+    }
+
     /**
      * Creates an empty PutDocumentMessage
      */
@@ -54,9 +89,11 @@ public class PutDocumentMessage extends TestAndSetMessage {
      */
     private void deserialize() {
         if (decoder != null && buffer != null) {
+            LazyDecoder decoder = this.decoder;
+            DocumentDeserializer buffer = this.buffer;
+            this.decoder = null;
+            this.buffer = null;
             decoder.decode(this, buffer);
-            decoder = null;
-            buffer = null;
         }
     }
 
@@ -81,6 +118,7 @@ public class PutDocumentMessage extends TestAndSetMessage {
 
     /** Sets the timestamp of the document to put */
     public void setTimestamp(long time) {
+        deserialize();
         buffer = null;
         decoder = null;
         this.time = time;
@@ -93,7 +131,8 @@ public class PutDocumentMessage extends TestAndSetMessage {
      * @return the buffer containing the serialized data for this message, or null
      */
     ByteBuffer getSerializedBuffer() {
-        return buffer != null ? buffer.getBuf().getByteBuffer() : null; // TODO: very dirty. Must make interface.
+        // A duplicate, such that the message can be encoded again if it is resent
+        return buffer != null ? buffer.getBuf().getByteBuffer().duplicate() : null; // TODO: very dirty. Must make interface.
     }
 
     @Override
@@ -116,6 +155,8 @@ public class PutDocumentMessage extends TestAndSetMessage {
 
     @Override
     public long getSequenceId() {
+        if (buffer != null && serializedId != null)
+            return Arrays.hashCode(serializedId.getGlobalId());
         deserialize();
         return Arrays.hashCode(put.getId().getGlobalId());
     }
@@ -127,12 +168,15 @@ public class PutDocumentMessage extends TestAndSetMessage {
 
     @Override
     public TestAndSetCondition getCondition() {
+        if (buffer != null && serializedCondition != null)
+            return serializedCondition;
         deserialize();
         return put.getCondition();
     }
 
     @Override
     public void setCondition(TestAndSetCondition condition) {
+        deserialize();
         put.setCondition(condition);
     }
 
@@ -0,0 +1,191 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.documentapi.messagebus.protocol.test;
+
+import com.yahoo.component.Version;
+import com.yahoo.compress.CompressionType;
+import com.yahoo.compress.Compressor;
+import com.yahoo.document.ArrayDataType;
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentPut;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.Field;
+import com.yahoo.document.StructDataType;
+import com.yahoo.document.datatypes.Array;
+import com.yahoo.document.datatypes.DoubleFieldValue;
+import com.yahoo.document.datatypes.IntegerFieldValue;
+import com.yahoo.document.datatypes.StringFieldValue;
+import com.yahoo.document.datatypes.Struct;
+import com.yahoo.documentapi.messagebus.protocol.DocumentProtocol;
+import com.yahoo.documentapi.messagebus.protocol.PutDocumentMessage;
+import com.yahoo.io.BufferPool;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the GC pressure of sustained feeding by encoding put messages as the document protocol does,
+ * and compressing them as messagebus does before sending them, in a number of threads for a fixed time,
+ * with and without pooling of the buffers used for this.
+ * Reports documents per second, bytes allocated per document summed over all threads,
+ * and the number of collections and time spent in GC.
+ *
+ * Run with the main method, with the heap size and GC to measure.
+ */
+public class DocumentEncodingBenchmark {
+
+    private static final int threads = 8;
+    private static final long measureMillis = 10_000;
+    private static final Version version = new Version(6, 221, 0);
+
+    private final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    private final DocumentTypeManager types = new DocumentTypeManager();
+    private final DocumentProtocol protocol = new DocumentProtocol(types);
+    private final List<PutDocumentMessage> messages = new ArrayList<>();
+
+    public DocumentEncodingBenchmark() {
+        DocumentType type = new DocumentType("benchmark");
+        type.addField("title", DataType.STRING);
+        type.addField("body", DataType.STRING);
+        type.addField("popularity", DataType.INT);
+        type.addField("tags", new ArrayDataType(DataType.STRING));
+        StructDataType position = new StructDataType("position");
+        position.addField(new Field("latitude", DataType.DOUBLE));
+        position.addField(new Field("longitude", DataType.DOUBLE));
+        type.addField("positions", new ArrayDataType(position));
+        types.registerDocumentType(type);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            Document document = new Document(type, "id:benchmark:benchmark::" + i);
+            document.setFieldValue("title", new StringFieldValue(words(random, 8)));
+            document.setFieldValue("body", new StringFieldValue(words(random, 200 + random.nextInt(2000))));
+            document.setFieldValue("popularity", new IntegerFieldValue(random.nextInt(1000)));
+            Array<StringFieldValue> tags = new Array<>(type.getField("tags").getDataType());
+            for (int j = 0; j < 10; j++)
+                tags.add(new StringFieldValue("tag" + random.nextInt(1000)));
+            document.setFieldValue("tags", tags);
+            Array<Struct> positions = new Array<>(type.getField("positions").getDataType());
+            for (int j = 0; j < 5; j++) {
+                Struct struct = position.createFieldValue();
+                struct.setFieldValue("latitude", new DoubleFieldValue(random.nextDouble()));
+                struct.setFieldValue("longitude", new DoubleFieldValue(random.nextDouble()));
+                positions.add(struct);
+            }
+            document.setFieldValue("positions", positions);
+            messages.add(new PutDocumentMessage(new DocumentPut(document)));
+        }
+    }
+
+    public void run() throws Exception {
+        out("Warming up...");
+        measure(null, true);
+        measure(null, false);
+        for (int i = 0; i < 3; i++) {
+            measure("Pooled buffers    ", true);
+            measure("Allocated buffers ", false);
+        }
+        BufferPool pool = BufferPool.shared();
+        out("Pool: " + pool.cacheHits() + " thread cache hits, " + pool.poolHits() + " shared pool hits, " +
+            pool.allocated() + " allocated, " + pool.dropped() + " dropped");
+    }
+
+    private void measure(String name, boolean pooled) throws Exception {
+        BufferPool.shared().setEnabled(pooled);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            System.gc();
+            long startBytes = allocatedBytes();
+            long startCollections = collections();
+            long startGcMillis = gcMillis();
+            long startTime = System.nanoTime();
+            long end = System.currentTimeMillis() + measureMillis;
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++)
+                results.add(executor.submit(() -> encodeUntil(end)));
+            long documents = 0;
+            for (Future<Long> result : results)
+                documents += result.get();
+            long nanos = System.nanoTime() - startTime;
+            long bytes = allocatedBytes() - startBytes;
+            if (name != null)
+                out(name + ": " + (documents * 1_000_000_000L / nanos) + " documents/s, " +
+                    (bytes / documents) + " bytes allocated/document, " +
+                    (collections() - startCollections) + " collections, " +
+                    (gcMillis() - startGcMillis) + " ms in GC");
+        }
+        finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            BufferPool.shared().setEnabled(true);
+        }
+    }
+
+    /** Encodes and compresses messages as they are sent, until the given time */
+    private long encodeUntil(long end) {
+        Compressor compressor = new Compressor(CompressionType.LZ4, 3, 0.90, 1024);
+        long documents = 0;
+        long encodedBytes = 0;
+        while (System.currentTimeMillis() < end) {
+            for (PutDocumentMessage message : messages) {
+                byte[] payload = protocol.encode(version, message);
+                encodedBytes += compressor.compress(payload).data().length;
+                documents++;
+            }
+        }
+        if (encodedBytes == 0) throw new IllegalStateException("Nothing encoded");
+        return documents;
+    }
+
+    private String words(Random random, int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                words.append(' ');
+            int length = 2 + random.nextInt(8);
+            for (int j = 0; j < length; j++)
+                words.append((char)('a' + random.nextInt(26)));
+        }
+        return words.toString();
+    }
+
+    private long allocatedBytes() {
+        long bytes = 0;
+        for (long allocated : threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds()))
+            bytes += Math.max(0, allocated);
+        return bytes;
+    }
+
+    private static long collections() {
+        long collections = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            collections += Math.max(0, gc.getCollectionCount());
+        return collections;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            millis += Math.max(0, gc.getCollectionTime());
+        return millis;
+    }
+
+    private static void out(String s) {
+        System.out.println(s);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new DocumentEncodingBenchmark().run();
+    }
+
+}
@@ -12,6 +12,7 @@ import com.yahoo.document.GlobalId;
 import com.yahoo.document.TestAndSetCondition;
 import com.yahoo.document.fieldpathupdate.RemoveFieldPathUpdate;
 import com.yahoo.document.idstring.IdString;
+import com.yahoo.document.serialization.DocumentSerializerFactory;
 import com.yahoo.documentapi.messagebus.protocol.CreateVisitorMessage;
 import com.yahoo.documentapi.messagebus.protocol.CreateVisitorReply;
 import com.yahoo.documentapi.messagebus.protocol.DestroyVisitorMessage;
@@ -43,6 +44,7 @@ import com.yahoo.documentapi.messagebus.protocol.VisitorInfoMessage;
 import com.yahoo.documentapi.messagebus.protocol.VisitorReply;
 import com.yahoo.documentapi.messagebus.protocol.WriteDocumentReply;
 import com.yahoo.documentapi.messagebus.protocol.WrongDistributionReply;
+import com.yahoo.io.GrowableByteBuffer;
 import com.yahoo.messagebus.Routable;
 import com.yahoo.text.Utf8;
 import com.yahoo.vdslib.SearchResult;
@@ -51,6 +53,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -621,6 +624,21 @@ public class Messages60TestCase extends MessagesTestBase {
                 assertEquals(msg.getTimestamp(), deserializedMsg.getTimestamp());
                 assertEquals(msg.getCondition().getSelection(), deserializedMsg.getCondition().getSelection());
             }
+
+            // A put of a serialized document is encoded as other puts
+            DocumentPut put = new DocumentPut(msg.getDocumentPut().getDocument());
+            put.setCondition(new TestAndSetCondition(CONDITION_STRING));
+            GrowableByteBuffer document = new GrowableByteBuffer();
+            DocumentSerializerFactory.createHead(document).write(put.getDocument());
+            PutDocumentMessage serializedMsg = PutDocumentMessage.createSerialized(put.getId(), put.getCondition(), document,
+                                                                                   protocol.getDocumentTypeManager());
+            PutDocumentMessage expectedMsg = new PutDocumentMessage(put);
+            assertEquals(expectedMsg.getSequenceId(), serializedMsg.getSequenceId());
+            assertEquals(CONDITION_STRING, serializedMsg.getCondition().getSelection());
+            assertArrayEquals(encode(expectedMsg), encode(serializedMsg));
+            assertArrayEquals("Can be encoded again", encode(expectedMsg), encode(serializedMsg));
+            assertEquals(put.getDocument(), serializedMsg.getDocumentPut().getDocument());
+            assertEquals(0, serializedMsg.getTimestamp());
         }
     }
 
@@ -0,0 +1,262 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.models.evaluation;
+
+import com.yahoo.searchlib.rankingexpression.ExpressionFunction;
+import com.yahoo.searchlib.rankingexpression.evaluation.TensorValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.Value;
+import com.yahoo.searchlib.rankingexpression.rule.CompositeNode;
+import com.yahoo.searchlib.rankingexpression.rule.ExpressionNode;
+import com.yahoo.searchlib.rankingexpression.rule.ReferenceNode;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * An evaluator which can be used to evaluate a single function once for each of a batch of argument bindings.
+ * Arguments may either be bound to a single value used for all items in the batch, or to one value per item.
+ *
+ * Functions referenced by the evaluated function which do not depend on any argument bound per item
+ * are evaluated only once for the whole batch.
+ *
+ * Usage:
+ * <code>List&lt;Tensor&gt; results = model.batchEvaluatorOf("myFunction").bind("foo", fooValues).bind("bar", value).evaluate()</code>
+ */
+public class BatchEvaluator {
+
+    private final ExpressionFunction function;
+    private final LazyArrayContext context;
+    private final Model model;
+
+    /** The values of the arguments bound per item, in the same order in each list */
+    private final Map<String, List<Value>> itemValues = new LinkedHashMap<>();
+
+    private int size = -1;
+    private boolean evaluated = false;
+
+    BatchEvaluator(ExpressionFunction function, LazyArrayContext context, Model model) {
+        this.function = function;
+        this.context = context;
+        this.model = model;
+    }
+
+    /**
+     * Binds the given variable to the given value for all the items of the batch.
+     *
+     * @param name the variable to bind
+     * @param value the value this becomes bound to
+     * @return this for chaining
+     */
+    public BatchEvaluator bind(String name, Tensor value) {
+        requireUnused();
+        validate(name, value);
+        itemValues.remove(name);
+        if (itemValues.isEmpty())
+            size = -1;
+        context.put(name, new TensorValue(value));
+        return this;
+    }
+
+    /**
+     * Binds the given variable to the given value for all the items of the batch.
+     * This is equivalent to <code>bind(name, Tensor.Builder.of(TensorType.empty).cell(value).build())</code>
+     *
+     * @param name the variable to bind
+     * @param value the value this becomes bound to
+     * @return this for chaining
+     */
+    public BatchEvaluator bind(String name, double value) {
+        return bind(name, Tensor.Builder.of(TensorType.empty).cell(value).build());
+    }
+
+    /**
+     * Binds the given variable to one value per item in the batch.
+     *
+     * @param name the variable to bind
+     * @param values the values this becomes bound to, one per item in the batch
+     * @return this for chaining
+     * @throws IllegalArgumentException if the number of values is different from the number of values bound for
+     *         other arguments
+     */
+    public BatchEvaluator bind(String name, List<Tensor> values) {
+        requireUnused();
+        requireSize(name, values.size());
+        List<Value> boundValues = new ArrayList<>(values.size());
+        for (Tensor value : values) {
+            validate(name, value);
+            boundValues.add(new TensorValue(value).freeze());
+        }
+        itemValues.put(name, boundValues);
+        return this;
+    }
+
+    /**
+     * Binds the given scalar variable to one value per item in the batch.
+     *
+     * @param name the variable to bind
+     * @param values the values this becomes bound to, one per item in the batch
+     * @return this for chaining
+     * @throws IllegalArgumentException if the number of values is different from the number of values bound for
+     *         other arguments
+     */
+    public BatchEvaluator bind(String name, double[] values) {
+        List<Tensor> tensors = new ArrayList<>(values.length);
+        for (double value : values)
+            tensors.add(Tensor.Builder.of(TensorType.empty).cell(value).build());
+        return bind(name, tensors);
+    }
+
+    /**
+     * Sets the default value to use for variables which are not bound
+     *
+     * @param value the default value
+     * @return this for chaining
+     */
+    public BatchEvaluator setMissingValue(Tensor value) {
+        requireUnused();
+        context.setMissingValue(value);
+        return this;
+    }
+
+    /**
+     * Sets the default value to use for variables which are not bound
+     *
+     * @param value the default value
+     * @return this for chaining
+     */
+    public BatchEvaluator setMissingValue(double value) {
+        return setMissingValue(Tensor.Builder.of(TensorType.empty).cell(value).build());
+    }
+
+    /** Returns the number of items in the batch, as given by the arguments bound per item, or 0 if none */
+    public int size() { return Math.max(0, size); }
+
+    /**
+     * Evaluates the function once for each item in the batch.
+     * If no arguments are bound per item, the function is evaluated once.
+     *
+     * @return the results of evaluating each item, in the order of the values bound
+     */
+    public List<Tensor> evaluate() {
+        for (Map.Entry<String, TensorType> argument : function.argumentTypes().entrySet()) {
+            if (context.isMissing(argument.getKey()))
+                throw new IllegalStateException("Missing argument '" + argument.getKey() +
+                                                "': Must be bound to a value of type " + argument.getValue());
+            if ( ! itemValues.containsKey(argument.getKey()) &&
+                 ! context.get(argument.getKey()).type().isAssignableTo(argument.getValue()))
+                throw new IllegalStateException("Argument '" + argument.getKey() +
+                                                "' must be bound to a value of type " + argument.getValue());
+        }
+        evaluated = true;
+
+        if (itemValues.isEmpty())
+            return Collections.singletonList(evaluate(context));
+
+        evaluateInvariantFunctions();
+        List<LazyArrayContext> itemContexts = new ArrayList<>(size);
+        List<Integer> indexes = itemValues.keySet().stream().map(context::getIndex).collect(Collectors.toList());
+        List<List<Value>> values = new ArrayList<>(itemValues.values());
+        for (int item = 0; item < size; item++) {
+            LazyArrayContext itemContext = context.copy();
+            for (int argument = 0; argument < indexes.size(); argument++)
+                itemContext.put(indexes.get(argument), values.get(argument).get(item));
+            itemContexts.add(itemContext);
+        }
+
+        List<Tensor> results = new ArrayList<>(size);
+        if (context.compiledFunction() instanceof CompiledExpression.Forest) { // evaluate all items at once
+            for (double result : ((CompiledExpression.Forest)context.compiledFunction()).evaluateDoubles(itemContexts))
+                results.add(Tensor.Builder.of(TensorType.empty).cell(result).build());
+        }
+        else {
+            for (LazyArrayContext itemContext : itemContexts)
+                results.add(evaluate(itemContext));
+        }
+        return results;
+    }
+
+    /** Returns the function evaluated by this */
+    public ExpressionFunction function() { return function; }
+
+    private Tensor evaluate(LazyArrayContext context) {
+        CompiledExpression compiled = context.compiledFunction();
+        if (compiled != null)
+            return compiled.evaluate(context).asTensor();
+        return function.getBody().evaluate(context).asTensor();
+    }
+
+    /**
+     * Evaluates the referenced functions which do not depend on any argument bound per item,
+     * and replaces them by their values in the context all items are evaluated in.
+     */
+    private void evaluateInvariantFunctions() {
+        Map<FunctionReference, Boolean> dependsOnItemValues = new HashMap<>();
+        dependsOnItemValues(function.getBody().getRoot(), dependsOnItemValues);
+        for (Map.Entry<FunctionReference, Boolean> referenced : dependsOnItemValues.entrySet()) {
+            if (referenced.getValue()) continue;
+            if ( ! context.names().contains(referenced.getKey().serialForm())) continue;
+
+            int index = context.getIndex(referenced.getKey().serialForm());
+            Value value = context.get(index);
+            if (value instanceof LazyValue)
+                context.put(index, ((LazyValue)value).computedValue());
+        }
+    }
+
+    /**
+     * Returns whether the given node depends on an argument bound per item,
+     * and adds every referenced function to the given map with that property
+     */
+    private boolean dependsOnItemValues(ExpressionNode node, Map<FunctionReference, Boolean> functions) {
+        if (node instanceof ReferenceNode) {
+            Optional<FunctionReference> reference = FunctionReference.fromSerial(node.toString());
+            if (reference.isPresent()) {
+                Boolean dependency = functions.get(reference.get());
+                if (dependency == null) {
+                    ExpressionFunction referenced = model.referencedFunctions().get(reference.get());
+                    dependency = referenced == null || dependsOnItemValues(referenced.getBody().getRoot(), functions);
+                    functions.put(reference.get(), dependency);
+                }
+                return dependency;
+            }
+            if (itemValues.containsKey(node.toString())) return true;
+        }
+        boolean dependency = false;
+        if (node instanceof CompositeNode) {
+            for (ExpressionNode child : ((CompositeNode)node).children())
+                dependency |= dependsOnItemValues(child, functions);
+        }
+        return dependency;
+    }
+
+    private void validate(String name, Tensor value) {
+        TensorType requiredType = function.argumentTypes().get(name);
+        if (requiredType == null)
+            throw new IllegalArgumentException("'" + name + "' is not a valid argument in " + function +
+                                               ". Expected arguments: " + function.argumentTypes().entrySet().stream()
+                                                                                  .map(e -> e.getKey() + ": " + e.getValue())
+                                                                                  .collect(Collectors.joining(", ")));
+        if ( ! value.type().isAssignableTo(requiredType))
+            throw new IllegalArgumentException("'" + name + "' must be of type " + requiredType + ", not " + value.type());
+    }
+
+    private void requireSize(String name, int size) {
+        if (this.size >= 0 && this.size != size && ! (itemValues.size() == 1 && itemValues.containsKey(name)))
+            throw new IllegalArgumentException("'" + name + "' is bound to " + size + " values, but other arguments " +
+                                               "are bound to " + this.size + " values");
+        this.size = size;
+    }
+
+    private void requireUnused() {
+        if (evaluated)
+            throw new IllegalStateException("Cannot bind a new value in a used evaluator");
+    }
+
+}
@@ -0,0 +1,352 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.models.evaluation;
+
+import com.yahoo.searchlib.rankingexpression.evaluation.DoubleValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.Value;
+import com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization.GBDTFlatForest;
+import com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization.GBDTNode;
+import com.yahoo.searchlib.rankingexpression.rule.ArithmeticOperator;
+import com.yahoo.searchlib.rankingexpression.rule.ExpressionNode;
+import com.yahoo.searchlib.rankingexpression.rule.Function;
+import com.yahoo.searchlib.rankingexpression.rule.TruthOperator;
+
+import java.util.List;
+
+/**
+ * A ranking expression compiled to a tree of specialized nodes which evaluates against
+ * a {@link LazyArrayContext} by index. Scalar subexpressions are evaluated on primitive doubles
+ * without creating values, and constants are inlined.
+ * Expression nodes which are not supported are evaluated by the interpreter.
+ *
+ * This is immutable and multithread safe. All state is kept in the context.
+ */
+abstract class CompiledExpression {
+
+    /** Evaluates this in the given context */
+    abstract Value evaluate(LazyArrayContext context);
+
+    /** A compiled expression which always produces a scalar */
+    abstract static class Scalar extends CompiledExpression {
+
+        /** Evaluates this in the given context */
+        abstract double evaluateDouble(LazyArrayContext context);
+
+        @Override
+        Value evaluate(LazyArrayContext context) {
+            return new DoubleValue(evaluateDouble(context));
+        }
+
+    }
+
+    /** An expression node evaluated by the interpreter */
+    static final class Interpreted extends CompiledExpression {
+
+        private final ExpressionNode node;
+
+        Interpreted(ExpressionNode node) {
+            this.node = node;
+        }
+
+        @Override
+        Value evaluate(LazyArrayContext context) { return node.evaluate(context); }
+
+    }
+
+    static final class ScalarConstant extends Scalar {
+
+        private final double value;
+
+        ScalarConstant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        double evaluateDouble(LazyArrayContext context) { return value; }
+
+    }
+
+    static final class ValueConstant extends CompiledExpression {
+
+        private final Value value;
+
+        ValueConstant(Value value) {
+            this.value = value.freeze();
+        }
+
+        @Override
+        Value evaluate(LazyArrayContext context) { return value; }
+
+    }
+
+    /** A lookup of a value which is known to be a scalar */
+    static final class ScalarReference extends Scalar {
+
+        private final int index;
+
+        ScalarReference(int index) {
+            this.index = index;
+        }
+
+        @Override
+        double evaluateDouble(LazyArrayContext context) { return context.getDouble(index); }
+
+    }
+
+    static final class Reference extends CompiledExpression {
+
+        private final int index;
+
+        Reference(int index) {
+            this.index = index;
+        }
+
+        @Override
+        Value evaluate(LazyArrayContext context) { return context.get(index); }
+
+    }
+
+    static final class ScalarArithmetic extends Scalar {
+
+        private final Scalar left, right;
+        private final ArithmeticOperator operator;
+
+        ScalarArithmetic(Scalar left, ArithmeticOperator operator, Scalar right) {
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+        }
+
+        @Override
+        double evaluateDouble(LazyArrayContext context) {
+            double x = left.evaluateDouble(context);
+            double y = right.evaluateDouble(context);
+            switch (operator) {
+                case OR: return x != 0.0 || y != 0.0 ? 1 : 0;
+                case AND: return x != 0.0 && y != 0.0 ? 1 : 0;
+                case PLUS: return x + y;
+                case MINUS: return x - y;
+                case MULTIPLY: return x * y;
+                case DIVIDE: return x / y;
+                case MODULO: return x % y;
+                case POWER: return Function.pow.evaluate(x, y);
+                default: throw new IllegalStateException("Unknown operator " + operator);
+            }
+        }
+
+    }
+
+    static final class Arithmetic extends CompiledExpression {
+
+        private final CompiledExpression left, right;
+        private final ArithmeticOperator operator;
+
+        Arithmetic(CompiledExpression left, ArithmeticOperator operator, CompiledExpression right) {
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+        }
+
+        @Override
+        Value evaluate(LazyArrayContext context) {
+            return operator.evaluate(left.evaluate(context), right.evaluate(context));
+        }
+
+    }
+
+    static final class ScalarComparison extends Scalar {
+
+        private final Scalar left, right;
+        private final TruthOperator operator;
+
+        ScalarComparison(Scalar left, TruthOperator operator, Scalar right) {
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+        }
+
+        @Override
+        double evaluateDouble(LazyArrayContext context) {
+            return operator.evaluate(left.evaluateDouble(context), right.evaluateDouble(context)) ? 1 : 0;
+        }
+
+    }
+
+    static final class Comparison extends CompiledExpression {
+
+        private final CompiledExpression left, right;
+        private final TruthOperator operator;
+
+        Comparison(CompiledExpression left, TruthOperator operator, CompiledExpression right) {
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+        }
+
+        @Override
+        Value evaluate(LazyArrayContext context) {
+            return left.evaluate(context).compare(operator, right.evaluate(context));
+        }
+
+    }
+
+    /** A function of one or two arguments. A missing argument is 0, as in the interpreter */
+    static final class ScalarFunction extends Scalar {
+
+        private final Function function;
+        private final Scalar argument1, argument2;
+
+        ScalarFunction(Function function, Scalar argument1, Scalar argument2) {
+            this.function = function;
+            this.argument1 = argument1;
+            this.argument2 = argument2;
+        }
+
+        @Override
+        double evaluateDouble(LazyArrayContext context) {
+            return function.evaluate(argument1.evaluateDouble(context), argument2.evaluateDouble(context));
+        }
+
+    }
+
+    static final class FunctionCall extends CompiledExpression {
+
+        private final Function function;
+        private final CompiledExpression argument1, argument2;
+
+        FunctionCall(Function function, CompiledExpression argument1, CompiledExpression argument2) {
+            this.function = function;
+            this.argument1 = argument1;
+            this.argument2 = argument2;
+        }
+
+        @Override
+        Value evaluate(LazyArrayContext context) {
+            return argument1.evaluate(context).function(function, argument2.evaluate(context));
+        }
+
+    }
+
+    static final class ScalarIf extends Scalar {
+
+        private final Scalar condition, trueExpression, falseExpression;
+
+        ScalarIf(Scalar condition, Scalar trueExpression, Scalar falseExpression) {
+            this.condition = condition;
+            this.trueExpression = trueExpression;
+            this.falseExpression = falseExpression;
+        }
+
+        @Override
+        double evaluateDouble(LazyArrayContext context) {
+            if (condition.evaluateDouble(context) != 0.0)
+                return trueExpression.evaluateDouble(context);
+            else
+                return falseExpression.evaluateDouble(context);
+        }
+
+    }
+
+    static final class If extends CompiledExpression {
+
+        private final CompiledExpression condition, trueExpression, falseExpression;
+
+        If(CompiledExpression condition, CompiledExpression trueExpression, CompiledExpression falseExpression) {
+            this.condition = condition;
+            this.trueExpression = trueExpression;
+            this.falseExpression = falseExpression;
+        }
+
+        @Override
+        Value evaluate(LazyArrayContext context) {
+            if (condition.evaluate(context).asBoolean())
+                return trueExpression.evaluate(context);
+            else
+                return falseExpression.evaluate(context);
+        }
+
+    }
+
+    static final class ScalarNegative extends Scalar {
+
+        private final Scalar value;
+
+        ScalarNegative(Scalar value) {
+            this.value = value;
+        }
+
+        @Override
+        double evaluateDouble(LazyArrayContext context) { return - value.evaluateDouble(context); }
+
+    }
+
+    static final class Negative extends CompiledExpression {
+
+        private final CompiledExpression value;
+
+        Negative(CompiledExpression value) {
+            this.value = value;
+        }
+
+        @Override
+        Value evaluate(LazyArrayContext context) { return value.evaluate(context).negate(); }
+
+    }
+
+    static final class ScalarNot extends Scalar {
+
+        private final Scalar value;
+
+        ScalarNot(Scalar value) {
+            this.value = value;
+        }
+
+        @Override
+        double evaluateDouble(LazyArrayContext context) { return value.evaluateDouble(context) != 0.0 ? 0 : 1; }
+
+    }
+
+    static final class Not extends CompiledExpression {
+
+        private final CompiledExpression value;
+
+        Not(CompiledExpression value) {
+            this.value = value;
+        }
+
+        @Override
+        Value evaluate(LazyArrayContext context) { return value.evaluate(context).not(); }
+
+    }
+
+    /** A single optimized GBDT tree */
+    static final class Tree extends Scalar {
+
+        private final double[] values;
+
+        Tree(GBDTNode node) {
+            this.values = node.values();
+        }
+
+        @Override
+        double evaluateDouble(LazyArrayContext context) { return GBDTNode.evaluate(values, 0, context); }
+
+    }
+
+    /** An optimized sum of GBDT trees */
+    static final class Forest extends Scalar {
+
+        private final GBDTFlatForest forest;
+
+        Forest(GBDTFlatForest forest) {
+            this.forest = forest;
+        }
+
+        @Override
+        double evaluateDouble(LazyArrayContext context) { return forest.evaluate(context); }
+
+        /** Evaluates this in each of the given contexts at once */
+        double[] evaluateDoubles(List<LazyArrayContext> contexts) { return forest.evaluate(contexts); }
+
+    }
+
+}
@@ -0,0 +1,212 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.models.evaluation;
+
+import com.yahoo.searchlib.rankingexpression.ExpressionFunction;
+import com.yahoo.searchlib.rankingexpression.evaluation.Value;
+import com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization.GBDTForestNode;
+import com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization.GBDTNode;
+import com.yahoo.searchlib.rankingexpression.rule.ArithmeticNode;
+import com.yahoo.searchlib.rankingexpression.rule.ArithmeticOperator;
+import com.yahoo.searchlib.rankingexpression.rule.ComparisonNode;
+import com.yahoo.searchlib.rankingexpression.rule.ConstantNode;
+import com.yahoo.searchlib.rankingexpression.rule.EmbracedNode;
+import com.yahoo.searchlib.rankingexpression.rule.ExpressionNode;
+import com.yahoo.searchlib.rankingexpression.rule.FunctionNode;
+import com.yahoo.searchlib.rankingexpression.rule.IfNode;
+import com.yahoo.searchlib.rankingexpression.rule.NegativeNode;
+import com.yahoo.searchlib.rankingexpression.rule.NotNode;
+import com.yahoo.searchlib.rankingexpression.rule.ReferenceNode;
+import com.yahoo.tensor.TensorType;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Compiles the ranking expressions of functions to {@link CompiledExpression}s which evaluates
+ * against a given context prototype (or copies of it).
+ *
+ * A node is compiled to a scalar node when its type is known to be a scalar, which is the case for constants,
+ * arguments and referenced functions declared as scalars and any arithmetic, comparisons, functions
+ * and conditions over scalars. Other nodes are compiled to nodes evaluating values,
+ * and nodes which are not supported (such as tensor functions) are left to the interpreter.
+ */
+class ExpressionCompiler {
+
+    private final LazyArrayContext context;
+    private final Model model;
+
+    /** The free function the context is for */
+    private final ExpressionFunction function;
+
+    /**
+     * Creates a compiler of expressions evaluated in the given context
+     *
+     * @param function the free function the given context is for, with resolved argument types
+     * @param context the context prototype the compiled expressions will be evaluated in
+     * @param model the model of the function, used to look up referenced functions
+     */
+    ExpressionCompiler(ExpressionFunction function, LazyArrayContext context, Model model) {
+        this.function = function;
+        this.context = context;
+        this.model = model;
+    }
+
+    /** Compiles the given expression */
+    CompiledExpression compile(ExpressionNode node) {
+        if (node instanceof ConstantNode)
+            return compileConstant(((ConstantNode)node).getValue());
+        if (node instanceof ReferenceNode)
+            return compileReference((ReferenceNode)node);
+        if (node instanceof EmbracedNode)
+            return compile(((EmbracedNode)node).getValue());
+        if (node instanceof ArithmeticNode)
+            return compileArithmetic((ArithmeticNode)node);
+        if (node instanceof ComparisonNode)
+            return compileComparison((ComparisonNode)node);
+        if (node instanceof FunctionNode)
+            return compileFunction((FunctionNode)node);
+        if (node instanceof IfNode)
+            return compileIf((IfNode)node);
+        if (node instanceof NegativeNode)
+            return compileNegative((NegativeNode)node);
+        if (node instanceof NotNode)
+            return compileNot((NotNode)node);
+        if (node instanceof GBDTNode)
+            return new CompiledExpression.Tree((GBDTNode)node);
+        if (node instanceof GBDTForestNode)
+            return new CompiledExpression.Forest(((GBDTForestNode)node).flatForest());
+        return new CompiledExpression.Interpreted(node);
+    }
+
+    private CompiledExpression compileConstant(Value value) {
+        if (isScalar(value.type()) && value.hasDouble())
+            return new CompiledExpression.ScalarConstant(value.asDouble());
+        return new CompiledExpression.ValueConstant(value);
+    }
+
+    /** Compiles references to arguments, constants and functions, as bound by the context */
+    private CompiledExpression compileReference(ReferenceNode node) {
+        Optional<FunctionReference> functionReference = FunctionReference.fromSerial(node.toString());
+        String name = functionReference.map(FunctionReference::serialForm).orElse(node.toString());
+        if ( ! context.names().contains(name)) // not bound in the context: Leave it to the interpreter to fail
+            return new CompiledExpression.Interpreted(node);
+        int index = context.getIndex(name);
+
+        if (functionReference.isPresent()) {
+            ExpressionFunction referenced = model.referencedFunctions().get(functionReference.get());
+            if (referenced != null && referenced.returnType().isPresent() && isScalar(referenced.returnType().get()))
+                return new CompiledExpression.ScalarReference(index);
+            return new CompiledExpression.Reference(index);
+        }
+        else if (context.arguments().contains(name)) {
+            TensorType type = function.argumentTypes().get(name);
+            if (type != null && isScalar(type))
+                return new CompiledExpression.ScalarReference(index);
+            return new CompiledExpression.Reference(index);
+        }
+        else { // a constant
+            Value constant = context.get(index);
+            if (constant == context.defaultValue()) // not set: Look up the missing value when evaluating
+                return new CompiledExpression.Reference(index);
+            return compileConstant(constant);
+        }
+    }
+
+    /** Compiles the arithmetic node to a binary tree, with the same operator precedence as the interpreter */
+    private CompiledExpression compileArithmetic(ArithmeticNode node) {
+        Iterator<ExpressionNode> child = node.children().iterator();
+
+        Deque<Operand> stack = new ArrayDeque<>();
+        stack.push(new Operand(ArithmeticOperator.OR, compile(child.next())));
+        for (Iterator<ArithmeticOperator> it = node.operators().iterator(); it.hasNext() && child.hasNext();) {
+            ArithmeticOperator op = it.next();
+            while (stack.peek().operator.hasPrecedenceOver(op))
+                popStack(stack);
+            stack.push(new Operand(op, compile(child.next())));
+        }
+        while (stack.size() > 1)
+            popStack(stack);
+        return stack.getFirst().expression;
+    }
+
+    private void popStack(Deque<Operand> stack) {
+        Operand right = stack.pop();
+        Operand left = stack.peek();
+        if (left.expression instanceof CompiledExpression.Scalar && right.expression instanceof CompiledExpression.Scalar)
+            left.expression = new CompiledExpression.ScalarArithmetic((CompiledExpression.Scalar)left.expression,
+                                                                      right.operator,
+                                                                      (CompiledExpression.Scalar)right.expression);
+        else
+            left.expression = new CompiledExpression.Arithmetic(left.expression, right.operator, right.expression);
+    }
+
+    private CompiledExpression compileComparison(ComparisonNode node) {
+        CompiledExpression left = compile(node.getLeftCondition());
+        CompiledExpression right = compile(node.getRightCondition());
+        if (left instanceof CompiledExpression.Scalar && right instanceof CompiledExpression.Scalar)
+            return new CompiledExpression.ScalarComparison((CompiledExpression.Scalar)left, node.getOperator(),
+                                                           (CompiledExpression.Scalar)right);
+        return new CompiledExpression.Comparison(left, node.getOperator(), right);
+    }
+
+    private CompiledExpression compileFunction(FunctionNode node) {
+        List<ExpressionNode> arguments = node.children();
+        if (arguments.size() > 2)
+            return new CompiledExpression.Interpreted(node);
+        CompiledExpression argument1 = arguments.size() > 0 ? compile(arguments.get(0)) : new CompiledExpression.ScalarConstant(0);
+        CompiledExpression argument2 = arguments.size() > 1 ? compile(arguments.get(1)) : new CompiledExpression.ScalarConstant(0);
+        if (argument1 instanceof CompiledExpression.Scalar && argument2 instanceof CompiledExpression.Scalar)
+            return new CompiledExpression.ScalarFunction(node.getFunction(),
+                                                         (CompiledExpression.Scalar)argument1,
+                                                         (CompiledExpression.Scalar)argument2);
+        return new CompiledExpression.FunctionCall(node.getFunction(), argument1, argument2);
+    }
+
+    private CompiledExpression compileIf(IfNode node) {
+        CompiledExpression condition = compile(node.getCondition());
+        CompiledExpression trueExpression = compile(node.getTrueExpression());
+        CompiledExpression falseExpression = compile(node.getFalseExpression());
+        if (condition instanceof CompiledExpression.Scalar &&
+            trueExpression instanceof CompiledExpression.Scalar &&
+            falseExpression instanceof CompiledExpression.Scalar)
+            return new CompiledExpression.ScalarIf((CompiledExpression.Scalar)condition,
+                                                   (CompiledExpression.Scalar)trueExpression,
+                                                   (CompiledExpression.Scalar)falseExpression);
+        return new CompiledExpression.If(condition, trueExpression, falseExpression);
+    }
+
+    private CompiledExpression compileNegative(NegativeNode node) {
+        CompiledExpression value = compile(node.getValue());
+        if (value instanceof CompiledExpression.Scalar)
+            return new CompiledExpression.ScalarNegative((CompiledExpression.Scalar)value);
+        return new CompiledExpression.Negative(value);
+    }
+
+    private CompiledExpression compileNot(NotNode node) {
+        CompiledExpression value = compile(node.getValue());
+        if (value instanceof CompiledExpression.Scalar)
+            return new CompiledExpression.ScalarNot((CompiledExpression.Scalar)value);
+        return new CompiledExpression.Not(value);
+    }
+
+    private static boolean isScalar(TensorType type) {
+        return type.rank() == 0;
+    }
+
+    /** An operand of the arithmetic node being compiled, and the operator preceding it */
+    private static class Operand {
+
+        final ArithmeticOperator operator;
+        CompiledExpression expression;
+
+        Operand(ArithmeticOperator operator, CompiledExpression expression) {
+            this.operator = operator;
+            this.expression = expression;
+        }
+
+    }
+
+}
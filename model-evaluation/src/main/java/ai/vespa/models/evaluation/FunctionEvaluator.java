@@ -94,6 +94,9 @@ public class FunctionEvaluator {
 
         }
         evaluated = true;
+        CompiledExpression compiled = context.compiledFunction();
+        if (compiled != null)
+            return compiled.evaluate(context).asTensor();
         return function.getBody().evaluate(context).asTensor();
     }
 
@@ -32,9 +32,14 @@ public final class LazyArrayContext extends Context implements ContextIndex {
     private final ExpressionFunction function;
     private final IndexedBindings indexedBindings;
 
-    private LazyArrayContext(ExpressionFunction function, IndexedBindings indexedBindings) {
+    /** The compiled expressions of this function and the functions it references, shared by all copies of this */
+    private CompiledFunctions compiledFunctions = CompiledFunctions.empty;
+
+    private LazyArrayContext(ExpressionFunction function, IndexedBindings indexedBindings,
+                             CompiledFunctions compiledFunctions) {
         this.function = function;
         this.indexedBindings = indexedBindings.copy(this);
+        this.compiledFunctions = compiledFunctions;
     }
 
     /** Create a fast lookup, lazy context for a function */
@@ -138,7 +143,53 @@ public final class LazyArrayContext extends Context implements ContextIndex {
      * in a different thread or for re-binding free variables.
      */
     LazyArrayContext copy() {
-        return new LazyArrayContext(function, indexedBindings);
+        return new LazyArrayContext(function, indexedBindings, compiledFunctions);
+    }
+
+    /**
+     * Compiles the body of the given function, which must be the (possibly updated) function this was created for,
+     * and the functions it references, for evaluation in this and its copies.
+     */
+    void compile(ExpressionFunction function, Model model) {
+        ExpressionCompiler compiler = new ExpressionCompiler(function, this, model);
+        ImmutableMap.Builder<FunctionReference, CompiledExpression> referenced = new ImmutableMap.Builder<>();
+        for (Map.Entry<FunctionReference, ExpressionFunction> entry : model.referencedFunctions().entrySet()) {
+            if (names().contains(entry.getKey().serialForm()))
+                referenced.put(entry.getKey(), compiler.compile(entry.getValue().getBody().getRoot()));
+        }
+        compiledFunctions = new CompiledFunctions(compiler.compile(function.getBody().getRoot()), referenced.build());
+    }
+
+    /** Returns the compiled body of the function of this, or null if it must be interpreted */
+    CompiledExpression compiledFunction() {
+        if ( ! isCompilable()) return null;
+        return compiledFunctions.function;
+    }
+
+    /** Returns the compiled body of the given function referenced from this, or null if it must be interpreted */
+    CompiledExpression compiledFunction(FunctionReference reference) {
+        if ( ! isCompilable()) return null;
+        return compiledFunctions.referencedFunctions.get(reference);
+    }
+
+    /** Compiled expressions assume that unbound scalar arguments have a scalar value */
+    private boolean isCompilable() {
+        return defaultValue().hasDouble();
+    }
+
+    private static class CompiledFunctions {
+
+        static final CompiledFunctions empty = new CompiledFunctions(null, ImmutableMap.of());
+
+        final CompiledExpression function;
+        final ImmutableMap<FunctionReference, CompiledExpression> referencedFunctions;
+
+        CompiledFunctions(CompiledExpression function,
+                          ImmutableMap<FunctionReference, CompiledExpression> referencedFunctions) {
+            this.function = function;
+            this.referencedFunctions = referencedFunctions;
+        }
+
     }
 
     private static class IndexedBindings {
@@ -262,7 +313,7 @@ public final class LazyArrayContext extends Context implements ContextIndex {
         Set<String> arguments() { return arguments; }
         Integer indexOf(String name) { return nameToIndex.get(name); }
 
-        IndexedBindings copy(Context context) {
+        IndexedBindings copy(LazyArrayContext context) {
             Value[] valueCopy = new Value[values.length];
             for (int i = 0; i < values.length; i++)
                 valueCopy[i] = values[i] instanceof LazyValue ? ((LazyValue) values[i]).copyFor(context) : values[i];
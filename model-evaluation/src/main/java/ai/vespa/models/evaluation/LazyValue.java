@@ -2,7 +2,6 @@
 package ai.vespa.models.evaluation;
 
 import com.yahoo.searchlib.rankingexpression.ExpressionFunction;
-import com.yahoo.searchlib.rankingexpression.evaluation.Context;
 import com.yahoo.searchlib.rankingexpression.evaluation.Value;
 import com.yahoo.searchlib.rankingexpression.rule.Function;
 import com.yahoo.searchlib.rankingexpression.rule.TruthOperator;
@@ -21,22 +20,28 @@ class LazyValue extends Value {
     private final FunctionReference function;
 
     /** The context used to compute the function of this */
-    private final Context context;
+    private final LazyArrayContext context;
 
     /** The model this is part of */
     private final Model model;
 
     private Value computedValue = null;
 
-    public LazyValue(FunctionReference function, Context context, Model model) {
+    public LazyValue(FunctionReference function, LazyArrayContext context, Model model) {
         this.function = function;
         this.context = context;
         this.model = model;
     }
 
-    private Value computedValue() {
-        if (computedValue == null)
-            computedValue = model.requireReferencedFunction(function).getBody().evaluate(context);
+    /** Returns the value of this, computing it if this is the first request */
+    Value computedValue() {
+        if (computedValue == null) {
+            CompiledExpression compiled = context.compiledFunction(function);
+            if (compiled != null)
+                computedValue = compiled.evaluate(context);
+            else
+                computedValue = model.requireReferencedFunction(function).getBody().evaluate(context);
+        }
         return computedValue;
     }
 
@@ -147,7 +152,7 @@ class LazyValue extends Value {
         return computedValue().hashCode();
     }
 
-    LazyValue copyFor(Context context) {
+    LazyValue copyFor(LazyArrayContext context) {
         return new LazyValue(this.function, context, model);
     }
 
@@ -100,6 +100,10 @@ public class Model {
             functionsBuilder.put(function.getKey(), optimizedFunction);
         }
         this.referencedFunctions = functionsBuilder.build();
+
+        // Compile functions
+        for (ExpressionFunction function : this.functions)
+            contextPrototypes.get(function.getName()).compile(function, this);
     }
 
     /** Returns an optimized version of the given function */
@@ -173,22 +177,43 @@ public class Model {
      * @throws IllegalArgumentException if the function is not present, or not uniquely identified by the names given
      */
     public FunctionEvaluator evaluatorOf(String ... names) {  // TODO: Parameter overloading?
+        ExpressionFunction function = resolveFunction(names);
+        return new FunctionEvaluator(function, requireContextProprotype(function.getName()).copy());
+    }
+
+    /**
+     * Returns an evaluator which can be used to evaluate the given function once for each of a batch
+     * of argument bindings, in a single thread.
+     *
+     * Usage:
+     * <code>List&lt;Tensor&gt; results = model.batchEvaluatorOf("myFunction").bind("foo", values).bind("bar", value).evaluate()</code>
+     *
+     * @param names the names identifying the function, as in {@link #evaluatorOf}
+     * @throws IllegalArgumentException if the function is not present, or not uniquely identified by the names given
+     */
+    public BatchEvaluator batchEvaluatorOf(String ... names) {
+        ExpressionFunction function = resolveFunction(names);
+        return new BatchEvaluator(function, requireContextProprotype(function.getName()).copy(), this);
+    }
+
+    /** Returns the function uniquely identified by the given names, or throws an IllegalArgumentException */
+    private ExpressionFunction resolveFunction(String ... names) {
         if (names.length == 0) {
             if (functions.size() > 1)
                 throwUndeterminedFunction("More than one function is available in " + this + ", but no name is given");
-            return evaluatorOf(functions.get(0));
+            return functions.get(0);
         }
         else if (names.length == 1) {
             String name = names[0];
             ExpressionFunction function = function(name);
-            if (function != null) return evaluatorOf(function);
+            if (function != null) return function;
 
             List<ExpressionFunction> functionsStartingByName =
                     functions.stream().filter(f -> f.getName().startsWith(name + ".")).collect(Collectors.toList());
             if (functionsStartingByName.size() == 0)
                 throwUndeterminedFunction("No function '" + name + "' in " + this);
             else if (functionsStartingByName.size() == 1)
-                return evaluatorOf(functionsStartingByName.get(0));
+                return functionsStartingByName.get(0);
             else
                 throwUndeterminedFunction("Multiple functions start by '" + name + "' in " + this);
 
@@ -197,17 +222,12 @@ public class Model {
             String name = names[0] + "." + names[1];
             ExpressionFunction function = function(name);
             if (function == null) throwUndeterminedFunction("No function '" + name + "' in " + this);
-            return evaluatorOf(function);
+            return function;
         }
         throw new IllegalArgumentException("No more than 2 names can be given when choosing a function, got " +
                                            Arrays.toString(names));
     }
 
-    /** Returns a single-use evaluator of a function */
-    private FunctionEvaluator evaluatorOf(ExpressionFunction function) {
-        return new FunctionEvaluator(function, requireContextProprotype(function.getName()).copy());
-    }
-
     private void throwUndeterminedFunction(String message) {
         throw new IllegalArgumentException(message + ". Available functions: " +
                                            functions.stream().map(f -> f.getName()).collect(Collectors.joining(", ")));
@@ -1,6 +1,7 @@
 // Copyright 2018 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package ai.vespa.models.handler;
 
+import ai.vespa.models.evaluation.BatchEvaluator;
 import ai.vespa.models.evaluation.FunctionEvaluator;
 import ai.vespa.models.evaluation.Model;
 import ai.vespa.models.evaluation.ModelsEvaluator;
@@ -8,18 +9,29 @@ import com.yahoo.container.jdisc.HttpRequest;
 import com.yahoo.container.jdisc.HttpResponse;
 import com.yahoo.container.jdisc.ThreadedHttpRequestHandler;
 import com.yahoo.searchlib.rankingexpression.ExpressionFunction;
+import com.yahoo.slime.ArrayTraverser;
 import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Inspector;
+import com.yahoo.slime.ObjectTraverser;
 import com.yahoo.slime.Slime;
+import com.yahoo.slime.Type;
 import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorType;
 import com.yahoo.tensor.serialization.JsonFormat;
+import com.yahoo.vespa.config.SlimeUtils;
 import com.yahoo.yolean.Exceptions;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Executor;
@@ -33,11 +45,23 @@ public class ModelsEvaluationHandler extends ThreadedHttpRequestHandler {
     public static final String VERSION_V1 = "v1";
     public static final String EVALUATE = "eval";
 
+    /** The field of a POSTed JSON object holding an array of argument bindings to evaluate as a batch */
+    private static final String batchKey = "batch";
+
+    /** The default max size in bytes of a POSTed batch */
+    static final int defaultMaxBatchBytes = 16 * 1024 * 1024;
+
     private final ModelsEvaluator modelsEvaluator;
+    private final int maxBatchBytes;
 
     public ModelsEvaluationHandler(ModelsEvaluator modelsEvaluator, Executor executor) {
+        this(modelsEvaluator, executor, defaultMaxBatchBytes);
+    }
+
+    ModelsEvaluationHandler(ModelsEvaluator modelsEvaluator, Executor executor, int maxBatchBytes) {
         super(executor);
         this.modelsEvaluator = modelsEvaluator;
+        this.maxBatchBytes = maxBatchBytes;
     }
 
     @Override
@@ -60,10 +84,15 @@ public class ModelsEvaluationHandler extends ThreadedHttpRequestHandler {
             Optional<Integer> evalSegment = path.lastIndexOf(EVALUATE);
             String[] function = path.range(3, evalSegment);
             if (evalSegment.isPresent()) {
+                Optional<Inspector> batch = readBatch(request);
+                if (batch.isPresent())
+                    return evaluateBatch(request, model, function, batch.get());
                 return evaluateModel(request, model, function);
             }
             return listModelInformation(request, model, function);
 
+        } catch (BatchTooLargeException e) {
+            return new ErrorResponse(400, Exceptions.toMessageString(e));
         } catch (IllegalArgumentException e) {
             return new ErrorResponse(404, Exceptions.toMessageString(e));
         } catch (IllegalStateException e) { // On missing bindings
@@ -84,6 +113,103 @@ public class ModelsEvaluationHandler extends ThreadedHttpRequestHandler {
         return new Response(200, JsonFormat.encode(result));
     }
 
+    /**
+     * Evaluates a batch of argument bindings POSTed as <code>{"batch":[{"argument":value, ...}, ...]}</code>,
+     * where each value is either a number or a tensor string. Request properties are bound for all items.
+     * Responds with <code>{"results":[tensor, ...]}</code>, in the order of the items of the batch.
+     */
+    private HttpResponse evaluateBatch(HttpRequest request, Model model, String[] function, Inspector batch) {
+        BatchEvaluator evaluator = model.batchEvaluatorOf(function);
+        Map<String, TensorType> argumentTypes = evaluator.function().argumentTypes();
+
+        property(request, missingValueKey).ifPresent(missingValue -> evaluator.setMissingValue(Tensor.from(missingValue)));
+        for (Map.Entry<String, TensorType> argument : argumentTypes.entrySet()) {
+            property(request, argument.getKey()).ifPresent(value -> evaluator.bind(argument.getKey(),
+                                                                                   Tensor.from(argument.getValue(), value)));
+        }
+
+        if (batch.entries() == 0)
+            return new Response(200, "{\"results\":[]}");
+
+        Map<String, List<Tensor>> columns = new LinkedHashMap<>();
+        batch.traverse((ArrayTraverser) (index, item) -> {
+            if (item.type() != Type.OBJECT)
+                throw new IllegalArgumentException("Item " + index + " in the batch is not a JSON object");
+            if (item.fields() == 0)
+                throw new IllegalArgumentException("Item " + index + " in the batch binds no arguments");
+            if (index > 0 && item.fields() != columns.size())
+                throw new IllegalArgumentException("Item " + index + " in the batch binds " + item.fields() +
+                                                   " arguments, but the previous items bind " + columns.size());
+            item.traverse((ObjectTraverser) (name, value) -> {
+                List<Tensor> column = columns.computeIfAbsent(name, __ -> new ArrayList<>());
+                if (column.size() != index)
+                    throw new IllegalArgumentException("Item " + index + " in the batch binds '" + name +
+                                                       "' which is not bound in the previous items");
+                column.add(toTensor(name, value, argumentTypes));
+            });
+        });
+        for (Map.Entry<String, List<Tensor>> column : columns.entrySet())
+            evaluator.bind(column.getKey(), column.getValue());
+
+        List<Tensor> results = evaluator.evaluate();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        response.writeBytes("{\"results\":[".getBytes(Charset.forName(HttpResponse.DEFAULT_CHARACTER_ENCODING)));
+        for (int i = 0; i < results.size(); i++) {
+            if (i > 0)
+                response.write(',');
+            response.writeBytes(JsonFormat.encode(results.get(i)));
+        }
+        response.writeBytes("]}".getBytes(Charset.forName(HttpResponse.DEFAULT_CHARACTER_ENCODING)));
+        return new Response(200, response.toByteArray());
+    }
+
+    /** Returns the batch POSTed in this request, or empty if this is not a POST request with data */
+    private Optional<Inspector> readBatch(HttpRequest request) {
+        if (request.getMethod() != com.yahoo.jdisc.http.HttpRequest.Method.POST || request.getData() == null)
+            return Optional.empty();
+        try {
+            byte[] data = readAtMost(request.getData(), maxBatchBytes);
+            if (data.length == 0)
+                return Optional.empty();
+            Inspector root = SlimeUtils.jsonToSlime(data).get();
+            if (root.field("error_message").valid())
+                throw new IllegalArgumentException("Could not parse the POSTed batch: " +
+                                                   root.field("error_message").asString());
+            Inspector batch = root.field(batchKey);
+            if (batch.type() != Type.ARRAY)
+                throw new IllegalArgumentException("The POSTed data must be a JSON object with an array field '" +
+                                                   batchKey + "'");
+            return Optional.of(batch);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Problem reading POSTed data", e);
+        }
+    }
+
+    /** Returns all the bytes of the given stream, or throws BatchTooLargeException if there are more than max */
+    private static byte[] readAtMost(InputStream stream, int max) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[Math.min(max + 1, 1 << 16)];
+        int read;
+        while ((read = stream.read(chunk, 0, chunk.length)) != -1) {
+            if (buffer.size() + read > max)
+                throw new BatchTooLargeException("The POSTed batch is larger than the max size of " + max + " bytes");
+            buffer.write(chunk, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+
+    private Tensor toTensor(String name, Inspector value, Map<String, TensorType> argumentTypes) {
+        TensorType type = argumentTypes.get(name);
+        if (type == null)
+            throw new IllegalArgumentException("'" + name + "' is not an argument of this function");
+        if (value.type() == Type.DOUBLE || value.type() == Type.LONG)
+            return Tensor.Builder.of(TensorType.empty).cell(value.asDouble()).build();
+        if (value.type() == Type.STRING)
+            return Tensor.from(type, value.asString());
+        throw new IllegalArgumentException("The value of '" + name + "' must be a number or a tensor string");
+    }
+
     private HttpResponse listAllModels(HttpRequest request) {
         Slime slime = new Slime();
         Cursor root = slime.setObject();
@@ -142,6 +268,10 @@ public class ModelsEvaluationHandler extends ThreadedHttpRequestHandler {
        return sb.toString();
     }
 
+    private static class BatchTooLargeException extends RuntimeException {
+        BatchTooLargeException(String message) { super(message); }
+    }
+
     private static class Path {
 
         private final String[] segments;
@@ -0,0 +1,116 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.models.evaluation;
+
+import com.yahoo.searchlib.rankingexpression.ExpressionFunction;
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchEvaluatorTest {
+
+    @Test
+    public void testBatchEvaluation() {
+        Model model = new Model("test", Collections.singletonList(new ExpressionFunction("test",
+                                                                                         RankingExpression.from("x * y + z"))));
+        List<Tensor> results = model.batchEvaluatorOf("test")
+                                    .bind("x", new double[] { 1, 2, 3 })
+                                    .bind("y", 2)
+                                    .bind("z", new double[] { 0.5, 0, -1 })
+                                    .evaluate();
+        assertEquals(3, results.size());
+        assertEquals(2.5, results.get(0).asDouble(), 0);
+        assertEquals(4.0, results.get(1).asDouble(), 0);
+        assertEquals(5.0, results.get(2).asDouble(), 0);
+    }
+
+    @Test
+    public void testBatchEvaluationOfTensors() {
+        TensorType type = TensorType.fromSpec("tensor(d0[2])");
+        ExpressionFunction function = new ExpressionFunction("test", RankingExpression.from("sum(t * x)"))
+                                              .withArgument("t", type);
+        Model model = new Model("test", Collections.singletonList(function));
+        List<Tensor> results = model.batchEvaluatorOf("test")
+                                    .bind("t", Arrays.asList(Tensor.from(type, "{{d0:0}:1.0,{d0:1}:2.0}"),
+                                                             Tensor.from(type, "{{d0:0}:3.0,{d0:1}:4.0}")))
+                                    .bind("x", 10)
+                                    .evaluate();
+        assertEquals(2, results.size());
+        assertEquals(30.0, results.get(0).asDouble(), 0);
+        assertEquals(70.0, results.get(1).asDouble(), 0);
+    }
+
+    @Test
+    public void testReferencedFunctionsAreEvaluatedPerItemOnlyWhenDependingOnItemValues() {
+        ExpressionFunction test = new ExpressionFunction("test",
+                                                         RankingExpression.from("rankingExpression(shared) + rankingExpression(item)"));
+        ExpressionFunction shared = new ExpressionFunction("shared", RankingExpression.from("y * 2"));
+        ExpressionFunction item = new ExpressionFunction("item", RankingExpression.from("x * y"));
+        Map<FunctionReference, ExpressionFunction> functions = new HashMap<>();
+        functions.put(FunctionReference.fromName("test"), test);
+        functions.put(FunctionReference.fromName("shared"), shared);
+        functions.put(FunctionReference.fromName("item"), item);
+        Map<FunctionReference, ExpressionFunction> referencedFunctions = new HashMap<>();
+        referencedFunctions.put(FunctionReference.fromName("shared"), shared);
+        referencedFunctions.put(FunctionReference.fromName("item"), item);
+        Model model = new Model("test", functions, referencedFunctions, Collections.emptyList());
+        List<Tensor> results = model.batchEvaluatorOf("test").bind("x", new double[] { 1, 2 }).bind("y", 3).evaluate();
+        assertEquals(2, results.size());
+        assertEquals(9.0, results.get(0).asDouble(), 0);
+        assertEquals(12.0, results.get(1).asDouble(), 0);
+    }
+
+    @Test
+    public void testBatchEvaluationOfForest() {
+        ExpressionFunction function = new ExpressionFunction("test", RankingExpression.from(
+                "if (f29 < -0.1234567, if (f56 < -0.242398, 1.71218, -1.70044), if (f109 < 0.8723473, -1.94071, 1.85965)) + " +
+                "if (f60 < -0.482947, if (f29 < -4.2387498, 0.784718, -0.96853), -6.23624)"));
+        Map<FunctionReference, ExpressionFunction> functions = new HashMap<>();
+        functions.put(FunctionReference.fromName("test"), function);
+        Model model = new Model("test", functions, new HashMap<>(functions), Collections.emptyList());
+        assertTrue(model.evaluatorOf("test").context().compiledFunction() instanceof CompiledExpression.Forest);
+
+        List<Tensor> results = model.batchEvaluatorOf("test")
+                                    .bind("f29", new double[] { -1.0, 0.5 })
+                                    .bind("f56", 0.2)
+                                    .bind("f60", 0.3)
+                                    .bind("f109", 0.4)
+                                    .evaluate();
+        assertEquals(2, results.size());
+        assertEquals(-7.93668, results.get(0).asDouble(), 1e-9);
+        assertEquals(-8.17695, results.get(1).asDouble(), 1e-9);
+    }
+
+    @Test
+    public void testEvaluationWithoutItemValues() {
+        Model model = new Model("test", Collections.singletonList(new ExpressionFunction("test",
+                                                                                         RankingExpression.from("x * 2"))));
+        List<Tensor> results = model.batchEvaluatorOf("test").bind("x", 3).evaluate();
+        assertEquals(1, results.size());
+        assertEquals(6.0, results.get(0).asDouble(), 0);
+    }
+
+    @Test
+    public void testInconsistentBatchSizes() {
+        Model model = new Model("test", Collections.singletonList(new ExpressionFunction("test",
+                                                                                         RankingExpression.from("x * y"))));
+        try {
+            model.batchEvaluatorOf("test").bind("x", new double[] { 1, 2 }).bind("y", new double[] { 1, 2, 3 });
+            fail("Expected exception");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("'y' is bound to 3 values, but other arguments are bound to 2 values", e.getMessage());
+        }
+    }
+
+}
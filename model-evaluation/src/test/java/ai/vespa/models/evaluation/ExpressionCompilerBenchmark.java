@@ -0,0 +1,73 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.models.evaluation;
+
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Measures the time of evaluating the imported test models with compiled expressions and with the interpreter.
+ * Functions referenced from an interpreted function are still evaluated compiled.
+ *
+ * Run with the main method from the model-evaluation directory.
+ */
+public class ExpressionCompilerBenchmark {
+
+    public void run() {
+        ModelTester models = new ModelTester("src/test/resources/config/models/");
+        compare("XGBoost 2x2", models.models().get("xgboost_2_2"), null,
+                evaluator -> evaluator.bind("f29", 0.5).bind("f56", 1.0).bind("f60", 0.0).bind("f109", 0.3));
+        compare("ONNX MNIST softmax", models.models().get("mnist_softmax"), null,
+                evaluator -> evaluator.bind("Placeholder", mnistInput()));
+        compare("TensorFlow MNIST", models.models().get("mnist_saved"), "serving_default",
+                evaluator -> evaluator.bind("input", mnistInput()));
+
+        ModelTester rankExpressions = new ModelTester("src/test/resources/config/rankexpression/");
+        compare("Rank profile functions", rankExpressions.models().get("macros"), "secondphase",
+                evaluator -> evaluator.bind("match", 3).bind("rankBoost", 5));
+    }
+
+    private void compare(String name, Model model, String function, Consumer<FunctionEvaluator> binder) {
+        double compiled = time(model, function, binder, true);
+        double interpreted = time(model, function, binder, false);
+        System.out.println(name + ": " + format(compiled) + " ms, interpreted " + format(interpreted) + " ms, speedup " +
+                           String.format(Locale.ENGLISH, "%.1f", interpreted / compiled) + "x");
+    }
+
+    private double time(Model model, String function, Consumer<FunctionEvaluator> binder, boolean compiled) {
+        int iterations = 10000;
+        for (int i = 0; i < iterations; i++) // warmup
+            evaluate(model, function, binder, compiled);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            evaluate(model, function, binder, compiled);
+        return (System.nanoTime() - startTime) / 1000_000.0 / iterations;
+    }
+
+    private Tensor evaluate(Model model, String function, Consumer<FunctionEvaluator> binder, boolean compiled) {
+        FunctionEvaluator evaluator = function == null ? model.evaluatorOf() : model.evaluatorOf(function);
+        binder.accept(evaluator);
+        if (compiled)
+            return evaluator.evaluate();
+        else
+            return evaluator.function().getBody().evaluate(evaluator.context()).asTensor();
+    }
+
+    private Tensor mnistInput() {
+        Tensor.Builder b = Tensor.Builder.of(TensorType.fromSpec("tensor(d0[],d1[784])"));
+        for (int i = 0; i < 784; i++)
+            b.cell(i / 784.0, 0, i);
+        return b.build();
+    }
+
+    private static String format(double millis) {
+        return String.format(Locale.ENGLISH, "%.4f", millis);
+    }
+
+    public static void main(String[] args) {
+        new ExpressionCompilerBenchmark().run();
+    }
+
+}
@@ -0,0 +1,82 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package ai.vespa.models.evaluation;
+
+import com.google.common.collect.ImmutableMap;
+import com.yahoo.searchlib.rankingexpression.ExpressionFunction;
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that compiled expressions evaluate to the same values as the interpreter.
+ */
+public class ExpressionCompilerTest {
+
+    private static final Map<String, Tensor> arguments =
+            ImmutableMap.of("x", scalar(3), "y", scalar(-2.5), "z", scalar(0),
+                            "t", Tensor.from(TensorType.fromSpec("tensor(d0[3])"), "{{d0:0}:1.0,{d0:1}:2.0,{d0:2}:3.0}"));
+
+    @Test
+    public void testScalarExpressions() {
+        assertCompiled("1 + 2 * 3 - 4 / 8 % 3 ^ 2", true);
+        assertCompiled("x * y + z", true);
+        assertCompiled("x - y - z * 2", true);
+        assertCompiled("x / y / 2 ^ 3 ^ 0.5", true);
+        assertCompiled("if (x > y, x, y) + if (z == 0, 1, 2)", true);
+        assertCompiled("atan2(x, y) + sqrt(x) + relu(y) + pow(x, 2)", true);
+        assertCompiled("-x + !z + (x - (y + 1))", true);
+        assertCompiled("(x > 1) && (y > 1) || (z ~= 0)", true);
+    }
+
+    @Test
+    public void testTensorExpressions() {
+        assertCompiled("t * x + y", false);
+        assertCompiled("sum(t * x) + y", false);
+        assertCompiled("sqrt(t) - (-t)", false);
+        assertCompiled("if (x > y, t, t * 2)", false);
+    }
+
+    @Test
+    public void testMissingScalarArgument() {
+        Model model = new Model("test", Collections.singletonList(new ExpressionFunction("test",
+                                                                                         RankingExpression.from("x * 2 + y"))));
+        FunctionEvaluator evaluator = model.evaluatorOf("test");
+        evaluator.bind("x", 3);
+        evaluator.setMissingValue(1);
+        assertEquals(7.0, evaluator.evaluate().asDouble(), 0);
+    }
+
+    private void assertCompiled(String expression, boolean scalar) {
+        ExpressionFunction function = new ExpressionFunction("test", RankingExpression.from(expression));
+        if ( ! scalar)
+            function = function.withArgument("t", arguments.get("t").type());
+        Model model = new Model("test", Collections.singletonList(function));
+
+        FunctionEvaluator compiled = bind(model.evaluatorOf("test"));
+        assertNotNull(compiled.context().compiledFunction());
+        assertEquals(expression, scalar, compiled.context().compiledFunction() instanceof CompiledExpression.Scalar);
+
+        FunctionEvaluator interpreted = bind(model.evaluatorOf("test"));
+        Tensor expected = interpreted.function().getBody().evaluate(interpreted.context()).asTensor();
+        assertTrue(expression + ": Expected " + expected, expected.equals(compiled.evaluate()));
+    }
+
+    private FunctionEvaluator bind(FunctionEvaluator evaluator) {
+        for (String argument : evaluator.context().arguments())
+            evaluator.bind(argument, arguments.get(argument));
+        return evaluator;
+    }
+
+    private static Tensor scalar(double value) {
+        return Tensor.Builder.of(TensorType.empty).cell(value).build();
+    }
+
+}
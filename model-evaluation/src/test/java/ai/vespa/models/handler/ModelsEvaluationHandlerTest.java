@@ -16,8 +16,10 @@ import com.yahoo.vespa.config.search.core.RankingConstantsConfig;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -93,6 +95,47 @@ public class ModelsEvaluationHandlerTest {
         assertResponse(url, properties, 200, expected);
     }
 
+    @Test
+    public void testXgBoostBatchEvaluation() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("f56", "0.2");
+        properties.put("f60", "0.3");
+        properties.put("f109", "0.4");
+        String url = "http://localhost/model-evaluation/v1/xgboost_2_2/eval";
+        String batch = "{\"batch\":[{\"f29\":-1.0},{\"f29\":\"-1.0\"}]}";
+        String expected = "{\"results\":[{\"cells\":[{\"address\":{},\"value\":-7.936679999999999}]},{\"cells\":[{\"address\":{},\"value\":-7.936679999999999}]}]}";
+        assertBatchResponse(url, properties, batch, 200, expected);
+    }
+
+    @Test
+    public void testXgBoostEmptyBatchEvaluation() {
+        String url = "http://localhost/model-evaluation/v1/xgboost_2_2/eval";
+        assertBatchResponse(url, Collections.emptyMap(), "{\"batch\":[]}", 200, "{\"results\":[]}");
+    }
+
+    @Test
+    public void testXgBoostBatchEvaluationWithInconsistentArguments() {
+        String url = "http://localhost/model-evaluation/v1/xgboost_2_2/eval";
+        String batch = "{\"batch\":[{\"f29\":-1.0},{\"f56\":0.2}]}";
+        String expected = "{\"error\":\"Item 1 in the batch binds 'f56' which is not bound in the previous items\"}";
+        assertBatchResponse(url, Collections.emptyMap(), batch, 404, expected);
+    }
+
+    @Test
+    public void testTooLargeBatchIsRejected() {
+        String url = "http://localhost/model-evaluation/v1/xgboost_2_2/eval";
+        String batch = "{\"batch\":[{\"f29\":-1.0},{\"f29\":-1.0}]}";
+        ModelsEvaluationHandler limitedHandler = new ModelsEvaluationHandler(createModels("src/test/resources/config/models/"),
+                                                                             Executors.newSingleThreadExecutor(),
+                                                                             batch.length() - 1);
+        HttpRequest request = HttpRequest.createTestRequest(url, com.yahoo.jdisc.http.HttpRequest.Method.POST,
+                                                            new ByteArrayInputStream(batch.getBytes(StandardCharsets.UTF_8)));
+        HttpResponse response = limitedHandler.handle(request);
+        assertEquals(400, response.getStatus());
+        assertEquals("{\"error\":\"The POSTed batch is larger than the max size of " + (batch.length() - 1) + " bytes\"}",
+                     getContents(response));
+    }
+
     @Test
     public void testMnistSoftmaxDetails() {
         String url = "http://localhost:8080/model-evaluation/v1/mnist_softmax";
@@ -184,6 +227,14 @@ public class ModelsEvaluationHandlerTest {
         assertResponse(postRequest, expectedCode, expectedResult);
     }
 
+    static private void assertBatchResponse(String url, Map<String, String> properties, String batch,
+                                            int expectedCode, String expectedResult) {
+        HttpRequest postRequest = HttpRequest.createTestRequest(url, com.yahoo.jdisc.http.HttpRequest.Method.POST,
+                                                                new ByteArrayInputStream(batch.getBytes(StandardCharsets.UTF_8)),
+                                                                properties);
+        assertResponse(postRequest, expectedCode, expectedResult);
+    }
+
     static private void assertResponse(HttpRequest request, int expectedCode, String expectedResult) {
         HttpResponse response = handler.handle(request);
         assertEquals("application/json", response.getContentType());
@@ -12,8 +12,9 @@ public class Group extends Identifiable {
 
     public static final int classId = registerClass(0x4000 + 90, Group.class);
     private static final ObjectPredicate REF_LOCATOR = new RefLocator();
-    private List<Integer> orderByIdx = new ArrayList<>();
-    private List<ExpressionNode> orderByExp = new ArrayList<>();
+    // Most groups have no order-by expressions, so these are empty and immutable until one is added
+    private List<Integer> orderByIdx = Collections.emptyList();
+    private List<ExpressionNode> orderByExp = Collections.emptyList();
     private List<AggregationResult> aggregationResults = new ArrayList<>();
     private List<Group> children = new ArrayList<>();
     private ResultNode id = null;
@@ -49,7 +50,12 @@ public class Group extends Identifiable {
             }
         }
 
-        ArrayList<Group> merged = new ArrayList<>();
+        if (rhs.children.isEmpty()) return;
+        if (children.isEmpty()) {
+            children = new ArrayList<>(rhs.children);
+            return;
+        }
+        ArrayList<Group> merged = new ArrayList<>(children.size() + rhs.children.size());
         Iterator<Group> lhsChild = children.iterator(), rhsChild = rhs.children.iterator();
         if (lhsChild.hasNext() && rhsChild.hasNext()) {
             Group lhsGroup = lhsChild.next();
@@ -267,6 +273,10 @@ public class Group extends Identifiable {
             exp = new AggregationRefNode((AggregationResult)exp);
         }
         exp.select(REF_LOCATOR, new RefResolver(this));
+        if (orderByExp.isEmpty()) {
+            orderByExp = new ArrayList<>();
+            orderByIdx = new ArrayList<>();
+        }
         orderByExp.add(exp);
         orderByIdx.add((asc ? 1 : -1) * orderByExp.size());
         return this;
@@ -339,24 +349,29 @@ public class Group extends Identifiable {
         super.onDeserialize(buf);
         id = (ResultNode)deserializeOptional(buf);
         rank = buf.getDouble(null);
-        orderByIdx.clear();
         int orderByCount = buf.getInt(null);
+        orderByIdx = orderByCount == 0 ? Collections.emptyList() : new ArrayList<>(orderByCount);
         for (int i = 0; i < orderByCount; i++) {
             orderByIdx.add(buf.getInt(null));
         }
         int numResults = buf.getInt(null);
+        aggregationResults = new ArrayList<>(numResults);
         for (int i = 0; i < numResults; i++) {
             AggregationResult e = (AggregationResult)deserializeOptional(buf);
             aggregationResults.add(e);
         }
         int numExpressionResults = buf.getInt(null);
-        RefResolver resolver = new RefResolver(this);
-        for (int i = 0; i < numExpressionResults; i++) {
-            ExpressionNode exp = (ExpressionNode)deserializeOptional(buf);
-            exp.select(REF_LOCATOR, resolver);
-            orderByExp.add(exp);
+        orderByExp = numExpressionResults == 0 ? Collections.emptyList() : new ArrayList<>(numExpressionResults);
+        if (numExpressionResults > 0) {
+            RefResolver resolver = new RefResolver(this);
+            for (int i = 0; i < numExpressionResults; i++) {
+                ExpressionNode exp = (ExpressionNode)deserializeOptional(buf);
+                exp.select(REF_LOCATOR, resolver);
+                orderByExp.add(exp);
+            }
         }
         int numGroups = buf.getInt(null);
+        children = new ArrayList<>(numGroups);
         for (int i = 0; i < numGroups; i++) {
             Group g = new Group();
             g.deserializeWithId(buf);
@@ -407,11 +422,8 @@ public class Group extends Identifiable {
         for (AggregationResult result : aggregationResults) {
             obj.aggregationResults.add(result.clone());
         }
-        obj.orderByIdx = new ArrayList<Integer>();
-        for (Integer idx : orderByIdx) {
-            obj.orderByIdx.add(idx);
-        }
-        obj.orderByExp = new ArrayList<ExpressionNode>();
+        obj.orderByIdx = orderByIdx.isEmpty() ? Collections.emptyList() : new ArrayList<>(orderByIdx);
+        obj.orderByExp = orderByExp.isEmpty() ? Collections.emptyList() : new ArrayList<>(orderByExp.size());
         RefResolver resolver = new RefResolver(obj);
         for (ExpressionNode exp : orderByExp) {
             exp = exp.clone();
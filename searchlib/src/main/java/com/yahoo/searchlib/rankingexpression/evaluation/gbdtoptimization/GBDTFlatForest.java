@@ -0,0 +1,275 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization;
+
+import com.yahoo.searchlib.rankingexpression.evaluation.Context;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A sum of decision trees laid out as flat arrays with one entry per condition node
+ * (the feature index, comparison and threshold of the node and the nodes or leaves it branches to)
+ * and one array of the leaf values of all the trees.
+ *
+ * When all the trees have at most 64 leaves and only contains &lt; conditions (or their if-inversions)
+ * this can also evaluate many contexts at once by the QuickScorer algorithm: Each feature value is read only
+ * once per context and all the conditions on that feature which are false are found by scanning their sorted
+ * thresholds, each clearing the leaves of its true branch from a bitvector per tree. The exit leaf of each tree
+ * is then the lowest leaf left in the bitvector.
+ *
+ * This is immutable and multithread safe.
+ */
+public final class GBDTFlatForest {
+
+    private static final byte LESS = 0;
+    private static final byte EQUAL = 1;
+    private static final byte IN = 2;
+    private static final byte NOT_LARGER_OR_EQUAL = 3;
+
+    /** The first node of each tree, or the complement of the leaf index if the tree is a single leaf */
+    private final int[] roots;
+
+    // The condition nodes. A child reference is either a node index, or the complement of a leaf index
+    private final int[] features;
+    private final byte[] comparisons;
+    private final double[] thresholds;
+    private final double[][] sets;
+    private final int[] trueChildren;
+    private final int[] falseChildren;
+
+    private final double[] leaves;
+
+    /** The QuickScorer layout of this, or null if it cannot be evaluated by QuickScorer */
+    private final QuickScorer quickScorer;
+
+    /**
+     * Creates a flat forest from the encoding of {@link GBDTForestNode}: A sequence of trees,
+     * each preceded by its length, in the encoding of {@link GBDTNode}.
+     */
+    public GBDTFlatForest(double[] forest) {
+        Builder builder = new Builder();
+        int pc = 0;
+        while (pc < forest.length) {
+            int treeLength = (int)forest[pc++];
+            builder.addTree(forest, pc);
+            pc += treeLength;
+        }
+
+        roots = builder.roots.stream().mapToInt(Integer::intValue).toArray();
+        features = builder.features.stream().mapToInt(Integer::intValue).toArray();
+        comparisons = new byte[builder.comparisons.size()];
+        for (int i = 0; i < comparisons.length; i++)
+            comparisons[i] = builder.comparisons.get(i);
+        thresholds = builder.thresholds.stream().mapToDouble(Double::doubleValue).toArray();
+        sets = builder.sets.toArray(new double[0][]);
+        trueChildren = builder.trueChildren.stream().mapToInt(Integer::intValue).toArray();
+        falseChildren = builder.falseChildren.stream().mapToInt(Integer::intValue).toArray();
+        leaves = builder.leaves.stream().mapToDouble(Double::doubleValue).toArray();
+        quickScorer = builder.quickScorable ? new QuickScorer(builder) : null;
+    }
+
+    /** Returns the number of trees in this */
+    public int trees() { return roots.length; }
+
+    /** Returns whether many contexts can be evaluated by QuickScorer in {@link #evaluate(List)} */
+    public boolean isQuickScorable() { return quickScorer != null; }
+
+    /** Returns the sum of evaluating all the trees of this in the given context */
+    public double evaluate(Context context) {
+        double sum = 0;
+        for (int root : roots) {
+            int node = root;
+            while (node >= 0)
+                node = isTrue(node, context) ? trueChildren[node] : falseChildren[node];
+            sum += leaves[~node];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the sum of evaluating all the trees of this in each of the given contexts.
+     * This is faster than evaluating each context separately if this is quick scorable.
+     */
+    public double[] evaluate(List<? extends Context> contexts) {
+        double[] results = new double[contexts.size()];
+        if (quickScorer != null) {
+            long[] leafMasks = new long[roots.length];
+            for (int i = 0; i < results.length; i++)
+                results[i] = quickScorer.evaluate(contexts.get(i), leafMasks);
+        }
+        else {
+            for (int i = 0; i < results.length; i++)
+                results[i] = evaluate(contexts.get(i));
+        }
+        return results;
+    }
+
+    private boolean isTrue(int node, Context context) {
+        double value = context.getDouble(features[node]);
+        switch (comparisons[node]) {
+            case LESS: return value < thresholds[node];
+            case EQUAL: return value == thresholds[node];
+            case IN:
+                for (double setValue : sets[node])
+                    if (value == setValue) return true;
+                return false;
+            case NOT_LARGER_OR_EQUAL: return ! (value >= thresholds[node]);
+            default: throw new IllegalStateException("Unknown comparison " + comparisons[node]);
+        }
+    }
+
+    /** Decodes trees into the flat lists of this */
+    private static class Builder {
+
+        final List<Integer> roots = new ArrayList<>();
+        final List<Integer> features = new ArrayList<>();
+        final List<Byte> comparisons = new ArrayList<>();
+        final List<Double> thresholds = new ArrayList<>();
+        final List<double[]> sets = new ArrayList<>();
+        final List<Integer> trueChildren = new ArrayList<>();
+        final List<Integer> falseChildren = new ArrayList<>();
+        final List<Double> leaves = new ArrayList<>();
+
+        /** The tree of each node */
+        final List<Integer> trees = new ArrayList<>();
+        /** The start and end (exclusive) of the leaves of the true branch of each node, relative to its tree */
+        final List<Integer> trueLeavesStart = new ArrayList<>();
+        final List<Integer> trueLeavesEnd = new ArrayList<>();
+        /** The index of the first leaf of each tree */
+        final List<Integer> treeLeaves = new ArrayList<>();
+
+        boolean quickScorable = true;
+
+        /** The position in the encoding being decoded */
+        private int pc;
+
+        void addTree(double[] values, int start) {
+            pc = start;
+            treeLeaves.add(leaves.size());
+            roots.add(addNode(values));
+            if (leaves.size() - treeLeaves.get(treeLeaves.size() - 1) > 64)
+                quickScorable = false;
+        }
+
+        /** Decodes the node at pc and returns a reference to it */
+        private int addNode(double[] values) {
+            double nextValue = values[pc++];
+            if (nextValue < GBDTNode.MAX_LEAF_VALUE) { // a leaf
+                leaves.add(nextValue);
+                return ~(leaves.size() - 1);
+            }
+
+            int node = features.size();
+            int offset = (int)nextValue - GBDTNode.MAX_LEAF_VALUE;
+            byte comparison = (byte)(offset / GBDTNode.MAX_VARIABLES);
+            features.add(offset % GBDTNode.MAX_VARIABLES);
+            comparisons.add(comparison);
+            if (comparison == IN) {
+                double[] set = new double[(int)values[pc++]];
+                for (int i = 0; i < set.length; i++)
+                    set[i] = values[pc++];
+                thresholds.add(0.0);
+                sets.add(set);
+                quickScorable = false;
+            }
+            else {
+                thresholds.add(values[pc++]);
+                sets.add(null);
+                if (comparison == EQUAL)
+                    quickScorable = false;
+            }
+            trees.add(roots.size());
+            int treeStart = treeLeaves.get(treeLeaves.size() - 1);
+            trueLeavesStart.add(leaves.size() - treeStart);
+            trueLeavesEnd.add(0); // set below
+            trueChildren.add(0);
+            falseChildren.add(0);
+
+            pc++; // the length of the true branch
+            trueChildren.set(node, addNode(values));
+            trueLeavesEnd.set(node, leaves.size() - treeStart);
+            falseChildren.set(node, addNode(values));
+            return node;
+        }
+
+    }
+
+    /** The conditions of the forest sorted by feature and threshold, with the leaves to clear when each is false */
+    private final class QuickScorer {
+
+        /** The distinct features, and the start of the conditions of each in the arrays below */
+        private final int[] features;
+        private final int[] featureStarts;
+
+        private final double[] thresholds;
+        private final boolean[] inverted;
+        private final int[] trees;
+        private final long[] masks;
+
+        private final int[] treeLeaves;
+
+        QuickScorer(Builder builder) {
+            Integer[] order = new Integer[builder.features.size()];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, Comparator.<Integer>comparingInt(builder.features::get)
+                                         .thenComparingDouble(builder.thresholds::get));
+
+            thresholds = new double[order.length];
+            inverted = new boolean[order.length];
+            trees = new int[order.length];
+            masks = new long[order.length];
+            List<Integer> distinctFeatures = new ArrayList<>();
+            List<Integer> starts = new ArrayList<>();
+            for (int i = 0; i < order.length; i++) {
+                int node = order[i];
+                int feature = builder.features.get(node);
+                if (distinctFeatures.isEmpty() || distinctFeatures.get(distinctFeatures.size() - 1) != feature) {
+                    distinctFeatures.add(feature);
+                    starts.add(i);
+                }
+                thresholds[i] = builder.thresholds.get(node);
+                inverted[i] = builder.comparisons.get(node) == NOT_LARGER_OR_EQUAL;
+                trees[i] = builder.trees.get(node);
+                int start = builder.trueLeavesStart.get(node);
+                int end = builder.trueLeavesEnd.get(node);
+                masks[i] = ~(((1L << (end - start)) - 1) << start);
+            }
+            starts.add(order.length);
+            features = distinctFeatures.stream().mapToInt(Integer::intValue).toArray();
+            featureStarts = starts.stream().mapToInt(Integer::intValue).toArray();
+            treeLeaves = builder.treeLeaves.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /** Evaluates this in the given context, using the given array to hold the remaining leaves of each tree */
+        double evaluate(Context context, long[] leafMasks) {
+            Arrays.fill(leafMasks, -1L);
+            for (int f = 0; f < features.length; f++) {
+                double value = context.getDouble(features[f]);
+                int end = featureStarts[f + 1];
+                if (Double.isNaN(value)) { // false for < and true for the inversion of >=
+                    for (int i = featureStarts[f]; i < end; i++)
+                        if ( ! inverted[i])
+                            leafMasks[trees[i]] &= masks[i];
+                }
+                else {
+                    for (int i = featureStarts[f]; i < end && thresholds[i] <= value; i++)
+                        leafMasks[trees[i]] &= masks[i];
+                }
+            }
+
+            double sum = 0;
+            for (int tree = 0; tree < leafMasks.length; tree++) {
+                if (roots[tree] < 0)
+                    sum += leaves[~roots[tree]];
+                else
+                    sum += leaves[treeLeaves[tree] + Long.numberOfTrailingZeros(leafMasks[tree])];
+            }
+            return sum;
+        }
+
+    }
+
+}
@@ -15,6 +15,7 @@ import java.util.Deque;
 
 /**
  * An optimized version of a sum of consecutive decision trees.
+ * This is evaluated by the {@link GBDTFlatForest} layout of the trees.
  *
  * @author bratseth
  */
@@ -22,23 +23,25 @@ public class GBDTForestNode extends ExpressionNode {
 
     private final double[] values;
 
+    private final GBDTFlatForest flatForest;
+
     public GBDTForestNode(double[] values) {
         this.values=values;
+        this.flatForest = new GBDTFlatForest(values);
     }
 
+    /** Returns a direct reference to the values of this. The returned array must not be modified. */
+    public final double[] values() { return values; }
+
+    /** Returns the trees of this laid out as flat arrays, which can also evaluate many contexts at once */
+    public final GBDTFlatForest flatForest() { return flatForest; }
+
     @Override
     public final TensorType type(TypeContext<Reference> context) { return TensorType.empty; }
 
     @Override
     public final Value evaluate(Context context) {
-        int pc = 0;
-        double treeSum = 0;
-        while (pc < values.length) {
-            int nextTree = (int)values[pc++];
-            treeSum += GBDTNode.evaluate(values, pc, context);
-            pc += nextTree;
-        }
-        return new DoubleValue(treeSum);
+        return new DoubleValue(flatForest.evaluate(context));
     }
 
     /** Returns (optimized sum of condition trees) */
@@ -0,0 +1,147 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization;
+
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.searchlib.rankingexpression.evaluation.ArrayContext;
+import com.yahoo.searchlib.rankingexpression.evaluation.DoubleValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.ExpressionOptimizer;
+import com.yahoo.searchlib.rankingexpression.evaluation.MapContext;
+import com.yahoo.searchlib.rankingexpression.rule.ArithmeticNode;
+import com.yahoo.searchlib.rankingexpression.rule.ArithmeticOperator;
+import com.yahoo.searchlib.rankingexpression.rule.ComparisonNode;
+import com.yahoo.searchlib.rankingexpression.rule.ConstantNode;
+import com.yahoo.searchlib.rankingexpression.rule.EmbracedNode;
+import com.yahoo.searchlib.rankingexpression.rule.ExpressionNode;
+import com.yahoo.searchlib.rankingexpression.rule.IfNode;
+import com.yahoo.searchlib.rankingexpression.rule.NotNode;
+import com.yahoo.searchlib.rankingexpression.rule.ReferenceNode;
+import com.yahoo.searchlib.rankingexpression.rule.SetMembershipNode;
+import com.yahoo.searchlib.rankingexpression.rule.TruthOperator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that flat forests evaluate to the same values as the unoptimized trees, both one by one and by QuickScorer.
+ */
+public class GBDTFlatForestTestCase {
+
+    private static final int featureCount = 5;
+
+    private final Random random = new Random(17);
+
+    @Test
+    public void testQuickScorableForests() {
+        for (int i = 0; i < 20; i++)
+            assertFlatForest(false, true);
+    }
+
+    @Test
+    public void testForestsWithEqualityAndSetConditions() {
+        for (int i = 0; i < 20; i++)
+            assertFlatForest(true, false);
+    }
+
+    @Test
+    public void testForestWithTreesOfMoreThan64Leaves() {
+        ExpressionNode forest = new ArithmeticNode(Arrays.asList(fullTree(7), tree(3, false, true)),
+                                                   Collections.singletonList(ArithmeticOperator.PLUS));
+        assertFlatForest(forest, false);
+    }
+
+    private void assertFlatForest(boolean includeNonQuickScorableConditions, boolean expectQuickScorable) {
+        List<ExpressionNode> trees = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            trees.add(tree(5, includeNonQuickScorableConditions, true));
+        ExpressionNode forest = new ArithmeticNode(trees, Collections.nCopies(trees.size() - 1, ArithmeticOperator.PLUS));
+        assertFlatForest(forest, expectQuickScorable);
+    }
+
+    private void assertFlatForest(ExpressionNode forest, boolean expectQuickScorable) {
+        RankingExpression expression = new RankingExpression(forest);
+        List<MapContext> mapContexts = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            mapContexts.add(randomContext());
+        double[] expected = new double[mapContexts.size()];
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = expression.evaluate(mapContexts.get(i)).asDouble();
+
+        ArrayContext prototype = new ArrayContext(expression, DoubleValue.NaN);
+        new ExpressionOptimizer().optimize(expression, prototype);
+        assertTrue(expression.getRoot() instanceof GBDTForestNode);
+        GBDTFlatForest flatForest = ((GBDTForestNode)expression.getRoot()).flatForest();
+        assertEquals(expectQuickScorable, flatForest.isQuickScorable());
+
+        List<ArrayContext> contexts = new ArrayList<>();
+        for (MapContext mapContext : mapContexts) {
+            ArrayContext context = prototype.clone();
+            for (String name : context.names()) {
+                if ( ! Double.isNaN(mapContext.get(name).asDouble())) // NaN values are left missing
+                    context.put(name, mapContext.get(name));
+            }
+            contexts.add(context);
+        }
+        double[] batchResults = flatForest.evaluate(contexts);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], flatForest.evaluate(contexts.get(i)), 1e-9);
+            assertEquals(expected[i], expression.evaluate(contexts.get(i)).asDouble(), 1e-9);
+            assertEquals(expected[i], batchResults[i], 1e-9);
+        }
+    }
+
+    /** Returns a context where each feature is missing (NaN), a common threshold value, or a random value */
+    private MapContext randomContext() {
+        MapContext context = new MapContext(DoubleValue.NaN);
+        for (int i = 0; i < featureCount; i++) {
+            double choice = random.nextDouble();
+            if (choice < 0.1)
+                continue;
+            else if (choice < 0.3)
+                context.put("f" + i, random.nextInt(4) / 4.0);
+            else
+                context.put("f" + i, random.nextDouble());
+        }
+        return context;
+    }
+
+    private ExpressionNode tree(int depth, boolean includeNonQuickScorableConditions, boolean isRoot) {
+        if (depth == 0 || ( ! isRoot && random.nextDouble() < 0.1))
+            return new ConstantNode(new DoubleValue(random.nextDouble() - 0.5));
+        return new IfNode(condition(includeNonQuickScorableConditions),
+                          tree(depth - 1, includeNonQuickScorableConditions, false),
+                          tree(depth - 1, includeNonQuickScorableConditions, false));
+    }
+
+    /** Returns a tree with 2^depth leaves */
+    private ExpressionNode fullTree(int depth) {
+        if (depth == 0)
+            return new ConstantNode(new DoubleValue(random.nextDouble() - 0.5));
+        return new IfNode(condition(false), fullTree(depth - 1), fullTree(depth - 1));
+    }
+
+    private ExpressionNode condition(boolean includeNonQuickScorableConditions) {
+        ReferenceNode feature = new ReferenceNode("f" + random.nextInt(featureCount));
+        int conditionType = random.nextInt(includeNonQuickScorableConditions ? 4 : 2);
+        switch (conditionType) {
+            case 0: return new ComparisonNode(feature, TruthOperator.SMALLER, threshold());
+            case 1: return new NotNode(new EmbracedNode(new ComparisonNode(feature, TruthOperator.LARGEREQUAL, threshold())));
+            case 2: return new ComparisonNode(feature, TruthOperator.EQUAL, threshold());
+            default: return new SetMembershipNode(feature, Arrays.asList(threshold(), threshold()));
+        }
+    }
+
+    /** Returns a threshold which is sometimes equal to the feature values, to test the boundaries */
+    private ExpressionNode threshold() {
+        if (random.nextBoolean())
+            return new ConstantNode(new DoubleValue(random.nextInt(4) / 4.0));
+        return new ConstantNode(new DoubleValue(random.nextDouble()));
+    }
+
+}
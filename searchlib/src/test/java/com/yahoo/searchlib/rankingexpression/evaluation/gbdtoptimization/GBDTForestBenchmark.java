@@ -0,0 +1,130 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.searchlib.rankingexpression.evaluation.gbdtoptimization;
+
+import com.yahoo.searchlib.rankingexpression.RankingExpression;
+import com.yahoo.searchlib.rankingexpression.evaluation.ArrayContext;
+import com.yahoo.searchlib.rankingexpression.evaluation.DoubleValue;
+import com.yahoo.searchlib.rankingexpression.evaluation.ExpressionOptimizer;
+import com.yahoo.searchlib.rankingexpression.rule.ArithmeticNode;
+import com.yahoo.searchlib.rankingexpression.rule.ArithmeticOperator;
+import com.yahoo.searchlib.rankingexpression.rule.ComparisonNode;
+import com.yahoo.searchlib.rankingexpression.rule.ConstantNode;
+import com.yahoo.searchlib.rankingexpression.rule.ExpressionNode;
+import com.yahoo.searchlib.rankingexpression.rule.IfNode;
+import com.yahoo.searchlib.rankingexpression.rule.ReferenceNode;
+import com.yahoo.searchlib.rankingexpression.rule.TruthOperator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares evaluating a forest of 1000 random trees of depth 6 (as produced by XGBoost and LightGBM)
+ * tree by tree in the GBDTNode encoding, by the flat forest and by the flat forest using QuickScorer
+ * over a batch of contexts.
+ */
+public class GBDTForestBenchmark {
+
+    private static final int trees = 1000;
+    private static final int depth = 6;
+    private static final int featureCount = 100;
+    private static final int batchSize = 100;
+
+    private final Random random = new Random(1234);
+
+    public void run() {
+        RankingExpression expression = new RankingExpression(forest());
+        ArrayContext prototype = new ArrayContext(expression, DoubleValue.NaN);
+        new ExpressionOptimizer().optimize(expression, prototype);
+        GBDTForestNode forest = (GBDTForestNode)expression.getRoot();
+
+        List<ArrayContext> contexts = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            ArrayContext context = prototype.clone();
+            for (int feature = 0; feature < featureCount; feature++)
+                context.put("f" + feature, random.nextDouble());
+            contexts.add(context);
+        }
+
+        double[] expected = new double[batchSize];
+        for (int i = 0; i < batchSize; i++)
+            expected[i] = forest.evaluate(contexts.get(i)).asDouble();
+
+        double forestNodeTime = time("GBDT node forest", expected, () -> {
+            double[] results = new double[batchSize];
+            for (int i = 0; i < batchSize; i++)
+                results[i] = evaluateTrees(forest.values(), contexts.get(i));
+            return results;
+        });
+        double flatTime = time("Flat forest", expected, () -> {
+            double[] results = new double[batchSize];
+            for (int i = 0; i < batchSize; i++)
+                results[i] = forest.flatForest().evaluate(contexts.get(i));
+            return results;
+        });
+        double quickScorerTime = time("Flat forest QuickScorer", expected, () -> forest.flatForest().evaluate(contexts));
+        System.out.println("Speedup flat forest: " + format(forestNodeTime / flatTime) + "x, " +
+                           "QuickScorer: " + format(forestNodeTime / quickScorerTime) + "x");
+    }
+
+    private double time(String name, double[] expected, Evaluation evaluation) {
+        int iterations = 200;
+        for (int i = 0; i < iterations; i++) // warmup
+            evaluation.evaluate();
+        long startTime = System.nanoTime();
+        double[] results = null;
+        for (int i = 0; i < iterations; i++)
+            results = evaluation.evaluate();
+        double millisPerBatch = (System.nanoTime() - startTime) / 1000_000.0 / iterations;
+
+        for (int i = 0; i < batchSize; i++)
+            if (Math.abs(results[i] - expected[i]) > 1e-9)
+                throw new IllegalStateException(name + " produced " + results[i] + " but expected " + expected[i]);
+        System.out.println(name + ": " + format(millisPerBatch) + " ms per batch of " + batchSize);
+        return millisPerBatch;
+    }
+
+    /** Evaluates the forest by walking each tree in the encoding of GBDTNode */
+    private double evaluateTrees(double[] values, ArrayContext context) {
+        int pc = 0;
+        double treeSum = 0;
+        while (pc < values.length) {
+            int nextTree = (int)values[pc++];
+            treeSum += GBDTNode.evaluate(values, pc, context);
+            pc += nextTree;
+        }
+        return treeSum;
+    }
+
+    private ExpressionNode forest() {
+        List<ExpressionNode> children = new ArrayList<>();
+        for (int i = 0; i < trees; i++)
+            children.add(tree(depth));
+        return new ArithmeticNode(children, Collections.nCopies(trees - 1, ArithmeticOperator.PLUS));
+    }
+
+    private ExpressionNode tree(int depth) {
+        if (depth == 0 || (depth < GBDTForestBenchmark.depth && random.nextDouble() < 0.1))
+            return new ConstantNode(new DoubleValue(random.nextDouble() - 0.5));
+        return new IfNode(new ComparisonNode(new ReferenceNode("f" + random.nextInt(featureCount)),
+                                             TruthOperator.SMALLER,
+                                             new ConstantNode(new DoubleValue(random.nextDouble()))),
+                          tree(depth - 1),
+                          tree(depth - 1));
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ENGLISH, "%.3f", value);
+    }
+
+    private interface Evaluation {
+        double[] evaluate();
+    }
+
+    public static void main(String[] args) {
+        new GBDTForestBenchmark().run();
+    }
+
+}
@@ -45,12 +45,11 @@ public class TensorOptimizerTestCase {
         assertWillOptimize("d0[1],d1[2],d2[3]", "d0[1],d1[2],d2[3]");
         assertWillOptimize("d0[1],d1[2],d2[3]", "d0[1],d1[2],d2[3]", "d0,d1,d2");
 
-        // Will not currently use reduce-join optimization
-        assertCantOptimize("d0[2],d1[3]", "d1[3]", "d0");  // reducing on a dimension not joining on
-        assertCantOptimize("d0[1],d1[2]", "d1[2],d2[3]", "d2");  // same
-        assertCantOptimize("d0[3]", "d0[3],d1[2]");  // reducing on more then we are combining
-        assertCantOptimize("d0[1],d2[3]", "d1[2],d2[3]");  // same
-        assertCantOptimize("d0[1],d1[2],d2[3]", "d0[1],d1[2],d2[3]", "d1,d2");  // reducing on less then joining on
+        assertWillOptimize("d0[2],d1[3]", "d1[3]", "d0");  // reducing on a dimension not joining on
+        assertWillOptimize("d0[1],d1[2]", "d1[2],d2[3]", "d2");  // same
+        assertWillOptimize("d0[3]", "d0[3],d1[2]");  // reducing on more then we are combining
+        assertWillOptimize("d0[1],d2[3]", "d1[2],d2[3]");  // same
+        assertWillOptimize("d0[1],d1[2],d2[3]", "d0[1],d1[2],d2[3]", "d1,d2");  // reducing on less then joining on
     }
 
     private void assertWillOptimize(String aType, String bType) throws ParseException {
@@ -0,0 +1,45 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.http.server;
+
+import com.yahoo.io.BufferPool;
+import com.yahoo.jdisc.Metric;
+
+/**
+ * Reports the buffers allocated by the shared buffer pool, and the fraction of buffers acquired from it
+ * which were reused, since the last report.
+ */
+class BufferPoolMetrics {
+
+    private final Metric metric;
+
+    /** The pool the counts below were last reported for. Guarded by this */
+    private BufferPool reportedPool = null;
+
+    /** The counts of the pool when they were last reported. Guarded by this */
+    private long reportedHits = 0;
+    private long reportedAllocated = 0;
+
+    BufferPoolMetrics(Metric metric) {
+        this.metric = metric;
+    }
+
+    synchronized void report() {
+        BufferPool pool = BufferPool.shared();
+        if (pool != reportedPool) { // the counts of a replacement pool start at 0
+            reportedPool = pool;
+            reportedHits = 0;
+            reportedAllocated = 0;
+        }
+        long hits = pool.cacheHits() + pool.poolHits();
+        long allocated = pool.allocated();
+        long newHits = hits - reportedHits;
+        long newAllocated = allocated - reportedAllocated;
+        reportedHits = hits;
+        reportedAllocated = allocated;
+
+        metric.add(MetricNames.BUFFER_POOL_ALLOCATED, newAllocated, null);
+        if (newHits + newAllocated > 0)
+            metric.set(MetricNames.BUFFER_POOL_HIT_RATE, (double) newHits / (newHits + newAllocated), null);
+    }
+
+}
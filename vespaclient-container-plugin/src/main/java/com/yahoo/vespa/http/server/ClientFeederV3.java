@@ -10,6 +10,7 @@ import com.yahoo.jdisc.Metric;
 import com.yahoo.jdisc.ReferencedResource;
 import com.yahoo.log.LogLevel;
 import com.yahoo.messagebus.Message;
+import com.yahoo.messagebus.Reply;
 import com.yahoo.messagebus.ReplyHandler;
 import com.yahoo.messagebus.Result;
 import com.yahoo.messagebus.shared.SharedSourceSession;
@@ -24,9 +25,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
@@ -39,6 +46,15 @@ import static com.yahoo.messagebus.ErrorCode.SEND_QUEUE_FULL;
  * avoid using a threadpool that has no effect with all the extra that comes with it. V2 has one instance per thread
  * on the client, while this is one instance for all threads.
  *
+ * Operations are sent without blocking. When the source session is full, they are queued here and sent as
+ * replies free capacity, so the thread handling a request is only held for as long as it takes to read it,
+ * unless this client has too many operations queued, in which case the request stream is not read further
+ * until some are sent. This lets the backpressure propagate to the client through the HTTP connection,
+ * while the client also sees the queued operations in the number of outstanding operations of each response.
+ *
+ * If the feed reader factory has a parsing executor, the operations of a request are read ahead and parsed
+ * in parallel by it, while they are still sent in the order of the request.
+ *
  * @author dybis
  */
 class ClientFeederV3 {
@@ -50,16 +66,36 @@ class ClientFeederV3 {
     private final ReferencedResource<SharedSourceSession> sourceSession;
     private final String clientId;
     private final ReplyHandler feedReplyHandler;
+    private final ReplyHandler replyHandler = this::handleReply;
     private final Metric metric;
     private Instant prevOpsPerSecTime = Instant.now();
     private double operationsForOpsPerSec = 0d;
 
     private final Object monitor = new Object();
+
+    private final FeedReaderFactory feedReaderFactory;
     private final StreamReaderV3 streamReaderV3;
     private final AtomicInteger ongoingRequests = new AtomicInteger(0);
     private String hostName;
     private AtomicInteger threadsAvailableForFeeding;
 
+    /** The max number of operations of this client waiting to be sent before we stop reading requests */
+    private static final int maxQueuedOperations = 100;
+
+    /** The max time to wait before trying to send queued operations again when no replies are pending */
+    private static final long sendRetryMillis = 10;
+
+    private final Object sendMonitor = new Object();
+
+    /** Operations accepted from the client, which are waiting for capacity in the source session. Guarded by sendMonitor */
+    private final Deque<DocumentOperationMessageV3> queuedOperations = new ArrayDeque<>();
+
+    /** Whether queued operations are being sent. Guarded by sendMonitor */
+    private boolean sendingQueued = false;
+
+    /** The number of operations of this client sent and not yet replied to */
+    private final AtomicInteger pendingOperations = new AtomicInteger(0);
+
     ClientFeederV3(
             ReferencedResource<SharedSourceSession> sourceSession,
             FeedReaderFactory feedReaderFactory,
@@ -73,6 +109,7 @@ class ClientFeederV3 {
         this.feedReplyHandler = feedReplyHandler;
         this.metric = metric;
         this.threadsAvailableForFeeding = threadsAvailableForFeeding;
+        this.feedReaderFactory = feedReaderFactory;
         this.streamReaderV3 = new StreamReaderV3(feedReaderFactory, docTypeManager);
         this.hostName = HostName.getLocalhost();
     }
@@ -92,9 +129,27 @@ class ClientFeederV3 {
                 break;
             }
         }
+        synchronized (sendMonitor) {
+            // These were reported as accepted, so they must be failed rather than forgotten.
+            // No further requests from this client reach this, so they are no longer outstanding.
+            for (DocumentOperationMessageV3 msg : queuedOperations) {
+                feedReplies.add(createOperationStatus(msg.getOperationId(),
+                                                      "Feeder was shut down before the operation was sent",
+                                                      ErrorCode.TRANSIENT_ERROR,
+                                                      false,
+                                                      msg.getMessage()));
+                outstandingOperations.decrementAndGet();
+            }
+            queuedOperations.clear();
+        }
         sourceSession.getReference().close();
     }
 
+    /** Returns the number of operations accepted from all clients and not yet reported back to them */
+    static int outstandingOperations() {
+        return outstandingOperations.get();
+    }
+
     private void transferPreviousRepliesToResponse(BlockingQueue<OperationStatus> operations) throws InterruptedException {
         OperationStatus status = feedReplies.poll();
         while (status != null) {
@@ -164,24 +219,19 @@ class ClientFeederV3 {
     }
 
     private Optional<DocumentOperationMessageV3> pullMessageFromRequest(
-            FeederSettings settings, InputStream requestInputStream, BlockingQueue<OperationStatus> repliesFromOldMessages) {
+            FeederSettings settings, InputStream requestInputStream, BlockingQueue<OperationStatus> repliesFromOldMessages,
+            Deque<ParsedOperation> parsedAhead) {
         while (true) {
-            Optional<String> operationId;
-            try {
-                operationId = streamReaderV3.getNextOperationId(requestInputStream);
-            } catch (IOException ioe) {
-                if (log.isLoggable(LogLevel.DEBUG)) {
-                    log.log(LogLevel.DEBUG, Exceptions.toMessageString(ioe), ioe);
-                }
-                return Optional.empty();
-            }
-            if (! operationId.isPresent()) {
+            Optional<ParsedOperation> operation = feedReaderFactory.parsingExecutor().isPresent()
+                                                  ? nextParsedAhead(settings, requestInputStream, parsedAhead)
+                                                  : nextOperation(settings, requestInputStream);
+            if (! operation.isPresent()) {
                 return Optional.empty();
             }
 
             DocumentOperationMessageV3 message;
             try {
-                message = getNextMessage(operationId.get(), requestInputStream, settings);
+                message = operation.get().message();
             } catch (Exception e) {
                 if (log.isLoggable(LogLevel.WARNING)) {
                     log.log(LogLevel.WARNING, Exceptions.toMessageString(e));
@@ -189,7 +239,7 @@ class ClientFeederV3 {
                 metric.add(MetricNames.PARSE_ERROR, 1, null);
 
                 repliesFromOldMessages.add(new OperationStatus(
-                        Exceptions.toMessageString(e), operationId.get(), ErrorCode.ERROR, false, ""));
+                        Exceptions.toMessageString(e), operation.get().operationId, ErrorCode.ERROR, false, ""));
 
                 continue;
             }
@@ -199,74 +249,198 @@ class ClientFeederV3 {
         }
     }
 
+    /** Returns the next operation of the request, to be parsed by this thread, or empty if there are no more */
+    private Optional<ParsedOperation> nextOperation(FeederSettings settings, InputStream requestInputStream) {
+        return nextOperationId(requestInputStream)
+                .map(operationId -> new ParsedOperation(operationId, () -> getNextMessage(operationId, requestInputStream, settings)));
+    }
+
+    /**
+     * Returns the next operation of the request, or empty if there are no more, after reading the operations
+     * following it up to the max to parse ahead, and submitting them to the parsing executor
+     */
+    private Optional<ParsedOperation> nextParsedAhead(FeederSettings settings,
+                                                      InputStream requestInputStream,
+                                                      Deque<ParsedOperation> parsedAhead) {
+        while (parsedAhead.size() < feedReaderFactory.maxParsedAhead()) {
+            Optional<String> operationId = nextOperationId(requestInputStream);
+            if (! operationId.isPresent()) break;
+
+            ParsedOperation operation;
+            try {
+                byte[] bytes = streamReaderV3.readNextOperation(requestInputStream);
+                operation = new ParsedOperation(operationId.get(),
+                                                () -> toMessage(operationId.get(), streamReaderV3.parseOperation(bytes, settings)));
+                try {
+                    feedReaderFactory.parsingExecutor().get().execute(operation.parsing);
+                }
+                catch (RejectedExecutionException e) {
+                    // parsed by this thread when reached
+                }
+            }
+            catch (IOException e) {
+                operation = new ParsedOperation(operationId.get(), () -> { throw e; });
+            }
+            parsedAhead.add(operation);
+        }
+        return Optional.ofNullable(parsedAhead.poll());
+    }
+
+    private Optional<String> nextOperationId(InputStream requestInputStream) {
+        try {
+            return streamReaderV3.getNextOperationId(requestInputStream);
+        } catch (IOException ioe) {
+            if (log.isLoggable(LogLevel.DEBUG)) {
+                log.log(LogLevel.DEBUG, Exceptions.toMessageString(ioe), ioe);
+            }
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Sends a message if possible, queues it if the source session is full, or returns the error of sending it.
+     * Queued messages are reported as accepted, and an error of sending them later is delivered as a reply.
+     */
     private Result sendMessage(FeederSettings settings,
                                DocumentOperationMessageV3 msg,
                                AtomicInteger threadsAvailableForFeeding) throws InterruptedException {
-        Result result = null;
-        while (result == null || result.getError().getCode() == SEND_QUEUE_FULL) {
-            msg.getMessage().pushHandler(feedReplyHandler);
-
-            if (settings.denyIfBusy && threadsAvailableForFeeding.get() < 1) {
-                return sourceSession.getResource().sendMessage(msg.getMessage());
-            } else {
-                result = sourceSession.getResource().sendMessageBlocking(msg.getMessage());
+        boolean denyIfBusy = settings.denyIfBusy && threadsAvailableForFeeding.get() < 1;
+        synchronized (sendMonitor) {
+            if (queuedOperations.isEmpty()) {
+                Result result = send(msg);
+                if (result.isAccepted() || result.getError().getCode() != SEND_QUEUE_FULL || denyIfBusy)
+                    return result;
             }
-            if (result.isAccepted()) {
-                return result;
+            else if (denyIfBusy) {
+                return new Result(SEND_QUEUE_FULL, queuedOperations.size() + " operations are waiting to be sent");
             }
-            Thread.sleep(100);
+            queuedOperations.addLast(msg);
+            awaitQueuedOperationsAtMost(maxQueuedOperations - 1, false);
         }
+        return Result.ACCEPTED;
+    }
+
+    private Result send(DocumentOperationMessageV3 msg) {
+        msg.getMessage().pushHandler(replyHandler);
+        pendingOperations.incrementAndGet(); // before sending, as the reply may arrive before it returns
+        Result result = sourceSession.getResource().sendMessage(msg.getMessage());
+        if ( ! result.isAccepted())
+            pendingOperations.decrementAndGet();
         return result;
     }
 
+    /** Sends queued operations in order, until all are sent or the source session is full */
+    void sendQueuedOperations() {
+        synchronized (sendMonitor) {
+            if (sendingQueued) return; // called from a reply to a message sent below
+            sendingQueued = true;
+            try {
+                while ( ! queuedOperations.isEmpty()) {
+                    DocumentOperationMessageV3 msg = queuedOperations.peekFirst();
+                    Result result;
+                    try {
+                        result = send(msg);
+                    } catch (RuntimeException e) {
+                        result = new Result(com.yahoo.messagebus.ErrorCode.FATAL_ERROR, Exceptions.toMessageString(e));
+                    }
+                    if ( ! result.isAccepted() && result.getError().getCode() == SEND_QUEUE_FULL) break;
+
+                    queuedOperations.removeFirst();
+                    if ( ! result.isAccepted())
+                        feedReplies.add(createOperationStatus(msg, result));
+                }
+            }
+            finally {
+                sendingQueued = false;
+                sendMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until at most the given number of operations are queued. Queued operations are sent when replies arrive,
+     * but if this client has no pending operations, or we should wait for all to be sent, they are also retried here.
+     */
+    private void awaitQueuedOperationsAtMost(int count, boolean untilPending) throws InterruptedException {
+        synchronized (sendMonitor) {
+            while (queuedOperations.size() > count) {
+                if (untilPending && pendingOperations.get() > 0) return; // replies will send the rest
+                sendMonitor.wait(sendRetryMillis);
+                sendQueuedOperations();
+            }
+        }
+    }
+
+    private void handleReply(Reply reply) {
+        try {
+            feedReplyHandler.handleReply(reply);
+        }
+        finally {
+            pendingOperations.decrementAndGet();
+            sendQueuedOperations();
+        }
+    }
+
     private void feed(FeederSettings settings,
                       InputStream requestInputStream,
                       BlockingQueue<OperationStatus> repliesFromOldMessages,
                       AtomicInteger threadsAvailableForFeeding) throws InterruptedException {
-        while (true) {
-            Optional<DocumentOperationMessageV3> msg = pullMessageFromRequest(settings, requestInputStream, repliesFromOldMessages);
+        Deque<ParsedOperation> parsedAhead = new ArrayDeque<>();
+        try {
+            while (true) {
+                Optional<DocumentOperationMessageV3> msg = pullMessageFromRequest(settings, requestInputStream,
+                                                                                  repliesFromOldMessages, parsedAhead);
 
-            if (! msg.isPresent()) {
-                break;
-            }
-            setMessageParameters(msg.get(), settings);
+                if (! msg.isPresent()) {
+                    break;
+                }
+                setMessageParameters(msg.get(), settings);
+
+                Result result;
+                try {
+                    result = sendMessage(settings, msg.get(), threadsAvailableForFeeding);
+
+                } catch  (RuntimeException e) {
+                    repliesFromOldMessages.add(createOperationStatus(msg.get().getOperationId(),
+                                                                     Exceptions.toMessageString(e),
+                                                                     ErrorCode.ERROR,
+                                                                     false,
+                                                                     msg.get().getMessage()));
+                    continue;
+                }
 
-            Result result;
-            try {
-                result = sendMessage(settings, msg.get(), threadsAvailableForFeeding);
-
-            } catch  (RuntimeException e) {
-                repliesFromOldMessages.add(createOperationStatus(msg.get().getOperationId(),
-                                                                 Exceptions.toMessageString(e),
-                                                                 ErrorCode.ERROR,
-                                                                 false,
-                                                                 msg.get().getMessage()));
-                continue;
+                if (result.isAccepted()) {
+                    outstandingOperations.incrementAndGet();
+                    updateOpsPerSec();
+                    log(LogLevel.DEBUG, "Sent message successfully, document id: ", msg.get().getOperationId());
+                } else {
+                    repliesFromOldMessages.add(createOperationStatus(msg.get(), result));
+                    continue;
+                }
             }
+        }
+        finally {
+            // Queued operations are sent when replies arrive, so we only need to wait if there are none pending
+            awaitQueuedOperationsAtMost(0, true);
+        }
+    }
 
-            if (result.isAccepted()) {
-                outstandingOperations.incrementAndGet();
-                updateOpsPerSec();
-                log(LogLevel.DEBUG, "Sent message successfully, document id: ", msg.get().getOperationId());
-            } else if (!result.getError().isFatal()) {
-                repliesFromOldMessages.add(createOperationStatus(msg.get().getOperationId(),
-                                                                 result.getError().getMessage(),
-                                                                 ErrorCode.TRANSIENT_ERROR,
-                                                                 false,
-                                                                 msg.get().getMessage()));
-                continue;
-            } else {
-                // should probably not happen, but everybody knows stuff that
-                // shouldn't happen, happens all the time
-                boolean isConditionNotMet = result.getError().getCode() == DocumentProtocol.ERROR_TEST_AND_SET_CONDITION_FAILED;
-                repliesFromOldMessages.add(createOperationStatus(msg.get().getOperationId(),
-                                                                 result.getError().getMessage(),
-                                                                 ErrorCode.ERROR,
-                                                                 isConditionNotMet,
-                                                                 msg.get().getMessage()));
-                continue;
-            }
+    private OperationStatus createOperationStatus(DocumentOperationMessageV3 msg, Result result) {
+        if ( ! result.getError().isFatal()) {
+            return createOperationStatus(msg.getOperationId(),
+                                         result.getError().getMessage(),
+                                         ErrorCode.TRANSIENT_ERROR,
+                                         false,
+                                         msg.getMessage());
         }
+        // should probably not happen, but everybody knows stuff that
+        // shouldn't happen, happens all the time
+        boolean isConditionNotMet = result.getError().getCode() == DocumentProtocol.ERROR_TEST_AND_SET_CONDITION_FAILED;
+        return createOperationStatus(msg.getOperationId(),
+                                     result.getError().getMessage(),
+                                     ErrorCode.ERROR,
+                                     isConditionNotMet,
+                                     msg.getMessage());
     }
 
     private OperationStatus createOperationStatus(String id, String message,
@@ -282,8 +456,10 @@ class ClientFeederV3 {
     protected DocumentOperationMessageV3 getNextMessage(String operationId,
                                                         InputStream requestInputStream,
                                                         FeederSettings settings) throws Exception {
-        FeedOperation operation = streamReaderV3.getNextOperation(requestInputStream, settings);
+        return toMessage(operationId, streamReaderV3.getNextOperation(requestInputStream, settings));
+    }
 
+    private DocumentOperationMessageV3 toMessage(String operationId, FeedOperation operation) {
         // This is a bit hard to set up while testing, so we accept that things are not perfect.
         if (sourceSession.getResource().session() != null) {
             metric.set(
@@ -302,6 +478,32 @@ class ClientFeederV3 {
         return message;
     }
 
+    /** An operation of a request, which is parsed by the first of the parsing executor and the request thread to get to it */
+    private static class ParsedOperation {
+
+        final String operationId;
+        final FutureTask<DocumentOperationMessageV3> parsing;
+
+        ParsedOperation(String operationId, Callable<DocumentOperationMessageV3> parser) {
+            this.operationId = operationId;
+            this.parsing = new FutureTask<>(parser);
+        }
+
+        /** Returns the message of this operation, or null if the feed ends here */
+        DocumentOperationMessageV3 message() throws Exception {
+            parsing.run(); // does nothing if this is already parsed, or being parsed by another thread
+            try {
+                return parsing.get();
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception)
+                    throw (Exception)e.getCause();
+                throw e;
+            }
+        }
+
+    }
+
     private void setMessageParameters(DocumentOperationMessageV3 msg, FeederSettings settings) {
         msg.getMessage().setContext(new ReplyContext(msg.getOperationId(), feedReplies));
         if (settings.traceLevel != null) {
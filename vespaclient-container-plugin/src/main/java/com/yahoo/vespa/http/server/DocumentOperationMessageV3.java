@@ -4,6 +4,7 @@ package com.yahoo.vespa.http.server;
 import com.yahoo.document.DocumentPut;
 import com.yahoo.document.DocumentRemove;
 import com.yahoo.document.DocumentUpdate;
+import com.yahoo.document.json.SerializedDocumentFeedOperation;
 import com.yahoo.documentapi.messagebus.protocol.PutDocumentMessage;
 import com.yahoo.documentapi.messagebus.protocol.RemoveDocumentMessage;
 import com.yahoo.documentapi.messagebus.protocol.UpdateDocumentMessage;
@@ -55,6 +56,9 @@ class DocumentOperationMessageV3 {
     }
 
     private static DocumentOperationMessageV3 newPutMessage(FeedOperation op, String operationId) {
+        if (op instanceof SerializedDocumentFeedOperation)
+            return newSerializedPutMessage((SerializedDocumentFeedOperation)op, operationId);
+
         DocumentPut put = new DocumentPut(op.getDocument());
         put.setCondition(op.getCondition());
         Message msg = new PutDocumentMessage(put);
@@ -63,6 +67,14 @@ class DocumentOperationMessageV3 {
         return new DocumentOperationMessageV3(id, msg);
     }
 
+    private static DocumentOperationMessageV3 newSerializedPutMessage(SerializedDocumentFeedOperation op, String operationId) {
+        Message msg = PutDocumentMessage.createSerialized(op.getDocumentId(), op.getCondition(),
+                                                          op.getSerializedDocument(), op.getTypeManager());
+
+        String id = (operationId == null) ? op.getDocumentId().toString() : operationId;
+        return new DocumentOperationMessageV3(id, msg);
+    }
+
     static DocumentOperationMessageV3 create(FeedOperation operation, String operationId, Metric metric) {
         switch (operation.getType()) {
             case DOCUMENT:
@@ -10,6 +10,7 @@ import com.yahoo.container.jdisc.messagebus.SessionCache;
 import com.yahoo.document.DocumentTypeManager;
 import com.yahoo.document.config.DocumentmanagerConfig;
 import com.yahoo.documentapi.metrics.DocumentApiMetrics;
+import com.yahoo.io.BufferPool;
 import com.yahoo.jdisc.Metric;
 import com.yahoo.jdisc.ReferencedResource;
 import com.yahoo.log.LogLevel;
@@ -22,6 +23,8 @@ import com.yahoo.yolean.Exceptions;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -39,6 +42,9 @@ public class FeedHandlerV3 extends LoggingRequestHandler {
     private DocumentTypeManager docTypeManager;
     private final Map<String, ClientFeederV3> clientFeederByClientId = new HashMap<>();
     private final ScheduledThreadPoolExecutor cron;
+    private final ExecutorService parsingExecutor;
+    private final FeedReaderFactory feedReaderFactory;
+    private final BufferPoolMetrics bufferPoolMetrics;
     private final SessionCache sessionCache;
     protected final ReplyHandler feedReplyHandler;
     private final Metric metric;
@@ -51,13 +57,34 @@ public class FeedHandlerV3 extends LoggingRequestHandler {
                          SessionCache sessionCache,
                          ThreadpoolConfig threadpoolConfig,
                          DocumentApiMetrics metricsHelper) {
+        this(parentCtx, documentManagerConfig, sessionCache, threadpoolConfig, new FeedHandlerConfig.Builder().build(), metricsHelper);
+    }
+
+    public FeedHandlerV3(LoggingRequestHandler.Context parentCtx,
+                         DocumentmanagerConfig documentManagerConfig,
+                         SessionCache sessionCache,
+                         ThreadpoolConfig threadpoolConfig,
+                         FeedHandlerConfig feedHandlerConfig,
+                         DocumentApiMetrics metricsHelper) {
         super(parentCtx);
+        if (feedHandlerConfig.parsingThreads() > 0) {
+            parsingExecutor = Executors.newFixedThreadPool(feedHandlerConfig.parsingThreads(),
+                                                           ThreadFactoryFactory.getDaemonThreadFactory("feedhandlerv3.parsing"));
+            feedReaderFactory = new FeedReaderFactory(parsingExecutor, feedHandlerConfig.maxParsedAhead());
+        } else {
+            parsingExecutor = null;
+            feedReaderFactory = new FeedReaderFactory();
+        }
         docTypeManager = new DocumentTypeManager(documentManagerConfig);
         this.sessionCache = sessionCache;
         feedReplyHandler = new FeedReplyReader(parentCtx.getMetric(), metricsHelper);
         cron = new ScheduledThreadPoolExecutor(1, ThreadFactoryFactory.getThreadFactory("feedhandlerv3.cron"));
         cron.scheduleWithFixedDelay(this::removeOldClients, 16, 11, TimeUnit.MINUTES);
+        cron.scheduleWithFixedDelay(this::sendQueuedOperations, 100, 100, TimeUnit.MILLISECONDS);
         this.metric = parentCtx.getMetric();
+        configureSharedBufferPool(feedHandlerConfig);
+        bufferPoolMetrics = new BufferPoolMetrics(metric);
+        cron.scheduleWithFixedDelay(bufferPoolMetrics::report, 10, 10, TimeUnit.SECONDS);
         // 40% of the threads can be blocking on feeding before we deny requests.
         if (threadpoolConfig != null) {
             threadsAvailableForFeeding = new AtomicInteger(Math.max((int) (0.4 * threadpoolConfig.maxthreads()), 1));
@@ -67,6 +94,14 @@ public class FeedHandlerV3 extends LoggingRequestHandler {
         }
     }
 
+    /** Replaces the shared buffer pool if the configured limits are not those it has */
+    private static void configureSharedBufferPool(FeedHandlerConfig config) {
+        BufferPool pool = BufferPool.shared();
+        if (pool.maxPooledBytesPerSizeClass() == config.bufferPoolBytesPerSizeClass() &&
+            pool.maxPooledCapacity() == Integer.highestOneBit(config.bufferPoolMaxCapacity())) return;
+        BufferPool.setShared(new BufferPool(false, config.bufferPoolBytesPerSizeClass(), config.bufferPoolMaxCapacity()));
+    }
+
     public void injectDocumentManangerForTests(DocumentTypeManager docTypeManager) {
         this.docTypeManager = docTypeManager;
     }
@@ -82,7 +117,7 @@ public class FeedHandlerV3 extends LoggingRequestHandler {
                 SourceSessionParams sourceSessionParams = sourceSessionParams(request);
                 clientFeederByClientId.put(clientId,
                                            new ClientFeederV3(retainSource(sessionCache, sourceSessionParams),
-                                                              new FeedReaderFactory(),
+                                                              feedReaderFactory,
                                                               docTypeManager,
                                                               clientId,
                                                               metric,
@@ -117,6 +152,8 @@ public class FeedHandlerV3 extends LoggingRequestHandler {
         Thread destroyer = new Thread(() -> {
             super.destroy();
             cron.shutdown();
+            if (parsingExecutor != null)
+                parsingExecutor.shutdown();
             synchronized (monitor) {
                 for (ClientFeederV3 client : clientFeederByClientId.values()) {
                     client.kill();
@@ -150,6 +187,17 @@ public class FeedHandlerV3 extends LoggingRequestHandler {
         return params;
     }
 
+    /**
+     * Clients send their queued operations as replies arrive. This sends those of clients which got no replies
+     * because other clients of the same session used all its capacity.
+     */
+    private void sendQueuedOperations() {
+        synchronized (monitor) {
+            for (ClientFeederV3 client : clientFeederByClientId.values())
+                client.sendQueuedOperations();
+        }
+    }
+
     private void removeOldClients() {
         synchronized (monitor) {
             for (Iterator<Map.Entry<String, ClientFeederV3>> iterator = clientFeederByClientId
@@ -2,12 +2,15 @@
 package com.yahoo.vespa.http.server;
 
 import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.document.json.JsonDocumentTranscoder;
 import com.yahoo.document.json.JsonFeedReader;
 import com.yahoo.vespa.http.client.config.FeedParams;
 import com.yahoo.vespaxmlparser.FeedReader;
 import com.yahoo.vespaxmlparser.VespaXMLFeedReader;
 
 import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.Executor;
 
 /**
  * Class for creating FeedReader based on dataFormat.
@@ -15,6 +18,37 @@ import java.io.InputStream;
  */
 public class FeedReaderFactory {
 
+    /** The transcoder used by JSON feed readers in each thread, as transcoders are not thread safe */
+    private final ThreadLocal<JsonDocumentTranscoder> transcoders = new ThreadLocal<>();
+
+    private final Optional<Executor> parsingExecutor;
+    private final int maxParsedAhead;
+
+    /** Creates a factory of readers which are used in the thread handling the request */
+    public FeedReaderFactory() {
+        this.parsingExecutor = Optional.empty();
+        this.maxParsedAhead = 0;
+    }
+
+    /**
+     * Creates a factory of readers which are used by tasks run by the given executor, such that the operations
+     * of a request are parsed in parallel
+     *
+     * @param parsingExecutor the executor running the tasks parsing each operation
+     * @param maxParsedAhead the max number of operations of a request to parse ahead of the one being sent
+     */
+    public FeedReaderFactory(Executor parsingExecutor, int maxParsedAhead) {
+        if (maxParsedAhead < 1) throw new IllegalArgumentException("maxParsedAhead must be positive, not " + maxParsedAhead);
+        this.parsingExecutor = Optional.of(parsingExecutor);
+        this.maxParsedAhead = maxParsedAhead;
+    }
+
+    /** Returns the executor which should parse operations in parallel, or empty to parse them in the request thread */
+    public Optional<Executor> parsingExecutor() { return parsingExecutor; }
+
+    /** Returns the max number of operations of a request to parse ahead of the one being sent when parsing in parallel */
+    public int maxParsedAhead() { return maxParsedAhead; }
+
     /**
      * Creates FeedReader
      * @param inputStream source of feed data
@@ -34,10 +68,19 @@ public class FeedReaderFactory {
                     throw new RuntimeException("Could not create VespaXMLFeedReader", e);
                 }
             case JSON_UTF8:
-                return new JsonFeedReader(inputStream, docTypeManager);
+                return new JsonFeedReader(inputStream, docTypeManager, transcoder(docTypeManager));
             default:
                 throw new IllegalStateException("Can not create feed reader for format: " + dataFormat);
         }
     }
 
+    private JsonDocumentTranscoder transcoder(DocumentTypeManager docTypeManager) {
+        JsonDocumentTranscoder transcoder = transcoders.get();
+        if (transcoder == null || transcoder.getTypeManager() != docTypeManager) {
+            transcoder = new JsonDocumentTranscoder(docTypeManager);
+            transcoders.set(transcoder);
+        }
+        return transcoder;
+    }
+
 }
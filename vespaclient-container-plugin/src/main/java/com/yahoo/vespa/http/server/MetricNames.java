@@ -21,6 +21,8 @@ public final class MetricNames {
     public static final String PARSE_ERROR = PREFIX + "parse_error";
     public static final String SUCCEEDED = PREFIX + "succeeded";
     public static final String PENDING = PREFIX + "pending";
+    public static final String BUFFER_POOL_HIT_RATE = PREFIX + "buffer_pool_hit_rate";
+    public static final String BUFFER_POOL_ALLOCATED = PREFIX + "buffer_pool_allocated";
 
     private MetricNames() {
     }
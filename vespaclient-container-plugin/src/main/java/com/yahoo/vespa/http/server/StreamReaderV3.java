@@ -8,6 +8,7 @@ import com.yahoo.vespa.http.server.util.ByteLimitedInputStream;
 import com.yahoo.vespaxmlparser.FeedOperation;
 import com.yahoo.vespaxmlparser.FeedReader;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Optional;
@@ -42,6 +43,22 @@ public class StreamReaderV3 {
         return op;
     }
 
+    /** Reads the bytes of the next operation, to be parsed by {@link #parseOperation} */
+    public byte[] readNextOperation(InputStream requestInputStream) throws IOException {
+        int length = readByteLength(requestInputStream);
+        byte[] operation = new byte[length];
+        int read = requestInputStream.readNBytes(operation, 0, length);
+        if (read < length)
+            throw new IOException("Expected " + length + " bytes of operation, but the stream ended after " + read);
+        return operation;
+    }
+
+    /** Parses the bytes of an operation read by {@link #readNextOperation} */
+    public FeedOperation parseOperation(byte[] operation, FeederSettings settings) throws Exception {
+        FeedReader reader = feedReaderFactory.createReader(new ByteArrayInputStream(operation), docTypeManager, settings.dataFormat);
+        return reader.read();
+    }
+
     public Optional<String> getNextOperationId(InputStream requestInputStream) throws IOException {
         StringBuilder idBuf = new StringBuilder(100);
         int c;
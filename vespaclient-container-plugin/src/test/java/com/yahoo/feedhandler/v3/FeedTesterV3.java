@@ -22,6 +22,7 @@ import com.yahoo.vespa.http.client.config.FeedParams;
 import com.yahoo.vespa.http.client.core.ErrorCode;
 import com.yahoo.vespa.http.client.core.Headers;
 import com.yahoo.vespa.http.client.core.OperationStatus;
+import com.yahoo.vespa.http.server.FeedHandlerConfig;
 import com.yahoo.vespa.http.server.FeedHandlerV3;
 import com.yahoo.vespa.http.server.MetricNames;
 import com.yahoo.vespa.http.server.ReplyContext;
@@ -31,6 +32,7 @@ import org.mockito.stubbing.Answer;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -76,6 +78,28 @@ public class FeedTesterV3 {
         assertThat(Splitter.on("\n").splitToList(result).size(), is(101));
     }
 
+    @Test
+    public void feedManyDocumentsParsedInParallel() throws Exception {
+        final FeedHandlerV3 feedHandlerV3 = setupFeederHandler(new FeedHandlerConfig.Builder().parsingThreads(4).maxParsedAhead(8).build());
+        HttpResponse httpResponse = feedHandlerV3.handle(createRequest(100));
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        httpResponse.render(outStream);
+        List<String> replies = Splitter.on("\n").omitEmptyStrings().splitToList(Utf8.toString(outStream.toByteArray()));
+        assertThat(replies.size(), is(100));
+        for (int i = 0; i < 100; i++)
+            assertThat("Operations are sent in the order of the request", replies.get(i), is("123" + i + " OK message trace"));
+    }
+
+    @Test
+    public void feedBrokenDocumentsParsedInParallel() throws Exception {
+        final FeedHandlerV3 feedHandlerV3 = setupFeederHandler(new FeedHandlerConfig.Builder().parsingThreads(4).build());
+        HttpResponse httpResponse = feedHandlerV3.handle(createBrokenRequest());
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        httpResponse.render(outStream);
+        assertThat(Utf8.toString(outStream.toByteArray()), startsWith("1230 ERROR "));
+        assertThat(metric.get(MetricNames.PARSE_ERROR), is(1L));
+    }
+
     private static DocumentTypeManager createDoctypeManager() {
         DocumentTypeManager docTypeManager = new DocumentTypeManager();
         DocumentType documentType = new DocumentType("testdocument");
@@ -116,6 +140,10 @@ public class FeedTesterV3 {
     }
 
     private FeedHandlerV3 setupFeederHandler() throws Exception {
+        return setupFeederHandler(new FeedHandlerConfig.Builder().build());
+    }
+
+    private FeedHandlerV3 setupFeederHandler(FeedHandlerConfig feedHandlerConfig) throws Exception {
         Executor threadPool = Executors.newCachedThreadPool();
         DocumentmanagerConfig docMan = new DocumentmanagerConfig(new DocumentmanagerConfig.Builder().enablecompression(true));
         FeedHandlerV3 feedHandlerV3 = new FeedHandlerV3(
@@ -123,6 +151,7 @@ public class FeedTesterV3 {
                 docMan,
                 null /* session cache */,
                 null /* thread pool config */,
+                feedHandlerConfig,
                 new DocumentApiMetrics(MetricReceiver.nullImplementation, "test")) {
             @Override
             protected ReferencedResource<SharedSourceSession> retainSource(
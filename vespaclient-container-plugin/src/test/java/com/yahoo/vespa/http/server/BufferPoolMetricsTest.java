@@ -0,0 +1,44 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.http.server;
+
+import com.yahoo.feedhandler.v3.CollectingMetric;
+import com.yahoo.io.BufferPool;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BufferPoolMetricsTest {
+
+    private final BufferPool original = BufferPool.shared();
+
+    @After
+    public void restoreSharedPool() {
+        BufferPool.setShared(original);
+    }
+
+    @Test
+    public void requireThatTheBuffersAllocatedSinceTheLastReportAreReported() {
+        BufferPool pool = new BufferPool(false, 1024 * 1024);
+        BufferPool.setShared(pool);
+        CollectingMetric metric = new CollectingMetric();
+        BufferPoolMetrics metrics = new BufferPoolMetrics(metric);
+
+        pool.acquire(1000);
+        pool.acquire(1000);
+        metrics.report();
+        assertEquals(2, metric.get(MetricNames.BUFFER_POOL_ALLOCATED));
+
+        pool.release(pool.acquire(1000));
+        pool.acquire(1000);
+        metrics.report();
+        assertEquals(3, metric.get(MetricNames.BUFFER_POOL_ALLOCATED));
+
+        BufferPool replacement = new BufferPool(false, 1024 * 1024);
+        BufferPool.setShared(replacement);
+        replacement.acquire(1000);
+        metrics.report();
+        assertEquals("The counts of a replacement pool are reported from 0", 4, metric.get(MetricNames.BUFFER_POOL_ALLOCATED));
+    }
+
+}
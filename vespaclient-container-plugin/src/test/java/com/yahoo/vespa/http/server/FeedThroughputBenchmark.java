@@ -0,0 +1,139 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.vespa.http.server;
+
+import com.yahoo.concurrent.ThreadFactoryFactory;
+import com.yahoo.container.jdisc.HttpRequest;
+import com.yahoo.document.DocumentTypeManager;
+import com.yahoo.jdisc.ReferencedResource;
+import com.yahoo.jdisc.References;
+import com.yahoo.messagebus.ErrorCode;
+import com.yahoo.messagebus.Message;
+import com.yahoo.messagebus.MessageBus;
+import com.yahoo.messagebus.MessageBusParams;
+import com.yahoo.messagebus.ReplyHandler;
+import com.yahoo.messagebus.Result;
+import com.yahoo.messagebus.SourceSessionParams;
+import com.yahoo.messagebus.shared.SharedMessageBus;
+import com.yahoo.messagebus.shared.SharedSourceSession;
+import com.yahoo.vespa.http.client.core.Headers;
+import com.yahoo.vespaxmlparser.FeedOperation;
+import com.yahoo.vespaxmlparser.MockFeedReaderFactory;
+
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the throughput of feeding through {@link ClientFeederV3} to a stand-in for message bus,
+ * which accepts a limited number of pending operations and replies to each after a fixed latency,
+ * and how long the thread handling the feed request is held compared to the time until all operations
+ * are replied to.
+ *
+ * Run with the main method.
+ */
+public class FeedThroughputBenchmark {
+
+    private static final int operations = 100_000;
+
+    public void run() throws Exception {
+        out("Warming up...");
+        for (int i = 0; i < 3; i++)
+            feed(100, 100);
+        for (int window : new int[] { 10, 100, 1000 }) {
+            for (int latencyMicros : new int[] { 100, 1000 })
+                measure(window, latencyMicros);
+        }
+    }
+
+    private void measure(int window, int latencyMicros) throws Exception {
+        long[] nanos = feed(window, latencyMicros);
+        out("Window " + window + ", latency " + latencyMicros + " us: " +
+            (operations * 1_000_000_000L / nanos[1]) + " operations/s, " +
+            "request handled in " + (nanos[0] / 1000000) + " ms, all replies in " + (nanos[1] / 1000000) + " ms");
+    }
+
+    /** Returns the nanoseconds until the request is handled and until all operations are replied to */
+    private long[] feed(int window, int latencyMicros) throws Exception {
+        DestinationSession session = new DestinationSession(window, latencyMicros);
+        CountDownLatch replies = new CountDownLatch(operations);
+        ClientFeederV3 feeder = new Feeder(new ReferencedResource<>(session, References.fromResource(session)),
+                                           reply -> replies.countDown());
+        HttpRequest request = HttpRequest.createTestRequest("http://localhost:19020/reserved-for-internal-use/feedapi",
+                                                            com.yahoo.jdisc.http.HttpRequest.Method.POST,
+                                                            new MetaStream(new byte[operations]));
+        request.getJDiscRequest().headers().add(Headers.VERSION, "3");
+        request.getJDiscRequest().headers().add(Headers.CLIENT_ID, "benchmark");
+
+        long startTime = System.nanoTime();
+        feeder.handleRequest(request);
+        long handledTime = System.nanoTime();
+        replies.await();
+        long repliedTime = System.nanoTime();
+        session.destination.shutdown();
+        return new long[] { handledTime - startTime, repliedTime - startTime };
+    }
+
+    private static void out(String s) {
+        System.out.println(s);
+    }
+
+    /** A feeder which creates a remove operation from each line of the request */
+    private static class Feeder extends ClientFeederV3 {
+
+        Feeder(ReferencedResource<SharedSourceSession> sourceSession, ReplyHandler feedReplyHandler) {
+            super(sourceSession, new MockFeedReaderFactory(), new DocumentTypeManager(), "benchmark",
+                  new DummyMetric(), feedReplyHandler, new AtomicInteger(200));
+        }
+
+        @Override
+        protected DocumentOperationMessageV3 getNextMessage(String operationId, InputStream requestInputStream,
+                                                            FeederSettings settings) throws Exception {
+            while (true) {
+                int data = requestInputStream.read();
+                if (data == -1 || data == (char)'\n') break;
+            }
+            return DocumentOperationMessageV3.newRemoveMessage(FeedOperation.INVALID, operationId);
+        }
+
+    }
+
+    /** Accepts a limited number of pending messages, and replies to each after a fixed latency */
+    private static class DestinationSession extends SharedSourceSession {
+
+        private final int window;
+        private final long latencyMicros;
+        private final AtomicInteger pending = new AtomicInteger();
+        final ScheduledExecutorService destination =
+                Executors.newSingleThreadScheduledExecutor(ThreadFactoryFactory.getDaemonThreadFactory("destination"));
+
+        DestinationSession(int window, long latencyMicros) {
+            super(new SharedMessageBus(new MessageBus(new MockNetwork(), new MessageBusParams())), new SourceSessionParams());
+            this.window = window;
+            this.latencyMicros = latencyMicros;
+        }
+
+        @Override
+        public Result sendMessage(Message msg) {
+            if (pending.incrementAndGet() > window) {
+                pending.decrementAndGet();
+                return new Result(ErrorCode.SEND_QUEUE_FULL, "queue full");
+            }
+            destination.schedule(() -> reply(msg), latencyMicros, TimeUnit.MICROSECONDS);
+            return Result.ACCEPTED;
+        }
+
+        private void reply(Message msg) {
+            pending.decrementAndGet();
+            msg.popHandler().handleReply(new MockReply(msg.getContext()));
+        }
+
+    }
+
+    public static void main(String[] args) throws Exception {
+        new FeedThroughputBenchmark().run();
+    }
+
+}
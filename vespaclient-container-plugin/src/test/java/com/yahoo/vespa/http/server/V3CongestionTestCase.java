@@ -26,10 +26,11 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
-
-
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 
@@ -86,7 +87,7 @@ public class V3CongestionTestCase {
                 new MockFeedReaderFactory(),
                 null /*DocTypeManager*/,
                 "clientID",
-                null/*metric*/,
+                new DummyMetric(),
                 new FeedReplyReader(null/*metric*/, new DocumentApiMetrics(MetricReceiver.nullImplementation, "tester")),
                 threadsAvail);
     }
@@ -132,6 +133,80 @@ public class V3CongestionTestCase {
         return new ReferencedResource<>(session, References.fromResource(session));
     }
 
+    // A mock for message bus which accepts one message at the time, and replies when told to.
+    private static class OneAtATimeSession extends SharedSourceSession {
+
+        final List<Message> sent = new ArrayList<>();
+        Message pending = null;
+
+        OneAtATimeSession() {
+            super(new SharedMessageBus(new MessageBus(new MockNetwork(), new MessageBusParams())), new SourceSessionParams());
+        }
+
+        @Override
+        public synchronized Result sendMessage(Message msg) {
+            if (pending != null) return new Result(ErrorCode.SEND_QUEUE_FULL, "queue full");
+            pending = msg;
+            sent.add(msg);
+            return Result.ACCEPTED;
+        }
+
+        void reply() {
+            Message msg;
+            synchronized (this) {
+                msg = pending;
+                pending = null;
+            }
+            msg.popHandler().handleReply(new MockReply(msg.getContext()));
+        }
+
+    }
+
+    @Test
+    public void testQueuedOperationsAreSentWhenRepliesArrive() throws IOException {
+        request = HttpRequest.createTestRequest("http://foo.bar:19020/reserved-for-internal-use/feedapi",
+                                                com.yahoo.jdisc.http.HttpRequest.Method.POST,
+                                                new MetaStream(new byte[] { 1, 1 }));
+        OneAtATimeSession session = new OneAtATimeSession();
+        clientFeederV3 = new ClientFeederWithMocks(new ReferencedResource<>(session, References.fromResource(session)),
+                                                   new MockFeedReaderFactory(),
+                                                   null /*DocTypeManager*/,
+                                                   "clientID",
+                                                   new DummyMetric(),
+                                                   reply -> {},
+                                                   threadsAvail);
+
+        clientFeederV3.handleRequest(request);
+        assertEquals("The request is handled without waiting for the queued operation to be sent", 1, session.sent.size());
+        session.reply();
+        assertEquals("The queued operation is sent when the first is replied to", 2, session.sent.size());
+    }
+
+    @Test
+    public void testQueuedOperationsAreFailedWhenKilled() throws IOException {
+        request = HttpRequest.createTestRequest("http://foo.bar:19020/reserved-for-internal-use/feedapi",
+                                                com.yahoo.jdisc.http.HttpRequest.Method.POST,
+                                                new MetaStream(new byte[] { 1, 1, 1 }));
+        OneAtATimeSession session = new OneAtATimeSession();
+        clientFeederV3 = new ClientFeederWithMocks(new ReferencedResource<>(session, References.fromResource(session)),
+                                                   new MockFeedReaderFactory(),
+                                                   null /*DocTypeManager*/,
+                                                   "clientID",
+                                                   new DummyMetric(),
+                                                   reply -> {},
+                                                   threadsAvail);
+
+        int outstandingBefore = ClientFeederV3.outstandingOperations();
+        clientFeederV3.handleRequest(request);
+        assertEquals(1, session.sent.size());
+        assertEquals("All operations are accepted", outstandingBefore + 3, ClientFeederV3.outstandingOperations());
+
+        clientFeederV3.kill();
+        assertEquals("The queued operations are no longer outstanding", outstandingBefore + 1, ClientFeederV3.outstandingOperations());
+        session.reply();
+        assertEquals("The queued operations are not sent", 1, session.sent.size());
+    }
+
     @Test
     public void testRetriesWhenThreadsAvailable() throws IOException {
         request.getJDiscRequest().headers().add(Headers.DENY_IF_BUSY, "true");
@@ -1,8 +1,11 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.compress;
 
+import com.yahoo.io.BufferPool;
 import net.jpountz.lz4.LZ4Compressor;
 import net.jpountz.lz4.LZ4Factory;
+
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Optional;
 
@@ -80,10 +83,18 @@ public class Compressor {
                 int dataSize = uncompressedSize.isPresent() ? uncompressedSize.get() : data.length;
                 if (dataSize < compressMinSizeBytes) return new Compression(CompressionType.INCOMPRESSIBLE, dataSize, data);
                 LZ4Compressor compressor = level < 7 ? factory.fastCompressor() : factory.highCompressor();
-                byte[] compressedData = compressor.compress(data, 0, dataSize);
-                if (compressedData.length + 8 >= dataSize * compressionThresholdFactor)
-                    return new Compression(CompressionType.INCOMPRESSIBLE, dataSize, data);
-                return new Compression(CompressionType.LZ4, dataSize, compressedData);
+                // Compress into a pooled buffer of the max compressed size, and copy out only what is used
+                ByteBuffer buffer = BufferPool.shared().acquire(compressor.maxCompressedLength(dataSize));
+                try {
+                    byte[] compressedData = buffer.array();
+                    int compressedSize = compressor.compress(data, 0, dataSize, compressedData, 0, compressedData.length);
+                    if (compressedSize + 8 >= dataSize * compressionThresholdFactor)
+                        return new Compression(CompressionType.INCOMPRESSIBLE, dataSize, data);
+                    return new Compression(CompressionType.LZ4, dataSize, Arrays.copyOf(compressedData, compressedSize));
+                }
+                finally {
+                    BufferPool.shared().release(buffer);
+                }
             default:
                 throw new IllegalArgumentException(requestedCompression + " is not supported");
         }
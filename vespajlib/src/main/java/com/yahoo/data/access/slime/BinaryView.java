@@ -0,0 +1,510 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.data.access.slime;
+
+import com.yahoo.data.access.ArrayTraverser;
+import com.yahoo.data.access.Inspector;
+import com.yahoo.data.access.ObjectTraverser;
+import com.yahoo.data.access.Type;
+import com.yahoo.data.access.simple.JsonRender;
+import com.yahoo.text.Utf8;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only view of a value in slime binary format, which is decoded lazily as it is accessed:
+ * Looking up an entry or field only scans the bytes of the containing array or object, and no objects are
+ * created for values which are not accessed. Strings can be read directly from the underlying buffer
+ * by way of {@link #buffer()}, {@link #valueOffset()} and {@link #valueLength()}.
+ *
+ * All the views of the same binary slime share the same buffer, which must not be modified.
+ *
+ * This is multithread safe.
+ */
+public final class BinaryView implements Inspector {
+
+    private static final BinaryView invalid = new BinaryView(null, -1);
+
+    private static final int NIX = 0, BOOL = 1, LONG = 2, DOUBLE = 3, STRING = 4, DATA = 5, ARRAY = 6, OBJECT = 7;
+    /** The types by slime binary type id, which coincides with the order of types */
+    private static final Type[] types = Type.values();
+
+    private final Buffer buffer;
+
+    /** The position of the type and meta byte of this value, or -1 if this is invalid */
+    private final int position;
+
+    /**
+     * The positions of the entries of this if it is an array, or of the symbol and value of each field
+     * if it is an object, or null if not computed yet
+     */
+    private volatile int[] children = null;
+
+    private BinaryView(Buffer buffer, int position) {
+        this.buffer = buffer;
+        this.position = position;
+    }
+
+    /** Returns a view of the binary slime in the given array */
+    public static BinaryView inspect(byte[] data) {
+        return inspect(data, 0, data.length);
+    }
+
+    /**
+     * Returns a view of the binary slime at the given range in the given array.
+     * The data is validated once here, such that reading views of it never reads outside the range.
+     * If the data is not valid binary slime the returned view is invalid, and {@link #error} tells why.
+     *
+     * @throws IllegalArgumentException if the range is outside the array
+     */
+    public static BinaryView inspect(byte[] data, int offset, int length) {
+        Buffer buffer = new Buffer(data, offset, length);
+        return new BinaryView(buffer, buffer.root);
+    }
+
+    /** Returns why the data viewed by this is not valid binary slime, or null if it is (or this is not a root) */
+    public String error() { return buffer == null ? null : buffer.error; }
+
+    /** Returns the buffer holding the data of this. This must not be modified. */
+    public byte[] buffer() { return buffer.data; }
+
+    /** Returns the offset of the bytes of this in the buffer if this is a string or data value */
+    public int valueOffset() {
+        if (type() != Type.STRING && type() != Type.DATA) throw new IllegalStateException("invalid data extraction!");
+        return buffer.afterSize(position);
+    }
+
+    /** Returns the number of bytes of this in the buffer if this is a string or data value */
+    public int valueLength() {
+        if (type() != Type.STRING && type() != Type.DATA) throw new IllegalStateException("invalid data extraction!");
+        return (int)buffer.size(position);
+    }
+
+    @Override
+    public Inspector inspect() { return this; }
+
+    @Override
+    public boolean valid() { return position >= 0; }
+
+    @Override
+    public Type type() {
+        if (position < 0) return Type.EMPTY;
+        return types[typeId()];
+    }
+
+    private int typeId() { return position < 0 ? NIX : buffer.data[position] & 0x7; }
+
+    private int meta() { return (buffer.data[position] & 0xff) >>> 3; }
+
+    private boolean is(int typeId) { return valid() && typeId() == typeId; }
+
+    private boolean is(int typeIdA, int typeIdB) { return valid() && (typeId() == typeIdA || typeId() == typeIdB); }
+
+    private boolean is(int typeIdA, int typeIdB, int typeIdC) {
+        return valid() && (typeId() == typeIdA || typeId() == typeIdB || typeId() == typeIdC);
+    }
+
+    @Override
+    public int entryCount() { return is(ARRAY) ? (int)buffer.size(position) : 0; }
+
+    @Override
+    public int fieldCount() { return is(OBJECT) ? (int)buffer.size(position) : 0; }
+
+    @Override
+    public boolean asBool() {
+        if ( ! is(NIX, BOOL)) throw new IllegalStateException("invalid data extraction!");
+        return typeId() == BOOL && meta() != 0;
+    }
+
+    @Override
+    public long asLong() {
+        if ( ! is(NIX, LONG, DOUBLE)) throw new IllegalStateException("invalid data extraction!");
+        return longValue();
+    }
+
+    @Override
+    public double asDouble() {
+        if ( ! is(NIX, DOUBLE, LONG)) throw new IllegalStateException("invalid data extraction!");
+        return doubleValue();
+    }
+
+    @Override
+    public String asString() {
+        if ( ! is(NIX, STRING)) throw new IllegalStateException("invalid data extraction!");
+        return typeId() == NIX ? "" : Utf8.toString(buffer.data, valueOffset(), valueLength());
+    }
+
+    @Override
+    public byte[] asUtf8() {
+        if ( ! is(NIX, STRING)) throw new IllegalStateException("invalid data extraction!");
+        return bytes();
+    }
+
+    @Override
+    public byte[] asData() {
+        if ( ! is(NIX, DATA)) throw new IllegalStateException("invalid data extraction!");
+        return bytes();
+    }
+
+    @Override
+    public boolean asBool(boolean defaultValue) { return is(BOOL) ? meta() != 0 : defaultValue; }
+
+    @Override
+    public long asLong(long defaultValue) { return is(LONG, DOUBLE) ? longValue() : defaultValue; }
+
+    @Override
+    public double asDouble(double defaultValue) { return is(DOUBLE, LONG) ? doubleValue() : defaultValue; }
+
+    @Override
+    public String asString(String defaultValue) { return is(STRING) ? asString() : defaultValue; }
+
+    @Override
+    public byte[] asUtf8(byte[] defaultValue) { return is(STRING) ? bytes() : defaultValue; }
+
+    @Override
+    public byte[] asData(byte[] defaultValue) { return is(DATA) ? bytes() : defaultValue; }
+
+    private long longValue() {
+        switch (typeId()) {
+            case LONG: return buffer.longValue(position);
+            case DOUBLE: return (long)buffer.doubleValue(position);
+            default: return 0;
+        }
+    }
+
+    private double doubleValue() {
+        switch (typeId()) {
+            case DOUBLE: return buffer.doubleValue(position);
+            case LONG: return buffer.longValue(position);
+            default: return 0;
+        }
+    }
+
+    private byte[] bytes() {
+        if (typeId() == NIX) return new byte[0];
+        int offset = valueOffset();
+        return Arrays.copyOfRange(buffer.data, offset, offset + valueLength());
+    }
+
+    @Override
+    public void traverse(ArrayTraverser at) {
+        if ( ! is(ARRAY)) return;
+        int[] children = children();
+        for (int i = 0; i < children.length; i++)
+            at.entry(i, new BinaryView(buffer, children[i]));
+    }
+
+    @Override
+    public void traverse(ObjectTraverser ot) {
+        if ( ! is(OBJECT)) return;
+        int[] children = children();
+        for (int i = 0; i < children.length; i += 2)
+            ot.field(buffer.symbols[children[i]], new BinaryView(buffer, children[i + 1]));
+    }
+
+    @Override
+    public Inspector entry(int index) {
+        if ( ! is(ARRAY)) return invalid;
+        int[] children = children();
+        if (index < 0 || index >= children.length) return invalid;
+        return new BinaryView(buffer, children[index]);
+    }
+
+    @Override
+    public Inspector field(String name) {
+        if ( ! is(OBJECT)) return invalid;
+        Integer symbol = buffer.symbolIds.get(name);
+        if (symbol == null) return invalid;
+        int[] children = children();
+        for (int i = 0; i < children.length; i += 2) {
+            if (children[i] == symbol)
+                return new BinaryView(buffer, children[i + 1]);
+        }
+        return invalid;
+    }
+
+    @Override
+    public Iterable<Inspector> entries() {
+        List<Inspector> list = new ArrayList<>(entryCount());
+        traverse((ArrayTraverser)(index, value) -> list.add(value));
+        return list;
+    }
+
+    @Override
+    public Iterable<Map.Entry<String, Inspector>> fields() {
+        List<Map.Entry<String, Inspector>> list = new ArrayList<>(fieldCount());
+        traverse((ObjectTraverser)(name, value) -> list.add(new AbstractMap.SimpleImmutableEntry<>(name, value)));
+        return list;
+    }
+
+    /** Returns the positions of the children of this container, computing them on first access */
+    private int[] children() {
+        if (children != null) return children;
+
+        int size = (int)buffer.size(position);
+        boolean isObject = typeId() == OBJECT;
+        int[] children = new int[isObject ? size * 2 : size];
+        int next = buffer.afterSize(position);
+        for (int i = 0; i < size; i++) {
+            if (isObject) {
+                children[2 * i] = (int)buffer.readCompressedLong(next);
+                next = buffer.afterCompressedLong(next);
+                children[2 * i + 1] = next;
+            }
+            else {
+                children[i] = next;
+            }
+            next = buffer.skip(next);
+        }
+        return this.children = children;
+    }
+
+    /** Views are equal if they view the same value in the same buffer */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if ( ! (o instanceof BinaryView)) return false;
+        BinaryView other = (BinaryView)o;
+        return buffer == other.buffer && position == other.position;
+    }
+
+    @Override
+    public int hashCode() { return position; }
+
+    /** Returns this as compact json, in the same form as {@link SlimeAdapter#toString} */
+    @Override
+    public String toString() {
+        return JsonRender.render(this, new Utf8StringEncoder(new StringBuilder())).toString();
+    }
+
+    /** Encodes like slime json: Only control characters are escaped */
+    private static final class Utf8StringEncoder extends JsonRender.StringEncoder {
+
+        private static final char[] hex = "0123456789ABCDEF".toCharArray();
+
+        private final StringBuilder out;
+
+        Utf8StringEncoder(StringBuilder out) {
+            super(out, true);
+            this.out = out;
+        }
+
+        @Override
+        protected void encodeSTRING(String value) {
+            out.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':  out.append('\\').append('"'); break;
+                    case '\\': out.append('\\').append('\\'); break;
+                    case '\b': out.append('\\').append('b'); break;
+                    case '\f': out.append('\\').append('f'); break;
+                    case '\n': out.append('\\').append('n'); break;
+                    case '\r': out.append('\\').append('r'); break;
+                    case '\t': out.append('\\').append('t'); break;
+                    default:
+                        if (c > 0x1f)
+                            out.append(c);
+                        else
+                            out.append("\\u00").append(hex[(c >> 4) & 0xf]).append(hex[c & 0xf]);
+                }
+            }
+            out.append('"');
+        }
+
+    }
+
+    /** The binary slime data shared by all the views of it, with its decoded symbol table */
+    private static final class Buffer {
+
+        final byte[] data;
+        final String[] symbols;
+        final Map<String, Integer> symbolIds;
+
+        /** The position after the data */
+        private final int end;
+
+        /** The position of the root value, or -1 if there is none */
+        final int root;
+
+        /** A description of why the data is not valid binary slime, or null if it is */
+        final String error;
+
+        Buffer(byte[] data, int offset, int length) {
+            if (offset < 0 || length < 0 || offset + length > data.length)
+                throw new IllegalArgumentException("Invalid range [" + offset + ", " + (offset + length) + ") " +
+                                                   "of array of length " + data.length);
+            this.data = data;
+            this.end = offset + length;
+            String[] symbols = new String[0];
+            Map<String, Integer> symbolIds = new HashMap<>();
+            int root = -1;
+            String error = null;
+            try {
+                int position = offset;
+                if (length > 0) {
+                    position = checkedAfterCompressedLong(offset);
+                    symbols = new String[(int)checkedCount(offset, readCompressedLong(offset))];
+                }
+                for (int i = 0; i < symbols.length; i++) {
+                    int symbolStart = checkedAfterCompressedLong(position);
+                    int symbolEnd = checkedAdvance(symbolStart, readCompressedLong(position));
+                    symbols[i] = Utf8.toString(data, symbolStart, symbolEnd - symbolStart);
+                    symbolIds.put(symbols[i], i);
+                    position = symbolEnd;
+                }
+                if (length > 0) {
+                    validate(position, symbols.length);
+                    root = position;
+                }
+            }
+            catch (IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+            this.symbols = symbols;
+            this.symbolIds = symbolIds;
+            this.root = root;
+            this.error = error;
+        }
+
+        /**
+         * Returns the position after the value at the given position, and throws IllegalArgumentException
+         * if it, or any value nested in it, is not within the data.
+         */
+        private int validate(int at, int symbolCount) {
+            checkedAdvance(at, 1);
+            switch (data[at] & 0x7) {
+                case NIX: case BOOL: return at + 1;
+                case LONG: case DOUBLE: return checkedAdvance(at + 1, (data[at] & 0xff) >>> 3);
+                case STRING: case DATA: return checkedAdvance(checkedAfterSize(at), size(at));
+                case ARRAY: {
+                    int next = checkedAfterSize(at);
+                    long size = checkedCount(next, size(at));
+                    for (long i = 0; i < size; i++)
+                        next = validate(next, symbolCount);
+                    return next;
+                }
+                default: { // OBJECT
+                    int next = checkedAfterSize(at);
+                    long size = checkedCount(next, 2 * size(at)) / 2;
+                    for (long i = 0; i < size; i++) {
+                        int valueAt = checkedAfterCompressedLong(next);
+                        long symbol = readCompressedLong(next);
+                        if (symbol < 0 || symbol >= symbolCount)
+                            throw new IllegalArgumentException("Invalid binary slime: Unknown symbol " + symbol + " at " + next);
+                        next = validate(valueAt, symbolCount);
+                    }
+                    return next;
+                }
+            }
+        }
+
+        /** Returns the position after the compressed long at the given position, which must end within the data */
+        private int checkedAfterCompressedLong(int at) {
+            int next = at;
+            while (next < end && (data[next] & 0x80) != 0)
+                next++;
+            if (next >= end)
+                throw new IllegalArgumentException("Invalid binary slime: Number at " + at + " exceeds the data");
+            return next + 1;
+        }
+
+        /** Returns the position after the size of the value at the given position, which must end within the data */
+        private int checkedAfterSize(int at) {
+            return ((data[at] & 0xff) >>> 3) != 0 ? at + 1 : checkedAfterCompressedLong(at + 1);
+        }
+
+        /** Returns the given position advanced by the given number of bytes, which must be within the data */
+        private int checkedAdvance(int at, long bytes) {
+            return at + (int)checkedCount(at, bytes);
+        }
+
+        /** Returns the given count of values starting at the given position, which cannot exceed the remaining bytes */
+        private long checkedCount(int at, long count) {
+            if (count < 0 || count > end - at)
+                throw new IllegalArgumentException("Invalid binary slime: Value at " + at + " exceeds the data");
+            return count;
+        }
+
+        /** Reads a compressed long at the given position */
+        long readCompressedLong(int at) {
+            long next = data[at++];
+            long value = (next & 0x7f);
+            int shift = 7;
+            while ((next & 0x80) != 0) {
+                next = data[at++];
+                value |= ((next & 0x7f) << shift);
+                shift += 7;
+            }
+            return value;
+        }
+
+        /** Returns the position after the compressed long at the given position */
+        int afterCompressedLong(int at) {
+            while ((data[at] & 0x80) != 0)
+                at++;
+            return at + 1;
+        }
+
+        /** Returns the size (byte count or number of children) of the value at the given position */
+        long size(int at) {
+            int meta = (data[at] & 0xff) >>> 3;
+            return meta == 0 ? readCompressedLong(at + 1) : meta - 1;
+        }
+
+        /** Returns the position after the size of the value at the given position */
+        int afterSize(int at) {
+            int meta = (data[at] & 0xff) >>> 3;
+            if (meta != 0) return at + 1;
+            return afterCompressedLong(at + 1);
+        }
+
+        long longValue(int at) {
+            int bytes = (data[at] & 0xff) >>> 3;
+            long encoded = 0;
+            for (int i = 0; i < bytes; i++)
+                encoded |= (data[at + 1 + i] & 0xffL) << (8 * i);
+            return (encoded >>> 1) ^ (-(encoded & 0x1)); // zigzag
+        }
+
+        double doubleValue(int at) {
+            int bytes = (data[at] & 0xff) >>> 3;
+            long encoded = 0;
+            for (int i = 0; i < bytes; i++)
+                encoded |= (data[at + 1 + i] & 0xffL) << (56 - 8 * i);
+            return Double.longBitsToDouble(encoded);
+        }
+
+        /** Returns the position after the value at the given position */
+        int skip(int at) {
+            int type = data[at] & 0x7;
+            int meta = (data[at] & 0xff) >>> 3;
+            switch (type) {
+                case NIX: case BOOL: return at + 1;
+                case LONG: case DOUBLE: return at + 1 + meta;
+                case STRING: case DATA: return afterSize(at) + (int)size(at);
+                case ARRAY: {
+                    long size = size(at);
+                    int next = afterSize(at);
+                    for (long i = 0; i < size; i++)
+                        next = skip(next);
+                    return next;
+                }
+                case OBJECT: {
+                    long size = size(at);
+                    int next = afterSize(at);
+                    for (long i = 0; i < size; i++)
+                        next = skip(afterCompressedLong(next));
+                    return next;
+                }
+                default: throw new IllegalStateException("Unknown slime type " + type);
+            }
+        }
+
+    }
+
+}
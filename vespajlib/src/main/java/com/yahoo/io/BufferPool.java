@@ -0,0 +1,206 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of byte buffers in size classes of powers of two, used to avoid allocating a new buffer
+ * each time some data is serialized to a temporary buffer.
+ *
+ * A buffer acquired from this has at least the requested capacity. Released buffers are kept in a small cache
+ * local to the releasing thread, and overflow from that to a bounded pool shared by all threads. Buffers are
+ * allocated when neither has a buffer of the requested size class, and released buffers are dropped when both are full.
+ * Buffers larger than the max pooled capacity are neither pooled nor cached. By default this is the largest size
+ * class cached locally, 16 kB, such that the unused buffers kept are small and few.
+ *
+ * This is multithread safe.
+ */
+public final class BufferPool {
+
+    /** The smallest size class, 1 kB */
+    private static final int minSizeClass = 10;
+
+    /** The largest size class, 16 Mb */
+    private static final int maxSizeClass = 24;
+
+    /** The largest size class cached locally to each thread, 16 kB */
+    private static final int maxLocalSizeClass = 14;
+
+    /** The number of buffers of each size class cached locally to each thread */
+    private static final int maxLocalBuffers = 2;
+
+    /** The default max bytes of unused buffers of each size class kept in the shared pool */
+    public static final int defaultMaxPooledBytesPerSizeClass = 256 * 1024;
+
+    /** The default capacity of the largest buffers pooled, the largest size class cached locally */
+    public static final int defaultMaxPooledCapacity = 1 << maxLocalSizeClass;
+
+    private static volatile BufferPool shared = new BufferPool(false, defaultMaxPooledBytesPerSizeClass);
+
+    private final boolean direct;
+    private final int maxPooledBytesPerSizeClass;
+
+    /** The largest size class pooled by this */
+    private final int maxPooledSizeClass;
+    private final ArrayBlockingQueue<ByteBuffer>[] pooled;
+    private final ThreadLocal<ArrayDeque<ByteBuffer>[]> cached = ThreadLocal.withInitial(BufferPool::createCache);
+
+    private volatile boolean enabled = true;
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder poolHits = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Creates a pool of buffers of at most the default max pooled capacity
+     *
+     * @param direct whether the buffers of this should be allocated outside the heap
+     * @param maxPooledBytesPerSizeClass the max bytes of unused buffers of each size class to keep in the shared pool.
+     *                                   At least one buffer of each size class is kept.
+     */
+    public BufferPool(boolean direct, int maxPooledBytesPerSizeClass) {
+        this(direct, maxPooledBytesPerSizeClass, defaultMaxPooledCapacity);
+    }
+
+    /**
+     * Creates a pool of buffers
+     *
+     * @param direct whether the buffers of this should be allocated outside the heap
+     * @param maxPooledBytesPerSizeClass the max bytes of unused buffers of each size class to keep in the shared pool.
+     *                                   At least one buffer of each size class is kept.
+     * @param maxPooledCapacity the capacity of the largest buffers to pool, between 1 kB and 16 Mb.
+     *                          Larger buffers are allocated on each acquire and dropped on release.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(boolean direct, int maxPooledBytesPerSizeClass, int maxPooledCapacity) {
+        if (maxPooledBytesPerSizeClass < 1)
+            throw new IllegalArgumentException("Max pooled bytes must be positive, not " + maxPooledBytesPerSizeClass);
+        if (maxPooledCapacity < 1 << minSizeClass || maxPooledCapacity > 1 << maxSizeClass)
+            throw new IllegalArgumentException("Max pooled capacity must be between " + (1 << minSizeClass) + " and " +
+                                               (1 << maxSizeClass) + ", not " + maxPooledCapacity);
+        this.direct = direct;
+        this.maxPooledBytesPerSizeClass = maxPooledBytesPerSizeClass;
+        this.maxPooledSizeClass = 31 - Integer.numberOfLeadingZeros(maxPooledCapacity);
+        this.pooled = new ArrayBlockingQueue[maxPooledSizeClass + 1];
+        for (int sizeClass = minSizeClass; sizeClass <= maxPooledSizeClass; sizeClass++)
+            pooled[sizeClass] = new ArrayBlockingQueue<>(Math.max(1, maxPooledBytesPerSizeClass >> sizeClass));
+    }
+
+    /**
+     * Returns the pool of heap buffers shared by the serialization code of this process.
+     * As these are heap buffers, the array of each buffer acquired from this is accessible.
+     */
+    public static BufferPool shared() { return shared; }
+
+    /**
+     * Replaces the pool returned by {@link #shared}, to change its limits. Buffers acquired from the previous
+     * shared pool may be released to this one. The pool must hold heap buffers.
+     */
+    public static void setShared(BufferPool pool) {
+        if (pool.isDirect())
+            throw new IllegalArgumentException("The shared pool must hold heap buffers");
+        shared = pool;
+    }
+
+    /**
+     * Returns an empty, big endian buffer with at least the given capacity from this,
+     * or a newly allocated buffer if this has none with that capacity.
+     */
+    public ByteBuffer acquire(int minimumCapacity) {
+        int sizeClass = Math.max(minSizeClass, 32 - Integer.numberOfLeadingZeros(Math.max(0, minimumCapacity - 1)));
+        if (sizeClass > maxPooledSizeClass || ! enabled) {
+            allocated.increment();
+            return allocate(minimumCapacity);
+        }
+
+        if (sizeClass <= maxLocalSizeClass) {
+            ByteBuffer buffer = cached.get()[sizeClass].poll();
+            if (buffer != null) {
+                cacheHits.increment();
+                return buffer;
+            }
+        }
+        ByteBuffer buffer = pooled[sizeClass].poll();
+        if (buffer != null) {
+            poolHits.increment();
+            return buffer;
+        }
+        allocated.increment();
+        return allocate(1 << sizeClass);
+    }
+
+    /**
+     * Returns a buffer to this. This may be a buffer acquired from this, or one which replaces it,
+     * such as a grown copy. The buffer must not be accessed by the caller after this.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.isDirect() != direct || buffer.isReadOnly() || (! direct && buffer.arrayOffset() != 0)) return;
+        // Buffers go in the largest size class they can serve, so grown copies of any size are reused
+        int sizeClass = 31 - Integer.numberOfLeadingZeros(buffer.capacity());
+        if (sizeClass < minSizeClass || sizeClass > maxPooledSizeClass || ! enabled) return;
+
+        buffer.clear();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (sizeClass <= maxLocalSizeClass) {
+            ArrayDeque<ByteBuffer> cache = cached.get()[sizeClass];
+            if (cache.size() < maxLocalBuffers) {
+                cache.push(buffer);
+                return;
+            }
+        }
+        if ( ! pooled[sizeClass].offer(buffer))
+            dropped.increment();
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArrayDeque<ByteBuffer>[] createCache() {
+        ArrayDeque<ByteBuffer>[] cache = new ArrayDeque[maxLocalSizeClass + 1];
+        for (int sizeClass = minSizeClass; sizeClass <= maxLocalSizeClass; sizeClass++)
+            cache[sizeClass] = new ArrayDeque<>(maxLocalBuffers);
+        return cache;
+    }
+
+    /**
+     * Sets whether this should pool buffers. When disabled, this allocates a new buffer on each acquire and
+     * drops released buffers. This is on by default.
+     */
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    /** Returns whether the buffers of this are allocated outside the heap */
+    public boolean isDirect() { return direct; }
+
+    /** Returns the max bytes of unused buffers of each size class kept in the shared pool of this */
+    public int maxPooledBytesPerSizeClass() { return maxPooledBytesPerSizeClass; }
+
+    /** Returns the capacity of the largest buffers pooled by this */
+    public int maxPooledCapacity() { return 1 << maxPooledSizeClass; }
+
+    /** Returns the number of buffers acquired from the cache of the acquiring thread since this was created */
+    public long cacheHits() { return cacheHits.sum(); }
+
+    /** Returns the number of buffers acquired from the shared pool since this was created */
+    public long poolHits() { return poolHits.sum(); }
+
+    /** Returns the total number of buffers allocated by this since it was created */
+    public long allocated() { return allocated.sum(); }
+
+    /** Returns the number of released buffers dropped because this was full since it was created */
+    public long dropped() { return dropped.sum(); }
+
+    /** Returns the fraction of acquired buffers which were reused rather than allocated, or 0 if none are acquired */
+    public double hitRate() {
+        double hits = cacheHits() + poolHits();
+        double acquired = hits + allocated();
+        return acquired == 0 ? 0 : hits / acquired;
+    }
+
+}
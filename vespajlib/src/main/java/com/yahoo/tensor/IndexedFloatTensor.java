@@ -28,6 +28,14 @@ class IndexedFloatTensor extends IndexedTensor {
     @Override
     public float getFloat(long valueIndex) { return values[(int)valueIndex]; }
 
+    @Override
+    double[] toDoubleArray() {
+        double[] doubleValues = new double[values.length];
+        for (int i = 0; i < values.length; i++)
+            doubleValues[i] = values[i];
+        return doubleValues;
+    }
+
     @Override
     public IndexedTensor withType(TensorType type) {
         throwOnIncompatibleType(type);
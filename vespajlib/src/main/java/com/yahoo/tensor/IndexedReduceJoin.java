@@ -0,0 +1,234 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor;
+
+import com.yahoo.tensor.functions.Reduce;
+import com.yahoo.tensor.functions.ScalarFunctions;
+
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Joins two indexed tensors and reduces the result in one pass over the value arrays of the arguments,
+ * without creating the joined tensor.
+ *
+ * The join is evaluated as a loop nest over all the dimensions of the joined space, where each
+ * argument and the result moves by a fixed stride (possibly 0) along each dimension. The loops are ordered
+ * such that the smallest strides are innermost, and the innermost loop is specialized for the
+ * common cases where it is a contiguous dot product (reducing over the innermost dimension of both arguments)
+ * or a contiguous scaled vector addition (reducing over a dimension which is not innermost), which the
+ * JIT compiler can unroll and vectorize.
+ */
+final class IndexedReduceJoin {
+
+    private final double[] a, b;
+    private final DoubleBinaryOperator combinator;
+    private final Reduce.Aggregator aggregator;
+    private final boolean multiplySum;
+
+    /** The size of each loop, outermost first */
+    private final int[] sizes;
+    /** The stride of each argument and the result in each loop */
+    private final int[] aStrides, bStrides, resultStrides;
+
+    private final TensorType resultType;
+    private final DimensionSizes resultSizes;
+    /** The number of joined values reduced into each result value */
+    private final long reducedSize;
+
+    IndexedReduceJoin(IndexedTensor a, IndexedTensor b, TensorType resultType,
+                      DoubleBinaryOperator combinator, Reduce.Aggregator aggregator) {
+        this.a = a.toDoubleArray();
+        this.b = b.toDoubleArray();
+        this.combinator = combinator;
+        this.aggregator = aggregator;
+        this.multiplySum = combinator instanceof ScalarFunctions.Multiply &&
+                           (aggregator == Reduce.Aggregator.sum || aggregator == Reduce.Aggregator.avg);
+        this.resultType = resultType;
+
+        TensorType joinedType = new TensorType.Builder(a.type(), b.type()).build();
+        int dimensions = joinedType.dimensions().size();
+        long[] joinedSizes = new long[dimensions];
+        long[] aJoinedStrides = strides(a, joinedType);
+        long[] bJoinedStrides = strides(b, joinedType);
+        long[] resultJoinedStrides = new long[dimensions];
+        DimensionSizes.Builder resultSizes = new DimensionSizes.Builder(resultType.dimensions().size());
+        long reducedSize = 1;
+        for (int i = 0; i < dimensions; i++) {
+            String name = joinedType.dimensions().get(i).name();
+            joinedSizes[i] = Math.min(sizeOf(name, a), sizeOf(name, b));
+            int resultIndex = resultType.indexOfDimension(name).orElse(-1);
+            if (resultIndex >= 0)
+                resultSizes.set(resultIndex, joinedSizes[i]);
+            else
+                reducedSize *= joinedSizes[i];
+        }
+        this.resultSizes = resultSizes.build();
+        this.reducedSize = reducedSize;
+        long resultStride = 1;
+        for (int i = dimensions - 1; i >= 0; i--) {
+            if ( ! resultType.indexOfDimension(joinedType.dimensions().get(i).name()).isPresent()) continue;
+            resultJoinedStrides[i] = resultStride;
+            resultStride *= joinedSizes[i];
+        }
+
+        // Order the loops by decreasing total stride, such that the innermost loop accesses the closest values
+        Integer[] order = new Integer[dimensions];
+        for (int i = 0; i < dimensions; i++)
+            order[i] = i;
+        Arrays.sort(order, (i, j) -> Long.compare(aJoinedStrides[j] + bJoinedStrides[j] + resultJoinedStrides[j],
+                                                  aJoinedStrides[i] + bJoinedStrides[i] + resultJoinedStrides[i]));
+        int loops = Math.max(1, dimensions);
+        this.sizes = new int[loops];
+        this.aStrides = new int[loops];
+        this.bStrides = new int[loops];
+        this.resultStrides = new int[loops];
+        Arrays.fill(sizes, 1);
+        for (int i = 0; i < dimensions; i++) {
+            sizes[i] = (int)joinedSizes[order[i]];
+            aStrides[i] = (int)aJoinedStrides[order[i]];
+            bStrides[i] = (int)bJoinedStrides[order[i]];
+            resultStrides[i] = (int)resultJoinedStrides[order[i]];
+        }
+    }
+
+    IndexedTensor evaluate() {
+        double[] result = new double[(int)resultSizes.totalSize()];
+        if (aggregator == Reduce.Aggregator.count) {
+            Arrays.fill(result, reducedSize);
+            return IndexedTensor.Builder.of(resultType, resultSizes, result).build();
+        }
+
+        Arrays.fill(result, initialValue(aggregator));
+        for (int size : sizes)
+            if (size == 0) return IndexedTensor.Builder.of(resultType, resultSizes, result).build();
+
+        int inner = sizes.length - 1;
+        int[] indexes = new int[inner];
+        int aIndex = 0, bIndex = 0, resultIndex = 0;
+        while (true) {
+            if (multiplySum)
+                multiplySum(aIndex, bIndex, resultIndex, result);
+            else
+                reduceJoin(aIndex, bIndex, resultIndex, result);
+
+            int d = inner - 1;
+            for (; d >= 0; d--) {
+                aIndex += aStrides[d];
+                bIndex += bStrides[d];
+                resultIndex += resultStrides[d];
+                if (++indexes[d] < sizes[d]) break;
+                aIndex -= aStrides[d] * indexes[d];
+                bIndex -= bStrides[d] * indexes[d];
+                resultIndex -= resultStrides[d] * indexes[d];
+                indexes[d] = 0;
+            }
+            if (d < 0) break;
+        }
+
+        if (aggregator == Reduce.Aggregator.avg) {
+            for (int i = 0; i < result.length; i++)
+                result[i] /= reducedSize;
+        }
+        return IndexedTensor.Builder.of(resultType, resultSizes, result).build();
+    }
+
+    /** The innermost loop of a product sum */
+    private void multiplySum(int aIndex, int bIndex, int resultIndex, double[] result) {
+        int size = sizes[sizes.length - 1];
+        int aStride = aStrides[aStrides.length - 1];
+        int bStride = bStrides[bStrides.length - 1];
+        int resultStride = resultStrides[resultStrides.length - 1];
+
+        if (resultStride == 0) { // dot product
+            if (aStride == 1 && bStride == 1) {
+                result[resultIndex] += dotProduct(a, aIndex, b, bIndex, size);
+            }
+            else {
+                double sum = 0;
+                for (int i = 0; i < size; i++)
+                    sum += a[aIndex + i * aStride] * b[bIndex + i * bStride];
+                result[resultIndex] += sum;
+            }
+        }
+        else if (aStride == 0 && bStride == 1 && resultStride == 1) { // scaled vector addition
+            scaledAdd(a[aIndex], b, bIndex, result, resultIndex, size);
+        }
+        else if (bStride == 0 && aStride == 1 && resultStride == 1) { // scaled vector addition
+            scaledAdd(b[bIndex], a, aIndex, result, resultIndex, size);
+        }
+        else {
+            for (int i = 0; i < size; i++)
+                result[resultIndex + i * resultStride] += a[aIndex + i * aStride] * b[bIndex + i * bStride];
+        }
+    }
+
+    private static double dotProduct(double[] a, int aIndex, double[] b, int bIndex, int size) {
+        // Separate sums allow the additions to execute in parallel
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for (; i + 3 < size; i += 4) {
+            sum0 += a[aIndex + i    ] * b[bIndex + i    ];
+            sum1 += a[aIndex + i + 1] * b[bIndex + i + 1];
+            sum2 += a[aIndex + i + 2] * b[bIndex + i + 2];
+            sum3 += a[aIndex + i + 3] * b[bIndex + i + 3];
+        }
+        for (; i < size; i++)
+            sum0 += a[aIndex + i] * b[bIndex + i];
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    private static void scaledAdd(double scale, double[] vector, int vectorIndex, double[] result, int resultIndex, int size) {
+        for (int i = 0; i < size; i++)
+            result[resultIndex + i] += scale * vector[vectorIndex + i];
+    }
+
+    /** The innermost loop of any combinator and aggregator */
+    private void reduceJoin(int aIndex, int bIndex, int resultIndex, double[] result) {
+        int size = sizes[sizes.length - 1];
+        int aStride = aStrides[aStrides.length - 1];
+        int bStride = bStrides[bStrides.length - 1];
+        int resultStride = resultStrides[resultStrides.length - 1];
+        for (int i = 0; i < size; i++) {
+            int r = resultIndex + i * resultStride;
+            result[r] = aggregate(result[r], combinator.applyAsDouble(a[aIndex + i * aStride], b[bIndex + i * bStride]));
+        }
+    }
+
+    /** Aggregates in the same way as Reduce */
+    private double aggregate(double aggregated, double value) {
+        switch (aggregator) {
+            case sum: case avg: return aggregated + value;
+            case prod: return aggregated * value;
+            case max: return value > aggregated ? value : aggregated;
+            case min: return value < aggregated ? value : aggregated;
+            default: throw new IllegalStateException("Unexpected aggregator " + aggregator);
+        }
+    }
+
+    /** Returns the initial value of the given aggregator, in the same way as Reduce */
+    private static double initialValue(Reduce.Aggregator aggregator) {
+        switch (aggregator) {
+            case prod: return 1.0;
+            case max: return Double.MIN_VALUE;
+            case min: return Double.MAX_VALUE;
+            default: return 0.0;
+        }
+    }
+
+    /** Returns the distance between values along each dimension of the joined type in the given tensor, or 0 if absent */
+    private static long[] strides(IndexedTensor tensor, TensorType joinedType) {
+        long[] strides = new long[joinedType.dimensions().size()];
+        long stride = 1;
+        for (int i = tensor.type().dimensions().size() - 1; i >= 0; i--) {
+            strides[joinedType.indexOfDimension(tensor.type().dimensions().get(i).name()).get()] = stride;
+            stride *= tensor.dimensionSizes().size(i);
+        }
+        return strides;
+    }
+
+    private static long sizeOf(String dimension, IndexedTensor tensor) {
+        int index = tensor.type().indexOfDimension(dimension).orElse(-1);
+        return index < 0 ? Long.MAX_VALUE : tensor.dimensionSizes().size(index);
+    }
+
+}
@@ -3,6 +3,7 @@ package com.yahoo.tensor;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.yahoo.tensor.functions.Reduce;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -182,6 +183,29 @@ public abstract class IndexedTensor implements Tensor {
         return dimensionSizes;
     }
 
+    /** Returns the values of this in the standard value order. The returned array must not be modified. */
+    abstract double[] toDoubleArray();
+
+    /**
+     * Returns the result of joining this with the given tensor and reducing the joined tensor to the given type,
+     * in one pass over the values of the two tensors, without creating the joined tensor.
+     *
+     * @param other the tensor to join with this, which must also have bound indexed dimensions only
+     * @param reducedType the type to return. The dimensions of the joined type which are not in this type
+     *                    are reduced over
+     * @param combinator the join function
+     * @param aggregator the reduce function
+     * @throws IllegalArgumentException if this or the given tensor has dimensions which are not bound
+     */
+    public IndexedTensor reduceJoin(IndexedTensor other, TensorType reducedType,
+                                    DoubleBinaryOperator combinator, Reduce.Aggregator aggregator) {
+        if ( ! this.type().dimensions().stream().allMatch(d -> d.type() == TensorType.Dimension.Type.indexedBound) ||
+             ! other.type().dimensions().stream().allMatch(d -> d.type() == TensorType.Dimension.Type.indexedBound))
+            throw new IllegalArgumentException("Reduce-join requires bound indexed dimensions, but got " +
+                                               this.type() + " and " + other.type());
+        return new IndexedReduceJoin(this, other, reducedType, combinator, aggregator).evaluate();
+    }
+
     @Override
     public Map<TensorAddress, Double> cells() {
         if (dimensionSizes.dimensions() == 0)
@@ -1,15 +1,17 @@
 // Copyright 2017 Yahoo Holdings. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
 package com.yahoo.tensor;
 
-import com.google.common.collect.ImmutableMap;
-
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.function.DoubleBinaryOperator;
 
 /**
- * A sparse implementation of a tensor backed by a Map of cells to values.
+ * A sparse implementation of a tensor backed by a compact index of cell addresses and an array of values.
  *
  * @author bratseth
  */
@@ -17,31 +19,53 @@ public class MappedTensor implements Tensor {
 
     private final TensorType type;
 
-    private final ImmutableMap<TensorAddress, Double> cells;
+    /** The addresses of the cells of this */
+    private final SparseAddressIndex index;
+
+    /** The cell values of this, in the order of the addresses in the index */
+    private final double[] values;
 
     /** Creates a sparse tensor. The cell addresses must match the type. */
-    private MappedTensor(TensorType type, Map<TensorAddress, Double> cells) {
+    MappedTensor(TensorType type, SparseAddressIndex index, double[] values) {
         this.type = type;
-        this.cells = ImmutableMap.copyOf(cells);
+        this.index = index;
+        this.values = values;
     }
 
     @Override
     public TensorType type() { return type; }
 
     @Override
-    public long size() { return cells.size(); }
+    public long size() { return index.size(); }
 
     @Override
-    public double get(TensorAddress address) { return cells.getOrDefault(address, Double.NaN); }
+    public double get(TensorAddress address) {
+        if (address.size() != index.dimensions()) return Double.NaN;
+        int i = index.indexOf(address);
+        return i < 0 ? Double.NaN : values[i];
+    }
 
     @Override
-    public Iterator<Cell> cellIterator() { return new CellIteratorAdaptor(cells.entrySet().iterator()); }
+    public Iterator<Cell> cellIterator() { return new CellIterator(); }
 
     @Override
-    public Iterator<Double> valueIterator() { return cells.values().iterator(); }
+    public Iterator<Double> valueIterator() {
+        return new Iterator<>() {
+            int i = 0;
+
+            @Override
+            public boolean hasNext() { return i < values.length; }
+
+            @Override
+            public Double next() {
+                if ( ! hasNext()) throw new NoSuchElementException();
+                return values[i++];
+            }
+        };
+    }
 
     @Override
-    public Map<TensorAddress, Double> cells() { return cells; }
+    public Map<TensorAddress, Double> cells() { return new CellMap(); }
 
     @Override
     public Tensor withType(TensorType other) {
@@ -49,22 +73,19 @@ public class MappedTensor implements Tensor {
             throw new IllegalArgumentException("MappedTensor.withType: types are not compatible. Current type: '" +
                     this.type.toString() + "', requested type: '" + type.toString() + "'");
         }
-        return new MappedTensor(other, cells);
+        return new MappedTensor(other, index, values);
     }
 
     @Override
     public Tensor merge(DoubleBinaryOperator op, Map<TensorAddress, Double> addCells) {
-
-        // currently, underlying implementation disallows multiple entries with the same key
-
         Tensor.Builder builder = Tensor.Builder.of(type());
-        for (Map.Entry<TensorAddress, Double> cell  : cells.entrySet()) {
-            TensorAddress address = cell.getKey();
-            double value = cell.getValue();
+        for (int i = 0; i < values.length; i++) {
+            TensorAddress address = index.address(i);
+            double value = values[i];
             builder.cell(address, addCells.containsKey(address) ? op.applyAsDouble(value, addCells.get(address)) : value);
         }
         for (Map.Entry<TensorAddress, Double> addCell : addCells.entrySet()) {
-            if ( ! cells.containsKey(addCell.getKey())) {
+            if (addCell.getKey().size() != index.dimensions() || index.indexOf(addCell.getKey()) < 0) {
                 builder.cell(addCell.getKey(), addCell.getValue());
             }
         }
@@ -84,8 +105,49 @@ public class MappedTensor implements Tensor {
         return builder.build();
     }
 
+    /**
+     * Returns the join of this and another mapped tensor having the same dimensions: A tensor containing the
+     * cells present in both, with values given by the combinator. As with get, a NaN cell value in the other
+     * tensor is treated as an absent cell.
+     *
+     * This is an optimization for join, which looks up cells in the index of the other tensor
+     * without creating the cells and addresses, and reuses the index of this when all cells are matched.
+     *
+     * @param other the tensor to join with this, having the same dimensions as this
+     * @param joinedType the type of the result, having the same dimensions as this
+     * @param combinator the function combining the value of this and the value of the other tensor
+     * @throws IllegalArgumentException if the tensors do not have the same dimensions
+     */
+    public MappedTensor singleSpaceJoin(MappedTensor other, TensorType joinedType, DoubleBinaryOperator combinator) {
+        if ( ! type.dimensionNames().equals(other.type.dimensionNames()) ||
+             ! type.dimensionNames().equals(joinedType.dimensionNames()))
+            throw new IllegalArgumentException("A single space join requires the same dimensions, but got " +
+                                               type + ", " + other.type + " and " + joinedType);
+
+        double[] joinedValues = new double[values.length];
+        int[] otherIndexes = new int[values.length];
+        int matches = 0;
+        for (int i = 0; i < values.length; i++) {
+            int otherIndex = other.index.indexOf(index.address(i));
+            if (otherIndex >= 0 && Double.isNaN(other.values[otherIndex]))
+                otherIndex = -1;
+            otherIndexes[i] = otherIndex;
+            if (otherIndex >= 0)
+                joinedValues[matches++] = combinator.applyAsDouble(values[i], other.values[otherIndex]);
+        }
+        if (matches == values.length)
+            return new MappedTensor(joinedType, index, joinedValues);
+
+        SparseAddressIndex joinedIndex = new SparseAddressIndex(index.dimensions(), matches);
+        for (int i = 0; i < values.length; i++) {
+            if (otherIndexes[i] >= 0)
+                joinedIndex.add(index.address(i));
+        }
+        return new MappedTensor(joinedType, joinedIndex.trimmed(), Arrays.copyOf(joinedValues, matches));
+    }
+
     @Override
-    public int hashCode() { return cells.hashCode(); }
+    public int hashCode() { return cells().hashCode(); }
 
     @Override
     public String toString() { return Tensor.toStandardString(this); }
@@ -99,12 +161,14 @@ public class MappedTensor implements Tensor {
     public static class Builder implements Tensor.Builder {
 
         private final TensorType type;
-        private final ImmutableMap.Builder<TensorAddress, Double> cells = new ImmutableMap.Builder<>();
+        private final SparseAddressIndex index;
+        private double[] values = new double[16];
 
         public static Builder of(TensorType type) { return new Builder(type); }
 
         private Builder(TensorType type) {
             this.type = type;
+            this.index = new SparseAddressIndex(type.dimensions().size());
         }
 
         public CellBuilder cell() {
@@ -121,7 +185,13 @@ public class MappedTensor implements Tensor {
 
         @Override
         public Builder cell(TensorAddress address, double value) {
-            cells.put(address, value);
+            int size = index.size();
+            int i = index.add(address);
+            if (i < size)
+                throw new IllegalArgumentException("Multiple values given for " + address + " in " + type);
+            if (i == values.length)
+                values = Arrays.copyOf(values, values.length * 2);
+            values[i] = value;
             return this;
         }
 
@@ -132,32 +202,69 @@ public class MappedTensor implements Tensor {
 
         @Override
         public Builder cell(double value, long... labels) {
-            cells.put(TensorAddress.of(labels), value);
-            return this;
+            return cell(TensorAddress.of(labels), value);
         }
 
         @Override
         public MappedTensor build() {
-            return new MappedTensor(type, cells.build());
+            return new MappedTensor(type, index.trimmed(), Arrays.copyOf(values, index.size()));
         }
 
     }
 
-    private static class CellIteratorAdaptor implements Iterator<Cell> {
+    private class CellIterator implements Iterator<Cell> {
+
+        private int i = 0;
 
-        private final Iterator<Map.Entry<TensorAddress, Double>> adaptedIterator;
+        @Override
+        public boolean hasNext() { return i < values.length; }
 
-        private CellIteratorAdaptor(Iterator<Map.Entry<TensorAddress, Double>> adaptedIterator) {
-            this.adaptedIterator = adaptedIterator;
+        @Override
+        public Cell next() {
+            if ( ! hasNext()) throw new NoSuchElementException();
+            Cell cell = new Cell(index.address(i), values[i]);
+            i++;
+            return cell;
         }
 
+    }
+
+    /** An immutable map view of the cells of this */
+    private class CellMap extends AbstractMap<TensorAddress, Double> {
+
         @Override
-        public boolean hasNext() { return adaptedIterator.hasNext(); }
+        public int size() { return values.length; }
 
         @Override
-        public Cell next() {
-            Map.Entry<TensorAddress, Double> entry = adaptedIterator.next();
-            return new Cell(entry.getKey(), entry.getValue());
+        public boolean containsKey(Object key) { return indexOf(key) >= 0; }
+
+        @Override
+        public Double get(Object key) {
+            int i = indexOf(key);
+            return i < 0 ? null : values[i];
+        }
+
+        private int indexOf(Object key) {
+            if ( ! (key instanceof TensorAddress)) return -1;
+            TensorAddress address = (TensorAddress)key;
+            if (address.size() != index.dimensions()) return -1;
+            return index.indexOf(address);
+        }
+
+        @Override
+        public Set<Map.Entry<TensorAddress, Double>> entrySet() {
+            return new AbstractSet<>() {
+
+                @Override
+                public int size() { return values.length; }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public Iterator<Map.Entry<TensorAddress, Double>> iterator() {
+                    return (Iterator<Map.Entry<TensorAddress, Double>>)(Iterator<?>)cellIterator();
+                }
+
+            };
         }
 
     }
@@ -2,16 +2,20 @@
 
 package com.yahoo.tensor;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.Set;
 import java.util.function.DoubleBinaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * A mixed tensor type. This is class is currently suitable for serialization
@@ -29,15 +33,15 @@ public class MixedTensor implements Tensor {
     /** The dimension specification for this tensor */
     private final TensorType type;
 
-    /** The list of cells in the tensor */
-    private final ImmutableList<Cell> cells;
+    /** The values of the dense subspaces of this tensor, one after the other in the order of the index */
+    private final double[] values;
 
-    /** An index structure over the cell list */
+    /** An index structure over the values */
     private final Index index;
 
-    private MixedTensor(TensorType type, ImmutableList<Cell> cells, Index index) {
+    private MixedTensor(TensorType type, double[] values, Index index) {
         this.type = type;
-        this.cells = ImmutableList.copyOf(cells);
+        this.values = values;
         this.index = index;
     }
 
@@ -47,17 +51,12 @@ public class MixedTensor implements Tensor {
 
     /** Returns the size of the tensor measured in number of cells */
     @Override
-    public long size() { return cells.size(); }
+    public long size() { return values.length; }
 
     /** Returns the value at the given address */
     @Override
     public double get(TensorAddress address) {
-        long cellIndex = index.indexOf(address);
-        Cell cell = cells.get((int)cellIndex);
-        if (!address.equals(cell.getKey())) {
-            throw new IllegalStateException("Unable to find correct cell by direct index.");
-        }
-        return cell.getValue();
+        return values[index.indexOf(address)];
     }
 
     /**
@@ -69,7 +68,20 @@ public class MixedTensor implements Tensor {
      */
     @Override
     public Iterator<Cell> cellIterator() {
-        return cells.iterator();
+        return new Iterator<>() {
+            int i = 0;
+            @Override
+            public boolean hasNext() {
+                return i < values.length;
+            }
+            @Override
+            public Cell next() {
+                if ( ! hasNext()) throw new NoSuchElementException();
+                Cell cell = new Cell(index.addressOf(i), values[i]);
+                i++;
+                return cell;
+            }
+        };
     }
 
     private Iterable<Cell> cellIterable() {
@@ -83,14 +95,15 @@ public class MixedTensor implements Tensor {
     @Override
     public Iterator<Double> valueIterator() {
         return new Iterator<>() {
-            Iterator<Cell> cellIterator = cellIterator();
+            int i = 0;
             @Override
             public boolean hasNext() {
-                return cellIterator.hasNext();
+                return i < values.length;
             }
             @Override
             public Double next() {
-                return cellIterator.next().getValue();
+                if ( ! hasNext()) throw new NoSuchElementException();
+                return values[i++];
             }
         };
     }
@@ -98,7 +111,7 @@ public class MixedTensor implements Tensor {
     @Override
     public Map<TensorAddress, Double> cells() {
         ImmutableMap.Builder<TensorAddress, Double> builder = new ImmutableMap.Builder<>();
-        for (Cell cell : cells) {
+        for (Cell cell : cellIterable()) {
             builder.put(cell.getKey(), cell.getValue());
         }
         return builder.build();
@@ -110,7 +123,7 @@ public class MixedTensor implements Tensor {
             throw new IllegalArgumentException("MixedTensor.withType: types are not compatible. Current type: '" +
                     this.type.toString() + "', requested type: '" + type.toString() + "'");
         }
-        return new MixedTensor(other, cells, index);
+        return new MixedTensor(other, values, index);
     }
 
     @Override
@@ -132,21 +145,152 @@ public class MixedTensor implements Tensor {
         Tensor.Builder builder = Tensor.Builder.of(type());
 
         // iterate through all sparse addresses referencing a dense subspace
-        for (Map.Entry<TensorAddress, Long> entry : index.sparseMap.entrySet()) {
-            TensorAddress sparsePartialAddress = entry.getKey();
+        int denseSubspaceSize = (int)index.denseSubspaceSize();
+        for (int subspace = 0; subspace < index.sparseIndex.size(); subspace++) {
+            TensorAddress sparsePartialAddress = index.sparseIndex.address(subspace);
             if ( ! addresses.contains(sparsePartialAddress)) {  // assumption: addresses only contain the sparse part
-                long offset = entry.getValue();
-                for (int i = 0; i < index.denseSubspaceSize; ++i) {
-                    Cell cell = cells.get((int)offset + i);
-                    builder.cell(cell.getKey(), cell.getValue());
+                int offset = subspace * denseSubspaceSize;
+                for (int i = 0; i < denseSubspaceSize; ++i) {
+                    builder.cell(index.addressOf(offset + i), values[offset + i]);
                 }
             }
         }
         return builder.build();
     }
 
+    /**
+     * Returns the join of this and another mixed tensor having the same dimensions and dense subspace sizes:
+     * A tensor containing the cells of the dense subspaces present in both, with values given by the combinator.
+     *
+     * This is an optimization for join, which looks up dense subspaces in the index of the other tensor
+     * and combines them without creating cells and addresses.
+     *
+     * @param other the tensor to join with this, having the same dimensions as this
+     * @param joinedType the type of the result, having the same dimensions as this
+     * @param combinator the function combining the value of this and the value of the other tensor
+     * @throws IllegalArgumentException if the tensors do not have the same dimensions and dense subspace sizes
+     */
+    public Tensor singleSpaceJoin(MixedTensor other, TensorType joinedType, DoubleBinaryOperator combinator) {
+        if ( ! type.dimensions().equals(other.type.dimensions()) ||
+             ! type.dimensionNames().equals(joinedType.dimensionNames()))
+            throw new IllegalArgumentException("A single space join requires the same dimensions, but got " +
+                                               type + ", " + other.type + " and " + joinedType);
+
+        int denseSubspaceSize = (int)denseSubspaceSize();
+        SparseAddressIndex sparseIndex = index.sparseIndex;
+        double[] joinedValues = new double[values.length];
+        int[] joinedSubspaces = new int[sparseIndex.size()];
+        int matches = 0;
+        for (int subspace = 0; subspace < sparseIndex.size(); subspace++) {
+            int otherSubspace = other.index.sparseIndex.indexOf(sparseIndex.address(subspace));
+            if (otherSubspace < 0) continue;
+
+            int offset = subspace * denseSubspaceSize;
+            int otherOffset = otherSubspace * denseSubspaceSize;
+            int joinedOffset = matches * denseSubspaceSize;
+            for (int i = 0; i < denseSubspaceSize; i++)
+                joinedValues[joinedOffset + i] = combinator.applyAsDouble(values[offset + i], other.values[otherOffset + i]);
+            joinedSubspaces[matches++] = subspace;
+        }
+        return joinedTensor(joinedType, joinedValues, matches == sparseIndex.size() ? null : joinedSubspaces, matches);
+    }
+
+    /**
+     * Returns the join of this and an indexed tensor having the same dimensions as the dense subspaces of this:
+     * A tensor containing the cells of this, where the values of each dense subspace are combined with the values
+     * of the indexed tensor.
+     *
+     * This is an optimization for join, which combines the values directly without creating cells and addresses.
+     *
+     * @param dense the indexed tensor to join with this, having the dimensions and sizes of the dense subspaces of this
+     * @param joinedType the type of the result, having the same dimensions as this
+     * @param reversedArgumentOrder whether the indexed tensor is the first argument of the combinator
+     * @param combinator the function combining the values of the two tensors
+     * @throws IllegalArgumentException if the indexed tensor does not match the dense subspaces of this
+     */
+    public Tensor denseSubspaceJoin(IndexedTensor dense, TensorType joinedType, boolean reversedArgumentOrder,
+                                    DoubleBinaryOperator combinator) {
+        if ( ! isDenseSubspace(dense) || ! type.dimensionNames().equals(joinedType.dimensionNames()))
+            throw new IllegalArgumentException("A dense subspace join requires the dimensions of the dense subspaces " +
+                                               "of " + type + ", but got " + dense.type() + " with sizes " +
+                                               dense.dimensionSizes() + " and " + joinedType);
+
+        int denseSubspaceSize = (int)denseSubspaceSize();
+        double[] denseValues = new double[denseSubspaceSize];
+        for (int i = 0; i < denseSubspaceSize; i++)
+            denseValues[i] = dense.get(i);
+
+        double[] joinedValues = new double[values.length];
+        for (int offset = 0; offset < values.length; offset += denseSubspaceSize) {
+            for (int i = 0; i < denseSubspaceSize; i++) {
+                joinedValues[offset + i] = reversedArgumentOrder ? combinator.applyAsDouble(denseValues[i], values[offset + i])
+                                                                 : combinator.applyAsDouble(values[offset + i], denseValues[i]);
+            }
+        }
+        return joinedTensor(joinedType, joinedValues, null, index.sparseIndex.size());
+    }
+
+    /**
+     * Returns a tensor of the given type, having the same dimensions as this, containing the given values
+     * of dense subspaces of this.
+     *
+     * @param joinedType the type of the tensor to return, which is this type or this type with all dimensions mapped
+     * @param values the values of the dense subspaces to include, one subspace after the other
+     * @param subspaces the subspaces of this to include, or null to include all
+     * @param subspaceCount the number of subspaces to include
+     */
+    private Tensor joinedTensor(TensorType joinedType, double[] values, int[] subspaces, int subspaceCount) {
+        int denseSubspaceSize = (int)denseSubspaceSize();
+        if (joinedType.dimensions().equals(type.dimensions())) {
+            if (subspaces == null)
+                return new MixedTensor(joinedType, values, index);
+
+            Index joinedIndex = new Index(joinedType);
+            for (int i = 0; i < subspaceCount; i++)
+                joinedIndex.sparseIndex.add(index.sparseIndex.address(subspaces[i]));
+            return new MixedTensor(joinedType, Arrays.copyOf(values, subspaceCount * denseSubspaceSize), joinedIndex.build());
+        }
+
+        if (joinedType.dimensions().stream().noneMatch(TensorType.Dimension::isIndexed)) { // all addresses are distinct
+            SparseAddressIndex joinedIndex = new SparseAddressIndex(joinedType.dimensions().size(), subspaceCount * denseSubspaceSize);
+            for (int i = 0; i < subspaceCount; i++) {
+                int offset = (subspaces == null ? i : subspaces[i]) * denseSubspaceSize;
+                for (int j = 0; j < denseSubspaceSize; j++)
+                    joinedIndex.add(index.addressOf(offset + j));
+            }
+            return new MappedTensor(joinedType, joinedIndex.trimmed(), Arrays.copyOf(values, subspaceCount * denseSubspaceSize));
+        }
+
+        Tensor.Builder builder = Tensor.Builder.of(joinedType);
+        for (int i = 0; i < subspaceCount; i++) {
+            int offset = (subspaces == null ? i : subspaces[i]) * denseSubspaceSize;
+            for (int j = 0; j < denseSubspaceSize; j++)
+                builder.cell(index.addressOf(offset + j), values[i * denseSubspaceSize + j]);
+        }
+        return builder.build();
+    }
+
+    /** Returns whether the given indexed tensor has the same dimensions and sizes as the dense subspaces of this */
+    public boolean isDenseSubspace(IndexedTensor tensor) {
+        List<TensorType.Dimension> indexedDimensions = type.dimensions().stream()
+                                                           .filter(TensorType.Dimension::isIndexed)
+                                                           .collect(Collectors.toList());
+        if (indexedDimensions.size() != tensor.type().dimensions().size()) return false;
+        for (int i = 0; i < indexedDimensions.size(); i++) {
+            if ( ! indexedDimensions.get(i).name().equals(tensor.type().dimensions().get(i).name())) return false;
+            if ( ! indexedDimensions.get(i).size().equals(Optional.of(tensor.dimensionSizes().size(i)))) return false;
+        }
+        return true;
+    }
+
+    /** Returns the same hash code as a list of the cells of this */
     @Override
-    public int hashCode() { return cells.hashCode(); }
+    public int hashCode() {
+        int hashCode = 1;
+        for (Cell cell : cellIterable())
+            hashCode = 31 * hashCode + cell.hashCode();
+        return hashCode;
+    }
 
     @Override
     public String toString() { return Tensor.toStandardString(this); }
@@ -217,26 +361,24 @@ public class MixedTensor implements Tensor {
      */
     public static class BoundBuilder extends Builder {
 
-        /** For each sparse partial address, hold a dense subspace */
-        final private Map<TensorAddress, double[]> denseSubspaceMap = new HashMap<>();
-        final private Index.Builder indexBuilder;
+        /** The dense subspaces, in the order of their sparse partial addresses in the index */
+        final private List<double[]> denseSubspaces = new ArrayList<>();
         final private Index index;
 
         private BoundBuilder(TensorType type) {
             super(type);
-            indexBuilder = new Index.Builder(type);
-            index = indexBuilder.index();
+            index = new Index(type);
         }
 
         public long denseSubspaceSize() {
             return index.denseSubspaceSize();
         }
 
-        private double[] denseSubspace(TensorAddress sparsePartial) {
-            if (!denseSubspaceMap.containsKey(sparsePartial)) {
-                denseSubspaceMap.put(sparsePartial, new double[(int)denseSubspaceSize()]);
+        private double[] denseSubspace(int subspace) {
+            if (subspace == denseSubspaces.size()) {
+                denseSubspaces.add(new double[(int)denseSubspaceSize()]);
             }
-            return denseSubspaceMap.get(sparsePartial);
+            return denseSubspaces.get(subspace);
         }
 
         @Override
@@ -246,37 +388,26 @@ public class MixedTensor implements Tensor {
 
         @Override
         public Tensor.Builder cell(TensorAddress address, double value) {
-            TensorAddress sparsePart = index.sparsePartialAddress(address);
+            int subspace = index.addSparsePartialAddress(address);
             long denseOffset = index.denseOffset(address);
-            double[] denseSubspace = denseSubspace(sparsePart);
+            double[] denseSubspace = denseSubspace(subspace);
             denseSubspace[(int)denseOffset] = value;
             return this;
         }
 
         public Tensor.Builder block(TensorAddress sparsePart, double[] values) {
-            double[] denseSubspace = denseSubspace(sparsePart);
+            double[] denseSubspace = denseSubspace(index.sparseIndex.add(sparsePart));
             System.arraycopy(values, 0, denseSubspace, 0, (int)denseSubspaceSize());
             return this;
         }
 
         @Override
         public MixedTensor build() {
-            long count = 0;
-            ImmutableList.Builder<Cell> builder = new ImmutableList.Builder<>();
-
-            for (Map.Entry<TensorAddress, double[]> entry : denseSubspaceMap.entrySet()) {
-                TensorAddress sparsePart = entry.getKey();
-                indexBuilder.put(sparsePart, count);
-
-                double[] denseSubspace = entry.getValue();
-                for (long offset = 0; offset < denseSubspace.length; ++offset) {
-                    TensorAddress cellAddress = index.addressOf(sparsePart, offset);
-                    double value = denseSubspace[(int)offset];
-                    builder.add(new Cell(cellAddress, value));
-                    count++;
-                }
-            }
-            return new MixedTensor(type, builder.build(), indexBuilder.build());
+            int denseSubspaceSize = (int)denseSubspaceSize();
+            double[] values = new double[denseSubspaces.size() * denseSubspaceSize];
+            for (int subspace = 0; subspace < denseSubspaces.size(); subspace++)
+                System.arraycopy(denseSubspaces.get(subspace), 0, values, subspace * denseSubspaceSize, denseSubspaceSize);
+            return new MixedTensor(type, values, index.build());
         }
 
     }
@@ -349,62 +480,60 @@ public class MixedTensor implements Tensor {
     }
 
     /**
-     * An immutable index into a list of cells.
+     * An index into the values of a mixed tensor.
      * Contains additional information required
      * for handling mixed tensor addresses.
      * Assumes indexed dimensions are bound.
+     * This is mutable while building a tensor and immutable after that.
      */
     private static class Index {
 
         private final TensorType type;
-        private final TensorType sparseType;
-        private final TensorType denseType;
-        private final List<TensorType.Dimension> mappedDimensions;
-        private final List<TensorType.Dimension> indexedDimensions;
 
-        private ImmutableMap<TensorAddress, Long> sparseMap;
+        /** The indexes of the mapped dimensions in the type */
+        private final int[] mappedDimensionIndexes;
+
+        /** The sparse partial addresses, in the order of their dense subspaces */
+        private final SparseAddressIndex sparseIndex;
         private long denseSubspaceSize = -1;
 
+        /** The labels of the indexed dimensions, by index, or null if not created yet */
+        private String[] indexedLabels = null;
+
         private Index(TensorType type) {
             this.type = type;
-            this.mappedDimensions = type.dimensions().stream().filter(d -> !d.isIndexed()).collect(Collectors.toList());
-            this.indexedDimensions = type.dimensions().stream().filter(d -> d.isIndexed()).collect(Collectors.toList());
-            this.sparseType = createPartialType(type.valueType(), mappedDimensions);
-            this.denseType = createPartialType(type.valueType(), indexedDimensions);
+            this.mappedDimensionIndexes = IntStream.range(0, type.dimensions().size())
+                                                   .filter(i -> ! type.dimensions().get(i).isIndexed())
+                                                   .toArray();
+            this.sparseIndex = new SparseAddressIndex(mappedDimensionIndexes.length);
         }
 
-        public long indexOf(TensorAddress address) {
-            TensorAddress sparsePart = sparsePartialAddress(address);
-            if ( ! sparseMap.containsKey(sparsePart)) {
-                throw new IllegalArgumentException("Address not found");
-            }
-            long base = sparseMap.get(sparsePart);
-            long offset = denseOffset(address);
-            return base + offset;
+        private Index(Index other, SparseAddressIndex sparseIndex) {
+            this.type = other.type;
+            this.mappedDimensionIndexes = other.mappedDimensionIndexes;
+            this.sparseIndex = sparseIndex;
+            this.denseSubspaceSize = other.denseSubspaceSize;
+            this.indexedLabels = other.indexedLabels;
         }
 
-        public static class Builder {
-
-            private final Index index;
-            private final ImmutableMap.Builder<TensorAddress, Long> builder;
-
-            public Builder(TensorType type) {
-                index = new Index(type);
-                builder = new ImmutableMap.Builder<>();
-            }
-
-            public void put(TensorAddress address, long index) {
-                builder.put(address, index);
-            }
+        /** Returns an immutable copy of this */
+        public Index build() {
+            return new Index(this, sparseIndex.trimmed());
+        }
 
-            public Index build() {
-                index.sparseMap = builder.build();
-                return index;
+        public int indexOf(TensorAddress address) {
+            checkSize(address);
+            int subspace = sparseIndex.indexOf(address, mappedDimensionIndexes);
+            if (subspace < 0) {
+                throw new IllegalArgumentException("Address not found");
             }
+            return subspace * (int)denseSubspaceSize() + (int)denseOffset(address);
+        }
 
-            public Index index() {
-                return index;
-            }
+        /** Adds the sparse partial address of the given address if not present, and returns its subspace index */
+        private int addSparsePartialAddress(TensorAddress address) {
+            checkSize(address);
+            return sparseIndex.add(address, mappedDimensionIndexes);
         }
 
         public long denseSubspaceSize() {
@@ -421,18 +550,10 @@ public class MixedTensor implements Tensor {
             return denseSubspaceSize;
         }
 
-        private TensorAddress sparsePartialAddress(TensorAddress address) {
+        private void checkSize(TensorAddress address) {
             if (type.dimensions().size() != address.size()) {
                 throw new IllegalArgumentException("Tensor type and address are not of same size.");
             }
-            TensorAddress.Builder builder = new TensorAddress.Builder(sparseType);
-            for (int i = 0; i < type.dimensions().size(); ++i) {
-                TensorType.Dimension dimension = type.dimensions().get(i);
-                if (!dimension.isIndexed()) {
-                    builder.add(dimension.name(), address.label(i));
-                }
-            }
-            return builder.build();
         }
 
         private long denseOffset(TensorAddress address) {
@@ -450,39 +571,38 @@ public class MixedTensor implements Tensor {
             return offset;
         }
 
-        private TensorAddress denseOffsetToAddress(long denseOffset) {
-            if (denseOffset < 0 || denseOffset > denseSubspaceSize) {
-                throw new IllegalArgumentException("Offset out of bounds");
-            }
-
-            long restSize = denseOffset;
-            long innerSize = denseSubspaceSize;
-            long[] labels = new long[indexedDimensions.size()];
-
-            for (int i = 0; i < labels.length; ++i) {
-                TensorType.Dimension dimension = indexedDimensions.get(i);
-                long dimensionSize = dimension.size().orElseThrow(() ->
-                        new IllegalArgumentException("Unknown size of indexed dimension."));
-
-                innerSize /= dimensionSize;
-                labels[i] = restSize / innerSize;
-                restSize %= innerSize;
+        /** Returns the labels of all the indexes of the indexed dimensions, such that these are shared by all addresses */
+        private String[] indexedLabels() {
+            if (indexedLabels == null) {
+                long maxSize = 0;
+                for (TensorType.Dimension dimension : type.dimensions()) {
+                    if (dimension.isIndexed())
+                        maxSize = Math.max(maxSize, dimension.size().get());
+                }
+                String[] labels = new String[(int)maxSize];
+                for (int i = 0; i < labels.length; i++)
+                    labels[i] = String.valueOf(i);
+                indexedLabels = labels;
             }
-            return TensorAddress.of(labels);
+            return indexedLabels;
         }
 
-        private TensorAddress addressOf(TensorAddress sparsePart, long denseOffset) {
-            TensorAddress densePart = denseOffsetToAddress(denseOffset);
+        /** Returns the address of the cell at the given index in the values */
+        private TensorAddress addressOf(int valueIndex) {
+            int subspace = valueIndex / (int)denseSubspaceSize();
+            long restSize = valueIndex % denseSubspaceSize();
+            long innerSize = denseSubspaceSize();
+            String[] indexedLabels = indexedLabels();
             String[] labels = new String[type.dimensions().size()];
             int mappedIndex = 0;
-            int indexedIndex = 0;
-            for (TensorType.Dimension d : type.dimensions()) {
-                if (d.isIndexed()) {
-                    labels[mappedIndex + indexedIndex] = densePart.label(indexedIndex);
-                    indexedIndex++;
+            for (int i = 0; i < labels.length; i++) {
+                TensorType.Dimension dimension = type.dimensions().get(i);
+                if (dimension.isIndexed()) {
+                    innerSize /= dimension.size().get();
+                    labels[i] = indexedLabels[(int)(restSize / innerSize)];
+                    restSize %= innerSize;
                 } else {
-                    labels[mappedIndex + indexedIndex] = sparsePart.label(mappedIndex);
-                    mappedIndex++;
+                    labels[i] = sparseIndex.label(subspace, mappedIndex++);
                 }
             }
             return TensorAddress.of(labels);
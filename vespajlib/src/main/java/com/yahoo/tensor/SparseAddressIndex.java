@@ -0,0 +1,273 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor;
+
+import java.util.Arrays;
+
+/**
+ * A compact index from the addresses of a sparse space to the integers 0..size-1, in order of insertion.
+ * Labels are interned in a dictionary and addresses are stored as packed arrays of label ids, which are
+ * looked up through an open addressing hash table on the labels, such that no object is kept per address.
+ *
+ * Addresses may be given as the labels of a subset of the dimensions of a larger address, as in the
+ * mapped dimensions of a mixed tensor address.
+ *
+ * This is mutable while being built, and must not be modified after being shared.
+ */
+final class SparseAddressIndex {
+
+    private static final int EMPTY = -1;
+
+    /** The number of dimensions (labels) of each address */
+    private final int dimensions;
+
+    /** The distinct labels of this, by id */
+    private String[] labels;
+    private int labelCount = 0;
+    /**
+     * Open addressing table of the hash and id of each label, or null if this cannot be added to.
+     * This is not used with a single dimension, where labels are in the same order as the addresses.
+     */
+    private int[] labelTable;
+
+    /**
+     * The label ids of each address, with the dimensions of each address after each other.
+     * This is null with a single dimension, where the label id of each address is the index of the address.
+     */
+    private int[] addresses;
+    private int size = 0;
+    /**
+     * Open addressing table of the hash and index of each address, stored after each other, such that
+     * slots not containing the looked up address can mostly be skipped without accessing the address
+     */
+    private int[] addressTable;
+
+    SparseAddressIndex(int dimensions) {
+        this(dimensions, 16);
+    }
+
+    SparseAddressIndex(int dimensions, int expectedSize) {
+        this.dimensions = dimensions;
+        expectedSize = Math.max(expectedSize, 4);
+        this.labels = new String[expectedSize];
+        this.labelTable = dimensions == 1 ? null : emptyTable(tableSizeFor(expectedSize) * 2);
+        this.addresses = dimensions == 1 ? null : new int[expectedSize * dimensions];
+        this.addressTable = emptyTable(tableSizeFor(expectedSize) * 2);
+    }
+
+    private SparseAddressIndex(SparseAddressIndex other) {
+        this.dimensions = other.dimensions;
+        this.labels = Arrays.copyOf(other.labels, other.labelCount);
+        this.labelCount = other.labelCount;
+        this.labelTable = null; // only used for adding
+        this.addresses = dimensions == 1 ? null : Arrays.copyOf(other.addresses, other.size * dimensions);
+        this.size = other.size;
+        this.addressTable = other.addressTable.clone();
+    }
+
+    /** Returns the number of addresses in this */
+    int size() { return size; }
+
+    /** Returns the number of dimensions of the addresses in this */
+    int dimensions() { return dimensions; }
+
+    /** Returns the index of the given address, or -1 if it is not present */
+    int indexOf(TensorAddress address) {
+        return indexOf(address, null);
+    }
+
+    /**
+     * Returns the index of the address consisting of the labels of the given dimensions of the given address,
+     * or -1 if it is not present
+     *
+     * @param address the address to look up
+     * @param dimensionIndexes the indexes in the given address of the labels to look up, or null to use all
+     */
+    int indexOf(TensorAddress address, int[] dimensionIndexes) {
+        if (dimensionIndexes == null && address instanceof Entry && ((Entry)address).owner() == this)
+            return ((Entry)address).index;
+
+        int hash = hash(address, dimensionIndexes);
+        int mask = addressTable.length - 1;
+        for (int slot = (hash << 1) & mask; ; slot = (slot + 2) & mask) {
+            int index = addressTable[slot + 1];
+            if (index == EMPTY) return EMPTY;
+            if (addressTable[slot] == hash && equals(address, dimensionIndexes, index)) return index;
+        }
+    }
+
+    /** Returns the index of the given address, adding it last if it is not present */
+    int add(TensorAddress address) {
+        return add(address, null);
+    }
+
+    /**
+     * Returns the index of the address consisting of the labels of the given dimensions of the given address,
+     * adding it last if it is not present
+     */
+    int add(TensorAddress address, int[] dimensionIndexes) {
+        int hash = hash(address, dimensionIndexes);
+        int mask = addressTable.length - 1;
+        int slot = (hash << 1) & mask;
+        for (; addressTable[slot + 1] != EMPTY; slot = (slot + 2) & mask) {
+            if (addressTable[slot] == hash && equals(address, dimensionIndexes, addressTable[slot + 1]))
+                return addressTable[slot + 1];
+        }
+
+        if (dimensions == 1) { // the label of a new single label address is new as well
+            appendLabel(address.label(dimensionIndexes == null ? 0 : dimensionIndexes[0]));
+        } else {
+            if ((size + 1) * dimensions > addresses.length)
+                addresses = Arrays.copyOf(addresses, Math.max(addresses.length * 2, (size + 1) * dimensions));
+            for (int d = 0; d < dimensions; d++)
+                addresses[size * dimensions + d] = addLabel(address.label(dimensionIndexes == null ? d : dimensionIndexes[d]));
+        }
+        addressTable[slot] = hash;
+        addressTable[slot + 1] = size;
+        if (++size * 4 > addressTable.length)
+            addressTable = rehashed(addressTable);
+        return size - 1;
+    }
+
+    /** Returns the label in the given dimension of the address at the given index */
+    String label(int index, int dimension) {
+        if (dimensions == 1) return labels[index];
+        return labels[addresses[index * dimensions + dimension]];
+    }
+
+    /** Returns the address at the given index, as a view of the labels in this */
+    TensorAddress address(int index) {
+        return new Entry(index);
+    }
+
+    /** Returns a copy of this which uses no more memory than necessary, and which cannot be added to */
+    SparseAddressIndex trimmed() {
+        return new SparseAddressIndex(this);
+    }
+
+    private boolean equals(TensorAddress address, int[] dimensionIndexes, int index) {
+        for (int d = 0; d < dimensions; d++) {
+            String label = address.label(dimensionIndexes == null ? d : dimensionIndexes[d]);
+            if ( ! label(index, d).equals(label)) return false;
+        }
+        return true;
+    }
+
+    /** Returns the hash of the labels of the given dimensions of the given address */
+    private int hash(TensorAddress address, int[] dimensionIndexes) {
+        int hash = 1;
+        for (int d = 0; d < dimensions; d++)
+            hash = 31 * hash + address.label(dimensionIndexes == null ? d : dimensionIndexes[d]).hashCode();
+        return mix(hash);
+    }
+
+    private int addLabel(String label) {
+        int hash = mix(label.hashCode());
+        int mask = labelTable.length - 1;
+        int slot = (hash << 1) & mask;
+        for (; labelTable[slot + 1] != EMPTY; slot = (slot + 2) & mask) {
+            if (labelTable[slot] == hash && labels[labelTable[slot + 1]].equals(label))
+                return labelTable[slot + 1];
+        }
+
+        labelTable[slot] = hash;
+        labelTable[slot + 1] = labelCount;
+        if ((labelCount + 1) * 4 > labelTable.length)
+            labelTable = rehashed(labelTable);
+        return appendLabel(label);
+    }
+
+    /** Adds a label which is not already present in this without adding it to the label table, and returns its id */
+    private int appendLabel(String label) {
+        if (labelCount == labels.length)
+            labels = Arrays.copyOf(labels, labels.length * 2);
+        labels[labelCount] = label;
+        return labelCount++;
+    }
+
+    /** Returns a table of twice the size containing the same hashes and values as the given table */
+    private static int[] rehashed(int[] table) {
+        int[] newTable = emptyTable(table.length * 2);
+        int mask = newTable.length - 1;
+        for (int slot = 0; slot < table.length; slot += 2) {
+            if (table[slot + 1] == EMPTY) continue;
+            int newSlot = (table[slot] << 1) & mask;
+            while (newTable[newSlot + 1] != EMPTY)
+                newSlot = (newSlot + 2) & mask;
+            newTable[newSlot] = table[slot];
+            newTable[newSlot + 1] = table[slot + 1];
+        }
+        return newTable;
+    }
+
+    /** Spreads the bits of a hash code, as the tables use the lowest bits only */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    /** Returns the smallest power of two table size keeping the load at most 1/2 for the given number of entries */
+    private static int tableSizeFor(int entries) {
+        return Integer.highestOneBit(Math.max(entries * 2 - 1, 1)) << 1;
+    }
+
+    private static int[] emptyTable(int size) {
+        int[] table = new int[size];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    /** An address in this */
+    private final class Entry extends TensorAddress {
+
+        private final int index;
+
+        Entry(int index) {
+            this.index = index;
+        }
+
+        SparseAddressIndex owner() { return SparseAddressIndex.this; }
+
+        @Override
+        public int size() { return dimensions; }
+
+        @Override
+        public String label(int i) {
+            if (i < 0 || i >= dimensions)
+                throw new IllegalArgumentException("No label at index " + i + " in " + this);
+            return SparseAddressIndex.this.label(index, i);
+        }
+
+        @Override
+        public long numericLabel(int i) {
+            try {
+                return Long.parseLong(label(i));
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected a long label in " + this + " at position " + i);
+            }
+        }
+
+        @Override
+        public TensorAddress withLabel(int labelIndex, long label) {
+            String[] labels = new String[dimensions];
+            for (int d = 0; d < dimensions; d++)
+                labels[d] = label(d);
+            labels[labelIndex] = String.valueOf(label);
+            return TensorAddress.of(labels);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder("cell address (");
+            for (int d = 0; d < dimensions; d++)
+                b.append(d > 0 ? "," : "").append(label(d));
+            return b.append(")").toString();
+        }
+
+    }
+
+}
@@ -5,6 +5,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import com.yahoo.tensor.DimensionSizes;
 import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.MappedTensor;
+import com.yahoo.tensor.MixedTensor;
 import com.yahoo.tensor.PartialAddress;
 import com.yahoo.tensor.Tensor;
 import com.yahoo.tensor.TensorAddress;
@@ -23,6 +25,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.DoubleBinaryOperator;
+import java.util.stream.Collectors;
 
 /**
  * The <i>join</i> tensor operation produces a tensor from the argument tensors containing the set of cells
@@ -36,6 +39,9 @@ public class Join extends PrimitiveTensorFunction {
     private final TensorFunction argumentA, argumentB;
     private final DoubleBinaryOperator combinator;
 
+    /** The plan of the last evaluation, or null if not evaluated */
+    private volatile Plan plan = null;
+
     public Join(TensorFunction argumentA, TensorFunction argumentB, DoubleBinaryOperator combinator) {
         Objects.requireNonNull(argumentA, "The first argument tensor cannot be null");
         Objects.requireNonNull(argumentB, "The second argument tensor cannot be null");
@@ -81,15 +87,42 @@ public class Join extends PrimitiveTensorFunction {
     public <NAMETYPE extends TypeContext.Name> Tensor evaluate(EvaluationContext<NAMETYPE> context) {
         Tensor a = argumentA.evaluate(context);
         Tensor b = argumentB.evaluate(context);
-        TensorType joinedType = new TensorType.Builder(a.type(), b.type()).build();
-        return evaluate(a, b, joinedType, combinator);
+        Plan plan = this.plan;
+        if (plan == null || ! plan.appliesTo(a.type(), b.type()))
+            this.plan = plan = new Plan(a.type(), b.type());
+        return evaluate(a, b, plan.joinedType, plan.algorithm, combinator);
     }
 
     static Tensor evaluate(Tensor a, Tensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
-        // Choose join algorithm
-        if (hasSingleIndexedDimension(a) && hasSingleIndexedDimension(b) && a.type().dimensions().get(0).name().equals(b.type().dimensions().get(0).name()))
-            return indexedVectorJoin((IndexedTensor)a, (IndexedTensor)b, joinedType, combinator);
-        else if (joinedType.dimensions().size() == a.type().dimensions().size() && joinedType.dimensions().size() == b.type().dimensions().size())
+        return evaluate(a, b, joinedType, Algorithm.of(a.type(), b.type()), combinator);
+    }
+
+    private static Tensor evaluate(Tensor a, Tensor b, TensorType joinedType, Algorithm algorithm, DoubleBinaryOperator combinator) {
+        // Use the specialized algorithm chosen from the types if the tensors are of the expected kind
+        switch (algorithm) {
+            case indexed:
+                if (a instanceof IndexedTensor && b instanceof IndexedTensor)
+                    return indexedJoin((IndexedTensor)a, (IndexedTensor)b, joinedType, combinator);
+                break;
+            case mappedSingleSpace:
+                if (a instanceof MappedTensor && b instanceof MappedTensor)
+                    return ((MappedTensor)a).singleSpaceJoin((MappedTensor)b, joinedType, combinator);
+                break;
+            case mixedSingleSpace:
+                if (a instanceof MixedTensor && b instanceof MixedTensor && a.type().dimensions().equals(b.type().dimensions()))
+                    return ((MixedTensor)a).singleSpaceJoin((MixedTensor)b, joinedType, combinator);
+                break;
+            case mixedDenseSubspace:
+                if (a instanceof MixedTensor && b instanceof IndexedTensor && ((MixedTensor)a).isDenseSubspace((IndexedTensor)b))
+                    return ((MixedTensor)a).denseSubspaceJoin((IndexedTensor)b, joinedType, false, combinator);
+                break;
+            case denseSubspaceMixed:
+                if (b instanceof MixedTensor && a instanceof IndexedTensor && ((MixedTensor)b).isDenseSubspace((IndexedTensor)a))
+                    return ((MixedTensor)b).denseSubspaceJoin((IndexedTensor)a, joinedType, true, combinator);
+                break;
+        }
+
+        if (joinedType.dimensions().size() == a.type().dimensions().size() && joinedType.dimensions().size() == b.type().dimensions().size())
             return singleSpaceJoin(a, b, joinedType, combinator);
         else if (a.type().dimensions().containsAll(b.type().dimensions()))
             return subspaceJoin(b, a, joinedType, true, combinator);
@@ -97,21 +130,59 @@ public class Join extends PrimitiveTensorFunction {
             return subspaceJoin(a, b, joinedType, false, combinator);
         else
             return generalJoin(a, b, joinedType, combinator);
-
     }
 
-    private static boolean hasSingleIndexedDimension(Tensor tensor) {
-        return tensor.type().dimensions().size() == 1 && tensor.type().dimensions().get(0).isIndexed();
+    /**
+     * Joins two indexed tensors by iterating over the joined value indexes and moving along the strides
+     * of each argument, where a dimension not present in an argument has stride 0 such that the argument
+     * value is broadcast along it.
+     */
+    private static Tensor indexedJoin(IndexedTensor a, IndexedTensor b, TensorType joinedType, DoubleBinaryOperator combinator) {
+        if (a.size() == 0 || b.size() == 0) // special case empty here to avoid doing it when finding sizes
+            return Tensor.Builder.of(joinedType, new DimensionSizes.Builder(joinedType.dimensions().size()).build()).build();
+
+        DimensionSizes joinedSizes = joinedSize(joinedType, a, b);
+        int dimensions = joinedSizes.dimensions();
+        double[] values = new double[(int)joinedSizes.totalSize()];
+        if (dimensions == 0) {
+            values[0] = combinator.applyAsDouble(a.get(0), b.get(0));
+            return IndexedTensor.Builder.of(joinedType, joinedSizes, values).build();
+        }
+
+        long[] aStrides = strides(a, joinedType);
+        long[] bStrides = strides(b, joinedType);
+        long[] indexes = new long[dimensions];
+        int innerSize = (int)joinedSizes.size(dimensions - 1);
+        long aInnerStride = aStrides[dimensions - 1];
+        long bInnerStride = bStrides[dimensions - 1];
+        long aIndex = 0;
+        long bIndex = 0;
+        for (int i = 0; i < values.length; ) {
+            for (int j = 0; j < innerSize; j++)
+                values[i++] = combinator.applyAsDouble(a.get(aIndex + j * aInnerStride), b.get(bIndex + j * bInnerStride));
+
+            // Move to the start of the next inner run
+            for (int d = dimensions - 2; d >= 0; d--) {
+                aIndex += aStrides[d];
+                bIndex += bStrides[d];
+                if (++indexes[d] < joinedSizes.size(d)) break;
+                aIndex -= aStrides[d] * indexes[d];
+                bIndex -= bStrides[d] * indexes[d];
+                indexes[d] = 0;
+            }
+        }
+        return IndexedTensor.Builder.of(joinedType, joinedSizes, values).build();
     }
 
-    private static Tensor indexedVectorJoin(IndexedTensor a, IndexedTensor b, TensorType type, DoubleBinaryOperator combinator) {
-        long joinedRank = Math.min(a.dimensionSizes().size(0), b.dimensionSizes().size(0));
-        Iterator<Double> aIterator = a.valueIterator();
-        Iterator<Double> bIterator = b.valueIterator();
-        IndexedTensor.Builder builder = IndexedTensor.Builder.of(type, new DimensionSizes.Builder(1).set(0, joinedRank).build());
-        for (int i = 0; i < joinedRank; i++)
-            builder.cell(combinator.applyAsDouble(aIterator.next(), bIterator.next()), i);
-        return builder.build();
+    /** Returns the distance between values along each dimension of the joined type in the given tensor, or 0 if absent */
+    private static long[] strides(IndexedTensor tensor, TensorType joinedType) {
+        long[] strides = new long[joinedType.dimensions().size()];
+        long stride = 1;
+        for (int i = tensor.type().dimensions().size() - 1; i >= 0; i--) {
+            strides[joinedType.indexOfDimension(tensor.type().dimensions().get(i).name()).get()] = stride;
+            stride *= tensor.dimensionSizes().size(i);
+        }
+        return strides;
     }
 
     /** When both tensors have the same dimensions, at most one cell matches a cell in the other tensor */
@@ -348,6 +419,83 @@ public class Join extends PrimitiveTensorFunction {
     }
 
 
+    /** The algorithms this may use to join two tensors, where the general algorithms are used for any other */
+    private enum Algorithm {
+
+        /** Two indexed tensors */
+        indexed,
+
+        /** Two mapped tensors having the same dimensions */
+        mappedSingleSpace,
+
+        /** Two mixed tensors having the same dimensions */
+        mixedSingleSpace,
+
+        /** A mixed tensor and an indexed tensor having the dimensions of its dense subspace */
+        mixedDenseSubspace,
+
+        /** An indexed tensor having the dimensions of the dense subspace of a mixed tensor, and that mixed tensor */
+        denseSubspaceMixed,
+
+        /** Any other combination */
+        general;
+
+        static Algorithm of(TensorType a, TensorType b) {
+            if (isIndexed(a) && isIndexed(b))
+                return indexed;
+            if (isMapped(a) && isMapped(b) && a.dimensionNames().equals(b.dimensionNames()))
+                return mappedSingleSpace;
+            if (isMixed(a) && isMixed(b) && a.dimensionNames().equals(b.dimensionNames()))
+                return mixedSingleSpace;
+            if (isMixed(a) && isIndexed(b) && indexedDimensionNames(a).equals(b.dimensionNames()))
+                return mixedDenseSubspace;
+            if (isIndexed(a) && isMixed(b) && indexedDimensionNames(b).equals(a.dimensionNames()))
+                return denseSubspaceMixed;
+            return general;
+        }
+
+        private static boolean isIndexed(TensorType type) {
+            return type.dimensions().stream().allMatch(TensorType.Dimension::isIndexed);
+        }
+
+        private static boolean isMapped(TensorType type) {
+            return ! type.dimensions().isEmpty() && type.dimensions().stream().noneMatch(TensorType.Dimension::isIndexed);
+        }
+
+        private static boolean isMixed(TensorType type) {
+            return type.dimensions().stream().anyMatch(TensorType.Dimension::isIndexed) && ! isIndexed(type);
+        }
+
+        private static Set<String> indexedDimensionNames(TensorType type) {
+            return type.dimensions().stream().filter(TensorType.Dimension::isIndexed)
+                       .map(TensorType.Dimension::name).collect(Collectors.toSet());
+        }
+
+    }
+
+    /**
+     * The joined type and algorithm to use for arguments of given types. This is computed on the first
+     * evaluation and reused as long as the arguments have the same types.
+     */
+    private static final class Plan {
+
+        private final TensorType aType, bType;
+        private final TensorType joinedType;
+        private final Algorithm algorithm;
+
+        Plan(TensorType aType, TensorType bType) {
+            this.aType = aType;
+            this.bType = bType;
+            this.joinedType = new TensorType.Builder(aType, bType).build();
+            this.algorithm = Algorithm.of(aType, bType);
+        }
+
+        boolean appliesTo(TensorType aType, TensorType bType) {
+            return (aType == this.aType || aType.equals(this.aType)) && (bType == this.bType || bType.equals(this.bType));
+        }
+
+    }
+
     /**
      * Returns the an array having one entry in order for each dimension of fromType
      * containing the index at which toType contains the same dimension name.
@@ -0,0 +1,129 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.data.access.slime;
+
+import com.yahoo.data.access.Inspector;
+import com.yahoo.data.access.Type;
+import com.yahoo.slime.BinaryFormat;
+import com.yahoo.slime.Cursor;
+import com.yahoo.slime.Slime;
+import com.yahoo.text.Utf8;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class BinaryViewConformanceTestCase extends com.yahoo.data.access.InspectorConformanceTestBase {
+
+    // Same as SlimeConformanceTestCase, but encoded to binary slime and viewed
+    public com.yahoo.data.access.Inspector getData() {
+        return BinaryView.inspect(BinaryFormat.encode(createSlime()));
+    }
+
+    private static Slime createSlime() {
+        com.yahoo.slime.Slime slime = new com.yahoo.slime.Slime();
+        {
+            com.yahoo.slime.Cursor arr = slime.setArray();
+            arr.addNix();
+            arr.addBool(true);
+            arr.addLong(10);
+            arr.addDouble(5.75);
+            {
+                com.yahoo.slime.Cursor obj = arr.addObject();
+                obj.setString("foo", "foo_value");
+                obj.setData("bar", new byte[] { (byte)4, (byte)2 });
+                {
+                    com.yahoo.slime.Cursor nested_array = obj.setArray("nested");
+                    {
+                        com.yahoo.slime.Cursor nested_object = nested_array.addObject();
+                        nested_object.setString("hidden", "treasure");
+                    }
+                }
+            }
+        }
+        return slime;
+    }
+
+    @Test
+    public void testValuesAreDecodedAsBySlime() {
+        Slime slime = new Slime();
+        Cursor root = slime.setObject();
+        root.setLong("negative", -1234567890123L);
+        root.setLong("max", Long.MAX_VALUE);
+        root.setLong("min", Long.MIN_VALUE);
+        root.setDouble("double", -0.1);
+        char[] longString = new char[1000];
+        Arrays.fill(longString, 'x');
+        root.setString("long", new String(longString));
+        root.setString("unicode", "æøå 中文");
+        root.setString("escaped", "\"quoted\"\n\u0001\\");
+        Cursor array = root.setArray("many");
+        for (int i = 0; i < 300; i++)
+            array.addObject().setLong("field" + (i % 200), i);
+
+        byte[] data = BinaryFormat.encode(slime);
+        byte[] padded = new byte[data.length + 7];
+        System.arraycopy(data, 0, padded, 3, data.length);
+        for (BinaryView view : new BinaryView[] { BinaryView.inspect(data), BinaryView.inspect(padded, 3, data.length) }) {
+            assertEquals(-1234567890123L, view.field("negative").asLong());
+            assertEquals(Long.MAX_VALUE, view.field("max").asLong());
+            assertEquals(Long.MIN_VALUE, view.field("min").asLong());
+            assertEquals(-0.1, view.field("double").asDouble(), 0);
+            assertEquals(new String(longString), view.field("long").asString());
+            assertEquals("æøå 中文", view.field("unicode").asString());
+            assertEquals(300, view.field("many").entryCount());
+            assertEquals(299, view.field("many").entry(299).field("field99").asLong());
+            assertFalse(view.field("many").entry(299).field("field98").valid());
+            assertFalse(view.field("many").entry(300).valid());
+            assertEquals(new SlimeAdapter(slime.get()).toString(), view.toString());
+        }
+    }
+
+    @Test
+    public void testStringsCanBeReadFromTheBuffer() {
+        Slime slime = new Slime();
+        slime.setObject().setString("text", "hællo");
+        BinaryView text = (BinaryView)BinaryView.inspect(BinaryFormat.encode(slime)).field("text");
+        assertEquals(Type.STRING, text.type());
+        byte[] utf8 = Arrays.copyOfRange(text.buffer(), text.valueOffset(), text.valueOffset() + text.valueLength());
+        assertArrayEquals(Utf8.toBytes("hællo"), utf8);
+        assertArrayEquals(utf8, text.asUtf8());
+    }
+
+    @Test
+    public void testEmptyData() {
+        Slime slime = new Slime();
+        Inspector view = BinaryView.inspect(BinaryFormat.encode(slime));
+        assertEquals(Type.EMPTY, view.type());
+        assertFalse(BinaryView.inspect(new byte[0]).valid());
+    }
+
+    @Test
+    public void testTruncatedDataIsInvalid() {
+        byte[] data = BinaryFormat.encode(createSlime());
+        assertNull(BinaryView.inspect(data).error());
+        for (int length = 1; length < data.length; length++) {
+            BinaryView view = BinaryView.inspect(data, 0, length);
+            assertFalse(view.valid());
+            assertNotNull(view.error());
+            assertEquals("null", view.toString());
+        }
+    }
+
+    @Test
+    public void testCorruptDataCanBeRendered() {
+        byte[] data = BinaryFormat.encode(createSlime());
+        for (int i = 0; i < data.length; i++) {
+            for (int value : new int[] { 0x00, 0x7f, 0x80, 0xff }) {
+                byte[] corrupt = data.clone();
+                corrupt[i] = (byte)value;
+                BinaryView.inspect(corrupt).toString(); // must not throw
+            }
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.io;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BufferPoolTestCase {
+
+    @Test
+    public void requireThatBuffersAreAllocatedInSizeClasses() {
+        BufferPool pool = new BufferPool(false, 1024 * 1024);
+        assertEquals(1024, pool.acquire(1).capacity());
+        assertEquals(1024, pool.acquire(1024).capacity());
+        assertEquals(2048, pool.acquire(1025).capacity());
+        assertEquals(8192, pool.acquire(5000).capacity());
+        assertEquals(32 * 1024 * 1024 + 1, pool.acquire(32 * 1024 * 1024 + 1).capacity());
+        assertEquals(5, pool.allocated());
+        assertEquals(0, pool.hitRate(), 0);
+    }
+
+    @Test
+    public void requireThatBuffersLargerThanTheMaxPooledCapacityAreNotPooledUnlessAsked() {
+        BufferPool pool = new BufferPool(false, 1024 * 1024);
+        assertEquals(16 * 1024, pool.maxPooledCapacity());
+        ByteBuffer large = pool.acquire(20000);
+        assertEquals(20000, large.capacity());
+        pool.release(large);
+        assertNotSame(large, pool.acquire(20000));
+        assertEquals(2, pool.allocated());
+
+        BufferPool largePool = new BufferPool(false, 1024 * 1024, 1024 * 1024);
+        large = largePool.acquire(20000);
+        assertEquals(32 * 1024, large.capacity());
+        largePool.release(large);
+        assertSame(large, largePool.acquire(20000));
+        assertEquals(1, largePool.poolHits());
+        ByteBuffer tooLarge = largePool.acquire(1024 * 1024 + 1);
+        assertEquals(1024 * 1024 + 1, tooLarge.capacity());
+    }
+
+    @Test
+    public void requireThatTheSharedPoolCanBeReplaced() {
+        BufferPool original = BufferPool.shared();
+        try {
+            assertEquals(BufferPool.defaultMaxPooledBytesPerSizeClass, original.maxPooledBytesPerSizeClass());
+            assertEquals(BufferPool.defaultMaxPooledCapacity, original.maxPooledCapacity());
+            BufferPool replacement = new BufferPool(false, 64 * 1024, 64 * 1024);
+            BufferPool.setShared(replacement);
+            assertSame(replacement, BufferPool.shared());
+            try {
+                BufferPool.setShared(new BufferPool(true, 64 * 1024));
+                fail("Expected exception");
+            }
+            catch (IllegalArgumentException expected) {
+                assertEquals("The shared pool must hold heap buffers", expected.getMessage());
+            }
+        }
+        finally {
+            BufferPool.setShared(original);
+        }
+    }
+
+    @Test
+    public void requireThatReleasedBuffersAreReusedEmpty() {
+        BufferPool pool = new BufferPool(false, 1024 * 1024);
+        ByteBuffer buffer = pool.acquire(1000);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(7);
+        pool.release(buffer);
+
+        ByteBuffer reused = pool.acquire(500);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(reused.capacity(), reused.limit());
+        assertEquals(ByteOrder.BIG_ENDIAN, reused.order());
+        assertEquals(1, pool.cacheHits());
+        assertEquals(1, pool.allocated());
+        assertEquals(0.5, pool.hitRate(), 0);
+    }
+
+    @Test
+    public void requireThatGrownBuffersAreReusedForSizesTheyCanServe() {
+        BufferPool pool = new BufferPool(false, 1024 * 1024);
+        GrowableByteBuffer buffer = new GrowableByteBuffer(pool.acquire(1024), 2.0f);
+        buffer.put(new byte[3000]);
+        assertEquals(2 * (2 * 1024 + 100) + 100, buffer.capacity());
+        pool.release(buffer.getByteBuffer());
+
+        assertSame(buffer.getByteBuffer(), pool.acquire(4096));
+        assertNotSame(buffer.getByteBuffer(), pool.acquire(4097));
+    }
+
+    @Test
+    public void requireThatBuffersOverflowToTheSharedPool() throws InterruptedException {
+        BufferPool pool = new BufferPool(false, 4 * 1024);
+        ByteBuffer[] buffers = new ByteBuffer[6];
+        for (int i = 0; i < buffers.length; i++)
+            buffers[i] = pool.acquire(1024);
+        for (ByteBuffer buffer : buffers)
+            pool.release(buffer);
+        assertEquals(6, pool.allocated());
+        assertEquals(0, pool.dropped()); // 2 cached in this thread, and 4 in the pool
+
+        pool.release(ByteBuffer.allocate(1024));
+        assertEquals(1, pool.dropped());
+
+        Thread other = new Thread(() -> {
+            for (int i = 0; i < 4; i++)
+                pool.acquire(1024);
+        });
+        other.start();
+        other.join();
+        assertEquals(4, pool.poolHits());
+        assertEquals(6, pool.allocated());
+    }
+
+    @Test
+    public void requireThatBuffersWhichDoNotBelongAreNotPooled() {
+        BufferPool pool = new BufferPool(false, 1024 * 1024);
+        pool.release(ByteBuffer.allocateDirect(1024));
+        pool.release(ByteBuffer.allocate(1024).asReadOnlyBuffer());
+        pool.release(ByteBuffer.allocate(100));
+        pool.acquire(1024);
+        pool.acquire(1);
+        assertEquals(2, pool.allocated());
+    }
+
+    @Test
+    public void requireThatDirectPoolsAllocateDirectBuffers() {
+        BufferPool pool = new BufferPool(true, 1024 * 1024);
+        assertTrue(pool.isDirect());
+        ByteBuffer buffer = pool.acquire(2000);
+        assertTrue(buffer.isDirect());
+        pool.release(buffer);
+        assertSame(buffer, pool.acquire(2000));
+    }
+
+    @Test
+    public void requireThatADisabledPoolAllocatesEachBuffer() {
+        BufferPool pool = new BufferPool(false, 1024 * 1024);
+        pool.setEnabled(false);
+        ByteBuffer buffer = pool.acquire(1000);
+        assertEquals(1000, buffer.capacity());
+        pool.release(buffer);
+        assertFalse(buffer == pool.acquire(1000));
+        assertEquals(2, pool.allocated());
+    }
+
+}
@@ -4,8 +4,13 @@ package com.yahoo.tensor;
 import com.google.common.collect.Sets;
 import org.junit.Test;
 
+import java.util.Map;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Basic tensor tests. Tensor operations are tested in EvaluationTestCase
@@ -48,4 +53,37 @@ public class MappedTensorTestCase {
         assertEquals("tensor(x{},y{}):{{x:0,y:0}:1.0,{x:1,y:0}:2.0}", tensor.toString());
     }
 
+    @Test
+    public void testCells() {
+        TensorType type = new TensorType.Builder().mapped("x").mapped("y").build();
+        Tensor tensor = Tensor.Builder.of(type).
+                cell().label("x", "a").label("y", "0").value(3).
+                cell().label("x", "b").label("y", "0").value(2).build();
+        assertEquals(2, tensor.size());
+        assertEquals(3.0, tensor.get(TensorAddress.of(new String[] { "a", "0" })), 0);
+        assertTrue(Double.isNaN(tensor.get(TensorAddress.of(new String[] { "c", "0" }))));
+        assertTrue(Double.isNaN(tensor.get(TensorAddress.of(new String[] { "a" }))));
+
+        assertEquals(2, tensor.cells().size());
+        assertEquals(2.0, tensor.cells().get(TensorAddress.of(new String[] { "b", "0" })), 0);
+        assertNull(tensor.cells().get(TensorAddress.of(new String[] { "b", "1" })));
+        assertFalse(tensor.cells().containsKey("b"));
+        assertEquals(tensor.cells(), Map.of(TensorAddress.of(new String[] { "a", "0" }), 3.0,
+                                            TensorAddress.of(new String[] { "b", "0" }), 2.0));
+        assertEquals(tensor.cells().hashCode(), tensor.hashCode());
+    }
+
+    @Test
+    public void testDuplicateCellAddressesAreRejected() {
+        TensorType type = new TensorType.Builder().mapped("x").mapped("y").build();
+        Tensor.Builder builder = Tensor.Builder.of(type).cell().label("x", "a").label("y", "0").value(1);
+        try {
+            builder.cell().label("x", "a").label("y", "0").value(2);
+            fail("Expected exception");
+        }
+        catch (IllegalArgumentException expected) {
+            assertEquals("Multiple values given for cell address (a,0) in tensor(x{},y{})", expected.getMessage());
+        }
+    }
+
 }
@@ -0,0 +1,50 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SparseAddressIndexTestCase {
+
+    @Test
+    public void testAddressesAreIndexedInInsertionOrder() {
+        SparseAddressIndex index = new SparseAddressIndex(2, 1);
+        for (int i = 0; i < 1000; i++)
+            assertEquals(i, index.add(TensorAddress.of(new String[] { "x" + i, "y" + i % 7 })));
+        assertEquals(1000, index.size());
+        assertEquals(17, index.add(TensorAddress.of(new String[] { "x17", "y3" })));
+        assertEquals(1000, index.size());
+
+        SparseAddressIndex trimmed = index.trimmed();
+        for (int i = 0; i < 1000; i++) {
+            TensorAddress address = TensorAddress.of(new String[] { "x" + i, "y" + i % 7 });
+            assertEquals(i, trimmed.indexOf(address));
+            assertEquals(address, trimmed.address(i));
+        }
+        assertEquals("x999", trimmed.label(999, 0));
+        assertEquals("y5", trimmed.label(999, 1));
+    }
+
+    @Test
+    public void testMissingAddresses() {
+        SparseAddressIndex index = new SparseAddressIndex(2);
+        index.add(TensorAddress.of(new String[] { "a", "b" }));
+        assertEquals(-1, index.indexOf(TensorAddress.of(new String[] { "b", "a" })));
+        assertEquals(-1, index.indexOf(TensorAddress.of(new String[] { "a", "c" })));
+        assertEquals(0, index.indexOf(TensorAddress.of(new String[] { "a", "b" })));
+    }
+
+    @Test
+    public void testSubsetOfDimensions() {
+        SparseAddressIndex index = new SparseAddressIndex(1);
+        int[] dimensions = { 1 };
+        assertEquals(0, index.add(TensorAddress.of(new String[] { "0", "a", "1" }), dimensions));
+        assertEquals(1, index.add(TensorAddress.of(new String[] { "0", "b", "1" }), dimensions));
+        assertEquals(0, index.add(TensorAddress.of(new String[] { "2", "a", "3" }), dimensions));
+        assertEquals(1, index.indexOf(TensorAddress.of(new String[] { "b" })));
+        assertEquals(TensorAddress.of(new String[] { "a" }), index.address(0));
+        assertEquals(-1, index.indexOf(TensorAddress.of(7, 1, 9), new int[] { 2 }));
+    }
+
+}
@@ -0,0 +1,105 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor;
+
+import com.yahoo.tensor.evaluation.MapEvaluationContext;
+import com.yahoo.tensor.evaluation.VariableTensor;
+import com.yahoo.tensor.functions.Join;
+import com.yahoo.tensor.functions.Reduce;
+import com.yahoo.tensor.functions.TensorFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the memory used per cell by sparse (mapped) tensors, and the time of building them and
+ * of join and reduce operations over them.
+ *
+ * Run with the main method.
+ */
+public class SparseTensorBenchmark {
+
+    private static final int cells = 100_000;
+
+    private final Random random = new Random(17);
+
+    public void run() {
+        TensorType oneDimension = TensorType.fromSpec("tensor(x{})");
+        TensorType twoDimensions = TensorType.fromSpec("tensor(x{},y{})");
+
+        memory(oneDimension);
+        memory(twoDimensions);
+
+        Tensor a = sparse(oneDimension, cells);
+        Tensor b = sparse(oneDimension, cells);
+        TensorFunction join = new Join(new VariableTensor("a"), new VariableTensor("b"), (x, y) -> x * y);
+        TensorFunction reduce = new Reduce(new VariableTensor("a"), Reduce.Aggregator.sum, "x");
+        MapEvaluationContext context = new MapEvaluationContext();
+        context.put("a", a);
+        context.put("b", b);
+
+        time("Build " + cells + " cells", 20, () -> sparse(oneDimension, cells).size());
+        time("Lookup of " + cells + " cells", 20, () -> lookupAll(a));
+        time("Join of " + cells + " x " + cells + " cells", 20, () -> join.evaluate(context).size());
+        time("Reduce of " + cells + " cells", 20, () -> reduce.evaluate(context).size());
+    }
+
+    private void memory(TensorType type) {
+        List<Tensor> tensors = new ArrayList<>();
+        long before = usedMemory();
+        for (int i = 0; i < 10; i++)
+            tensors.add(sparse(type, cells));
+        long after = usedMemory();
+        out(type + ": " + (after - before) / (tensors.size() * cells) + " bytes per cell");
+    }
+
+    private double lookupAll(Tensor tensor) {
+        double sum = 0;
+        for (var i = tensor.cellIterator(); i.hasNext(); )
+            sum += tensor.get(i.next().getKey());
+        return sum;
+    }
+
+    private Tensor sparse(TensorType type, int size) {
+        Tensor.Builder builder = Tensor.Builder.of(type);
+        int dimensions = type.dimensions().size();
+        for (int i = 0; i < size; i++) {
+            Tensor.Builder.CellBuilder cell = builder.cell();
+            for (int d = 0; d < dimensions; d++)
+                cell.label(type.dimensions().get(d).name(), d == 0 ? "label" + i : "l" + random.nextInt(100));
+            cell.value(random.nextDouble());
+        }
+        return builder.build();
+    }
+
+    private void time(String name, int iterations, Measured measured) {
+        for (int i = 0; i < iterations; i++) // warmup
+            measured.run();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            measured.run();
+        long elapsed = System.nanoTime() - startTime;
+        out(name + ": " + String.format(Locale.ENGLISH, "%.2f", elapsed / 1000_000.0 / iterations) + " ms");
+    }
+
+    private static long usedMemory() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private void out(String string) {
+        System.out.println(string);
+    }
+
+    private interface Measured {
+        double run();
+    }
+
+    public static void main(String[] args) {
+        new SparseTensorBenchmark().run();
+    }
+
+}
@@ -0,0 +1,112 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor.functions;
+
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+import com.yahoo.tensor.evaluation.MapEvaluationContext;
+import com.yahoo.tensor.evaluation.VariableTensor;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the time of joining tensors of the combinations of types which have specialized join algorithms,
+ * and of a general sparse join for comparison.
+ *
+ * Run with the main method.
+ */
+public class JoinBenchmark {
+
+    private final Random random = new Random(17);
+
+    public void run() {
+        time("Dense x dense, same dimensions, 100k cells",
+             dense("tensor(x[100],y[1000])"), dense("tensor(x[100],y[1000])"));
+        time("Dense x dense, broadcast 100 x 1000 cells",
+             dense("tensor(x[100])"), dense("tensor(x[100],y[1000])"));
+        time("Dense x dense, broadcast outer product 300 x 300 cells",
+             dense("tensor(x[300])"), dense("tensor(y[300])"));
+        time("Sparse x sparse, same dimensions, 100k cells",
+             sparse("tensor(x{},y{})", 100_000, 0), sparse("tensor(x{},y{})", 100_000, 0));
+        time("Sparse x sparse, same dimensions, 100k cells, half matching",
+             sparse("tensor(x{},y{})", 100_000, 0), sparse("tensor(x{},y{})", 100_000, 50_000));
+        time("Mixed x dense subspace, 10k x 32 cells",
+             mixed("tensor(key{},x[32])", 10_000), dense("tensor(x[32])"));
+        time("Mixed x mixed, same dimensions, 10k x 32 cells",
+             mixed("tensor(key{},x[32])", 10_000), mixed("tensor(key{},x[32])", 10_000));
+        time("Sparse x sparse, general, 10k x 10 cells",
+             sparse("tensor(x{},y{})", 10_000, 0), sparse("tensor(y{},z{})", 10, 0));
+    }
+
+    private void time(String name, Tensor a, Tensor b) {
+        TensorFunction join = new Join(new VariableTensor("a"), new VariableTensor("b"), (x, y) -> x * y);
+        MapEvaluationContext context = new MapEvaluationContext();
+        context.put("a", a);
+        context.put("b", b);
+
+        int iterations = Math.max(10, (int)(2_000_000 / Math.max(a.size(), b.size())));
+        for (int i = 0; i < iterations; i++) // warmup
+            join.evaluate(context);
+        long startTime = System.nanoTime();
+        long cells = 0;
+        for (int i = 0; i < iterations; i++)
+            cells += join.evaluate(context).size();
+        long elapsed = System.nanoTime() - startTime;
+        out(name + ": " + String.format(Locale.ENGLISH, "%.3f", elapsed / 1000_000.0 / iterations) + " ms" +
+            " (" + cells / iterations + " cells)");
+    }
+
+    private Tensor dense(String typeSpec) {
+        TensorType type = TensorType.fromSpec(typeSpec);
+        Tensor.Builder builder = Tensor.Builder.of(type);
+        fill(builder, type, new long[type.dimensions().size()], 0);
+        return builder.build();
+    }
+
+    private void fill(Tensor.Builder builder, TensorType type, long[] indexes, int dimension) {
+        if (dimension == indexes.length) {
+            Tensor.Builder.CellBuilder cell = builder.cell();
+            for (int d = 0; d < indexes.length; d++)
+                cell.label(type.dimensions().get(d).name(), indexes[d]);
+            cell.value(random.nextDouble());
+            return;
+        }
+        for (indexes[dimension] = 0; indexes[dimension] < type.dimensions().get(dimension).size().get(); indexes[dimension]++)
+            fill(builder, type, indexes, dimension + 1);
+    }
+
+    /** Returns a sparse tensor of the given size, whose labels in the first dimension start at the given offset */
+    private Tensor sparse(String typeSpec, int size, int offset) {
+        TensorType type = TensorType.fromSpec(typeSpec);
+        Tensor.Builder builder = Tensor.Builder.of(type);
+        for (int i = 0; i < size; i++) {
+            Tensor.Builder.CellBuilder cell = builder.cell();
+            for (int d = 0; d < type.dimensions().size(); d++)
+                cell.label(type.dimensions().get(d).name(), d == 0 ? "l" + (i + offset) : "l" + (i % 10));
+            cell.value(random.nextDouble());
+        }
+        return builder.build();
+    }
+
+    private Tensor mixed(String typeSpec, int subspaces) {
+        TensorType type = TensorType.fromSpec(typeSpec);
+        long denseSize = type.dimensions().get(1).size().get();
+        Tensor.Builder builder = Tensor.Builder.of(type);
+        for (int i = 0; i < subspaces; i++) {
+            for (int j = 0; j < denseSize; j++)
+                builder.cell().label(type.dimensions().get(0).name(), "key" + i)
+                              .label(type.dimensions().get(1).name(), j)
+                              .value(random.nextDouble());
+        }
+        return builder.build();
+    }
+
+    private void out(String string) {
+        System.out.println(string);
+    }
+
+    public static void main(String[] args) {
+        new JoinBenchmark().run();
+    }
+
+}
@@ -46,4 +46,39 @@ public class JoinTestCase {
                              .divide(Tensor.from("tensor(y[],z[]):{ {y:0,z:0}:2, {y:1,z:0}:4, {y:2,z:0}:6 }")));
     }
 
+    @Test
+    public void testIndexedJoin() {
+        assertEquals(Tensor.from("tensor(x[2],y[3]):{ {x:0,y:0}:1, {x:0,y:1}:2, {x:0,y:2}:3, {x:1,y:0}:10, {x:1,y:1}:20, {x:1,y:2}:30 }"),
+                     Tensor.from("tensor(y[3]):{ {y:0}:1, {y:1}:2, {y:2}:3 }")
+                           .multiply(Tensor.from("tensor(x[2]):{ {x:0}:1, {x:1}:10 }")));
+        assertEquals(Tensor.from("tensor(x[2],y[2]):{ {x:0,y:0}:0, {x:0,y:1}:-1, {x:1,y:0}:1, {x:1,y:1}:0 }"),
+                     Tensor.from("tensor(x[2],y[2]):{ {x:0,y:0}:1, {x:0,y:1}:2, {x:1,y:0}:3, {x:1,y:1}:4 }")
+                           .subtract(Tensor.from("tensor(y[2],x[2]):{ {y:0,x:0}:1, {y:0,x:1}:2, {y:1,x:0}:3, {y:1,x:1}:4 }")));
+        assertEquals(Tensor.from("tensor(x[2]):{ {x:0}:3, {x:1}:5 }"),
+                     Tensor.from("tensor(x[2]):{ {x:0}:1, {x:1}:2 }").add(Tensor.from("tensor(x[3]):{ {x:0}:2, {x:1}:3, {x:2}:4 }")));
+        assertEquals(Tensor.from("tensor():{6}"), Tensor.from("tensor():{2}").multiply(Tensor.from("tensor():{3}")));
+    }
+
+    @Test
+    public void testMappedSingleSpaceJoin() {
+        Tensor a = Tensor.from("tensor(x{},y{}):{ {x:a,y:0}:1, {x:b,y:0}:2, {x:c,y:1}:3 }");
+        assertEquals(Tensor.from("tensor(x{},y{}):{ {x:a,y:0}:10, {x:c,y:1}:6 }"),
+                     a.multiply(Tensor.from("tensor(x{},y{}):{ {x:c,y:1}:2, {x:a,y:0}:10, {x:b,y:1}:5 }")));
+        assertEquals(Tensor.from("tensor(x{},y{}):{ {x:a,y:0}:2, {x:b,y:0}:4, {x:c,y:1}:6 }"), a.add(a));
+        assertEquals(Tensor.from("tensor(x{},y{}):{}"), a.multiply(Tensor.from("tensor(x{},y{}):{ {x:d,y:0}:1 }")));
+    }
+
+    @Test
+    public void testMixedJoin() {
+        Tensor a = Tensor.from("tensor(key{},x[2]):{ {key:a,x:0}:1, {key:a,x:1}:2, {key:b,x:0}:3, {key:b,x:1}:4 }");
+        Tensor b = Tensor.from("tensor(key{},x[2]):{ {key:b,x:0}:10, {key:b,x:1}:20, {key:c,x:0}:30, {key:c,x:1}:40 }");
+        assertEquals(Tensor.from("tensor(key{},x[2]):{ {key:b,x:0}:30, {key:b,x:1}:80 }"), a.multiply(b));
+        assertEquals(Tensor.from("tensor(key{},x[2]):{ {key:a,x:0}:1, {key:a,x:1}:4, {key:b,x:0}:9, {key:b,x:1}:16 }"), a.multiply(a));
+
+        Tensor dense = Tensor.from("tensor(x[2]):{ {x:0}:10, {x:1}:100 }");
+        Tensor expected = Tensor.from("tensor(key{},x[2]):{ {key:a,x:0}:9, {key:a,x:1}:98, {key:b,x:0}:7, {key:b,x:1}:96 }");
+        assertEquals(expected, dense.subtract(a));
+        assertEquals(expected.multiply(Tensor.from("tensor():{-1}")), a.subtract(dense));
+    }
+
 }
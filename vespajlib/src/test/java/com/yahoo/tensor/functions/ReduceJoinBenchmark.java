@@ -0,0 +1,92 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor.functions;
+
+import com.google.common.collect.ImmutableList;
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+import com.yahoo.tensor.evaluation.MapEvaluationContext;
+import com.yahoo.tensor.evaluation.VariableTensor;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the time of evaluating the dense layers of typical multilayer perceptrons,
+ * as single reduce-joins and as a join followed by a reduce.
+ *
+ * Run with the main method.
+ */
+public class ReduceJoinBenchmark {
+
+    private final Random random = new Random(17);
+
+    public void run() {
+        layer("Layer 784 -> 128, one input", "tensor(d0[1],d1[784])", "tensor(d1[784],d2[128])", "tensor(d2[128])");
+        layer("Layer 784 -> 128, batch of 8", "tensor(d0[8],d1[784])", "tensor(d1[784],d2[128])", "tensor(d2[128])");
+        layer("Layer 256 -> 256, one input", "tensor(d0[1],d1[256])", "tensor(d1[256],d2[256])", "tensor(d2[256])");
+        layer("Layer 128 -> 10, one input", "tensor(d0[1],d1[128])", "tensor(d1[128],d2[10])", "tensor(d2[10])");
+        reduceJoin("Dot product of 10k cells", "tensor(x[10000])", "tensor(x[10000])", "x");
+        reduceJoin("Matrix-vector product of 100 x 1000 cells", "tensor(x[100],y[1000])", "tensor(y[1000])", "y");
+    }
+
+    private void layer(String name, String xType, String wType, String bType) {
+        TensorFunction xwPlusB = new XwPlusB(new VariableTensor("x"), new VariableTensor("w"), new VariableTensor("b"), "d1");
+        MapEvaluationContext context = new MapEvaluationContext();
+        context.put("x", dense(xType));
+        context.put("w", dense(wType));
+        context.put("b", dense(bType));
+        compare(name, xwPlusB, context);
+    }
+
+    private void reduceJoin(String name, String aType, String bType, String dimension) {
+        TensorFunction reduceJoin = new ReduceJoin(new VariableTensor("a"), new VariableTensor("b"),
+                                                   ScalarFunctions.multiply(), Reduce.Aggregator.sum,
+                                                   ImmutableList.of(dimension));
+        MapEvaluationContext context = new MapEvaluationContext();
+        context.put("a", dense(aType));
+        context.put("b", dense(bType));
+        compare(name, reduceJoin, context);
+    }
+
+    private void compare(String name, TensorFunction function, MapEvaluationContext context) {
+        double fused = time(function, context);
+        double unfused = time(function.toPrimitive(), context);
+        out(name + ": " + format(fused) + " ms, unfused " + format(unfused) + " ms, speedup " +
+            String.format(Locale.ENGLISH, "%.1f", unfused / fused) + "x");
+    }
+
+    private double time(TensorFunction function, MapEvaluationContext context) {
+        int iterations = 200;
+        for (int i = 0; i < iterations; i++) // warmup
+            function.evaluate(context);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            function.evaluate(context);
+        return (System.nanoTime() - startTime) / 1000_000.0 / iterations;
+    }
+
+    private Tensor dense(String typeSpec) {
+        TensorType type = TensorType.fromSpec(typeSpec);
+        int size = 1;
+        for (TensorType.Dimension dimension : type.dimensions())
+            size *= dimension.size().get();
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++)
+            values[i] = random.nextDouble();
+        return IndexedTensor.Builder.of(type, values).build();
+    }
+
+    private static String format(double millis) {
+        return String.format(Locale.ENGLISH, "%.3f", millis);
+    }
+
+    private void out(String string) {
+        System.out.println(string);
+    }
+
+    public static void main(String[] args) {
+        new ReduceJoinBenchmark().run();
+    }
+
+}
@@ -0,0 +1,80 @@
+// Copyright 2019 Oath Inc. Licensed under the terms of the Apache 2.0 license. See LICENSE in the project root.
+package com.yahoo.tensor.functions;
+
+import com.google.common.collect.ImmutableList;
+import com.yahoo.tensor.IndexedTensor;
+import com.yahoo.tensor.Tensor;
+import com.yahoo.tensor.TensorType;
+import com.yahoo.tensor.evaluation.MapEvaluationContext;
+import com.yahoo.tensor.evaluation.VariableTensor;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleBinaryOperator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReduceJoinTestCase {
+
+    private final Random random = new Random(7);
+
+    @Test
+    public void testReduceJoinOfAnyDenseShape() {
+        assertReduceJoin("tensor(x[5])", "tensor(x[5])", ImmutableList.of("x"));
+        assertReduceJoin("tensor(x[5])", "tensor(x[5])", ImmutableList.of());
+        assertReduceJoin("tensor(x[7])", "tensor(x[7],y[3])", ImmutableList.of("x"));
+        assertReduceJoin("tensor(x[3],y[7])", "tensor(y[7])", ImmutableList.of("y"));
+        assertReduceJoin("tensor(i[3],k[9])", "tensor(j[4],k[9])", ImmutableList.of("k"));
+        assertReduceJoin("tensor(i[3],k[9])", "tensor(k[9],l[4])", ImmutableList.of("k"));
+        assertReduceJoin("tensor(b[2],i[3],k[5])", "tensor(b[2],k[5],l[4])", ImmutableList.of("k"));
+        assertReduceJoin("tensor(b[2],i[3],k[5])", "tensor(b[2],k[5],l[4])", ImmutableList.of("b", "k"));
+        assertReduceJoin("tensor(x[3],y[2])", "tensor(z[4])", ImmutableList.of("x"));
+        assertReduceJoin("tensor(x[3])", "tensor(x[5])", ImmutableList.of("x"));
+        assertReduceJoin("tensor(x[3],y[2])", "tensor()", ImmutableList.of("y"));
+        assertReduceJoin("tensor()", "tensor()", ImmutableList.of());
+        assertReduceJoin("tensor<float>(i[3],k[9])", "tensor(k[9],l[4])", ImmutableList.of("k"));
+    }
+
+    @Test
+    public void testCanOptimize() {
+        ReduceJoin function = new ReduceJoin(new VariableTensor("a"), new VariableTensor("b"),
+                                             ScalarFunctions.multiply(), Reduce.Aggregator.sum, ImmutableList.of("x"));
+        Tensor dense = Tensor.from("tensor(x[2]):[1, 2]");
+        assertTrue(function.canOptimize(dense, dense));
+        assertFalse(function.canOptimize(dense, Tensor.from("tensor(x{}):{ {x:0}:1 }")));
+        assertFalse(function.canOptimize(dense, Tensor.from("tensor(x[]):{ {x:0}:1 }")));
+        assertFalse(function.canOptimize(Tensor.from("tensor(y[2]):[1, 2]"), Tensor.from("tensor(y[2]):[1, 2]")));
+    }
+
+    private void assertReduceJoin(String aType, String bType, List<String> dimensions) {
+        Tensor a = random(TensorType.fromSpec(aType));
+        Tensor b = random(TensorType.fromSpec(bType));
+        MapEvaluationContext context = new MapEvaluationContext();
+        context.put("a", a);
+        context.put("b", b);
+        for (DoubleBinaryOperator combinator : ImmutableList.of(ScalarFunctions.multiply(), ScalarFunctions.add())) {
+            for (Reduce.Aggregator aggregator : Reduce.Aggregator.values()) {
+                ReduceJoin reduceJoin = new ReduceJoin(new VariableTensor("a"), new VariableTensor("b"),
+                                                       combinator, aggregator, dimensions);
+                String description = "reduce(join(" + aType + ", " + bType + ", " + combinator + "), " +
+                                     aggregator + ", " + dimensions + ")";
+                assertTrue(description, reduceJoin.canOptimize(a, b));
+                assertEquals(description, reduceJoin.toPrimitive().evaluate(context), reduceJoin.evaluate(context));
+            }
+        }
+    }
+
+    private Tensor random(TensorType type) {
+        int size = 1;
+        for (TensorType.Dimension dimension : type.dimensions())
+            size *= dimension.size().get();
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++)
+            values[i] = random.nextDouble() + 0.5;
+        return IndexedTensor.Builder.of(type, values).build();
+    }
+
+}